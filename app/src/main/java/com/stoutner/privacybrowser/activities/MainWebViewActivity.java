@@ -57,6 +57,7 @@ import android.text.Editable;
 import android.text.Spanned;
 import android.text.TextWatcher;
 import android.text.style.ForegroundColorSpan;
+import android.util.Log;
 import android.util.Patterns;
 import android.view.ContextMenu;
 import android.view.GestureDetector;
@@ -74,6 +75,7 @@ import android.webkit.SslErrorHandler;
 import android.webkit.ValueCallback;
 import android.webkit.WebBackForwardList;
 import android.webkit.WebChromeClient;
+import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebStorage;
@@ -139,12 +141,21 @@ import com.stoutner.privacybrowser.dialogs.ViewSslCertificateDialog;
 import com.stoutner.privacybrowser.dialogs.WaitingForProxyDialog;
 import com.stoutner.privacybrowser.fragments.WebViewTabFragment;
 import com.stoutner.privacybrowser.helpers.AdHelper;
+import com.stoutner.privacybrowser.helpers.Blocklist;
+import com.stoutner.privacybrowser.helpers.BlocklistDecisionCache;
 import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.BlocklistReadinessGate;
+import com.stoutner.privacybrowser.helpers.CombinedBlocklist;
 import com.stoutner.privacybrowser.helpers.BookmarksDatabaseHelper;
 import com.stoutner.privacybrowser.helpers.CheckPinnedMismatchHelper;
 import com.stoutner.privacybrowser.helpers.DomainsDatabaseHelper;
+import com.stoutner.privacybrowser.helpers.ElementHidingStylesheetCache;
 import com.stoutner.privacybrowser.helpers.FileNameHelper;
 import com.stoutner.privacybrowser.helpers.ProxyHelper;
+import com.stoutner.privacybrowser.helpers.PublicSuffixList;
+import com.stoutner.privacybrowser.helpers.RegistrableDomainCache;
+import com.stoutner.privacybrowser.helpers.ResourceTypes;
+import com.stoutner.privacybrowser.helpers.StringArena;
 import com.stoutner.privacybrowser.views.NestedScrollWebView;
 
 import java.io.ByteArrayInputStream;
@@ -161,15 +172,19 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MainWebViewActivity extends AppCompatActivity implements CreateBookmarkDialog.CreateBookmarkListener, CreateBookmarkFolderDialog.CreateBookmarkFolderListener,
         EditBookmarkDialog.EditBookmarkListener, EditBookmarkFolderDialog.EditBookmarkFolderListener, FontSizeDialog.UpdateFontSizeListener, NavigationView.OnNavigationItemSelectedListener,
         OpenDialog.OpenListener, PinnedMismatchDialog.PinnedMismatchListener, PopulateBlocklists.PopulateBlocklistsListener, SaveDialog.SaveWebpageListener,
-        StoragePermissionDialog.StoragePermissionDialogListener, UrlHistoryDialog.NavigateHistoryListener, WebViewTabFragment.NewTabListener {
+        StoragePermissionDialog.StoragePermissionDialogListener, UrlHistoryDialog.NavigateHistoryListener, WebViewTabFragment.NewTabListener, NestedScrollWebView.BlocklistEnabledListener {
 
     // `orbotStatus` is public static so it can be accessed from `OrbotProxyHelper`.  It is also used in `onCreate()`, `onResume()`, and `applyProxy()`.
     public static String orbotStatus = "unknown";
@@ -226,13 +241,51 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
     // The options menu is set in `onCreateOptionsMenu()` and used in `onOptionsItemSelected()`, `updatePrivacyIcons()`, and `initializeWebView()`.
     private Menu optionsMenu;
 
-    // The blocklists are populated in `finishedPopulatingBlocklists()` and accessed from `initializeWebView()`.
-    private ArrayList<List<String[]>> easyList;
-    private ArrayList<List<String[]>> easyPrivacy;
-    private ArrayList<List<String[]>> fanboysAnnoyanceList;
-    private ArrayList<List<String[]>> fanboysSocialList;
-    private ArrayList<List<String[]>> ultraList;
-    private ArrayList<List<String[]>> ultraPrivacy;
+    // The mask of the blocklists that have been requested, with a bit set for each `CombinedBlocklist` index.  It is set in `onCreate()` and extended in `loadBlocklists()`, which can run on several WebView threads at once.
+    private final AtomicInteger requestedBlocklistsMask = new AtomicInteger();
+
+    // The string arena that holds the original entries of all the blocklists, including those loaded later.  It is used in `onCreate()` and `loadBlocklists()`, and finished in `finishLoadingIfAllRequestedBlocklistsFinished()`.
+    private final StringArena originalEntriesArena = new StringArena();
+
+    // The mask of the requested blocklists that failed to load, which are opened in the readiness gate without being added to the combined blocklist.  It is extended in `loadBlocklists()`.
+    private final AtomicInteger failedBlocklistsMask = new AtomicInteger();
+
+    // The combined blocklist is the immutable snapshot of the loaded blocklists that is shared by all the tabs.  It starts empty, so that requests can be checked even if no blocklist is enabled.
+    // It is populated in `finishedPopulatingBlocklist()`, replaced in `mergeBlocklists()` and `reorderBlocklists()`, and accessed from `initializeWebView()` and `onNavigationItemSelected()`.  Each replacement is built on a background thread and swapped in
+    // with a single compare and set, so a request always sees one complete snapshot and never waits for a replacement to be built.
+    private final AtomicReference<CombinedBlocklist> combinedBlocklist = new AtomicReference<>(CombinedBlocklist.createUnmerged(new Blocklist[CombinedBlocklist.NUMBER_OF_BLOCKLISTS]));
+
+    // `blocklistsPopulated` is set in `finishedPopulatingBlocklists()` and used in `onNewIntent()`.
+    private boolean blocklistsPopulated;
+
+    // The blocklist readiness gate is opened in `finishedPopulatingBlocklist()` and `loadBlocklists()`, and waited on in `initializeWebView()`.
+    private final BlocklistReadinessGate blocklistReadinessGate = new BlocklistReadinessGate(6);
+
+    // The blocklist decision cache is shared by all the tabs.  It is used in `initializeWebView()` and cleared in `onRestart()`.
+    private final BlocklistDecisionCache blocklistDecisionCache = new BlocklistDecisionCache(2048);
+
+    // The minimum number of rule hits before the merged blocklist is reordered.  It is used in `reorderBlocklists()`.
+    private final static int MINIMUM_HITS_BEFORE_REORDERING = 1000;
+
+    // The maximum number of entries in the rule hit report.  It is used in `onNavigationItemSelected()`.
+    private final static int MAXIMUM_RULE_HIT_REPORT_ENTRIES = 500;
+
+    // The blocklists that are loaded later are loaded one at a time on the blocklist executor service.  It is used in `loadBlocklists()`.
+    private final ExecutorService blocklistExecutorService = Executors.newSingleThreadExecutor();
+
+    // The merged blocklist is built and rebuilt on its own executor service, because requests for a newly enabled blocklist wait for it to load and shouldn't also wait for a rebuild of several seconds.
+    // The rebuilds run one at a time.  It is used in `finishLoadingIfAllRequestedBlocklistsFinished()` and `reorderBlocklists()`.
+    private final ExecutorService blocklistRebuildExecutorService = Executors.newSingleThreadExecutor();
+
+    // The merged blocklist is only reordered once per session.  It is used in `reorderBlocklists()`.
+    private final AtomicBoolean blocklistsReordered = new AtomicBoolean();
+
+    // The element hiding style sheet cache is shared by all the tabs.  It is used in `injectElementHidingStylesheet()`.  It loads the element hiding lists the first time a page with JavaScript enabled needs them.
+    private final ElementHidingStylesheetCache elementHidingStylesheetCache = new ElementHidingStylesheetCache(8, blocklistIndex -> PopulateBlocklists.loadElementHidingList(getApplicationContext(),
+            new BlocklistHelper(), blocklistIndex, PopulateBlocklists.createSnapshotKey(getApplicationContext())));
+
+    // The registrable domain cache is created in `finishedLoadingPublicSuffixList()` and used in `initializeWebView()` to detect third-party requests.  It is volatile because it is set from a loading thread and read from the WebView threads.
+    private volatile RegistrableDomainCache registrableDomainCache;
 
     // `webViewDefaultUserAgent` is used in `onCreate()` and `onPrepareOptionsMenu()`.
     private String webViewDefaultUserAgent;
@@ -384,8 +437,12 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
         // Store up to 100 tabs in memory.
         webViewPager.setOffscreenPageLimit(100);
 
+        // Get the blocklists that are enabled in the settings or in any domain settings.  The other blocklists are only loaded if a tab enables them.
+        int startupBlocklistsMask = getStartupBlocklistsMask();
+        requestedBlocklistsMask.set(startupBlocklistsMask);
+
         // Populate the blocklists.
-        new PopulateBlocklists(this, this).execute();
+        new PopulateBlocklists(this, this, startupBlocklistsMask, originalEntriesArena).execute();
     }
 
     @Override
@@ -397,7 +454,7 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
         setIntent(intent);
 
         // Process the intent here if Privacy Browser is fully initialized.  If the process has been killed by the system while sitting in the background, this will be handled in `initializeWebView()`.
-        if (ultraPrivacy != null) {
+        if (blocklistsPopulated) {
             // Get the information from the intent.
             String intentAction = intent.getAction();
             Uri intentUriData = intent.getData();
@@ -479,6 +536,9 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
             // Reset the reapply domain settings on restart tracker.
             reapplyDomainSettingsOnRestart = false;
 
+            // Clear the cached blocklist decisions, which might have been made with different domain settings.
+            blocklistDecisionCache.clear();
+
             // Reapply the domain settings for each tab.
             for (int i = 0; i < webViewPagerAdapter.getCount(); i++) {
                 // Get the WebView tab fragment.
@@ -615,6 +675,9 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
             // Pause the ad.
             AdHelper.pauseAd(findViewById(R.id.adview));
         }
+
+        // Move the blocklist entries that match the most requests to the front of their sublists while the app isn't being used, so that the rebuild doesn't run during page loads.
+        reorderBlocklists();
     }
 
     @Override
@@ -1882,6 +1945,9 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
                 // Populate the resource requests.
                 RequestsActivity.resourceRequests = currentWebView.getResourceRequests();
 
+                // Populate the rule hit report, which can be copied from the Requests activity.
+                RequestsActivity.ruleHitReport = combinedBlocklist.get().createHitReport(MAXIMUM_RULE_HIT_REPORT_ENTRIES);
+
                 // Create an intent to launch the Requests activity.
                 Intent requestsIntent = new Intent(this, RequestsActivity.class);
 
@@ -1983,9 +2049,15 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
                 // Create an intent to launch the about activity.
                 Intent aboutIntent = new Intent(this, AboutActivity.class);
 
-                // Create a string array for the blocklist versions.
-                String[] blocklistVersions = new String[] {easyList.get(0).get(0)[0], easyPrivacy.get(0).get(0)[0], fanboysAnnoyanceList.get(0).get(0)[0], fanboysSocialList.get(0).get(0)[0],
-                        ultraList.get(0).get(0)[0], ultraPrivacy.get(0).get(0)[0]};
+                // Get the combined blocklist once, because it is replaced when the blocklists are merged.
+                CombinedBlocklist currentCombinedBlocklist = combinedBlocklist.get();
+
+                // Create a string array for the blocklist versions.  The blocklists that haven't been loaded don't have a version.
+                String[] blocklistVersions = new String[CombinedBlocklist.NUMBER_OF_BLOCKLISTS];
+                for (int blocklistIndex = 0; blocklistIndex < CombinedBlocklist.NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+                    String blocklistVersion = currentCombinedBlocklist.getVersion(blocklistIndex);
+                    blocklistVersions[blocklistIndex] = (blocklistVersion == null) ? getString(R.string.blocklist_not_loaded) : blocklistVersion;
+                }
 
                 // Add the blocklist versions to the intent.
                 aboutIntent.putExtra("blocklist_versions", blocklistVersions);
@@ -4696,19 +4768,253 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
         return url;
     }
 
-    public void finishedPopulatingBlocklists(ArrayList<ArrayList<List<String[]>>> combinedBlocklists) {
-        // Store the blocklists.
-        easyList = combinedBlocklists.get(0);
-        easyPrivacy = combinedBlocklists.get(1);
-        fanboysAnnoyanceList = combinedBlocklists.get(2);
-        fanboysSocialList = combinedBlocklists.get(3);
-        ultraList = combinedBlocklists.get(4);
-        ultraPrivacy = combinedBlocklists.get(5);
+    @Override
+    public void finishedLoadingPublicSuffixList(PublicSuffixList publicSuffixList) {
+        // Publish the registrable domain cache.  Until now third-party requests have been detected by comparing the last two labels of the domains.
+        registrableDomainCache = new RegistrableDomainCache(publicSuffixList, 1024);
+    }
+
+    @Override
+    public void finishedPopulatingBlocklist(int blocklistIndex, Blocklist blocklist) {
+        // Add the blocklist to the combined blocklist and publish it.  This runs on a loading thread, so requests that only need the blocklists loaded so far can proceed.
+        // Several blocklists can finish at once, so the blocklist is added again to the newer combined blocklist if another one is published first.  `createAdded()` only copies the part arrays, so retrying is cheap.
+        CombinedBlocklist addedCombinedBlocklist = combinedBlocklist.updateAndGet(currentCombinedBlocklist -> currentCombinedBlocklist.createAdded(blocklistIndex, blocklist));
+
+        // Wake the requests that are waiting for this blocklist.
+        blocklistReadinessGate.setReady(blocklistIndex);
+
+        // Finish loading if this was the last requested blocklist.
+        finishLoadingIfAllRequestedBlocklistsFinished(addedCombinedBlocklist);
+    }
+
+    private void finishLoadingIfAllRequestedBlocklistsFinished(CombinedBlocklist currentCombinedBlocklist) {
+        // Wait until every requested blocklist has been loaded or has failed to load.  If another blocklist is requested in the meantime, it finishes loading again once it has been loaded.
+        if ((currentCombinedBlocklist.getLoadedBlocklistsMask() | failedBlocklistsMask.get()) != requestedBlocklistsMask.get()) {
+            return;
+        }
+
+        // Release the memory that was only needed while the original entries were being added.  It is kept until now so that the original entries of all the blocklists are deduplicated against each other.
+        originalEntriesArena.finishAdding();
+
+        // Merge the blocklists into one index in the background.  Until then the requests are checked against each blocklist in turn.
+        blocklistRebuildExecutorService.execute(this::mergeBlocklists);
+    }
+
+    private void mergeBlocklists() {
+        // Get the combined blocklist once, because it is replaced when another blocklist is loaded.
+        CombinedBlocklist currentCombinedBlocklist = combinedBlocklist.get();
+
+        // Merge the blocklists.
+        CombinedBlocklist mergedCombinedBlocklist = currentCombinedBlocklist.createMerged();
+
+        // Publish the merged blocklist unless another blocklist has been added in the meantime, in which case it will be merged again once it has been loaded.
+        // The separate blocklists are released once the requests that are checking them finish.
+        combinedBlocklist.compareAndSet(currentCombinedBlocklist, mergedCombinedBlocklist);
+    }
+
+    @Override
+    public void blocklistEnabled(int blocklist) {
+        // Load the blocklist in the background if it hasn't been requested yet.  Enabling blocking of all third-party requests doesn't need a blocklist.
+        switch (blocklist) {
+            case NestedScrollWebView.EASYLIST:
+                loadBlocklists(1 << CombinedBlocklist.EASYLIST);
+                break;
+
+            case NestedScrollWebView.EASYPRIVACY:
+                loadBlocklists(1 << CombinedBlocklist.EASYPRIVACY);
+                break;
+
+            case NestedScrollWebView.FANBOYS_ANNOYANCE_LIST:
+                loadBlocklists(1 << CombinedBlocklist.FANBOYS_ANNOYANCE_LIST);
+                break;
+
+            case NestedScrollWebView.FANBOYS_SOCIAL_BLOCKING_LIST:
+                loadBlocklists(1 << CombinedBlocklist.FANBOYS_SOCIAL_BLOCKING_LIST);
+                break;
+
+            case NestedScrollWebView.ULTRALIST:
+                loadBlocklists(1 << CombinedBlocklist.ULTRALIST);
+                break;
+
+            case NestedScrollWebView.ULTRAPRIVACY:
+                loadBlocklists(1 << CombinedBlocklist.ULTRAPRIVACY);
+                break;
+        }
+    }
+
+    private void loadBlocklists(int blocklistsMask) {
+        // Return immediately if the blocklists have already been requested, which is the case for almost every call.
+        if ((requestedBlocklistsMask.get() & blocklistsMask) == blocklistsMask) {
+            return;
+        }
+
+        // Mark the blocklists as requested and get the ones that hadn't been requested yet, so that each blocklist is only loaded once even if several threads request it.
+        int newBlocklistsMask = blocklistsMask & ~requestedBlocklistsMask.getAndUpdate(currentRequestedBlocklistsMask -> currentRequestedBlocklistsMask | blocklistsMask);
+
+        // Get the application context, which outlives the activity.
+        Context applicationContext = getApplicationContext();
+
+        // Load each new blocklist in the background.
+        for (int blocklistIndex = 0; blocklistIndex < CombinedBlocklist.NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+            if ((newBlocklistsMask & (1 << blocklistIndex)) != 0) {
+                // Copy the index so it can be used in the lambda.
+                final int finalBlocklistIndex = blocklistIndex;
+
+                // Load the blocklist.
+                blocklistExecutorService.execute(() -> {
+                    try {
+                        // Populate the blocklist.
+                        Blocklist blocklist = PopulateBlocklists.loadBlocklist(applicationContext, new BlocklistHelper(), finalBlocklistIndex, PopulateBlocklists.createSnapshotKey(applicationContext),
+                                originalEntriesArena);
+
+                        // Add the blocklist, which wakes the requests that are waiting for it.
+                        finishedPopulatingBlocklist(finalBlocklistIndex, blocklist);
+                    } catch (RuntimeException | OutOfMemoryError exception) {
+                        // Log the failure.  A corrupt asset or snapshot shouldn't take the app down, so the requests are checked without this blocklist instead.
+                        Log.e("Blocklists", "Blocklist " + finalBlocklistIndex + " failed to load after startup.", exception);
+
+                        // Mark the blocklist as failed, so that the other blocklists still finish loading.
+                        failedBlocklistsMask.getAndUpdate(currentFailedBlocklistsMask -> currentFailedBlocklistsMask | (1 << finalBlocklistIndex));
+                        finishLoadingIfAllRequestedBlocklistsFinished(combinedBlocklist.get());
+                    } finally {
+                        // Always open the gate, because the requests waiting for this blocklist would otherwise wait until they time out.
+                        blocklistReadinessGate.setReady(finalBlocklistIndex);
+                    }
+                });
+            }
+        }
+    }
+
+    private int getStartupBlocklistsMask() {
+        // Get a handle for the shared preferences and the domains database helper.
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        DomainsDatabaseHelper domainsDatabaseHelper = new DomainsDatabaseHelper(this, null, null, 0);
+
+        // Initialize the mask.
+        int startupBlocklistsMask = 0;
+
+        // Add each blocklist that is enabled in the settings or in any domain settings.
+        if (sharedPreferences.getBoolean("easylist", true) || domainsDatabaseHelper.isEnabledForAnyDomain(DomainsDatabaseHelper.ENABLE_EASYLIST)) {
+            startupBlocklistsMask |= 1 << CombinedBlocklist.EASYLIST;
+        }
+        if (sharedPreferences.getBoolean("easyprivacy", true) || domainsDatabaseHelper.isEnabledForAnyDomain(DomainsDatabaseHelper.ENABLE_EASYPRIVACY)) {
+            startupBlocklistsMask |= 1 << CombinedBlocklist.EASYPRIVACY;
+        }
+        if (sharedPreferences.getBoolean("fanboys_annoyance_list", true) || domainsDatabaseHelper.isEnabledForAnyDomain(DomainsDatabaseHelper.ENABLE_FANBOYS_ANNOYANCE_LIST)) {
+            startupBlocklistsMask |= 1 << CombinedBlocklist.FANBOYS_ANNOYANCE_LIST;
+        }
+        if (sharedPreferences.getBoolean("fanboys_social_blocking_list", true) || domainsDatabaseHelper.isEnabledForAnyDomain(DomainsDatabaseHelper.ENABLE_FANBOYS_SOCIAL_BLOCKING_LIST)) {
+            startupBlocklistsMask |= 1 << CombinedBlocklist.FANBOYS_SOCIAL_BLOCKING_LIST;
+        }
+        if (sharedPreferences.getBoolean("ultralist", true) || domainsDatabaseHelper.isEnabledForAnyDomain(DomainsDatabaseHelper.ULTRALIST)) {
+            startupBlocklistsMask |= 1 << CombinedBlocklist.ULTRALIST;
+        }
+        if (sharedPreferences.getBoolean("ultraprivacy", true) || domainsDatabaseHelper.isEnabledForAnyDomain(DomainsDatabaseHelper.ENABLE_ULTRAPRIVACY)) {
+            startupBlocklistsMask |= 1 << CombinedBlocklist.ULTRAPRIVACY;
+        }
+
+        // Close the domains database helper.
+        domainsDatabaseHelper.close();
+
+        // Return the mask.
+        return startupBlocklistsMask;
+    }
+
+    @Override
+    public void finishedPopulatingBlocklists() {
+        // Mark the blocklists as populated.
+        blocklistsPopulated = true;
 
         // Add the first tab.
         addNewTab("", true);
     }
 
+    private void reorderBlocklists() {
+        // Get the combined blocklist once, because it is replaced when the blocklists are merged.
+        CombinedBlocklist currentCombinedBlocklist = combinedBlocklist.get();
+
+        // Only the merged blocklist is reordered, once it has counted enough hits to show which entries match the most requests.
+        // The reordering rebuilds the indexes of the merged blocklist, which needs as much memory again while it runs, so it only runs once per session.
+        if (!currentCombinedBlocklist.isMerged() || (currentCombinedBlocklist.getNumberOfHits() < MINIMUM_HITS_BEFORE_REORDERING) || !blocklistsReordered.compareAndSet(false, true)) {
+            return;
+        }
+
+        // Reorder the blocklists in the background.
+        blocklistRebuildExecutorService.execute(() -> {
+            // Reorder the blocklists.
+            CombinedBlocklist reorderedCombinedBlocklist = currentCombinedBlocklist.createReordered();
+
+            // Publish the reordered blocklist unless the combined blocklist has been replaced in the meantime, in which case it is reordered again the next time the app is paused.
+            // The hits are counted by blocklist entry, so they are kept in the combined blocklist that replaced it.
+            if (!combinedBlocklist.compareAndSet(currentCombinedBlocklist, reorderedCombinedBlocklist)) {
+                blocklistsReordered.set(false);
+            }
+        });
+    }
+
+    // Inject the element hiding style sheet once per page.  The style sheet is injected with `evaluateJavascript()`, which doesn't run when JavaScript is disabled,
+    // so elements are only hidden on pages that have JavaScript enabled.  The blocked requests of the other pages are still blocked, which leaves empty space where the ads were.
+    private void injectElementHidingStylesheet(NestedScrollWebView nestedScrollWebView, String url) {
+        // The style sheet has no marker the page could see, so the injection is tracked here.  It is reset in `onPageStarted()` for each navigation.
+        if (nestedScrollWebView.getElementHidingStylesheetInjected()) {
+            return;
+        }
+
+        // The style sheet can only be injected with JavaScript.  The element hiding lists aren't loaded until a page with JavaScript enabled needs them.
+        if (!nestedScrollWebView.getSettings().getJavaScriptEnabled()) {
+            return;
+        }
+
+        // Get the host.
+        String host = Uri.parse(url).getHost();
+
+        // Get the blocklists that are enabled in this WebView.
+        int enabledBlocklistsMask = getEnabledBlocklistsMask(nestedScrollWebView);
+
+        // Only pages with a host and an enabled blocklist can have elements hidden.
+        if ((host == null) || (enabledBlocklistsMask == 0)) {
+            return;
+        }
+
+        // Get the JavaScript that injects the style sheet, which is null if nothing needs to be hidden or if the style sheet or its element hiding lists are still being loaded.
+        String javaScript = elementHidingStylesheetCache.getJavaScript(host, enabledBlocklistsMask);
+
+        // Inject the style sheet, and note it so that it isn't sent to the page again.
+        if (javaScript != null) {
+            nestedScrollWebView.evaluateJavascript(javaScript, null);
+            nestedScrollWebView.setElementHidingStylesheetInjected(true);
+        }
+    }
+
+    // Get a mask of the blocklists that are enabled in the WebView, with a bit set for each `CombinedBlocklist` index.
+    private int getEnabledBlocklistsMask(NestedScrollWebView nestedScrollWebView) {
+        // Initialize the mask.
+        int enabledBlocklistsMask = 0;
+
+        // Add each enabled blocklist.
+        if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.EASYLIST)) {
+            enabledBlocklistsMask |= 1 << CombinedBlocklist.EASYLIST;
+        }
+        if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.EASYPRIVACY)) {
+            enabledBlocklistsMask |= 1 << CombinedBlocklist.EASYPRIVACY;
+        }
+        if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.FANBOYS_ANNOYANCE_LIST)) {
+            enabledBlocklistsMask |= 1 << CombinedBlocklist.FANBOYS_ANNOYANCE_LIST;
+        }
+        if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.FANBOYS_SOCIAL_BLOCKING_LIST)) {
+            enabledBlocklistsMask |= 1 << CombinedBlocklist.FANBOYS_SOCIAL_BLOCKING_LIST;
+        }
+        if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.ULTRALIST)) {
+            enabledBlocklistsMask |= 1 << CombinedBlocklist.ULTRALIST;
+        }
+        if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.ULTRAPRIVACY)) {
+            enabledBlocklistsMask |= 1 << CombinedBlocklist.ULTRAPRIVACY;
+        }
+
+        // Return the mask.
+        return enabledBlocklistsMask;
+    }
+
     public void addTab(View view) {
         // Add a new tab with a blank URL.
         addNewTab("", true);
@@ -5093,6 +5399,9 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
         // Initialize the favorite icon.
         nestedScrollWebView.initializeFavoriteIcon();
 
+        // Load the blocklists that weren't loaded at startup when the WebView enables them.
+        nestedScrollWebView.setBlocklistEnabledListener(this);
+
         // Set the app bar scrolling.
         nestedScrollWebView.setNestedScrollingEnabled(sharedPreferences.getBoolean("scroll_app_bar", true));
 
@@ -5619,31 +5928,37 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
                 }
             }
 
-            // Check requests against the block lists.  The deprecated `shouldInterceptRequest()` must be used until minimum API >= 21.
+            // Check requests against the block lists.
             @Override
-            public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
-                // Check to see if the resource request is for the main URL.
-                if (url.equals(nestedScrollWebView.getCurrentUrl())) {
-                    // `return null` loads the resource request, which should never be blocked if it is the main URL.
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                // Check to see if the resource request is for the main frame.
+                if (request.isForMainFrame()) {
+                    // `return null` loads the resource request, which should never be blocked if it is the main frame.
                     return null;
                 }
 
-                // Wait until the blocklists have been populated.  When Privacy Browser is being resumed after having the process killed in the background it will try to load the URLs immediately.
-                while (ultraPrivacy == null) {
-                    // The wait must be synchronized, which only lets one thread run on it at a time, or `java.lang.IllegalMonitorStateException` is thrown.
-                    synchronized (this) {
-                        try {
-                            // Check to see if the blocklists have been populated after 100 ms.
-                            wait(100);
-                        } catch (InterruptedException exception) {
-                            // Do nothing.
-                        }
-                    }
-                }
+                // Get the URL.
+                String url = request.getUrl().toString();
+
+                // Get the blocklists that are enabled in this WebView.
+                int enabledBlocklistsMask = getEnabledBlocklistsMask(nestedScrollWebView);
+
+                // Load any enabled blocklist that hasn't been requested yet.  They are normally requested as soon as they are enabled.
+                loadBlocklists(enabledBlocklistsMask);
+
+                // Wait until the enabled blocklists have been populated.  When Privacy Browser is being resumed after having the process killed in the background it will try to load the URLs immediately.
+                // The wait is bounded, so a blocklist that is never populated doesn't hold the request forever.  A request whose blocklists still aren't ready can't be checked, so it is blocked below.
+                boolean blocklistsReady = blocklistReadinessGate.awaitReady(enabledBlocklistsMask);
+
+                // Get the combined blocklist once, because it is replaced when the blocklists are merged.
+                CombinedBlocklist currentCombinedBlocklist = combinedBlocklist.get();
 
                 // Sanitize the URL.
                 url = sanitizeUrl(url);
 
+                // Guess the resource type from the `Accept` header and the URL, so that the blocklist entries that only apply to other types are skipped.
+                int resourceType = ResourceTypes.getResourceType(url, request.getRequestHeaders().get("Accept"));
+
                 // Get a handle for the navigation view.
                 NavigationView navigationView = findViewById(R.id.navigationview);
 
@@ -5656,44 +5971,23 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
                 // Create an empty web resource response to be used if the resource request is blocked.
                 WebResourceResponse emptyWebResourceResponse = new WebResourceResponse("text/plain", "utf8", new ByteArrayInputStream("".getBytes()));
 
-                // Reset the whitelist results tracker.
-                String[] whitelistResultStringArray = null;
-
-                // Initialize the third party request tracker.
-                boolean isThirdPartyRequest = false;
-
-                // Get the current URL.  `.getUrl()` throws an error because operations on the WebView cannot be made from this thread.
-                String currentBaseDomain = nestedScrollWebView.getCurrentDomainName();
-
-                // Store a copy of the current domain for use in later requests.
-                String currentDomain = currentBaseDomain;
-
-                // Nobody is happy when comparing null strings.
-                if ((currentBaseDomain != null) && (url != null)) {
-                    // Convert the request URL to a URI.
-                    Uri requestUri = Uri.parse(url);
+                // Block the request if the enabled blocklists weren't ready before the wait timed out.
+                if (!blocklistsReady) {
+                    // Add the result to the resource requests.
+                    nestedScrollWebView.addResourceRequest(url, BlocklistHelper.BLOCKLISTS_NOT_READY_MATCH, null);
 
-                    // Get the request host name.
-                    String requestBaseDomain = requestUri.getHost();
+                    // Increment the blocked requests counter.
+                    nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS);
 
-                    // Only check for third-party requests if the current base domain is not empty and the request domain is not null.
-                    if (!currentBaseDomain.isEmpty() && (requestBaseDomain != null)) {
-                        // Determine the current base domain.
-                        while (currentBaseDomain.indexOf(".", currentBaseDomain.indexOf(".") + 1) > 0) {  // There is at least one subdomain.
-                            // Remove the first subdomain.
-                            currentBaseDomain = currentBaseDomain.substring(currentBaseDomain.indexOf(".") + 1);
-                        }
+                    // The resource request was blocked.  Return an empty web resource response.
+                    return emptyWebResourceResponse;
+                }
 
-                        // Determine the request base domain.
-                        while (requestBaseDomain.indexOf(".", requestBaseDomain.indexOf(".") + 1) > 0) {  // There is at least one subdomain.
-                            // Remove the first subdomain.
-                            requestBaseDomain = requestBaseDomain.substring(requestBaseDomain.indexOf(".") + 1);
-                        }
+                // Get the current domain.  `.getUrl()` throws an error because operations on the WebView cannot be made from this thread.
+                String currentDomain = nestedScrollWebView.getCurrentDomainName();
 
-                        // Update the third party request tracker.
-                        isThirdPartyRequest = !currentBaseDomain.equals(requestBaseDomain);
-                    }
-                }
+                // Determine if this is a third-party request.
+                boolean isThirdPartyRequest = BlocklistHelper.isThirdPartyRequest(currentDomain, url, registrableDomainCache);
 
                 // Get the current WebView page position.
                 int webViewPagePosition = webViewPagerAdapter.getPositionForId(nestedScrollWebView.getWebViewFragmentId());
@@ -5704,7 +5998,7 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
                 // Block third-party requests if enabled.
                 if (isThirdPartyRequest && nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.THIRD_PARTY_REQUESTS)) {
                     // Add the result to the resource requests.
-                    nestedScrollWebView.addResourceRequest(new String[]{BlocklistHelper.REQUEST_THIRD_PARTY, url});
+                    nestedScrollWebView.addResourceRequest(url, BlocklistHelper.THIRD_PARTY_MATCH, null);
 
                     // Increment the blocked requests counters.
                     nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS);
@@ -5730,245 +6024,77 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
                     return emptyWebResourceResponse;
                 }
 
-                // Check UltraList if it is enabled.
-                if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.ULTRALIST)) {
-                    // Check the URL against UltraList.
-                    String[] ultraListResults = blocklistHelper.checkBlocklist(currentDomain, url, isThirdPartyRequest, ultraList);
-
-                    // Process the UltraList results.
-                    if (ultraListResults[0].equals(BlocklistHelper.REQUEST_BLOCKED)) {  // The resource request matched UltraLists's blacklist.
-                        // Add the result to the resource requests.
-                        nestedScrollWebView.addResourceRequest(new String[] {ultraListResults[0], ultraListResults[1], ultraListResults[2], ultraListResults[3], ultraListResults[4], ultraListResults[5]});
-
-                        // Increment the blocked requests counters.
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS);
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.ULTRALIST);
-
-                        // Update the titles of the blocklist menu items if the WebView is currently displayed.
-                        if (webViewDisplayed) {
-                            // Updating the UI must be run from the UI thread.
-                            activity.runOnUiThread(() -> {
-                                // Update the menu item titles.
-                                navigationRequestsMenuItem.setTitle(getString(R.string.requests) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-
-                                // Update the options menu if it has been populated.
-                                if (optionsMenu != null) {
-                                    optionsMenu.findItem(R.id.blocklists).setTitle(getString(R.string.blocklists) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-                                    optionsMenu.findItem(R.id.ultralist).setTitle(nestedScrollWebView.getRequestsCount(NestedScrollWebView.ULTRALIST) + " - " + getString(R.string.ultralist));
-                                }
-                            });
-                        }
-
-                        // The resource request was blocked.  Return an empty web resource response.
-                        return emptyWebResourceResponse;
-                    } else if (ultraListResults[0].equals(BlocklistHelper.REQUEST_ALLOWED)) {  // The resource request matched UltraList's whitelist.
-                        // Add a whitelist entry to the resource requests array.
-                        nestedScrollWebView.addResourceRequest(new String[] {ultraListResults[0], ultraListResults[1], ultraListResults[2], ultraListResults[3], ultraListResults[4], ultraListResults[5]});
-
-                        // The resource request has been allowed by UltraPrivacy.  `return null` loads the requested resource.
-                        return null;
-                    }
-                }
-
-                // Check UltraPrivacy if it is enabled.
-                if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.ULTRAPRIVACY)) {
-                    // Check the URL against UltraPrivacy.
-                    String[] ultraPrivacyResults = blocklistHelper.checkBlocklist(currentDomain, url, isThirdPartyRequest, ultraPrivacy);
-
-                    // Process the UltraPrivacy results.
-                    if (ultraPrivacyResults[0].equals(BlocklistHelper.REQUEST_BLOCKED)) {  // The resource request matched UltraPrivacy's blacklist.
-                        // Add the result to the resource requests.
-                        nestedScrollWebView.addResourceRequest(new String[] {ultraPrivacyResults[0], ultraPrivacyResults[1], ultraPrivacyResults[2], ultraPrivacyResults[3], ultraPrivacyResults[4],
-                                ultraPrivacyResults[5]});
-
-                        // Increment the blocked requests counters.
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS);
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.ULTRAPRIVACY);
-
-                        // Update the titles of the blocklist menu items if the WebView is currently displayed.
-                        if (webViewDisplayed) {
-                            // Updating the UI must be run from the UI thread.
-                            activity.runOnUiThread(() -> {
-                                // Update the menu item titles.
-                                navigationRequestsMenuItem.setTitle(getString(R.string.requests) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-
-                                // Update the options menu if it has been populated.
-                                if (optionsMenu != null) {
-                                    optionsMenu.findItem(R.id.blocklists).setTitle(getString(R.string.blocklists) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-                                    optionsMenu.findItem(R.id.ultraprivacy).setTitle(nestedScrollWebView.getRequestsCount(NestedScrollWebView.ULTRAPRIVACY) + " - " + getString(R.string.ultraprivacy));
-                                }
-                            });
-                        }
-
-                        // The resource request was blocked.  Return an empty web resource response.
-                        return emptyWebResourceResponse;
-                    } else if (ultraPrivacyResults[0].equals(BlocklistHelper.REQUEST_ALLOWED)) {  // The resource request matched UltraPrivacy's whitelist.
-                        // Add a whitelist entry to the resource requests array.
-                        nestedScrollWebView.addResourceRequest(new String[] {ultraPrivacyResults[0], ultraPrivacyResults[1], ultraPrivacyResults[2], ultraPrivacyResults[3], ultraPrivacyResults[4],
-                                ultraPrivacyResults[5]});
+                // Check the URL against all the enabled blocklists at once.  Repeated requests are answered from the decision cache.
+                long blocklistMatch = blocklistDecisionCache.checkBlocklists(blocklistHelper, currentDomain, url, isThirdPartyRequest, resourceType, currentCombinedBlocklist,
+                        enabledBlocklistsMask);
+
+                // Add the result to the resource requests.  Requests that didn't match any blocklist entry are logged as default requests.  The display strings are only created if the requests are shown.
+                nestedScrollWebView.addResourceRequest(url, blocklistMatch, currentCombinedBlocklist.getMatchAttribution(blocklistMatch));
+
+                // Process a blocked request.
+                if (BlocklistHelper.isBlockedMatch(blocklistMatch)) {
+                    // Get the requests counter, the menu item, and the title string of the blocklist.
+                    int requestsCounter;
+                    int blocklistMenuItemId;
+                    int blocklistStringId;
+                    switch (BlocklistHelper.getMatchBlocklist(blocklistMatch)) {
+                        case CombinedBlocklist.EASYLIST:
+                            requestsCounter = NestedScrollWebView.EASYLIST;
+                            blocklistMenuItemId = R.id.easylist;
+                            blocklistStringId = R.string.easylist;
+                            break;
 
-                        // The resource request has been allowed by UltraPrivacy.  `return null` loads the requested resource.
-                        return null;
-                    }
-                }
+                        case CombinedBlocklist.EASYPRIVACY:
+                            requestsCounter = NestedScrollWebView.EASYPRIVACY;
+                            blocklistMenuItemId = R.id.easyprivacy;
+                            blocklistStringId = R.string.easyprivacy;
+                            break;
 
-                // Check EasyList if it is enabled.
-                if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.EASYLIST)) {
-                    // Check the URL against EasyList.
-                    String[] easyListResults = blocklistHelper.checkBlocklist(currentDomain, url, isThirdPartyRequest, easyList);
-
-                    // Process the EasyList results.
-                    if (easyListResults[0].equals(BlocklistHelper.REQUEST_BLOCKED)) {  // The resource request matched EasyList's blacklist.
-                        // Add the result to the resource requests.
-                        nestedScrollWebView.addResourceRequest(new String[] {easyListResults[0], easyListResults[1], easyListResults[2], easyListResults[3], easyListResults[4], easyListResults[5]});
-
-                        // Increment the blocked requests counters.
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS);
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.EASYLIST);
-
-                        // Update the titles of the blocklist menu items if the WebView is currently displayed.
-                        if (webViewDisplayed) {
-                            // Updating the UI must be run from the UI thread.
-                            activity.runOnUiThread(() -> {
-                                // Update the menu item titles.
-                                navigationRequestsMenuItem.setTitle(getString(R.string.requests) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-
-                                // Update the options menu if it has been populated.
-                                if (optionsMenu != null) {
-                                    optionsMenu.findItem(R.id.blocklists).setTitle(getString(R.string.blocklists) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-                                    optionsMenu.findItem(R.id.easylist).setTitle(nestedScrollWebView.getRequestsCount(NestedScrollWebView.EASYLIST) + " - " + getString(R.string.easylist));
-                                }
-                            });
-                        }
+                        case CombinedBlocklist.FANBOYS_ANNOYANCE_LIST:
+                            requestsCounter = NestedScrollWebView.FANBOYS_ANNOYANCE_LIST;
+                            blocklistMenuItemId = R.id.fanboys_annoyance_list;
+                            blocklistStringId = R.string.fanboys_annoyance_list;
+                            break;
 
-                        // The resource request was blocked.  Return an empty web resource response.
-                        return emptyWebResourceResponse;
-                    } else if (easyListResults[0].equals(BlocklistHelper.REQUEST_ALLOWED)) {  // The resource request matched EasyList's whitelist.
-                        // Update the whitelist result string array tracker.
-                        whitelistResultStringArray = new String[] {easyListResults[0], easyListResults[1], easyListResults[2], easyListResults[3], easyListResults[4], easyListResults[5]};
-                    }
-                }
+                        case CombinedBlocklist.FANBOYS_SOCIAL_BLOCKING_LIST:
+                            requestsCounter = NestedScrollWebView.FANBOYS_SOCIAL_BLOCKING_LIST;
+                            blocklistMenuItemId = R.id.fanboys_social_blocking_list;
+                            blocklistStringId = R.string.fanboys_social_blocking_list;
+                            break;
 
-                // Check EasyPrivacy if it is enabled.
-                if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.EASYPRIVACY)) {
-                    // Check the URL against EasyPrivacy.
-                    String[] easyPrivacyResults = blocklistHelper.checkBlocklist(currentDomain, url, isThirdPartyRequest, easyPrivacy);
-
-                    // Process the EasyPrivacy results.
-                    if (easyPrivacyResults[0].equals(BlocklistHelper.REQUEST_BLOCKED)) {  // The resource request matched EasyPrivacy's blacklist.
-                        // Add the result to the resource requests.
-                        nestedScrollWebView.addResourceRequest(new String[] {easyPrivacyResults[0], easyPrivacyResults[1], easyPrivacyResults[2], easyPrivacyResults[3], easyPrivacyResults[4],
-                                easyPrivacyResults[5]});
-
-                        // Increment the blocked requests counters.
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS);
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.EASYPRIVACY);
-
-                        // Update the titles of the blocklist menu items if the WebView is currently displayed.
-                        if (webViewDisplayed) {
-                            // Updating the UI must be run from the UI thread.
-                            activity.runOnUiThread(() -> {
-                                // Update the menu item titles.
-                                navigationRequestsMenuItem.setTitle(getString(R.string.requests) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-
-                                // Update the options menu if it has been populated.
-                                if (optionsMenu != null) {
-                                    optionsMenu.findItem(R.id.blocklists).setTitle(getString(R.string.blocklists) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-                                    optionsMenu.findItem(R.id.easyprivacy).setTitle(nestedScrollWebView.getRequestsCount(NestedScrollWebView.EASYPRIVACY) + " - " + getString(R.string.easyprivacy));
-                                }
-                            });
-                        }
+                        case CombinedBlocklist.ULTRALIST:
+                            requestsCounter = NestedScrollWebView.ULTRALIST;
+                            blocklistMenuItemId = R.id.ultralist;
+                            blocklistStringId = R.string.ultralist;
+                            break;
 
-                        // The resource request was blocked.  Return an empty web resource response.
-                        return emptyWebResourceResponse;
-                    } else if (easyPrivacyResults[0].equals(BlocklistHelper.REQUEST_ALLOWED)) {  // The resource request matched EasyPrivacy's whitelist.
-                        // Update the whitelist result string array tracker.
-                        whitelistResultStringArray = new String[] {easyPrivacyResults[0], easyPrivacyResults[1], easyPrivacyResults[2], easyPrivacyResults[3], easyPrivacyResults[4], easyPrivacyResults[5]};
+                        default:  // UltraPrivacy.
+                            requestsCounter = NestedScrollWebView.ULTRAPRIVACY;
+                            blocklistMenuItemId = R.id.ultraprivacy;
+                            blocklistStringId = R.string.ultraprivacy;
                     }
-                }
 
-                // Check Fanboy’s Annoyance List if it is enabled.
-                if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.FANBOYS_ANNOYANCE_LIST)) {
-                    // Check the URL against Fanboy's Annoyance List.
-                    String[] fanboysAnnoyanceListResults = blocklistHelper.checkBlocklist(currentDomain, url, isThirdPartyRequest, fanboysAnnoyanceList);
-
-                    // Process the Fanboy's Annoyance List results.
-                    if (fanboysAnnoyanceListResults[0].equals(BlocklistHelper.REQUEST_BLOCKED)) {  // The resource request matched Fanboy's Annoyance List's blacklist.
-                        // Add the result to the resource requests.
-                        nestedScrollWebView.addResourceRequest(new String[] {fanboysAnnoyanceListResults[0], fanboysAnnoyanceListResults[1], fanboysAnnoyanceListResults[2], fanboysAnnoyanceListResults[3],
-                                fanboysAnnoyanceListResults[4], fanboysAnnoyanceListResults[5]});
-
-                        // Increment the blocked requests counters.
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS);
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.FANBOYS_ANNOYANCE_LIST);
-
-                        // Update the titles of the blocklist menu items if the WebView is currently displayed.
-                        if (webViewDisplayed) {
-                            // Updating the UI must be run from the UI thread.
-                            activity.runOnUiThread(() -> {
-                                // Update the menu item titles.
-                                navigationRequestsMenuItem.setTitle(getString(R.string.requests) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-
-                                // Update the options menu if it has been populated.
-                                if (optionsMenu != null) {
-                                    optionsMenu.findItem(R.id.blocklists).setTitle(getString(R.string.blocklists) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-                                    optionsMenu.findItem(R.id.fanboys_annoyance_list).setTitle(nestedScrollWebView.getRequestsCount(NestedScrollWebView.FANBOYS_ANNOYANCE_LIST) + " - " +
-                                            getString(R.string.fanboys_annoyance_list));
-                                }
-                            });
-                        }
+                    // Increment the blocked requests counters.
+                    nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS);
+                    nestedScrollWebView.incrementRequestsCount(requestsCounter);
 
-                        // The resource request was blocked.  Return an empty web resource response.
-                        return emptyWebResourceResponse;
-                    } else if (fanboysAnnoyanceListResults[0].equals(BlocklistHelper.REQUEST_ALLOWED)){  // The resource request matched Fanboy's Annoyance List's whitelist.
-                        // Update the whitelist result string array tracker.
-                        whitelistResultStringArray = new String[] {fanboysAnnoyanceListResults[0], fanboysAnnoyanceListResults[1], fanboysAnnoyanceListResults[2], fanboysAnnoyanceListResults[3],
-                                fanboysAnnoyanceListResults[4], fanboysAnnoyanceListResults[5]};
-                    }
-                } else if (nestedScrollWebView.isBlocklistEnabled(NestedScrollWebView.FANBOYS_SOCIAL_BLOCKING_LIST)) {  // Only check Fanboy’s Social Blocking List if Fanboy’s Annoyance List is disabled.
-                    // Check the URL against Fanboy's Annoyance List.
-                    String[] fanboysSocialListResults = blocklistHelper.checkBlocklist(currentDomain, url, isThirdPartyRequest, fanboysSocialList);
-
-                    // Process the Fanboy's Social Blocking List results.
-                    if (fanboysSocialListResults[0].equals(BlocklistHelper.REQUEST_BLOCKED)) {  // The resource request matched Fanboy's Social Blocking List's blacklist.
-                        // Add the result to the resource requests.
-                        nestedScrollWebView.addResourceRequest(new String[] {fanboysSocialListResults[0], fanboysSocialListResults[1], fanboysSocialListResults[2], fanboysSocialListResults[3],
-                                fanboysSocialListResults[4], fanboysSocialListResults[5]});
-
-                        // Increment the blocked requests counters.
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS);
-                        nestedScrollWebView.incrementRequestsCount(NestedScrollWebView.FANBOYS_SOCIAL_BLOCKING_LIST);
-
-                        // Update the titles of the blocklist menu items if the WebView is currently displayed.
-                        if (webViewDisplayed) {
-                            // Updating the UI must be run from the UI thread.
-                            activity.runOnUiThread(() -> {
-                                // Update the menu item titles.
-                                navigationRequestsMenuItem.setTitle(getString(R.string.requests) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-
-                                // Update the options menu if it has been populated.
-                                if (optionsMenu != null) {
-                                    optionsMenu.findItem(R.id.blocklists).setTitle(getString(R.string.blocklists) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
-                                    optionsMenu.findItem(R.id.fanboys_social_blocking_list).setTitle(nestedScrollWebView.getRequestsCount(NestedScrollWebView.FANBOYS_SOCIAL_BLOCKING_LIST) + " - " +
-                                            getString(R.string.fanboys_social_blocking_list));
-                                }
-                            });
-                        }
+                    // Update the titles of the blocklist menu items if the WebView is currently displayed.
+                    if (webViewDisplayed) {
+                        // Updating the UI must be run from the UI thread.
+                        activity.runOnUiThread(() -> {
+                            // Update the menu item titles.
+                            navigationRequestsMenuItem.setTitle(getString(R.string.requests) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
 
-                        // The resource request was blocked.  Return an empty web resource response.
-                        return emptyWebResourceResponse;
-                    } else if (fanboysSocialListResults[0].equals(BlocklistHelper.REQUEST_ALLOWED)) {  // The resource request matched Fanboy's Social Blocking List's whitelist.
-                        // Update the whitelist result string array tracker.
-                        whitelistResultStringArray = new String[] {fanboysSocialListResults[0], fanboysSocialListResults[1], fanboysSocialListResults[2], fanboysSocialListResults[3],
-                                fanboysSocialListResults[4], fanboysSocialListResults[5]};
+                            // Update the options menu if it has been populated.
+                            if (optionsMenu != null) {
+                                optionsMenu.findItem(R.id.blocklists).setTitle(getString(R.string.blocklists) + " - " + nestedScrollWebView.getRequestsCount(NestedScrollWebView.BLOCKED_REQUESTS));
+                                optionsMenu.findItem(blocklistMenuItemId).setTitle(nestedScrollWebView.getRequestsCount(requestsCounter) + " - " + getString(blocklistStringId));
+                            }
+                        });
                     }
-                }
 
-                // Add the request to the log because it hasn't been processed by any of the previous checks.
-                if (whitelistResultStringArray != null) {  // The request was processed by a whitelist.
-                    nestedScrollWebView.addResourceRequest(whitelistResultStringArray);
-                } else {  // The request didn't match any blocklist entry.  Log it as a default request.
-                    nestedScrollWebView.addResourceRequest(new String[]{BlocklistHelper.REQUEST_DEFAULT, url});
+                    // The resource request was blocked.  Return an empty web resource response.
+                    return emptyWebResourceResponse;
                 }
 
                 // The resource request has not been blocked.  `return null` loads the requested resource.
@@ -6021,6 +6147,9 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
                 // Reset the requests counters.
                 nestedScrollWebView.resetRequestsCounters();
 
+                // The element hiding style sheet hasn't been injected into the new page.  It can't be injected yet, because the previous document is still loaded.
+                nestedScrollWebView.setElementHidingStylesheetInjected(false);
+
                 // If night mode is enabled, hide `mainWebView` until after the night mode CSS is applied.
                 if (nestedScrollWebView.getNightMode()) {
                     nestedScrollWebView.setVisibility(View.INVISIBLE);
@@ -6077,8 +6206,17 @@ public class MainWebViewActivity extends AppCompatActivity implements CreateBook
                 }
             }
 
+            @Override
+            public void onPageCommitVisible(WebView view, String url) {
+                // Hide the elements described by the blocklists as soon as the new document has been committed, which is before it is first drawn.
+                injectElementHidingStylesheet(nestedScrollWebView, url);
+            }
+
             @Override
             public void onPageFinished(WebView view, String url) {
+                // Inject the element hiding style sheet if it was still being created when the document was committed.
+                injectElementHidingStylesheet(nestedScrollWebView, url);
+
                 // Flush any cookies to persistent storage.  The cookie manager has become very lazy about flushing cookies in recent versions.
                 if (nestedScrollWebView.getAcceptFirstPartyCookies() && Build.VERSION.SDK_INT >= 21) {
                     CookieManager.getInstance().flush();
@@ -19,6 +19,8 @@
 
 package com.stoutner.privacybrowser.activities;
 
+import android.content.ClipData;
+import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -26,6 +28,8 @@ import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.AdapterView;
@@ -40,6 +44,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;  // The AndroidX toolbar must be used until the minimum API >= 21.
 import androidx.fragment.app.DialogFragment;
 
+import com.google.android.material.snackbar.Snackbar;
+
 import com.stoutner.privacybrowser.R;
 import com.stoutner.privacybrowser.adapters.RequestsArrayAdapter;
 import com.stoutner.privacybrowser.dialogs.ViewRequestDialog;
@@ -52,6 +58,9 @@ public class RequestsActivity extends AppCompatActivity implements ViewRequestDi
     // The resource requests are populated by `MainWebViewActivity` before `RequestsActivity` is launched.
     public static List<String[]> resourceRequests;
 
+    // The rule hit report of the blocklists is populated by `MainWebViewActivity` before `RequestsActivity` is launched.  It is copied in `onOptionsItemSelected()`.
+    public static String ruleHitReport;
+
     // The list view is used in `onCreate()` and `launchViewRequestDialog()`.
     private ListView requestsListView;
 
@@ -242,6 +251,42 @@ public class RequestsActivity extends AppCompatActivity implements ViewRequestDi
         });
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        // Inflate the menu.  This adds items to the action bar.
+        getMenuInflater().inflate(R.menu.requests_options_menu, menu);
+
+        // Display the menu.
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem menuItem) {
+        // Run the commands that correlate to the selected menu item.
+        if (menuItem.getItemId() == R.id.copy_rule_hits) {
+            // Get a handle for the clipboard manager.
+            ClipboardManager clipboardManager = (ClipboardManager) getSystemService(CLIPBOARD_SERVICE);
+
+            // Save the rule hit report in a ClipData.  It is tab separated, so it can be pasted into a spreadsheet.
+            ClipData ruleHitReportClipData = ClipData.newPlainText(getString(R.string.rule_hits), ruleHitReport);
+
+            // Remove the incorrect lint error that `clipboardManager.setPrimaryClip()` might produce a null pointer exception.
+            assert clipboardManager != null;
+
+            // Place the ClipData on the clipboard.
+            clipboardManager.setPrimaryClip(ruleHitReportClipData);
+
+            // Display a snackbar.
+            Snackbar.make(requestsListView, R.string.rule_hits_copied, Snackbar.LENGTH_SHORT).show();
+
+            // Consume the event.
+            return true;
+        }
+
+        // Don't consume the event.
+        return super.onOptionsItemSelected(menuItem);
+    }
+
     @Override
     public void onPrevious(int id) {
         // Show the previous dialog.
@@ -21,28 +21,56 @@ package com.stoutner.privacybrowser.asynctasks;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.pm.PackageManager;
 import android.os.AsyncTask;
 import android.view.View;
 import android.widget.LinearLayout;
+import android.widget.ProgressBar;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import androidx.appcompat.widget.Toolbar;
 import androidx.drawerlayout.widget.DrawerLayout;
 
+import com.stoutner.privacybrowser.BuildConfig;
 import com.stoutner.privacybrowser.R;
+import com.stoutner.privacybrowser.helpers.Blocklist;
+import com.stoutner.privacybrowser.helpers.BlocklistAssetHelper;
 import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.BlocklistSnapshotHelper;
+import com.stoutner.privacybrowser.helpers.ElementHidingList;
+import com.stoutner.privacybrowser.helpers.PublicSuffixList;
+import com.stoutner.privacybrowser.helpers.StringArena;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class PopulateBlocklists extends AsyncTask<Void, String, ArrayList<ArrayList<List<String[]>>>> {
+public class PopulateBlocklists extends AsyncTask<Void, Integer, Void> {
     // The public interface is used to send information back to the parent activity.
     public interface PopulateBlocklistsListener {
-        void finishedPopulatingBlocklists(ArrayList<ArrayList<List<String[]>>> combinedBlocklists);
+        // `finishedLoadingPublicSuffixList()` is called from a loading thread as soon as the public suffix list is ready.
+        void finishedLoadingPublicSuffixList(PublicSuffixList publicSuffixList);
+
+        // `finishedPopulatingBlocklist()` is called from a loading thread as soon as each blocklist is ready.
+        void finishedPopulatingBlocklist(int blocklistIndex, Blocklist blocklist);
+
+        // `finishedPopulatingBlocklists()` is called from the UI thread once all the requested blocklists are ready.
+        void finishedPopulatingBlocklists();
     }
 
+    // The blocklist file names, in the order of the `CombinedBlocklist` indexes.
+    private final static String[] BLOCKLIST_NAMES = {"easylist", "easyprivacy", "fanboy-annoyance", "fanboy-social", "ultralist", "ultraprivacy"};
+
+    // The loading strings, in the order of the `CombinedBlocklist` indexes.
+    private final static int[] LOADING_STRINGS = {R.string.loading_easylist, R.string.loading_easyprivacy, R.string.loading_fanboys_annoyance_list, R.string.loading_fanboys_social_blocking_list,
+            R.string.loading_ultralist, R.string.loading_ultraprivacy};
+
     // Define a populate blocklists listener.
     private PopulateBlocklistsListener populateBlocklistsListener;
 
@@ -50,8 +78,17 @@ public class PopulateBlocklists extends AsyncTask<Void, String, ArrayList<ArrayL
     private WeakReference<Context> contextWeakReference;
     private WeakReference<Activity> activityWeakReference;
 
+    // The mask of the blocklists to populate, with a bit set for each `CombinedBlocklist` index.  The other blocklists are loaded later if a tab enables them.
+    private final int blocklistsMask;
+
+    // The string arena that holds the original entries of all the blocklists.  Many entries are repeated between the blocklists.
+    private final StringArena originalEntriesArena;
+
+    // Track which blocklists have been loaded.  This is only accessed from the UI thread in `onProgressUpdate()`.
+    private final boolean[] loadedBlocklists = new boolean[BLOCKLIST_NAMES.length];
+
     // The public constructor.
-    public PopulateBlocklists(Context context, Activity activity) {
+    public PopulateBlocklists(Context context, Activity activity, int blocklistsMask, StringArena originalEntriesArena) {
         // Populate the weak reference to the context.
         contextWeakReference = new WeakReference<>(context);
 
@@ -60,6 +97,10 @@ public class PopulateBlocklists extends AsyncTask<Void, String, ArrayList<ArrayL
 
         // Get a handle for the populate blocklists listener from the launching activity.
         populateBlocklistsListener = (PopulateBlocklistsListener) context;
+
+        // Store the blocklists mask and the original entries arena.
+        this.blocklistsMask = blocklistsMask;
+        this.originalEntriesArena = originalEntriesArena;
     }
 
     // `onPreExecute()` operates on the UI thread.
@@ -77,84 +118,153 @@ public class PopulateBlocklists extends AsyncTask<Void, String, ArrayList<ArrayL
         Toolbar toolbar = activity.findViewById(R.id.toolbar);
         LinearLayout tabsLinearLayout = activity.findViewById(R.id.tabs_linearlayout);
         RelativeLayout loadingBlocklistsRelativeLayout = activity.findViewById(R.id.loading_blocklists_relativelayout);
+        TextView loadingBlocklistTextView = activity.findViewById(R.id.loading_blocklist_textview);
+        ProgressBar loadingBlocklistsProgressBar = activity.findViewById(R.id.loading_blocklists_progressbar);
 
         // Hide the toolbar and tabs linear layout, which will be visible if this is being run after the app process has been killed in the background.
         toolbar.setVisibility(View.GONE);
         tabsLinearLayout.setVisibility(View.GONE);
 
+        // Reset the progress.  The status shows the first requested blocklist, and the progress bar only counts the requested blocklists.
+        if (blocklistsMask != 0) {
+            loadingBlocklistTextView.setText(LOADING_STRINGS[Integer.numberOfTrailingZeros(blocklistsMask)]);
+        }
+        loadingBlocklistsProgressBar.setMax(Integer.bitCount(blocklistsMask));
+        loadingBlocklistsProgressBar.setProgress(0);
+
         // Show the loading blocklists screen.
         loadingBlocklistsRelativeLayout.setVisibility(View.VISIBLE);
     }
 
     @Override
-    protected ArrayList<ArrayList<List<String[]>>> doInBackground(Void... none) {
+    protected Void doInBackground(Void... none) {
         // Get a handle for the context.
         Context context = contextWeakReference.get();
 
-        // Instantiate the blocklist helper.
+        // Instantiate the blocklist helper, which can be shared between threads.
         BlocklistHelper blocklistHelper = new BlocklistHelper();
 
-        // Create a combined array list.
-        ArrayList<ArrayList<List<String[]>>> combinedBlocklists = new ArrayList<>();
-
         // Load the blocklists if the context still exists.
         if (context != null) {
-            // Update the progress.
-            publishProgress(context.getString(R.string.loading_easylist));
-
-            // Populate EasyList.
-            ArrayList<List<String[]>> easyList = blocklistHelper.parseBlocklist(context.getAssets(), "blocklists/easylist.txt");
-
-
-            // Update the progress.
-            publishProgress(context.getString(R.string.loading_easyprivacy));
-
-            // Populate EasyPrivacy.
-            ArrayList<List<String[]>> easyPrivacy = blocklistHelper.parseBlocklist(context.getAssets(), "blocklists/easyprivacy.txt");
-
-
-            // Update the progress.
-            publishProgress(context.getString(R.string.loading_fanboys_annoyance_list));
+            // Create the snapshot key.
+            long snapshotKey = createSnapshotKey(context);
+
+            // Get the number of requested blocklists.
+            int numberOfRequestedBlocklists = Integer.bitCount(blocklistsMask);
+
+            // Create a thread pool with one thread per core, up to one thread per requested blocklist.
+            ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), numberOfRequestedBlocklists)));
+
+            // The public suffix list has its own thread, so that it doesn't wait behind the blocklists for a thread of the pool.
+            ExecutorService publicSuffixListExecutorService = Executors.newSingleThreadExecutor();
+
+            // Create a completion service, which returns the blocklists in the order they finish.
+            ExecutorCompletionService<Integer> completionService = new ExecutorCompletionService<>(executorService);
+
+            // Load the public suffix list, which is needed to detect third-party requests.
+            publicSuffixListExecutorService.submit(() -> populateBlocklistsListener.finishedLoadingPublicSuffixList(BlocklistAssetHelper.parsePublicSuffixList(context.getAssets())));
+
+            // Submit the requested blocklists.  EasyList is the largest, so it is submitted first.
+            for (int blocklistIndex = 0; blocklistIndex < BLOCKLIST_NAMES.length; blocklistIndex++) {
+                // Skip the blocklists that weren't requested.
+                if ((blocklistsMask & (1 << blocklistIndex)) == 0) {
+                    continue;
+                }
+
+                // Copy the index so it can be used in the lambda.
+                final int finalBlocklistIndex = blocklistIndex;
+
+                // Load the blocklist.
+                completionService.submit(() -> {
+                    // Populate the blocklist.
+                    Blocklist blocklist = loadBlocklist(context, blocklistHelper, finalBlocklistIndex, snapshotKey, originalEntriesArena);
+
+                    // Publish the blocklist so that requests that only need this blocklist can proceed.
+                    populateBlocklistsListener.finishedPopulatingBlocklist(finalBlocklistIndex, blocklist);
+
+                    // Return the blocklist index.
+                    return finalBlocklistIndex;
+                });
+            }
+
+            // Wait for each requested blocklist to finish.
+            try {
+                for (int numberOfLoadedBlocklists = 0; numberOfLoadedBlocklists < numberOfRequestedBlocklists; numberOfLoadedBlocklists++) {
+                    // Update the progress with the index of the blocklist that finished.
+                    publishProgress(completionService.take().get());
+                }
+
+                // The memory that is only needed while the original entries are being added is released by the listener once every requested blocklist has been loaded, including those requested later.
+            } catch (InterruptedException | ExecutionException exception) {
+                // The blocklists are required for the app to function.
+                throw new RuntimeException(exception);
+            } finally {
+                // Stop the threads once the submitted tasks are finished.
+                executorService.shutdown();
+                publicSuffixListExecutorService.shutdown();
+            }
+        }
 
-            // Populate Fanboy's Annoyance List.
-            ArrayList<List<String[]>> fanboysAnnoyanceList = blocklistHelper.parseBlocklist(context.getAssets(), "blocklists/fanboy-annoyance.txt");
+        // There is nothing to return.
+        return null;
+    }
 
+    // Create the snapshot key, which changes whenever the bundled blocklists can have changed.
+    public static long createSnapshotKey(Context context) {
+        // Get the time the app was last installed or updated.  The blocklists are bundled in the APK, so they can only change when it does.
+        long lastUpdateTime;
+        try {
+            lastUpdateTime = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException exception) {
+            // The app is always able to find its own package, but the snapshots will simply be recreated if it doesn't.
+            lastUpdateTime = 0;
+        }
 
-            // Update the progress.
-            publishProgress(context.getString(R.string.loading_fanboys_social_blocking_list));
+        // Create the snapshot key from the app version and the last update time.
+        return BlocklistSnapshotHelper.createKey(BuildConfig.VERSION_CODE, lastUpdateTime);
+    }
 
-            // Populate Fanboy's Social Blocking List.
-            ArrayList<List<String[]>> fanboysSocialList = blocklistHelper.parseBlocklist(context.getAssets(), "blocklists/fanboy-social.txt");
+    // Load the request entries of one blocklist from its snapshot or its text file.  This is also used to load the blocklists that weren't requested at startup when a tab enables them.
+    // The element hiding sublists are left empty.  They are only needed by pages with JavaScript enabled, so they are loaded by `loadElementHidingList()` the first time such a page needs them.
+    public static Blocklist loadBlocklist(Context context, BlocklistHelper blocklistHelper, int blocklistIndex, long snapshotKey, StringArena originalEntriesArena) {
+        // Load the sublists of the request entries.
+        ArrayList<List<String[]>> sublists = loadSublists(context, blocklistHelper, blocklistIndex, snapshotKey, BlocklistHelper.REQUEST_ENTRIES, ".snapshot");
 
+        // Return the blocklist.  The snapshot has already been written, so the original entries can be moved into the arena.
+        return new Blocklist(sublists, originalEntriesArena);
+    }
 
-            // Update the progress.
-            publishProgress(context.getString(R.string.loading_ultralist));
+    // Load the element hiding entries of one blocklist from their snapshot or the text file.  This is called from a background thread the first time a page with JavaScript enabled needs them.
+    public static ElementHidingList loadElementHidingList(Context context, BlocklistHelper blocklistHelper, int blocklistIndex, long snapshotKey) {
+        // Load the sublists of the element hiding entries, and return the element hiding list.
+        return new ElementHidingList(loadSublists(context, blocklistHelper, blocklistIndex, snapshotKey, BlocklistHelper.ELEMENT_HIDING_ENTRIES, ".element-hiding.snapshot"));
+    }
 
-            // Populate UltraList.
-            ArrayList<List<String[]>> ultraList = blocklistHelper.parseBlocklist(context.getAssets(), "blocklists/ultralist.txt");
+    private static ArrayList<List<String[]>> loadSublists(Context context, BlocklistHelper blocklistHelper, int blocklistIndex, long snapshotKey, int parsedEntries, String snapshotSuffix) {
+        // Get the blocklist name.
+        String blocklistName = BLOCKLIST_NAMES[blocklistIndex];
 
-            // Update the progress.
-            publishProgress(context.getString(R.string.loading_ultraprivacy));
+        // Get a handle for the snapshot file.
+        File snapshotFile = new File(context.getFilesDir(), blocklistName + snapshotSuffix);
 
-            // Populate UltraPrivacy.
-            ArrayList<List<String[]>> ultraPrivacy = blocklistHelper.parseBlocklist(context.getAssets(), "blocklists/ultraprivacy.txt");
+        // Read the snapshot, which will be null if it doesn't match the current blocklist.
+        ArrayList<List<String[]>> sublists = BlocklistSnapshotHelper.readSnapshot(snapshotFile, snapshotKey);
 
+        // Parse the text blocklist if there is no valid snapshot.
+        if (sublists == null) {
+            // Parse the requested entries of the blocklist.
+            sublists = BlocklistAssetHelper.parseBlocklist(blocklistHelper, context.getAssets(), "blocklists/" + blocklistName + ".txt", parsedEntries);
 
-            // Populate the combined array list.
-            combinedBlocklists.add(easyList);
-            combinedBlocklists.add(easyPrivacy);
-            combinedBlocklists.add(fanboysAnnoyanceList);
-            combinedBlocklists.add(fanboysSocialList);
-            combinedBlocklists.add(ultraList);
-            combinedBlocklists.add(ultraPrivacy);
+            // Write the snapshot for the next start.
+            BlocklistSnapshotHelper.writeSnapshot(snapshotFile, snapshotKey, sublists);
         }
 
-        // Return the combined array list.
-        return combinedBlocklists;
+        // Return the sublists.
+        return sublists;
     }
 
     @Override
-    protected void onProgressUpdate(String... loadingBlocklist) {
+    protected void onProgressUpdate(Integer... loadedBlocklistIndex) {
         // Get a handle for the activity.
         Activity activity = activityWeakReference.get();
 
@@ -163,15 +273,35 @@ public class PopulateBlocklists extends AsyncTask<Void, String, ArrayList<ArrayL
             return;
         }
 
-        // Get a handle for the loading blocklist text view.
+        // Record the loaded blocklist.
+        loadedBlocklists[loadedBlocklistIndex[0]] = true;
+
+        // Count the loaded blocklists and find the first requested blocklist that is still loading.
+        int numberOfLoadedBlocklists = 0;
+        int firstLoadingBlocklist = -1;
+        for (int blocklistIndex = 0; blocklistIndex < loadedBlocklists.length; blocklistIndex++) {
+            if (loadedBlocklists[blocklistIndex]) {  // The blocklist has been loaded.
+                numberOfLoadedBlocklists++;
+            } else if ((firstLoadingBlocklist == -1) && ((blocklistsMask & (1 << blocklistIndex)) != 0)) {  // This is the first blocklist that is still loading.
+                firstLoadingBlocklist = blocklistIndex;
+            }
+        }
+
+        // Get handles for the views.
         TextView loadingBlocklistTextView = activity.findViewById(R.id.loading_blocklist_textview);
+        ProgressBar loadingBlocklistsProgressBar = activity.findViewById(R.id.loading_blocklists_progressbar);
+
+        // Update the status with a blocklist that is still loading.
+        if (firstLoadingBlocklist != -1) {
+            loadingBlocklistTextView.setText(LOADING_STRINGS[firstLoadingBlocklist]);
+        }
 
-        // Update the status.
-        loadingBlocklistTextView.setText(loadingBlocklist[0]);
+        // Update the progress bar.
+        loadingBlocklistsProgressBar.setProgress(numberOfLoadedBlocklists);
     }
 
     @Override
-    protected void onPostExecute(ArrayList<ArrayList<List<String[]>>> combinedBlocklists) {
+    protected void onPostExecute(Void none) {
         // Get a handle for the activity.
         Activity activity = activityWeakReference.get();
 
@@ -197,6 +327,6 @@ public class PopulateBlocklists extends AsyncTask<Void, String, ArrayList<ArrayL
         drawerLayout.setDrawerLockMode(DrawerLayout.LOCK_MODE_UNLOCKED);
 
         // Add the first tab.
-        populateBlocklistsListener.finishedPopulatingBlocklists(combinedBlocklists);
+        populateBlocklistsListener.finishedPopulatingBlocklists();
     }
 }
\ No newline at end of file
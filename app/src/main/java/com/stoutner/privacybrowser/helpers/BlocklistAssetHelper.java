@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// The blocklist asset helper feeds the blocklists and the public suffix list bundled in the APK to the plain Java blocklist engine.
+public class BlocklistAssetHelper {
+    public static ArrayList<List<String[]>> parseBlocklist(BlocklistHelper blocklistHelper, AssetManager assets, String blocklistName, int parsedEntries) {
+        // Parse the requested entries of the blocklist.  The assets are compressed in the APK, so they are read through a stream.  The `try` closes the asset when it is finished.
+        try (InputStream assetInputStream = assets.open(blocklistName)) {
+            return blocklistHelper.parseBlocklist(assetInputStream, parsedEntries);
+        } catch (IOException exception) {
+            // The asset exists, so the `IOException` will never be thrown.
+            throw new RuntimeException(exception);
+        }
+    }
+
+    public static PublicSuffixList parsePublicSuffixList(AssetManager assets) {
+        // Parse the public suffix list.  The `try` closes the asset when it is finished.
+        try (InputStream assetInputStream = assets.open("public_suffix_list.dat")) {
+            return PublicSuffixList.parse(assetInputStream);
+        } catch (IOException exception) {
+            // The asset exists, so the `IOException` will never be thrown.
+            throw new RuntimeException(exception);
+        }
+    }
+}
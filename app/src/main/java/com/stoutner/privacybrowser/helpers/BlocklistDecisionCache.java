@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// The decision cache remembers the blocklist decisions of recent requests, because pages request the same URLs over and over.
+// Requests are checked on many WebView threads at once, so the cache is split into shards that each have their own lock, and each shard removes its own least recently used decisions.
+// The decisions are only valid for the combined blocklist they were made with, so the cache is replaced by an empty generation whenever a newer combined blocklist is used.
+public class BlocklistDecisionCache {
+    // The number of shards, which is a power of two.
+    private final static int NUMBER_OF_SHARDS = 16;
+
+    // The maximum number of decisions in each shard.
+    private final int maximumShardSize;
+
+    // The current generation of the cache, which is replaced as a whole instead of being cleared.
+    private final AtomicReference<Generation> currentGeneration;
+
+    // The number of lookups that were and weren't found in the cache.
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public BlocklistDecisionCache(int maximumSize) {
+        // Split the maximum size between the shards.
+        maximumShardSize = Math.max(1, maximumSize / NUMBER_OF_SHARDS);
+
+        // Start with an empty generation that isn't tied to a combined blocklist.
+        currentGeneration = new AtomicReference<>(new Generation(null, maximumShardSize));
+    }
+
+    // Get the decision of `BlocklistHelper.checkBlocklists()` for the request, checking the blocklists only if the decision isn't cached.
+    public long checkBlocklists(BlocklistHelper blocklistHelper, String currentDomain, String resourceUrl, boolean isThirdPartyRequest, int resourceType, CombinedBlocklist combinedBlocklist,
+                                int enabledBlocklistsMask) {
+        // Get the generation of the combined blocklist.
+        Generation generation = getGeneration(combinedBlocklist);
+
+        // Check the blocklists without the cache if the combined blocklist has already been replaced by a newer one, which happens to requests that straddle the replacement.
+        if (generation == null) {
+            misses.incrementAndGet();
+            return blocklistHelper.checkBlocklists(currentDomain, resourceUrl, isThirdPartyRequest, resourceType, combinedBlocklist, enabledBlocklistsMask);
+        }
+
+        // Create the key.
+        DecisionKey decisionKey = new DecisionKey(currentDomain, resourceUrl, isThirdPartyRequest, resourceType, enabledBlocklistsMask);
+
+        // Get the decisions of the shard of the key.
+        LinkedHashMap<DecisionKey, Long> shardDecisions = generation.shardDecisions.get((decisionKey.hash ^ (decisionKey.hash >>> 16)) & (NUMBER_OF_SHARDS - 1));
+
+        // Look up the decision.  Getting the decision also marks it as recently used, so the shard is locked.
+        Long cachedDecision;
+        synchronized (shardDecisions) {
+            cachedDecision = shardDecisions.get(decisionKey);
+        }
+
+        // Return the cached decision.
+        if (cachedDecision != null) {
+            hits.incrementAndGet();
+            combinedBlocklist.recordCachedHit(cachedDecision);
+            return cachedDecision;
+        }
+
+        // Record the miss.
+        misses.incrementAndGet();
+
+        // Check the blocklists outside of the lock, so that other threads can use the shard in the meantime.
+        long decision = blocklistHelper.checkBlocklists(currentDomain, resourceUrl, isThirdPartyRequest, resourceType, combinedBlocklist, enabledBlocklistsMask);
+
+        // Cache the decision.  If the generation has been replaced in the meantime, the decision is only stored in the old generation, which is no longer used.
+        synchronized (shardDecisions) {
+            shardDecisions.put(decisionKey, decision);
+        }
+
+        // Return the decision.
+        return decision;
+    }
+
+    private Generation getGeneration(CombinedBlocklist combinedBlocklist) {
+        while (true) {
+            // Get the current generation.
+            Generation generation = currentGeneration.get();
+
+            // Use the current generation if it belongs to the combined blocklist.
+            if (generation.combinedBlocklist == combinedBlocklist) {
+                return generation;
+            }
+
+            // A request that still has an older combined blocklist doesn't use the cache, so that it doesn't replace the decisions of the newer one.
+            if ((generation.combinedBlocklist != null) && (generation.combinedBlocklist.getGeneration() > combinedBlocklist.getGeneration())) {
+                return null;
+            }
+
+            // Replace the generation with an empty one for the newer combined blocklist.  If another thread replaces it first, the loop checks its replacement.
+            Generation newGeneration = new Generation(combinedBlocklist, maximumShardSize);
+            if (currentGeneration.compareAndSet(generation, newGeneration)) {
+                return newGeneration;
+            }
+        }
+    }
+
+    // Clear the cache, which is needed when the settings that affect the decisions change.
+    public void clear() {
+        while (true) {
+            // Get the current generation.
+            Generation generation = currentGeneration.get();
+
+            // Replace it with an empty generation for the same combined blocklist.
+            if (currentGeneration.compareAndSet(generation, new Generation(generation.combinedBlocklist, maximumShardSize))) {
+                return;
+            }
+        }
+    }
+
+    public long getHits() {
+        // Return the number of lookups that were found in the cache.
+        return hits.get();
+    }
+
+    public long getMisses() {
+        // Return the number of lookups that had to check the blocklists.
+        return misses.get();
+    }
+
+    // A generation holds the decisions made with one combined blocklist.
+    private static class Generation {
+        final CombinedBlocklist combinedBlocklist;
+        final List<LinkedHashMap<DecisionKey, Long>> shardDecisions = new ArrayList<>(NUMBER_OF_SHARDS);
+
+        Generation(CombinedBlocklist combinedBlocklist, int maximumShardSize) {
+            // Store the combined blocklist.
+            this.combinedBlocklist = combinedBlocklist;
+
+            // Create the decisions of each shard in access order, so that the eldest entry is the least recently used.
+            for (int shard = 0; shard < NUMBER_OF_SHARDS; shard++) {
+                shardDecisions.add(new LinkedHashMap<DecisionKey, Long>(maximumShardSize * 2, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<DecisionKey, Long> eldest) {
+                        // Remove the least recently used decision when the shard is full.
+                        return size() > maximumShardSize;
+                    }
+                });
+            }
+        }
+    }
+
+    // The decision key contains everything the decision depends on besides the blocklists.
+    private static class DecisionKey {
+        final String currentDomain;
+        final String resourceUrl;
+        final boolean isThirdPartyRequest;
+        final int resourceType;
+        final int enabledBlocklistsMask;
+        final int hash;
+
+        DecisionKey(String currentDomain, String resourceUrl, boolean isThirdPartyRequest, int resourceType, int enabledBlocklistsMask) {
+            // Store the values.
+            this.currentDomain = currentDomain;
+            this.resourceUrl = resourceUrl;
+            this.isThirdPartyRequest = isThirdPartyRequest;
+            this.resourceType = resourceType;
+            this.enabledBlocklistsMask = enabledBlocklistsMask;
+
+            // Calculate the hash once, because it is needed for every lookup.  The current domain is null for pages like `about:blank`.
+            int keyHash = resourceUrl.hashCode();
+            keyHash = (keyHash * 31) + ((currentDomain == null) ? 0 : currentDomain.hashCode());
+            keyHash = (keyHash * 31) + (enabledBlocklistsMask << 1) + (isThirdPartyRequest ? 1 : 0);
+            keyHash = (keyHash * 31) + resourceType;
+            hash = keyHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            // Only decision keys are equal.
+            if (!(object instanceof DecisionKey)) {
+                return false;
+            }
+
+            // Get the other key.
+            DecisionKey otherKey = (DecisionKey) object;
+
+            // Compare the values.
+            return (hash == otherKey.hash) && (isThirdPartyRequest == otherKey.isThirdPartyRequest) && (resourceType == otherKey.resourceType) && (enabledBlocklistsMask == otherKey.enabledBlocklistsMask) &&
+                    resourceUrl.equals(otherKey.resourceUrl) && ((currentDomain == null) ? (otherKey.currentDomain == null) : currentDomain.equals(otherKey.currentDomain));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The readiness gate holds resource requests until the blocklists they need have been populated.  Waiting requests are woken as soon as each blocklist is ready.
+public class BlocklistReadinessGate {
+    // The longest a request waits for its blocklists.  Parsing every blocklist without a snapshot takes a few seconds on a slow device, so this is only reached if a blocklist is never populated.
+    // The request is blocked when the wait times out, so that a slow device never loads a request that hasn't been checked.
+    private final static long MAXIMUM_WAIT_NANOSECONDS = TimeUnit.SECONDS.toNanos(30);
+
+    // Each blocklist has a latch that is opened when it is ready.
+    private final CountDownLatch[] blocklistLatches;
+
+    // The number of requests that are currently waiting.
+    private final AtomicInteger currentlyWaitingRequests = new AtomicInteger();
+
+    // The number of requests that had to wait and how long they waited.
+    private final AtomicLong waitedRequests = new AtomicLong();
+    private final AtomicLong totalWaitNanoseconds = new AtomicLong();
+    private final AtomicLong longestWaitNanoseconds = new AtomicLong();
+
+    public BlocklistReadinessGate(int numberOfBlocklists) {
+        // Initialize the latches.
+        blocklistLatches = new CountDownLatch[numberOfBlocklists];
+        for (int blocklistIndex = 0; blocklistIndex < numberOfBlocklists; blocklistIndex++) {
+            blocklistLatches[blocklistIndex] = new CountDownLatch(1);
+        }
+    }
+
+    // Open the gate for a blocklist, which wakes every request that is only waiting on it.
+    public void setReady(int blocklistIndex) {
+        // Open the latch.
+        blocklistLatches[blocklistIndex].countDown();
+    }
+
+    // Check if all the blocklists in the mask are ready.
+    public boolean isReady(int blocklistMask) {
+        // Check each blocklist in the mask.
+        for (int blocklistIndex = 0; blocklistIndex < blocklistLatches.length; blocklistIndex++) {
+            if (((blocklistMask & (1 << blocklistIndex)) != 0) && (blocklistLatches[blocklistIndex].getCount() > 0)) {
+                return false;
+            }
+        }
+
+        // All the blocklists in the mask are ready.
+        return true;
+    }
+
+    // Wait until all the blocklists in the mask are ready, or until the maximum wait has passed.  The mask has a bit set for each blocklist index.
+    // Returns false if the wait timed out, in which case the request can't be checked against all its blocklists and should be blocked.
+    public boolean awaitReady(int blocklistMask) {
+        // Return immediately if the blocklists are ready, which is the case for almost every request.
+        if (isReady(blocklistMask)) {
+            return true;
+        }
+
+        // Record the start of the wait.
+        currentlyWaitingRequests.incrementAndGet();
+        long waitStartTime = System.nanoTime();
+
+        // Track if the thread was interrupted, because the blocklists must be ready before the request can be checked.
+        boolean interrupted = false;
+
+        // Track if every blocklist became ready before the deadline.
+        boolean ready = true;
+
+        // Wait for each blocklist in the mask.  The deadline is shared by all of them.
+        for (int blocklistIndex = 0; ready && (blocklistIndex < blocklistLatches.length); blocklistIndex++) {
+            if ((blocklistMask & (1 << blocklistIndex)) != 0) {
+                // Keep waiting if the thread is interrupted.
+                while (true) {
+                    try {
+                        // Wait for the latch to open until the deadline.
+                        ready = blocklistLatches[blocklistIndex].await(MAXIMUM_WAIT_NANOSECONDS - (System.nanoTime() - waitStartTime), TimeUnit.NANOSECONDS);
+                        break;
+                    } catch (InterruptedException exception) {
+                        // Remember the interrupt so it can be restored.
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+
+        // Log a timeout.
+        if (!ready) {
+            Log.w("Blocklists", "A request was blocked because the blocklists weren't ready after " + TimeUnit.NANOSECONDS.toMillis(MAXIMUM_WAIT_NANOSECONDS) + " ms.");
+        }
+
+        // Calculate the wait time.
+        long waitNanoseconds = System.nanoTime() - waitStartTime;
+
+        // Update the counters.
+        waitedRequests.incrementAndGet();
+        totalWaitNanoseconds.addAndGet(waitNanoseconds);
+        longestWaitNanoseconds.accumulateAndGet(waitNanoseconds, Math::max);
+
+        // The request is no longer waiting.
+        currentlyWaitingRequests.decrementAndGet();
+
+        // Restore the interrupt.
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Return the status.
+        return ready;
+    }
+
+    public int getCurrentlyWaitingRequests() {
+        // Return the number of requests that are currently waiting.
+        return currentlyWaitingRequests.get();
+    }
+
+    public long getWaitedRequests() {
+        // Return the number of requests that had to wait.
+        return waitedRequests.get();
+    }
+
+    public long getTotalWaitMilliseconds() {
+        // Return the total wait time in milliseconds.
+        return totalWaitNanoseconds.get() / 1000000;
+    }
+
+    public long getLongestWaitMilliseconds() {
+        // Return the longest wait time in milliseconds.
+        return longestWaitNanoseconds.get() / 1000000;
+    }
+}
@@ -285,6 +285,28 @@ public class DomainsDatabaseHelper extends SQLiteOpenHelper {
 
     }
 
+    public boolean isEnabledForAnyDomain(String columnName) {
+        // Get a readable database handle.
+        SQLiteDatabase domainsDatabase = this.getReadableDatabase();
+
+        // Prepare the SQL statement to get the first domain that enables the column.
+        String GET_FIRST_ENABLED_DOMAIN = "SELECT " + _ID + " FROM " + DOMAINS_TABLE +
+                " WHERE " + columnName + " = " + ENABLED +
+                " LIMIT 1";
+
+        // Get the results as a `Cursor`.  The second argument is `null` because there are no `selectionArgs`.
+        Cursor enabledDomainCursor = domainsDatabase.rawQuery(GET_FIRST_ENABLED_DOMAIN, null);
+
+        // Check if a domain was found.
+        boolean enabledForAnyDomain = (enabledDomainCursor.getCount() > 0);
+
+        // Close the cursor.
+        enabledDomainCursor.close();
+
+        // Return the result.
+        return enabledForAnyDomain;
+    }
+
     public int addDomain(String domainName) {
         // Store the domain data in a `ContentValues`.
         ContentValues domainContentValues = new ContentValues();
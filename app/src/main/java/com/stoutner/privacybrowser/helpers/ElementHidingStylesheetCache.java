@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The element hiding style sheet cache holds the JavaScript that injects the element hiding style sheet of each recently visited domain, so that a style sheet is only created once instead of for every page.
+// The style sheets are created on a background thread, because the generic style sheet holds tens of thousands of selectors.  The element hiding lists they are created from are loaded on the same thread
+// the first time a page needs them.  Only pages with JavaScript enabled can have a style sheet injected, and JavaScript is disabled by default, so the lists usually aren't loaded at all.
+// Once the lists of a set of enabled blocklists are loaded they never change, so the cached JavaScript is never invalidated.
+public class ElementHidingStylesheetCache {
+    // The element hiding list loader loads the element hiding list of a blocklist.  It is called on the background thread.
+    public interface ElementHidingListLoader {
+        ElementHidingList loadElementHidingList(int blocklistIndex);
+    }
+
+    // The least recently used JavaScript is removed once the cache is full.  The keys combine the enabled blocklists mask and the style sheet domain.
+    private final LinkedHashMap<String, String> javaScripts;
+
+    // The keys whose style sheets are being created.
+    private final HashSet<String> pendingKeys = new HashSet<>();
+
+    // The element hiding style sheets, which are created from the element hiding lists as they are loaded.
+    private final ElementHidingStylesheets elementHidingStylesheets = new ElementHidingStylesheets();
+
+    // The element hiding list loader.
+    private final ElementHidingListLoader elementHidingListLoader;
+
+    // The masks of the blocklists whose element hiding lists have been loaded and are being loaded, with a bit set for each `CombinedBlocklist` index.
+    private int loadedBlocklistsMask;
+    private int loadingBlocklistsMask;
+
+    // The element hiding lists are loaded and the style sheets are created one at a time, because they share the generic style sheet.
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    public ElementHidingStylesheetCache(int maximumSize, ElementHidingListLoader elementHidingListLoader) {
+        // Store the element hiding list loader.
+        this.elementHidingListLoader = elementHidingListLoader;
+
+        // Initialize the JavaScript in access order, so that the eldest entry is the least recently used.
+        javaScripts = new LinkedHashMap<String, String>(maximumSize * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                // Remove the least recently used JavaScript when the cache is full.
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    // Get the JavaScript that injects the element hiding style sheet for the host.  Null is returned if nothing needs to be hidden or if the style sheet hasn't been created yet,
+    // in which case it is created in the background, after the element hiding lists of the enabled blocklists if they haven't been loaded yet.
+    public String getJavaScript(String host, int enabledBlocklistsMask) {
+        synchronized (javaScripts) {
+            // Get the enabled blocklists whose element hiding lists haven't been loaded.
+            int unloadedBlocklistsMask = enabledBlocklistsMask & ~loadedBlocklistsMask;
+
+            // Wait for the element hiding lists to be loaded.
+            if (unloadedBlocklistsMask != 0) {
+                // Get the element hiding lists that aren't being loaded yet.
+                int newBlocklistsMask = unloadedBlocklistsMask & ~loadingBlocklistsMask;
+
+                // Load the new element hiding lists in the background.
+                if (newBlocklistsMask != 0) {
+                    loadingBlocklistsMask |= newBlocklistsMask;
+                    executorService.execute(() -> loadElementHidingLists(newBlocklistsMask));
+                }
+
+                // The style sheet can't be created yet.
+                return null;
+            }
+        }
+
+        // Get the domain whose style sheet applies to the host.  The element hiding lists of the enabled blocklists were set before their bits in the loaded mask, which was read above in the same synchronized block.
+        String stylesheetDomain = elementHidingStylesheets.getStylesheetDomain(host, enabledBlocklistsMask);
+
+        // Create the key.
+        String key = enabledBlocklistsMask + " " + stylesheetDomain;
+
+        synchronized (javaScripts) {
+            // Get the cached JavaScript.
+            String cachedJavaScript = javaScripts.get(key);
+
+            // Return the cached JavaScript.  It is empty if nothing needs to be hidden.
+            if (cachedJavaScript != null) {
+                return cachedJavaScript.isEmpty() ? null : cachedJavaScript;
+            }
+
+            // Only create each style sheet once.
+            if (!pendingKeys.add(key)) {
+                return null;
+            }
+        }
+
+        // Create the style sheet in the background.
+        executorService.execute(() -> {
+            // Create the style sheet.
+            String stylesheet = elementHidingStylesheets.createStylesheet(stylesheetDomain, enabledBlocklistsMask);
+
+            // Create the JavaScript, which adds the style sheet to the page.  The style sheet is quoted as a JSON string, which is also a JavaScript string.
+            // The style element has no ID or other fixed marker, so a page can't use it to tell that the browser is hiding elements.  `MainWebViewActivity` only injects it once per navigation.
+            String javaScript = stylesheet.isEmpty() ? "" : "(function() {var parent = document.head || document.documentElement; " +
+                    "if (parent !== null) {var style = document.createElement('style'); style.textContent = " + JSONObject.quote(stylesheet) + "; parent.appendChild(style);}})()";
+
+            // Cache the JavaScript.
+            synchronized (javaScripts) {
+                javaScripts.put(key, javaScript);
+                pendingKeys.remove(key);
+            }
+        });
+
+        // The style sheet isn't ready yet.
+        return null;
+    }
+
+    // Load the element hiding lists of the blocklists in the mask.  This runs on the background thread.
+    private void loadElementHidingLists(int blocklistsMask) {
+        // Load each element hiding list.
+        for (int blocklistIndex = 0; blocklistIndex < CombinedBlocklist.NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+            if ((blocklistsMask & (1 << blocklistIndex)) != 0) {
+                // Initialize the element hiding list.
+                ElementHidingList elementHidingList;
+
+                try {
+                    // Load the element hiding list.
+                    elementHidingList = elementHidingListLoader.loadElementHidingList(blocklistIndex);
+                } catch (RuntimeException | OutOfMemoryError exception) {
+                    // Log the failure.  The blocklist still blocks requests, so its elements are simply not hidden.
+                    Log.e("Blocklists", "The element hiding list of blocklist " + blocklistIndex + " failed to load.", exception);
+
+                    // The style sheets leave out the lists that are null.
+                    elementHidingList = null;
+                }
+
+                // Set the element hiding list.
+                elementHidingStylesheets.setElementHidingList(blocklistIndex, elementHidingList);
+            }
+        }
+
+        // Note that the element hiding lists have been loaded.  This publishes them to the threads that check the mask.
+        synchronized (javaScripts) {
+            loadedBlocklistsMask |= blocklistsMask;
+        }
+    }
+}
@@ -36,14 +36,21 @@ import androidx.core.view.NestedScrollingChildHelper;
 import androidx.core.view.ViewCompat;
 
 import com.stoutner.privacybrowser.R;
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.MatchAttribution;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
 // NestedScrollWebView extends WebView to handle nested scrolls (scrolling the app bar off the screen).
 public class NestedScrollWebView extends WebView implements NestedScrollingChild2 {
+    // The public interface is used to tell the activity when a blocklist is enabled, so that it can be loaded if it wasn't loaded at startup.
+    public interface BlocklistEnabledListener {
+        void blocklistEnabled(int blocklist);
+    }
+
     // These constants identify the blocklists.
     public final static int BLOCKED_REQUESTS = 0;
     public final static int EASYLIST = 1;
@@ -77,8 +84,14 @@ public class NestedScrollWebView extends WebView implements NestedScrollingChild
     // Track the domain settings JavaScript status.  This can be removed once night mode does not require JavaScript.
     private boolean domainSettingsJavaScriptEnabled;
 
-    // Track the resource requests.
-    private List<String[]> resourceRequests = Collections.synchronizedList(new ArrayList<>());  // Using a synchronized list makes adding resource requests thread safe.
+    // Track the resource requests.  Each request is stored as its URL, its packed blocklist match, and the attribution of the entry that matched, which is null for the requests that didn't match one.
+    // The attribution doesn't keep the combined blocklist that was checked, which is replaced when the blocklists are merged.  The display strings are only created when the requests are shown.  The arrays are synchronized on `resourceRequestsLock` because the requests are added from the WebView threads.
+    private final Object resourceRequestsLock = new Object();
+    private String[] resourceRequestUrls = new String[64];
+    private long[] resourceRequestMatches = new long[64];
+    private MatchAttribution[] resourceRequestAttributions = new MatchAttribution[64];
+    private int numberOfResourceRequests;
+    private BlocklistEnabledListener blocklistEnabledListener;
     private boolean easyListEnabled;
     private boolean easyPrivacyEnabled;
     private boolean fanboysAnnoyanceListEnabled;
@@ -126,6 +139,9 @@ public class NestedScrollWebView extends WebView implements NestedScrollingChild
     // Track swipe to refresh.
     private boolean swipeToRefresh;
 
+    // Track if the element hiding style sheet has been injected into the current page.
+    private boolean elementHidingStylesheetInjected;
+
     // Track a URL waiting for a proxy.
     private String waitingForProxyUrlString = "";
 
@@ -287,24 +303,66 @@ public class NestedScrollWebView extends WebView implements NestedScrollingChild
 
 
     // Resource requests.
-    public void addResourceRequest(String[] resourceRequest) {
-        // Add the resource request to the list.
-        resourceRequests.add(resourceRequest);
+    public void addResourceRequest(String url, long blocklistMatch, MatchAttribution matchAttribution) {
+        synchronized (resourceRequestsLock) {
+            // Grow the arrays if they are full.
+            if (numberOfResourceRequests == resourceRequestUrls.length) {
+                int newLength = resourceRequestUrls.length * 2;
+                resourceRequestUrls = Arrays.copyOf(resourceRequestUrls, newLength);
+                resourceRequestMatches = Arrays.copyOf(resourceRequestMatches, newLength);
+                resourceRequestAttributions = Arrays.copyOf(resourceRequestAttributions, newLength);
+            }
+
+            // Add the resource request.
+            resourceRequestUrls[numberOfResourceRequests] = url;
+            resourceRequestMatches[numberOfResourceRequests] = blocklistMatch;
+            resourceRequestAttributions[numberOfResourceRequests] = matchAttribution;
+            numberOfResourceRequests++;
+        }
     }
 
     public List<String[]> getResourceRequests() {
-        // Return the list of resource requests as an array list.
-        return resourceRequests;
+        // Instantiate the blocklist helper, which creates the display strings.
+        BlocklistHelper blocklistHelper = new BlocklistHelper();
+
+        synchronized (resourceRequestsLock) {
+            // Initialize the resource requests list.  It is a copy, so it isn't modified by requests that are added while it is displayed.
+            List<String[]> resourceRequests = new ArrayList<>(numberOfResourceRequests);
+
+            // Create the result string array of each resource request, in the schema described by the request constants in `BlocklistHelper`.
+            for (int requestIndex = 0; requestIndex < numberOfResourceRequests; requestIndex++) {
+                resourceRequests.add(blocklistHelper.getResult(resourceRequestMatches[requestIndex], resourceRequestUrls[requestIndex], resourceRequestAttributions[requestIndex]));
+            }
+
+            // Return the resource requests.
+            return resourceRequests;
+        }
     }
 
     public void clearResourceRequests() {
-        // Clear the resource requests.
-        resourceRequests.clear();
+        synchronized (resourceRequestsLock) {
+            // Release the URLs and attributions.
+            Arrays.fill(resourceRequestUrls, 0, numberOfResourceRequests, null);
+            Arrays.fill(resourceRequestAttributions, 0, numberOfResourceRequests, null);
+
+            // Clear the resource requests.
+            numberOfResourceRequests = 0;
+        }
     }
 
 
     // Blocklists.
+    public void setBlocklistEnabledListener(BlocklistEnabledListener listener) {
+        // Store the listener.
+        blocklistEnabledListener = listener;
+    }
+
     public void enableBlocklist(int blocklist, boolean status) {
+        // Let the listener load the blocklist if it is being enabled.
+        if (status && (blocklistEnabledListener != null)) {
+            blocklistEnabledListener.blocklistEnabled(blocklist);
+        }
+
         // Update the status of the indicated blocklist.
         switch (blocklist) {
             case EASYLIST:
@@ -662,6 +720,18 @@ public class NestedScrollWebView extends WebView implements NestedScrollingChild
     }
 
 
+    // Element hiding style sheet.
+    public void setElementHidingStylesheetInjected(boolean status) {
+        // Store the element hiding style sheet injected status.
+        elementHidingStylesheetInjected = status;
+    }
+
+    public boolean getElementHidingStylesheetInjected() {
+        // Return the element hiding style sheet injected status.
+        return elementHidingStylesheetInjected;
+    }
+
+
     // Waiting for proxy.
     public void setWaitingForProxyUrlString(String urlString) {
         // Store the waiting for proxy URL string.
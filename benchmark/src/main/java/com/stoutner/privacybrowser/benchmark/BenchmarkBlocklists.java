@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.Blocklist;
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.CombinedBlocklist;
+import com.stoutner.privacybrowser.helpers.PublicSuffixList;
+import com.stoutner.privacybrowser.helpers.StringArena;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// The benchmark blocklists and the public suffix list are read from the app assets and loaded the same way `PopulateBlocklists` loads them.
+class BenchmarkBlocklists {
+    // The blocklist file names, in the order of the `CombinedBlocklist` indexes.
+    final static String[] BLOCKLIST_NAMES = {"easylist", "easyprivacy", "fanboy-annoyance", "fanboy-social", "ultralist", "ultraprivacy"};
+
+    // The mask with every blocklist enabled.
+    final static int ALL_BLOCKLISTS_MASK = (1 << CombinedBlocklist.NUMBER_OF_BLOCKLISTS) - 1;
+
+    // The assets directory, which the `jmh` task passes to the benchmarks.
+    private final static Path ASSETS_DIRECTORY = Paths.get(System.getProperty("privacybrowser.assets", "../app/src/main/assets"));
+
+    // The blocklists directory.
+    private final static Path BLOCKLISTS_DIRECTORY = ASSETS_DIRECTORY.resolve("blocklists");
+
+    static Path getBlocklistPath(String blocklistName) {
+        // Return the path of the blocklist file.
+        return BLOCKLISTS_DIRECTORY.resolve(blocklistName + ".txt");
+    }
+
+    static Blocklist[] loadBlocklists(BlocklistHelper blocklistHelper) throws IOException {
+        // Initialize the blocklists and the string arena they share.
+        Blocklist[] blocklists = new Blocklist[BLOCKLIST_NAMES.length];
+        StringArena originalEntriesArena = new StringArena();
+
+        // Parse the request entries of each blocklist.  The app loads the element hiding entries separately.
+        for (int blocklistIndex = 0; blocklistIndex < BLOCKLIST_NAMES.length; blocklistIndex++) {
+            blocklists[blocklistIndex] = new Blocklist(blocklistHelper.parseBlocklist(getBlocklistPath(BLOCKLIST_NAMES[blocklistIndex]), BlocklistHelper.REQUEST_ENTRIES), originalEntriesArena);
+        }
+
+        // Release the memory that is only needed while the blocklists are loading.
+        originalEntriesArena.finishAdding();
+
+        // Return the blocklists.
+        return blocklists;
+    }
+
+    static PublicSuffixList loadPublicSuffixList() throws IOException {
+        // Parse the public suffix list.
+        return PublicSuffixList.parse(ASSETS_DIRECTORY.resolve("public_suffix_list.dat"));
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.Blocklist;
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.CombinedBlocklist;
+import com.stoutner.privacybrowser.helpers.ResourceTypes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+// Check the blocklist engine against the reference implementations, so that a change to the parser or to the indexes can't silently change what is blocked:
+//     ./gradlew :benchmark:checkBlocklistEngine
+// `BlocklistParser` must produce the same sublists as `ReferenceBlocklistParser` for the bundled blocklists and for generated ones,
+// and `checkBlocklists()` must make the same decisions as `ReferenceBlocklistMatcher` for the URL corpus, with the blocklists merged and unmerged.
+// The differences are printed, and the exit status is 1 if there are any.
+public class BlocklistEngineCheck {
+    // The pieces the generated blocklist lines are made of, which are the markers the parsers look for and a little text to put between them.
+    private final static String[] LINE_PIECES = {"@@", "||", "|", "*", "^", "$", "domain=", "~", "third-party", "~third-party", "\\", "/$", "$/$", "a", "b.com", ".", "/", ",", "http://", "https://",
+            "http:", "$file", "$script", "$image", "$popup", "$websocket", "$csp=script-src", "##", "#?#", "#@#", ".ad", "[", "!", "! Version: ", "! Title: ", "é", "?", "=", "#", "-", "\r"};
+
+    // The line endings of the generated blocklists.
+    private final static String[] LINE_ENDINGS = {"\n", "\n", "\n", "\r\n", "\r"};
+
+    // The enabled blocklists the decisions are checked with: all of them, each one alone, and two mixes.
+    private final static int[] ENABLED_BLOCKLISTS_MASKS = {BenchmarkBlocklists.ALL_BLOCKLISTS_MASK, 1, 1 << 1, 1 << 2, 1 << 3, 1 << 4, 1 << 5, 0b101010, 0b010101};
+
+    // The random seed, which keeps the generated blocklists reproducible.
+    private final static long RANDOM_SEED = 42;
+
+    // The number of differences that are printed for each check.
+    private final static int PRINTED_DIFFERENCES = 10;
+
+    public static void main(String[] arguments) throws IOException {
+        // Get the number of generated blocklists.
+        int numberOfGeneratedBlocklists = (arguments.length > 0) ? Integer.parseInt(arguments[0]) : 2000;
+
+        // Initialize the blocklist helper.
+        BlocklistHelper blocklistHelper = new BlocklistHelper();
+
+        // Run the checks.
+        int differences = checkBundledBlocklists(blocklistHelper);
+        differences += checkGeneratedBlocklists(blocklistHelper, numberOfGeneratedBlocklists);
+        differences += checkDecisions(blocklistHelper);
+
+        // Fail if anything is different.
+        if (differences > 0) {
+            System.out.println("The blocklist engine differs from the reference in " + differences + " places.");
+            System.exit(1);
+        }
+
+        // Report the success.
+        System.out.println("The blocklist engine matches the reference.");
+    }
+
+    private static int checkBundledBlocklists(BlocklistHelper blocklistHelper) throws IOException {
+        // Track the differences.
+        int differences = 0;
+
+        // Parse each bundled blocklist with both parsers.
+        for (String blocklistName : BenchmarkBlocklists.BLOCKLIST_NAMES) {
+            // Get the path.
+            Path blocklistPath = BenchmarkBlocklists.getBlocklistPath(blocklistName);
+
+            // Compare the sublists.
+            int blocklistDifferences = compareSublists(blocklistName, new ReferenceBlocklistParser().parse(blocklistPath), blocklistHelper.parseBlocklist(blocklistPath));
+
+            // Report the blocklist.
+            System.out.println(blocklistName + ": " + blocklistDifferences + " differences.");
+
+            // Count the differences.
+            differences += blocklistDifferences;
+        }
+
+        // Return the differences.
+        return differences;
+    }
+
+    private static int checkGeneratedBlocklists(BlocklistHelper blocklistHelper, int numberOfGeneratedBlocklists) throws IOException {
+        // Track the differences, and the blocklists the reference parser can't parse.
+        int differences = 0;
+        int skippedBlocklists = 0;
+
+        // Create a file for the generated blocklists.
+        Path blocklistPath = Files.createTempFile("generated-blocklist", ".txt");
+
+        try {
+            // Initialize the random number generator.
+            Random random = new Random(RANDOM_SEED);
+
+            // Generate each blocklist.
+            for (int blocklistNumber = 0; blocklistNumber < numberOfGeneratedBlocklists; blocklistNumber++) {
+                // Generate the lines.
+                StringBuilder blocklistStringBuilder = new StringBuilder();
+                int numberOfLines = 1 + random.nextInt(20);
+                for (int line = 0; line < numberOfLines; line++) {
+                    // Add the pieces.
+                    int numberOfPieces = random.nextInt(12);
+                    for (int piece = 0; piece < numberOfPieces; piece++) {
+                        blocklistStringBuilder.append(LINE_PIECES[random.nextInt(LINE_PIECES.length)]);
+                    }
+
+                    // End the line.  The last line doesn't always have a line ending.
+                    if ((line < numberOfLines - 1) || random.nextBoolean()) {
+                        blocklistStringBuilder.append(LINE_ENDINGS[random.nextInt(LINE_ENDINGS.length)]);
+                    }
+                }
+
+                // Write the blocklist.
+                Files.write(blocklistPath, blocklistStringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+
+                // Parse the blocklist with the reference parser.
+                ArrayList<List<String[]>> referenceSublists;
+                try {
+                    referenceSublists = new ReferenceBlocklistParser().parse(blocklistPath);
+                } catch (RuntimeException exception) {
+                    // The reference parser throws on some malformed lines, so there is nothing to compare.
+                    skippedBlocklists++;
+                    continue;
+                }
+
+                // Parse the blocklist with the blocklist parser, which alternates between mapping the file and reading it.
+                ArrayList<List<String[]>> sublists;
+                if (random.nextBoolean()) {
+                    sublists = blocklistHelper.parseBlocklist(blocklistPath);
+                } else {
+                    try (InputStream blocklistInputStream = Files.newInputStream(blocklistPath)) {
+                        sublists = blocklistHelper.parseBlocklist(blocklistInputStream);
+                    }
+                }
+
+                // Compare the sublists.
+                differences += compareSublists("generated blocklist " + blocklistNumber, referenceSublists, sublists);
+            }
+        } finally {
+            // Delete the file.
+            Files.delete(blocklistPath);
+        }
+
+        // Report the generated blocklists.
+        System.out.println("Generated blocklists: " + numberOfGeneratedBlocklists + " blocklists, " + skippedBlocklists + " skipped by the reference parser, " + differences + " differences.");
+
+        // Return the differences.
+        return differences;
+    }
+
+    private static int checkDecisions(BlocklistHelper blocklistHelper) throws IOException {
+        // Load the blocklists, and combine them merged and unmerged.
+        Blocklist[] blocklists = BenchmarkBlocklists.loadBlocklists(blocklistHelper);
+        CombinedBlocklist[] combinedBlocklists = {CombinedBlocklist.createMerged(blocklists), CombinedBlocklist.createUnmerged(blocklists)};
+
+        // Parse the blocklists with the reference parser for the reference matcher.
+        List<List<List<String[]>>> referenceBlocklistSublists = new ArrayList<>();
+        for (String blocklistName : BenchmarkBlocklists.BLOCKLIST_NAMES) {
+            referenceBlocklistSublists.add(new ReferenceBlocklistParser().parse(BenchmarkBlocklists.getBlocklistPath(blocklistName)));
+        }
+        ReferenceBlocklistMatcher referenceBlocklistMatcher = new ReferenceBlocklistMatcher(referenceBlocklistSublists);
+
+        // Track the checks and the differences.
+        int checks = 0;
+        int differences = 0;
+
+        // Get the requests of the frozen corpus and of the additions.
+        List<UrlCorpus.Request> requests = new ArrayList<>(Arrays.asList(UrlCorpus.load(UrlCorpus.ALL)));
+        requests.addAll(Arrays.asList(UrlCorpus.load(UrlCorpus.ADDITIONS_RESOURCE_NAME, UrlCorpus.ALL)));
+
+        // Check each request with the resource type guessed from its URL, and with an unknown type, which is checked against every entry.
+        for (UrlCorpus.Request request : requests) {
+            for (int resourceType : new int[] {request.resourceType, ResourceTypes.UNKNOWN}) {
+                // Get the first match of each blocklist with the reference matcher.
+                ReferenceBlocklistMatcher.Decision[] referenceBlocklistMatches = referenceBlocklistMatcher.getBlocklistMatches(request.currentDomain, request.url, request.isThirdPartyRequest, resourceType);
+
+                // Compare the decisions with each set of enabled blocklists.
+                for (int enabledBlocklistsMask : ENABLED_BLOCKLISTS_MASKS) {
+                    // Get the reference decision.
+                    ReferenceBlocklistMatcher.Decision referenceDecision = ReferenceBlocklistMatcher.decide(referenceBlocklistMatches, enabledBlocklistsMask);
+
+                    // Compare it with the decision of each combined blocklist.
+                    for (CombinedBlocklist combinedBlocklist : combinedBlocklists) {
+                        // Check the request.
+                        long match = blocklistHelper.checkBlocklists(request.currentDomain, request.url, request.isThirdPartyRequest, resourceType, combinedBlocklist, enabledBlocklistsMask);
+
+                        // Get the decision.
+                        ReferenceBlocklistMatcher.Decision decision = (match == BlocklistHelper.NO_MATCH) ? null :
+                                new ReferenceBlocklistMatcher.Decision(BlocklistHelper.getMatchBlocklist(match), BlocklistHelper.getMatchSublist(match));
+
+                        // Compare the decisions.
+                        checks++;
+                        if (!Objects.equals(referenceDecision, decision)) {
+                            // Print the first differences.
+                            if (differences < PRINTED_DIFFERENCES) {
+                                System.out.println("Decision for " + request.url + " from " + request.currentDomain + " with resource type " + resourceType + ", blocklists " + Integer.toBinaryString(enabledBlocklistsMask) +
+                                        (combinedBlocklist.isMerged() ? " merged" : " unmerged") + ": expected " + referenceDecision + " but was " + decision + ".");
+                            }
+
+                            // Count the difference.
+                            differences++;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Report the decisions.
+        System.out.println("Decisions: " + checks + " checks, " + differences + " differences.");
+
+        // Return the differences.
+        return differences;
+    }
+
+    // Compare the sublists of the blocklist parser with the ones of the reference parser.  The number of differences is returned.
+    private static int compareSublists(String description, List<List<String[]>> referenceSublists, List<List<String[]>> sublists) {
+        // Track the differences.
+        int differences = 0;
+
+        // The parsers must return the same number of sublists.
+        if (referenceSublists.size() != sublists.size()) {
+            System.out.println(description + ": expected " + referenceSublists.size() + " sublists but was " + sublists.size() + ".");
+            return 1;
+        }
+
+        // Compare each sublist.
+        for (int sublist = 0; sublist < sublists.size(); sublist++) {
+            // Get the entries.
+            List<String[]> referenceEntries = referenceSublists.get(sublist);
+            List<String[]> entries = sublists.get(sublist);
+
+            // Compare each entry, including the ones that only one of the parsers produced.
+            for (int entryIndex = 0; entryIndex < Math.max(referenceEntries.size(), entries.size()); entryIndex++) {
+                // Get the entries, which are null past the end of the sublist.
+                String[] referenceEntry = (entryIndex < referenceEntries.size()) ? referenceEntries.get(entryIndex) : null;
+                String[] entry = (entryIndex < entries.size()) ? entries.get(entryIndex) : null;
+
+                // Compare the entries.
+                if (!Arrays.equals(referenceEntry, entry)) {
+                    // Print the first differences.
+                    if (differences < PRINTED_DIFFERENCES) {
+                        System.out.println(description + ", sublist " + sublist + ", entry " + entryIndex + ": expected " + Arrays.toString(referenceEntry) + " but was " + Arrays.toString(entry) + ".");
+                    }
+
+                    // Count the difference.
+                    differences++;
+                }
+            }
+        }
+
+        // Return the differences.
+        return differences;
+    }
+}
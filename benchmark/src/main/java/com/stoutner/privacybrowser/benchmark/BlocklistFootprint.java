@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.Blocklist;
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.CombinedBlocklist;
+import com.stoutner.privacybrowser.helpers.ElementHidingList;
+import com.stoutner.privacybrowser.helpers.StringArena;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+// Measure the memory the bundled blocklists keep at each stage of loading, so that the footprint of a change can be checked without a device:
+//     ./gradlew :benchmark:measureBlocklistFootprint
+// Each stage is measured as the growth of the used heap after full garbage collections.  This is approximate, but with the serial collector it is stable to about 0.1 MB between runs.
+public class BlocklistFootprint {
+    // The number of full garbage collections before the used heap is read.
+    private final static int GARBAGE_COLLECTIONS = 4;
+
+    // The object being measured is kept here so that it can't be collected before the used heap is read.
+    private static Object measuredObject;
+
+    public static void main(String[] arguments) throws Exception {
+        // Initialize the blocklist helper.
+        BlocklistHelper blocklistHelper = new BlocklistHelper();
+
+        // The request sublists as they are parsed, with the original entry of each entry as a string.  This is what the app kept before the original entries were moved into the arena.
+        measure("Request sublists with the original entries", () -> {
+            // Parse the request entries of each blocklist.
+            List<ArrayList<List<String[]>>> blocklistsSublists = new ArrayList<>();
+            for (String blocklistName : BenchmarkBlocklists.BLOCKLIST_NAMES) {
+                blocklistsSublists.add(blocklistHelper.parseBlocklist(BenchmarkBlocklists.getBlocklistPath(blocklistName), BlocklistHelper.REQUEST_ENTRIES));
+            }
+
+            // Return the sublists.
+            return blocklistsSublists;
+        });
+
+        // The request sublists with the original entries moved into the string arena, without any of the indexes.
+        measure("Request sublists with the original entries in the arena", () -> {
+            // Initialize the sublists and the string arena.
+            List<ArrayList<List<String[]>>> blocklistsSublists = new ArrayList<>();
+            StringArena originalEntriesArena = new StringArena();
+
+            // Parse the request entries of each blocklist.
+            for (String blocklistName : BenchmarkBlocklists.BLOCKLIST_NAMES) {
+                // Parse the blocklist.
+                ArrayList<List<String[]>> sublists = blocklistHelper.parseBlocklist(BenchmarkBlocklists.getBlocklistPath(blocklistName), BlocklistHelper.REQUEST_ENTRIES);
+
+                // Move the original entries into the arena the way `Blocklist` does.  The offsets are left out.
+                for (int sublist = 1; sublist < sublists.size(); sublist++) {
+                    for (String[] entry : sublists.get(sublist)) {
+                        originalEntriesArena.add(entry[entry.length - 1]);
+                        entry[entry.length - 1] = null;
+                    }
+                }
+
+                // Add the sublists.
+                blocklistsSublists.add(sublists);
+            }
+
+            // Release the memory that is only needed while the original entries are being added.
+            originalEntriesArena.finishAdding();
+
+            // Return the sublists and the arena.
+            return new Object[] {blocklistsSublists, originalEntriesArena};
+        });
+
+        // The combined blocklist with each blocklist as its own part, which is what the app uses until the blocklists are merged.
+        measure("Unmerged combined blocklist", () -> CombinedBlocklist.createUnmerged(BenchmarkBlocklists.loadBlocklists(blocklistHelper)));
+
+        // The merged combined blocklist, which is what the app keeps once every requested blocklist has been loaded.
+        measure("Merged combined blocklist", () -> CombinedBlocklist.createMerged(BenchmarkBlocklists.loadBlocklists(blocklistHelper)));
+
+        // The element hiding lists, which the app only loads once a page with JavaScript enabled needs them.
+        measure("Element hiding lists", () -> {
+            // Load the element hiding list of each blocklist.
+            List<ElementHidingList> elementHidingLists = new ArrayList<>();
+            for (String blocklistName : BenchmarkBlocklists.BLOCKLIST_NAMES) {
+                elementHidingLists.add(new ElementHidingList(blocklistHelper.parseBlocklist(BenchmarkBlocklists.getBlocklistPath(blocklistName), BlocklistHelper.ELEMENT_HIDING_ENTRIES)));
+            }
+
+            // Return the element hiding lists.
+            return elementHidingLists;
+        });
+    }
+
+    private static void measure(String stage, Callable<Object> loader) throws Exception {
+        // Get the used heap before the stage is loaded.
+        long usedHeapBefore = getUsedHeap();
+
+        // Load the stage.  Everything that is only needed while it is loading is collected before the used heap is read again.
+        measuredObject = loader.call();
+
+        // Get the used heap with the stage loaded.
+        long usedHeapAfter = getUsedHeap();
+
+        // Print the retained heap.
+        System.out.println(String.format(Locale.US, "%-60s %6.1f MB", stage + ":", (usedHeapAfter - usedHeapBefore) / 1_000_000.0));
+
+        // Release the stage.
+        measuredObject = null;
+    }
+
+    private static long getUsedHeap() throws InterruptedException {
+        // Collect the garbage several times, giving the collector time to finish the reference processing in between.
+        for (int garbageCollection = 0; garbageCollection < GARBAGE_COLLECTIONS; garbageCollection++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        // Return the used heap.
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+}
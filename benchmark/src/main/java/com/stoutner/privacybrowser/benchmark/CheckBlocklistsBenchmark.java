@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.Blocklist;
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.CombinedBlocklist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Measure the latency of `BlocklistHelper.checkBlocklists()` for each URL of the corpus, with every bundled blocklist enabled.
+// Each invocation checks the next request of the category, so that the URL tokens cached by the blocklist helper are never reused.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CheckBlocklistsBenchmark {
+    // The category of requests to check.
+    @Param({UrlCorpus.ALL, UrlCorpus.FIRST_PARTY, UrlCorpus.THIRD_PARTY, UrlCorpus.WHITELISTED, UrlCorpus.BLOCKED})
+    public String category;
+
+    // Whether the blocklists are merged, as they are once loading finishes, unmerged, as they are while loading, or merged and then reordered by the hits of the requests.
+    @Param({"merged", "unmerged", "reordered"})
+    public String combination;
+
+    // The blocklist helper and the combined blocklist.
+    private final BlocklistHelper blocklistHelper = new BlocklistHelper();
+    private CombinedBlocklist combinedBlocklist;
+
+    // The requests and the index of the next one.
+    private UrlCorpus.Request[] requests;
+    private int nextRequest;
+
+    @Setup
+    public void loadBlocklists() throws IOException {
+        // Load the blocklists.
+        Blocklist[] blocklists = BenchmarkBlocklists.loadBlocklists(blocklistHelper);
+
+        // Combine the blocklists.
+        combinedBlocklist = combination.equals("unmerged") ? CombinedBlocklist.createUnmerged(blocklists) : CombinedBlocklist.createMerged(blocklists);
+
+        // Load the requests.
+        requests = UrlCorpus.load(category);
+
+        // Count the hits of the requests and reorder the blocklists by them.
+        if (combination.equals("reordered")) {
+            // Check each request once.
+            for (UrlCorpus.Request request : requests) {
+                blocklistHelper.checkBlocklists(request.currentDomain, request.url, request.isThirdPartyRequest, request.resourceType, combinedBlocklist, BenchmarkBlocklists.ALL_BLOCKLISTS_MASK);
+            }
+
+            // Reorder the blocklists.
+            combinedBlocklist = combinedBlocklist.createReordered();
+        }
+    }
+
+    @Benchmark
+    public long checkBlocklists() {
+        // Get the next request.
+        UrlCorpus.Request request = requests[nextRequest];
+
+        // Advance to the following request, wrapping around at the end of the corpus.
+        nextRequest++;
+        if (nextRequest == requests.length) {
+            nextRequest = 0;
+        }
+
+        // Check the request.  Returning the match keeps JMH from optimizing the check away.
+        return blocklistHelper.checkBlocklists(request.currentDomain, request.url, request.isThirdPartyRequest, request.resourceType, combinedBlocklist, BenchmarkBlocklists.ALL_BLOCKLISTS_MASK);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Measure how quickly `BlocklistHelper.parseBlocklist()` parses each bundled blocklist, in parses per second and in megabytes per second.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBlocklistBenchmark {
+    // The blocklist to parse.
+    @Param({"easylist", "easyprivacy", "fanboy-annoyance", "fanboy-social", "ultralist", "ultraprivacy"})
+    public String blocklistName;
+
+    // How the blocklist is read.  A stream is how the app reads the compressed blocklist assets, while a mapped file is read without copying it.
+    @Param({"stream", "mapped"})
+    public String input;
+
+    // The blocklist helper and the blocklist path.
+    private final BlocklistHelper blocklistHelper = new BlocklistHelper();
+    private Path blocklistPath;
+
+    // The size of the blocklist in megabytes.
+    private double blocklistMegabytes;
+
+    // The parsed megabytes are reported as an extra counter, which JMH divides by the time like the parses.
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class ParsedMegabytes {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            // Reset the counter for each iteration.
+            megabytes = 0;
+        }
+    }
+
+    @Setup
+    public void measureBlocklist() throws IOException {
+        // Get the blocklist path.
+        blocklistPath = BenchmarkBlocklists.getBlocklistPath(blocklistName);
+
+        // Store the size in megabytes.
+        blocklistMegabytes = Files.size(blocklistPath) / 1000000.0;
+    }
+
+    @Benchmark
+    public ArrayList<List<String[]>> parseBlocklist(ParsedMegabytes parsedMegabytes) throws IOException {
+        // Count the megabytes.
+        parsedMegabytes.megabytes += blocklistMegabytes;
+
+        // Parse the mapped blocklist.  Returning the sublists keeps JMH from optimizing the parse away.
+        if (input.equals("mapped")) {
+            return blocklistHelper.parseBlocklist(blocklistPath);
+        }
+
+        // Read and parse the blocklist.
+        try (InputStream blocklistInputStream = Files.newInputStream(blocklistPath)) {
+            return blocklistHelper.parseBlocklist(blocklistInputStream);
+        }
+    }
+}
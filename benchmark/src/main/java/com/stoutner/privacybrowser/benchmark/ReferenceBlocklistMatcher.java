@@ -0,0 +1,375 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.CombinedBlocklist;
+import com.stoutner.privacybrowser.helpers.ResourceTypes;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// The reference blocklist matcher decides requests by checking every entry of every sublist in order, the way the blocklists were checked before they were indexed.
+// `BlocklistEngineCheck` compares its decisions with `BlocklistHelper.checkBlocklists()`, which only checks the entries its token indexes, automatons, domain tries, and n-gram filters find.
+// The fragments are matched by trying every position, and the regular expressions by `java.util.regex`, so nothing is shared with the indexed matcher except the resource types of the entries.
+class ReferenceBlocklistMatcher {
+    // The order in which the blocklists decide a request.
+    private final static int[] DECIDING_ORDER = {CombinedBlocklist.ULTRALIST, CombinedBlocklist.ULTRAPRIVACY, CombinedBlocklist.EASYLIST, CombinedBlocklist.EASYPRIVACY,
+            CombinedBlocklist.FANBOYS_ANNOYANCE_LIST, CombinedBlocklist.FANBOYS_SOCIAL_BLOCKING_LIST};
+
+    // The sublists of each blocklist, in the order of the `CombinedBlocklist` indexes.
+    private final List<List<List<String[]>>> blocklistSublists;
+
+    // The resource types of each entry, by blocklist and sublist, which are found from the filter options of the original entries.
+    private final int[][][] entryResourceTypes;
+
+    // The compiled regular expressions, which are null if they are invalid.
+    private final HashMap<String, Pattern> patterns = new HashMap<>();
+
+    ReferenceBlocklistMatcher(List<List<List<String[]>>> blocklistSublists) {
+        // Store the sublists.
+        this.blocklistSublists = blocklistSublists;
+
+        // Get the resource types of the entries once, instead of parsing the filter options for every request.  The last item of each entry is the original entry.
+        entryResourceTypes = new int[blocklistSublists.size()][BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS][];
+        for (int blocklistIndex = 0; blocklistIndex < blocklistSublists.size(); blocklistIndex++) {
+            for (int sublist = 1; sublist < BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS; sublist++) {
+                // Get the entries.
+                List<String[]> entries = blocklistSublists.get(blocklistIndex).get(sublist);
+
+                // Get the resource types of each entry.
+                entryResourceTypes[blocklistIndex][sublist] = new int[entries.size()];
+                for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+                    String[] entry = entries.get(entryIndex);
+                    entryResourceTypes[blocklistIndex][sublist][entryIndex] = ResourceTypes.getEntryResourceTypesMask(entry[entry.length - 1]);
+                }
+            }
+        }
+    }
+
+    // Get the first entry each blocklist matches, as a decision.  The first sublist a blocklist matches is its result.  Blocklists that don't match have a null decision.
+    Decision[] getBlocklistMatches(String currentDomain, String resourceUrl, boolean isThirdPartyRequest, int resourceType) {
+        // Find the host of the URL, which the host anchors match against.
+        String host = BlocklistHelper.getHost(resourceUrl);
+        int hostStart = (host == null) ? 0 : getHostStart(resourceUrl);
+        int hostEnd = (host == null) ? 0 : hostStart + host.length();
+
+        // Get the resource types an entry must apply to.
+        int requestResourceTypesMask = ResourceTypes.getRequestResourceTypesMask(resourceType);
+
+        // Check each blocklist.
+        Decision[] blocklistMatches = new Decision[blocklistSublists.size()];
+        for (int blocklistIndex = 0; blocklistIndex < blocklistSublists.size(); blocklistIndex++) {
+            // Get the sublists.
+            List<List<String[]>> sublists = blocklistSublists.get(blocklistIndex);
+
+            // Check the request sublists in order, skipping the ones that don't apply to the request like `checkBlocklists()` does.
+            for (int sublist = 1; (sublist < BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS) && (blocklistMatches[blocklistIndex] == null); sublist++) {
+                // Only check the third-party lists if this is a third-party request, and the domain lists if there is a current domain.
+                if ((isThirdPartySublist(sublist) && !isThirdPartyRequest) || (isDomainSublist(sublist) && (currentDomain == null))) {
+                    continue;
+                }
+
+                // Check every entry.
+                List<String[]> entries = sublists.get(sublist);
+                for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+                    // Only check the entries that apply to the resource type.
+                    if (((entryResourceTypes[blocklistIndex][sublist][entryIndex] & requestResourceTypesMask) != 0) &&
+                            entryMatches(sublist, entries.get(entryIndex), currentDomain, resourceUrl, hostStart, hostEnd)) {
+                        // Store the decision.
+                        blocklistMatches[blocklistIndex] = new Decision(blocklistIndex, sublist);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Return the matches.
+        return blocklistMatches;
+    }
+
+    // Decide the request with the enabled blocklists from the first match of each blocklist.  Null is returned if no blocklist decided the request.
+    static Decision decide(Decision[] blocklistMatches, int enabledBlocklistsMask) {
+        // Fanboy's Social Blocking List is only checked if Fanboy's Annoyance List is disabled, because the annoyance list includes it.
+        if ((enabledBlocklistsMask & (1 << CombinedBlocklist.FANBOYS_ANNOYANCE_LIST)) != 0) {
+            enabledBlocklistsMask &= ~(1 << CombinedBlocklist.FANBOYS_SOCIAL_BLOCKING_LIST);
+        }
+
+        // Track the last white list match, which allows the request if no blocklist decides it.
+        Decision whitelistMatch = null;
+
+        // A black list match or an Ultra white list match decides the request.  The white lists of the other blocklists only allow it if no later blocklist blocks it.
+        for (int blocklistIndex : DECIDING_ORDER) {
+            // Get the match of the enabled blocklist.
+            Decision match = ((enabledBlocklistsMask & (1 << blocklistIndex)) == 0) ? null : blocklistMatches[blocklistIndex];
+
+            // Process the match.
+            if (match == null) {  // The blocklist didn't match.
+                continue;
+            } else if (match.isBlocked() || (blocklistIndex == CombinedBlocklist.ULTRALIST) || (blocklistIndex == CombinedBlocklist.ULTRAPRIVACY)) {  // The match decides the request.
+                return match;
+            }
+
+            // Store the white list match.
+            whitelistMatch = match;
+        }
+
+        // Return the white list match, or null.
+        return whitelistMatch;
+    }
+
+    private boolean entryMatches(int sublist, String[] entry, String currentDomain, String resourceUrl, int hostStart, int hostEnd) {
+        // The domain sublists only apply to the current domain and its subdomains.
+        if (isDomainSublist(sublist) && !isOnDomain(currentDomain, entry[0])) {
+            return false;
+        }
+
+        // Each sublist compares its entries in a specific way.  The limits on the number of fragments are the ones the sublists have always had.
+        switch (sublist) {
+            case 1:  // Main white list.
+            case 2:  // Final white list.
+            case 9:  // Main black list.
+            case 16:  // Third-party black list.
+                return containsInOrder(resourceUrl, hostStart, hostEnd, entry, 0, false, false);
+
+            case 6:  // Third-party white list.
+                return (entry.length <= 6) && containsInOrder(resourceUrl, hostStart, hostEnd, entry, 0, false, false);
+
+            case 3:  // Domain white list.
+            case 7:  // Third-party domain white list.
+            case 12:  // Domain black list.
+            case 18:  // Third-party domain black list.
+                return containsInOrder(resourceUrl, hostStart, hostEnd, entry, 1, false, false);
+
+            case 4:  // Domain initial white list.
+            case 19:  // Third-party domain initial black list.
+                return (entry.length <= 5) && containsInOrder(resourceUrl, hostStart, hostEnd, entry, 1, true, false);
+
+            case 5:  // Domain final white list.
+            case 14:  // Domain final black list.
+                return (entry.length <= 4) && containsInOrder(resourceUrl, hostStart, hostEnd, entry, 1, false, true);
+
+            case 8:  // Third-party domain initial white list.
+            case 13:  // Domain initial black list.
+                return containsInOrder(resourceUrl, hostStart, hostEnd, entry, 1, true, false);
+
+            case 10:  // Initial black list.
+            case 17:  // Third-party initial black list.
+                return containsInOrder(resourceUrl, hostStart, hostEnd, entry, 0, true, false);
+
+            case 11:  // Final black list.
+                return (entry.length <= 4) && containsInOrder(resourceUrl, hostStart, hostEnd, entry, 0, false, true);
+
+            case 15:  // Domain regular expression black list.
+            case 21:  // Third-party domain regular expression black list.
+                return regularExpressionMatches(entry[1], resourceUrl);
+
+            case 20:  // Third-party regular expression black list.
+            case 22:  // Regular expression black list.
+                return regularExpressionMatches(entry[0], resourceUrl);
+
+            default:
+                // The default value is required but should never be used.
+                return false;
+        }
+    }
+
+    // Check if the URL contains the fragments of the entry, from the first fragment to the last one before the original entry, in order and without overlapping.
+    private static boolean containsInOrder(String url, int hostStart, int hostEnd, String[] entry, int firstFragment, boolean anchoredAtStart, boolean anchoredAtEnd) {
+        // Start at the beginning of the URL.
+        return containsInOrder(url, hostStart, hostEnd, entry, firstFragment, anchoredAtStart, anchoredAtEnd, firstFragment, 0);
+    }
+
+    // Try the fragment at every position at or after the from index, and the rest of the fragments after each match.
+    private static boolean containsInOrder(String url, int hostStart, int hostEnd, String[] entry, int firstFragment, boolean anchoredAtStart, boolean anchoredAtEnd, int fragmentIndex, int fromIndex) {
+        // Every fragment has been matched.
+        if (fragmentIndex == entry.length - 1) {
+            return true;
+        }
+
+        // Get the fragment.
+        String fragment = entry[fragmentIndex];
+
+        // Determine where the fragment can start.
+        boolean isFirst = (fragmentIndex == firstFragment);
+        boolean isLast = (fragmentIndex == entry.length - 2);
+        int lastStart = (anchoredAtStart && isFirst) ? 0 : url.length();
+
+        // Try each start.
+        for (int start = fromIndex; start <= lastStart; start++) {
+            // Skip ahead to the next character that can start the fragment, which saves time without skipping any start that could match.
+            if (!fragment.isEmpty() && (fragment.charAt(0) != '^') && !fragment.startsWith("||")) {
+                start = url.indexOf(fragment.charAt(0), start);
+                if ((start == -1) || (start > lastStart)) {
+                    break;
+                }
+            }
+
+            // Match the fragment.
+            int matchEnd = matchAt(url, hostStart, hostEnd, fragment, start);
+
+            // Match the rest of the fragments after it.  The last fragment of an entry anchored at the end must run to the end of the URL.
+            if ((matchEnd != -1) && (!(anchoredAtEnd && isLast) || (matchEnd == url.length())) &&
+                    containsInOrder(url, hostStart, hostEnd, entry, firstFragment, anchoredAtStart, anchoredAtEnd, fragmentIndex + 1, matchEnd)) {
+                return true;
+            }
+        }
+
+        // The fragments don't match.
+        return false;
+    }
+
+    // Match the fragment at the start.  The end of the match is returned, or -1 if the fragment doesn't match there.
+    private static int matchAt(String url, int hostStart, int hostEnd, String fragment, int start) {
+        // Track the position in the URL.
+        int urlIndex = start;
+        int fragmentIndex = 0;
+
+        // An initial `||` matches at the start of the host or of one of its labels.
+        if (fragment.startsWith("||")) {
+            if ((start < hostStart) || (start >= hostEnd) || ((start > hostStart) && (url.charAt(start - 1) != '.'))) {
+                return -1;
+            }
+
+            // Skip the anchor.
+            fragmentIndex = 2;
+        }
+
+        // Match the rest of the fragment.
+        for (; fragmentIndex < fragment.length(); fragmentIndex++) {
+            // Get the fragment character.
+            char fragmentCharacter = fragment.charAt(fragmentIndex);
+
+            if (fragmentCharacter == '^') {  // A `^` matches a separator, or the end of the URL.
+                // The end of the URL doesn't use a character.
+                if (urlIndex == url.length()) {
+                    continue;
+                }
+
+                // Check that the URL character is a separator.
+                if (!isSeparator(url.charAt(urlIndex))) {
+                    return -1;
+                }
+            } else if ((urlIndex == url.length()) || (url.charAt(urlIndex) != fragmentCharacter)) {  // Any other character matches itself.
+                return -1;
+            }
+
+            // Move to the next URL character.
+            urlIndex++;
+        }
+
+        // Return the end of the match.
+        return urlIndex;
+    }
+
+    private boolean regularExpressionMatches(String regularExpression, String resourceUrl) {
+        // Compile the regular expression the first time it is used.  An invalid regular expression never matches.
+        if (!patterns.containsKey(regularExpression)) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regularExpression);
+            } catch (PatternSyntaxException exception) {
+                pattern = null;
+            }
+            patterns.put(regularExpression, pattern);
+        }
+
+        // Get the pattern.
+        Pattern pattern = patterns.get(regularExpression);
+
+        // The entire URL must match.
+        return (pattern != null) && pattern.matcher(resourceUrl).matches();
+    }
+
+    // Get the start of the host, which follows `://` and any user info.  The host is known to exist.
+    private static int getHostStart(String url) {
+        // Get the start of the authority.
+        int authorityStart = url.indexOf("//") + 2;
+
+        // Get the end of the authority.
+        int authorityEnd = authorityStart;
+        while ((authorityEnd < url.length()) && ("/?#".indexOf(url.charAt(authorityEnd)) == -1)) {
+            authorityEnd++;
+        }
+
+        // The host follows the last `@` of the authority, if there is one.
+        int atIndex = url.lastIndexOf('@', authorityEnd - 1);
+        return (atIndex >= authorityStart) ? atIndex + 1 : authorityStart;
+    }
+
+    private static boolean isSeparator(char character) {
+        // A separator is any ASCII character except a letter, a digit, `_`, `-`, `.`, and `%`.
+        return (character < 128) && !(((character >= 'a') && (character <= 'z')) || ((character >= 'A') && (character <= 'Z')) || ((character >= '0') && (character <= '9')) ||
+                (character == '_') || (character == '-') || (character == '.') || (character == '%'));
+    }
+
+    private static boolean isOnDomain(String currentDomain, String domain) {
+        // The current domain must be the domain or one of its subdomains.  Entries with an empty domain apply to every domain.
+        return domain.isEmpty() || currentDomain.equals(domain) || currentDomain.endsWith("." + domain);
+    }
+
+    private static boolean isDomainSublist(int sublist) {
+        // The domain sublists store the domain in the first item of each entry.
+        return ((sublist >= 3) && (sublist <= 5)) || (sublist == 7) || (sublist == 8) || ((sublist >= 12) && (sublist <= 15)) || (sublist == 18) || (sublist == 19) || (sublist == 21);
+    }
+
+    private static boolean isThirdPartySublist(int sublist) {
+        // The third-party sublists are only checked for third-party requests.
+        return ((sublist >= 6) && (sublist <= 8)) || ((sublist >= 16) && (sublist <= 21));
+    }
+
+    // A decision is the blocklist and the sublist of a match.
+    static class Decision {
+        final int blocklistIndex;
+        final int sublist;
+
+        Decision(int blocklistIndex, int sublist) {
+            // Store the values.
+            this.blocklistIndex = blocklistIndex;
+            this.sublist = sublist;
+        }
+
+        boolean isBlocked() {
+            // The white lists are numbered before the black lists.
+            return sublist > 8;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            // Compare the blocklist and the sublist.
+            return (object instanceof Decision) && (((Decision) object).blocklistIndex == blocklistIndex) && (((Decision) object).sublist == sublist);
+        }
+
+        @Override
+        public int hashCode() {
+            // Combine the blocklist and the sublist.
+            return (blocklistIndex * 31) + sublist;
+        }
+
+        @Override
+        public String toString() {
+            // Describe the decision.
+            return (isBlocked() ? "blocked" : "allowed") + " by " + BenchmarkBlocklists.BLOCKLIST_NAMES[blocklistIndex] + " sublist " + sublist;
+        }
+    }
+}
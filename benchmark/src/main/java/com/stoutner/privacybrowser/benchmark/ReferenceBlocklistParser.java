@@ -1,5 +1,5 @@
 /*
- * Copyright © 2018-2019 Soren Stoutner <soren@stoutner.com>.
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
  *
  * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
  *
@@ -17,121 +17,96 @@
  * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package com.stoutner.privacybrowser.helpers;
 
-import android.content.res.AssetManager;
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.ElementHidingStylesheets;
+import com.stoutner.privacybrowser.helpers.ResourceTypes;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
-
-public class BlocklistHelper {
-    // Describe the schema of the string array in each entry of the resource requests array list.
-    public final static int REQUEST_DISPOSITION = 0;
-    public final static int REQUEST_URL = 1;
-    public final static int REQUEST_BLOCKLIST = 2;
-    public final static int REQUEST_SUBLIST = 3;
-    public final static int REQUEST_BLOCKLIST_ENTRIES = 4;
-    public final static int REQUEST_BLOCKLIST_ORIGINAL_ENTRY = 5;
-
-    // The request disposition options.
-    public final static String REQUEST_DEFAULT = "0";
-    public final static String REQUEST_ALLOWED = "1";
-    public final static String REQUEST_THIRD_PARTY = "2";
-    public final static String REQUEST_BLOCKED = "3";
-
-    // The whitelists.
-    public final static String MAIN_WHITELIST = "1";
-    public final static String FINAL_WHITELIST = "2";
-    public final static String DOMAIN_WHITELIST = "3";
-    public final static String DOMAIN_INITIAL_WHITELIST = "4";
-    public final static String DOMAIN_FINAL_WHITELIST = "5";
-    public final static String THIRD_PARTY_WHITELIST = "6";
-    public final static String THIRD_PARTY_DOMAIN_WHITELIST = "7";
-    public final static String THIRD_PARTY_DOMAIN_INITIAL_WHITELIST = "8";
-
-    // The blacklists.
-    public final static String MAIN_BLACKLIST = "9";
-    public final static String INITIAL_BLACKLIST = "10";
-    public final static String FINAL_BLACKLIST = "11";
-    public final static String DOMAIN_BLACKLIST = "12";
-    public final static String DOMAIN_INITIAL_BLACKLIST = "13";
-    public final static String DOMAIN_FINAL_BLACKLIST = "14";
-    public final static String DOMAIN_REGULAR_EXPRESSION_BLACKLIST = "15";
-    public final static String THIRD_PARTY_BLACKLIST = "16";
-    public final static String THIRD_PARTY_INITIAL_BLACKLIST = "17";
-    public final static String THIRD_PARTY_DOMAIN_BLACKLIST = "18";
-    public final static String THIRD_PARTY_DOMAIN_INITIAL_BLACKLIST = "19";
-    public final static String THIRD_PARTY_REGULAR_EXPRESSION_BLACKLIST = "20";
-    public final static String THIRD_PARTY_DOMAIN_REGULAR_EXPRESSION_BLACKLIST = "21";
-    public final static String REGULAR_EXPRESSION_BLACKLIST = "22";
-
-    public ArrayList<List<String[]>> parseBlocklist(AssetManager assets, String blocklistName) {
+
+// The reference blocklist parser is the line-by-line string parser that `BlocklistParser` replaced, kept so that `BlocklistEngineCheck` can compare their sublists.
+// It has the changes that were made to the parser since then: the `||` and `^` anchors are kept, element hiding entries are filed in sublists 23 and 24,
+// and the entries whose filter options don't apply to any resource request are ignored instead of only the `websocket` ones.  Everything else is the original code.
+class ReferenceBlocklistParser {
+    // The sublists whose entries begin with a domain.
+    private final static int[] DOMAIN_SUBLISTS = {3, 4, 5, 7, 8, 12, 13, 14, 15, 18, 19, 21};
+
+    // The sublists that hold regular expressions, which never keep a `||`.
+    private final static int[] REGULAR_EXPRESSION_SUBLISTS = {15, 20, 21, 22};
+
+    // The element hiding lists.
+    private final List<String[]> elementHidingList = new ArrayList<>();  // 23.
+    private final List<String[]> elementHidingExceptionList = new ArrayList<>();  // 24.
+
+    // Whether the entry that is being added still starts right after an initial `||` that was stripped from the line.
+    private boolean hostAnchored;
+
+    ArrayList<List<String[]>> parse(Path blocklistPath) throws IOException {
         // Initialize the header list.
         List<String[]> headers = new ArrayList<>();  // 0.
 
         // Initialize the whitelists.
-        List<String[]> mainWhitelist = new ArrayList<>();  // 1.
-        List<String[]> finalWhitelist = new ArrayList<>();  // 2.
-        List<String[]> domainWhitelist = new ArrayList<>();  // 3.
-        List<String[]> domainInitialWhitelist = new ArrayList<>();  // 4.
-        List<String[]> domainFinalWhitelist = new ArrayList<>();  // 5.
-        List<String[]> thirdPartyWhitelist = new ArrayList<>();  // 6.
-        List<String[]> thirdPartyDomainWhitelist = new ArrayList<>();  // 7.
-        List<String[]> thirdPartyDomainInitialWhitelist = new ArrayList<>();  // 8.
+        List<String[]> mainWhitelist = new Sublist(1);  // 1.
+        List<String[]> finalWhitelist = new Sublist(2);  // 2.
+        List<String[]> domainWhitelist = new Sublist(3);  // 3.
+        List<String[]> domainInitialWhitelist = new Sublist(4);  // 4.
+        List<String[]> domainFinalWhitelist = new Sublist(5);  // 5.
+        List<String[]> thirdPartyWhitelist = new Sublist(6);  // 6.
+        List<String[]> thirdPartyDomainWhitelist = new Sublist(7);  // 7.
+        List<String[]> thirdPartyDomainInitialWhitelist = new Sublist(8);  // 8.
 
         // Initialize the blacklists
-        List<String[]> mainBlacklist = new ArrayList<>();  // 9.
-        List<String[]> initialBlacklist = new ArrayList<>();  // 10.
-        List<String[]> finalBlacklist = new ArrayList<>();  // 11.
-        List<String[]> domainBlacklist = new ArrayList<>();  // 12.
-        List<String[]> domainInitialBlacklist = new ArrayList<>();  // 13.
-        List<String[]> domainFinalBlacklist = new ArrayList<>();  // 14.
-        List<String[]> domainRegularExpressionBlacklist = new ArrayList<>();  // 15.
-        List<String[]> thirdPartyBlacklist = new ArrayList<>();  // 16.
-        List<String[]> thirdPartyInitialBlacklist = new ArrayList<>();  // 17.
-        List<String[]> thirdPartyDomainBlacklist = new ArrayList<>();  // 18.
-        List<String[]> thirdPartyDomainInitialBlacklist = new ArrayList<>();  // 19.
-        List<String[]> regularExpressionBlacklist = new ArrayList<>();  // 20.
-        List<String[]> thirdPartyRegularExpressionBlacklist = new ArrayList<>();  // 21.
-        List<String[]> thirdPartyDomainRegularExpressionBlacklist = new ArrayList<>();  // 22.
-
-
-        // Populate the block lists.  The `try` is required by `InputStreamReader`.
-        try {
-            // Load the block list into a `BufferedReader`.
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(assets.open(blocklistName)));
-
+        List<String[]> mainBlacklist = new Sublist(9);  // 9.
+        List<String[]> initialBlacklist = new Sublist(10);  // 10.
+        List<String[]> finalBlacklist = new Sublist(11);  // 11.
+        List<String[]> domainBlacklist = new Sublist(12);  // 12.
+        List<String[]> domainInitialBlacklist = new Sublist(13);  // 13.
+        List<String[]> domainFinalBlacklist = new Sublist(14);  // 14.
+        List<String[]> domainRegularExpressionBlacklist = new Sublist(15);  // 15.
+        List<String[]> thirdPartyBlacklist = new Sublist(16);  // 16.
+        List<String[]> thirdPartyInitialBlacklist = new Sublist(17);  // 17.
+        List<String[]> thirdPartyDomainBlacklist = new Sublist(18);  // 18.
+        List<String[]> thirdPartyDomainInitialBlacklist = new Sublist(19);  // 19.
+        List<String[]> regularExpressionBlacklist = new Sublist(20);  // 20.
+        List<String[]> thirdPartyRegularExpressionBlacklist = new Sublist(21);  // 21.
+        List<String[]> thirdPartyDomainRegularExpressionBlacklist = new Sublist(22);  // 22.
+
+        // Load the block list into a `BufferedReader`, which splits the lines at `\n`, `\r`, and `\r\n` like the byte scanner.
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(Files.newInputStream(blocklistPath), StandardCharsets.UTF_8))) {
             // Create a string for storing the block list entries.
             String blocklistEntry;
 
             // Parse the block list.
             while ((blocklistEntry = bufferedReader.readLine()) != null) {
-                // Store the original block list entry.
+                // Store the original block list entry.  The `^` characters are no longer removed, because they are matched by `FragmentMatcher`.
                 String originalBlocklistEntry = blocklistEntry;
 
-                // Remove any `^` from the block list entry.  Privacy Browser does not process them in the interest of efficiency.
-                blocklistEntry = blocklistEntry.replace("^", "");
+                // Reset the host anchor.
+                hostAnchored = false;
 
-                //noinspection StatementWithEmptyBody
-                if (blocklistEntry.contains("##") || blocklistEntry.contains("#?#") || blocklistEntry.contains("#@#") || blocklistEntry.startsWith("[")) {
-                    // Entries that contain `##`, `#?#`, and `#@#` are for hiding elements in the main page's HTML.  Entries that start with `[` describe the AdBlock compatibility level.
-                    // Do nothing.  Privacy Browser does not currently use these entries.
+                // Check if the line is an element hiding entry.
+                boolean isElementHidingEntry = blocklistEntry.contains("##") || blocklistEntry.contains("#?#") || blocklistEntry.contains("#@#");
 
-                    //Log.i("Blocklists", "Not added: " + blocklistEntry);
+                //noinspection StatementWithEmptyBody
+                if (blocklistEntry.startsWith("[") || (isElementHidingEntry && blocklistEntry.startsWith("!"))) {
+                    // Entries that start with `[` describe the AdBlock compatibility level.  Comments that happen to contain an element hiding marker are ignored like the rest of the comments.
+                    // Do nothing.  Privacy Browser does not use these entries.
+                } else if (isElementHidingEntry) {  // Entries that contain `##`, `#?#`, and `#@#` are for hiding elements in the main page's HTML.
+                    parseElementHidingEntry(blocklistEntry);
                 } else //noinspection StatementWithEmptyBody
                     if (blocklistEntry.contains("$csp=script-src")) {  // Ignore entries that contain `$csp=script-src`.
                         // Do nothing.  It is uncertain what this directive is even supposed to mean, and it is blocking entire websites like androidcentral.com.  https://redmine.stoutner.com/issues/306.
-
-                        //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
                 } else //noinspection StatementWithEmptyBody
-                    if (blocklistEntry.contains("$websocket") || blocklistEntry.contains("$third-party,websocket") || blocklistEntry.contains("$script,websocket")) {  // Ignore entries with `websocket`.
-                        // Do nothing.  Privacy Browser does not differentiate between websocket requests and other requests and these entries cause a lot of false positives.
-
-                        //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
+                    if (blocklistEntry.contains("$") && !blocklistEntry.startsWith("!") && (ResourceTypes.getEntryResourceTypesMask(blocklistEntry) == 0)) {  // Ignore entries that don't apply to any resource request.
+                        // Do nothing.  The main frame is never blocked, pop-ups and element hiding aren't resource requests, and WebView doesn't report WebSocket connections.
                 } else if (blocklistEntry.startsWith("!")) {  //  Comment entries.
                     if (blocklistEntry.startsWith("! Version:")) {
                         // Get the list version number.
@@ -148,23 +123,20 @@ public class BlocklistHelper {
                         // Store the list title in the headers list.
                         headers.add(listTitle);
                     }
-
-                    //Log.i("Blocklists", "Not added: " + blocklistEntry);
                 } else if (blocklistEntry.startsWith("@@")) {  // Entries that begin with `@@` are whitelists.
                     // Remove the `@@`
                     blocklistEntry = blocklistEntry.substring(2);
 
-                    // Strip out any initial `||`.  Privacy Browser doesn't differentiate items that only match against the end of the domain name.
+                    // Strip out any initial `||`, which is put back when the entry is added.
                     if (blocklistEntry.startsWith("||")) {
                         blocklistEntry = blocklistEntry.substring(2);
+                        hostAnchored = true;
                     }
 
                     if (blocklistEntry.contains("$")) {  // Filter entries.
                         //noinspection StatementWithEmptyBody
                         if (blocklistEntry.contains("~third-party")) {  // Ignore entries that contain `~third-party`.
                             // Do nothing.
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
                         } else if (blocklistEntry.contains("third-party")) {  // Third-party white list entries.
                             if (blocklistEntry.contains("domain=")) {  // Third-party domain white list entries.
                                 // Parse the entry.
@@ -175,17 +147,14 @@ public class BlocklistHelper {
                                 //noinspection StatementWithEmptyBody
                                 if (domains.contains("~")) {  // It is uncertain what a `~` domain means inside an `@@` entry.
                                     // Do Nothing
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
                                 } else if (blocklistEntry.startsWith("|")) {  // Third-party domain initial white list entries.
                                     // Strip out the initial `|`.
                                     entry = entry.substring(1);
+                                    hostAnchored = false;
 
                                     //noinspection StatementWithEmptyBody
                                     if (entry.equals("http://") || entry.equals("https://")) {  // Ignore generic entries.
                                         // Do nothing.  These entries are designed for filter options that Privacy Browser does not use.
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
                                     } else {  // Process third-party domain initial white list entries.
                                         // Process each domain.
                                         do {
@@ -215,8 +184,6 @@ public class BlocklistHelper {
 
                                                 // Add the entry to the white list.
                                                 thirdPartyDomainInitialWhitelist.add(domainDoubleEntry);
-
-                                                //Log.i("Blocklists", headers.get(1)[0] + " third-party domain initial white list added: " + domain + " , " + firstEntry + " , " + secondEntry +
                                                 //        "  -  " + originalBlocklistEntry);
                                             } else {  // Process a third-party domain initial white list single entry.
                                                 // Create a domain entry string array.
@@ -224,8 +191,6 @@ public class BlocklistHelper {
 
                                                 // Add the entry to the third party domain initial white list.
                                                 thirdPartyDomainInitialWhitelist.add(domainEntry);
-
-                                                //Log.i("Blocklists", headers.get(1)[0] + " third-party domain initial white list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                             }
                                         } while (domains.contains("|"));
                                     }
@@ -263,8 +228,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the white list.
                                             thirdPartyDomainWhitelist.add(domainDoubleEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " third-party domain white list added: " + domain + " , " + firstEntry + " , " + secondEntry + "  -  " +
                                             //        originalBlocklistEntry);
                                         } else {  // Process a third-party domain single entry.
                                             // Create an entry string array.
@@ -272,8 +235,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the white list.
                                             thirdPartyDomainWhitelist.add(domainEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " third-party domain white list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                         }
                                     } while (domains.contains("|"));
                                 }
@@ -318,8 +279,6 @@ public class BlocklistHelper {
 
                                                 // Add the entry to the white list.
                                                 thirdPartyWhitelist.add(quintupleEntry);
-
-                                                //Log.i("Blocklists", headers.get(1)[0] + " third-party white list added: " + firstEntry + " , " + realSecondEntry + " , " + realThirdEntry + " , " +
                                                 //        realFourthEntry + " , " + fifthEntry + "  -  " + originalBlocklistEntry);
                                             } else {  // Process a third-party white list quadruple entry.
                                                 // Create an entry string array.
@@ -327,8 +286,6 @@ public class BlocklistHelper {
 
                                                 // Add the entry to the white list.
                                                 thirdPartyWhitelist.add(quadrupleEntry);
-
-                                                //Log.i("Blocklists", headers.get(1)[0] + " third-party white list added: " + firstEntry + " , " + realSecondEntry + " , " + realThirdEntry + " , " +
                                                 //        fourthEntry + "  -  " + originalBlocklistEntry);
                                             }
                                         } else {  // Process a third-party white list triple entry.
@@ -337,8 +294,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the white list.
                                             thirdPartyWhitelist.add(tripleEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " third-party white list added: " + firstEntry + " , " + realSecondEntry + " , " + thirdEntry + "  -  " +
                                             //        originalBlocklistEntry);
                                         }
                                     } else {  // Process a third-party white list double entry.
@@ -347,8 +302,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the white list.
                                         thirdPartyWhitelist.add(doubleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " third-party white list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                                     }
                                 } else {  // Process a third-party white list single entry.
                                     // Create an entry string array.
@@ -356,8 +309,6 @@ public class BlocklistHelper {
 
                                     // Add the entry to the white list.
                                     thirdPartyWhitelist.add(singleEntry);
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " third-party domain white list added: " + entry + "  -  " + originalBlocklistEntry);
                                 }
                             }
                         } else if (blocklistEntry.contains("domain=")) {  // Process domain white list entries.
@@ -369,12 +320,11 @@ public class BlocklistHelper {
                             if (entry.startsWith("|")) {  // Initial domain white list entries.
                                 // Strip the initial `|`.
                                 entry = entry.substring(1);
+                                hostAnchored = false;
 
                                 //noinspection StatementWithEmptyBody
                                 if (entry.equals("http://") || entry.equals("https://")) {  // Ignore generic entries.
                                     // Do nothing.  These entries are designed for filter options that Privacy Browser does not use.
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
                                 } else {  // Initial domain white list entry.
                                     // Process each domain.
                                     do {
@@ -412,8 +362,6 @@ public class BlocklistHelper {
 
                                                 // Add the entry to the white list.
                                                 domainInitialWhitelist.add(domainTripleEntry);
-
-                                                //Log.i("Blocklists", headers.get(1)[0] + " domain initial white list entry added: " + domain + " , " + firstEntry + " , " + realSecondEntry + " , " +
                                                 //        thirdEntry + "  -  " + originalBlocklistEntry);
                                             } else {  // Process a domain initial double entry.
                                                 // Create an entry string array.
@@ -421,8 +369,6 @@ public class BlocklistHelper {
 
                                                 // Add the entry to the white list.
                                                 domainInitialWhitelist.add(domainDoubleEntry);
-
-                                                //Log.i("Blocklists", headers.get(1)[0] + " domain initial white list entry added: " + domain + " , " + firstEntry + " , " + secondEntry + "  -  " +
                                                 //        originalBlocklistEntry);
                                             }
                                         } else {  // Process a domain initial single entry.
@@ -431,8 +377,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the white list.
                                             domainInitialWhitelist.add(domainEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " domain initial white list entry added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                         }
                                     } while (domains.contains("|"));
                                 }
@@ -468,8 +412,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the white list.
                                         domainFinalWhitelist.add(domainDoubleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " domain final white list added: " + domain + " , " + firstEntry + " , " + secondEntry + "  -  " +
                                         //        originalBlocklistEntry);
                                     } else {  // Process a domain final white list single entry.
                                         // create an entry string array.
@@ -477,8 +419,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the white list.
                                         domainFinalWhitelist.add(domainEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " domain final white list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                     }
                                 } while (domains.contains("|"));
 
@@ -486,8 +426,6 @@ public class BlocklistHelper {
                                 //noinspection StatementWithEmptyBody
                                 if (domains.contains("~")) {  // It is uncertain what a `~` domain means inside an `@@` entry.
                                     // Do Nothing
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
                                 } else {
                                     // Process each domain.
                                     do {
@@ -533,8 +471,6 @@ public class BlocklistHelper {
 
                                                     // Add the entry to the white list.
                                                     domainWhitelist.add(domainQuadrupleEntry);
-
-                                                    //Log.i("Blocklists", headers.get(1)[0] + " domain white list added : " + domain + " , " + firstEntry + " , " + realSecondEntry + " , " +
                                                     //        realThirdEntry + " , " + fourthEntry + "  -  " + originalBlocklistEntry);
                                                 } else {  // Process a domain white list triple entry.
                                                     // Create an entry string array.
@@ -542,8 +478,6 @@ public class BlocklistHelper {
 
                                                     // Add the entry to the white list.
                                                     domainWhitelist.add(domainTripleEntry);
-
-                                                    //Log.i("Blocklists", headers.get(1)[0] + " domain white list added : " + domain + " , " + firstEntry + " , " + realSecondEntry + " , " +
                                                     //        thirdEntry + "  -  " + originalBlocklistEntry);
                                                 }
                                             } else {  // Process a domain white list double entry.
@@ -552,8 +486,6 @@ public class BlocklistHelper {
 
                                                 // Add the entry to the white list.
                                                 domainWhitelist.add(domainDoubleEntry);
-
-                                                //Log.i("Blocklists", headers.get(1)[0] + " domain white list added : " + domain + " , " + firstEntry + " , " + secondEntry + "  -  " +
                                                 //        originalBlocklistEntry);
                                             }
                                         } else {  // Process a domain white list single entry.
@@ -562,8 +494,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the white list.
                                             domainWhitelist.add(domainEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " domain white list added : " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                         }
                                     } while (domains.contains("|"));
                                 }
@@ -586,16 +516,12 @@ public class BlocklistHelper {
 
                             // Add the entry to the white list.
                             finalWhitelist.add(doubleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " final white list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                         } else {  // Process a final white list single entry.
                             // Create an entry string array.
                             String[] singleEntry = {entry, originalBlocklistEntry};
 
                             // Add the entry to the white list.
                             finalWhitelist.add(singleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " final white list added: " + entry + "  -  " + originalBlocklistEntry);
                         }
                     } else {  // Main white list entries.
                         if (blocklistEntry.contains("*")) {  // There are two or more entries.
@@ -619,16 +545,12 @@ public class BlocklistHelper {
 
                                 // Add the entry to the white list.
                                 mainWhitelist.add(tripleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " main white list added: " + firstEntry + " , " + realSecondEntry + " , " + thirdEntry + "  -  " + originalBlocklistEntry);
                             } else {  // Process a main white list double entry.
                                 // Create an entry string array.
                                 String[] doubleEntry = {firstEntry, secondEntry, originalBlocklistEntry};
 
                                 // Add the entry to the white list.
                                 mainWhitelist.add(doubleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " main white list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                             }
                         } else {  // Process a main white list single entry.
                             // Create an entry string array.
@@ -636,17 +558,16 @@ public class BlocklistHelper {
 
                             // Add the entry to the white list.
                             mainWhitelist.add(singleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " main white list added: " + blocklistEntry + "  -  " + originalBlocklistEntry);
                         }
                     }
                 } else if (blocklistEntry.endsWith("|")) {  // Final black list entries.
                     // Strip out the final "|"
                     String entry = blocklistEntry.substring(0, blocklistEntry.length() - 1);
 
-                    // Strip out any initial `||`.  They are redundant in this case because the block list entry is being matched against the end of the URL.
+                    // Strip out any initial `||`, which is put back when the entry is added.
                     if (entry.startsWith("||")) {
                         entry = entry.substring(2);
+                        hostAnchored = true;
                     }
 
                     if (entry.contains("*")) {  // Process a final black list double entry.
@@ -662,33 +583,29 @@ public class BlocklistHelper {
 
                         // Add the entry to the black list.
                         finalBlacklist.add(doubleEntry);
-
-                        //Log.i("Blocklists", headers.get(1)[0] + " final black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                     } else {  // Process a final black list single entry.
                         // create an entry string array.
                         String[] singleEntry = {entry, originalBlocklistEntry};
 
                         // Add the entry to the black list.
                         finalBlacklist.add(singleEntry);
-
-                        //Log.i("Blocklists", headers.get(1)[0] + " final black list added: " + entry + "  -  " + originalBlocklistEntry);
                     }
                 } else if (blocklistEntry.contains("$")) {  // Entries with filter options.
-                    // Strip out any initial `||`.  These will be treated like any other entry.
+                    // Strip out any initial `||`, which is put back when the entry is added.
                     if (blocklistEntry.startsWith("||")) {
                         blocklistEntry = blocklistEntry.substring(2);
+                        hostAnchored = true;
                     }
 
                     if (blocklistEntry.contains("third-party")) {  // Third-party entries.
                         //noinspection StatementWithEmptyBody
                         if (blocklistEntry.contains("~third-party")) {  // Third-party filter white list entries.
                             // Do not process these white list entries.  They are designed to combine with block filters that Privacy Browser doesn't use, like `subdocument` and `xmlhttprequest`.
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
                         } else if (blocklistEntry.contains("domain=")) {  // Third-party domain entries.
                             if (blocklistEntry.startsWith("|")) {  // Third-party domain initial entries.
                                 // Strip the initial `|`.
                                 blocklistEntry = blocklistEntry.substring(1);
+                                hostAnchored = false;
 
                                 // Parse the entry
                                 String entry = blocklistEntry.substring(0, blocklistEntry.indexOf("$"));
@@ -699,8 +616,6 @@ public class BlocklistHelper {
                                 if (entry.equals("http:") || entry.equals("https:") || entry.equals("http://") || entry.equals("https://")) {  // Ignore generic entries.
                                     // Do nothing.  These entries will almost entirely disable the website.
                                     // Often the original entry blocks filter options like `$script`, which Privacy Browser does not differentiate.
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
                                 } else {  // Third-party domain initial entries.
                                     // Process each domain.
                                     do {
@@ -738,8 +653,6 @@ public class BlocklistHelper {
 
                                                 // Add the entry to the black list.
                                                 thirdPartyDomainInitialBlacklist.add(tripleDomainEntry);
-
-                                                //Log.i("Blocklists", headers.get(1)[0] + " third-party domain initial black list added: " + domain + " , " + firstEntry + " , " + realSecondEntry +
                                                 //        " , " + thirdEntry + "  -  " + originalBlocklistEntry);
                                             } else {  // Process a third-party domain initial black list double entry.
                                                 // Create an entry string array.
@@ -747,8 +660,6 @@ public class BlocklistHelper {
 
                                                 // Add the entry to the black list.
                                                 thirdPartyDomainInitialBlacklist.add(doubleDomainEntry);
-
-                                                //Log.i("Blocklists", headers.get(1)[0] + " third-party domain initial black list added: " + domain + " , " + firstEntry + " , " + secondEntry +
                                                 //        "  -  " + originalBlocklistEntry);
                                             }
                                         } else {  // Process a third-party domain initial black list single entry.
@@ -757,8 +668,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the black list.
                                             thirdPartyDomainInitialBlacklist.add(singleEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " third-party domain initial black list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                         }
                                     } while (domains.contains("|"));
                                 }
@@ -788,8 +697,6 @@ public class BlocklistHelper {
 
                                     // Add the entry to the black list.
                                     thirdPartyDomainRegularExpressionBlacklist.add(domainEntry);
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " third-party domain regular expression black list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                 } while (domains.contains("|"));
                             } else {  // Third-party domain entries.
                                 // Parse the entry
@@ -841,8 +748,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the white list.
                                             thirdPartyDomainWhitelist.add(domainDoubleEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " third-party domain white list added: " + domain + " , " + firstEntry + " , " + secondEntry + "  -  " +
                                             //        originalBlocklistEntry);
                                         } else {  // Process a third-party domain white list single entry.
                                             // Create an entry string array.
@@ -850,8 +755,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the white list.
                                             thirdPartyDomainWhitelist.add(domainEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " third-party domain white list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                         }
                                     } else {  // Third-party domain black list entries.
                                         if (entry.contains("*")) {  // Process a third-party domain black list double entry.
@@ -867,8 +770,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the black list
                                             thirdPartyDomainBlacklist.add(domainDoubleEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " third-party domain black list added: " + domain + " , " + firstEntry + " , " + secondEntry + "  -  " +
                                             //        originalBlocklistEntry);
                                         } else {  // Process a third-party domain black list single entry.
                                             // Create an entry string array.
@@ -876,8 +777,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the black list.
                                             thirdPartyDomainBlacklist.add(domainEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " third-party domain block list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                         }
                                     }
                                 } while (domains.contains("|"));
@@ -897,22 +796,19 @@ public class BlocklistHelper {
 
                                         // Add the entry to the black list.
                                         thirdPartyBlacklist.add(doubleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " third-party black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                                     } else {  // Process a third-party black list single entry.
                                         // Create an entry string array.
                                         String[] singleEntry = {entry, originalBlocklistEntry};
 
                                         // Add an entry to the black list.
                                         thirdPartyBlacklist.add(singleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " third-party black list added: " + entry + "  -  " + originalBlocklistEntry);
                                     }
                                 }
                             }
                         } else if (blocklistEntry.startsWith("|")) {  // Third-party initial black list entries.
                             // Strip the initial `|`.
                             blocklistEntry = blocklistEntry.substring(1);
+                            hostAnchored = false;
 
                             // Get the entry.
                             String entry = blocklistEntry.substring(0, blocklistEntry.indexOf("$"));
@@ -930,16 +826,12 @@ public class BlocklistHelper {
 
                                 // Add the entry to the black list.
                                 thirdPartyInitialBlacklist.add(thirdPartyDoubleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " third-party initial black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                             } else {  // Process a third-party initial black list single entry.
                                 // Create an entry string array.
                                 String[] singleEntry = {entry, originalBlocklistEntry};
 
                                 // Add the entry to the black list.
                                 thirdPartyInitialBlacklist.add(singleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " third-party initial black list added: " + entry + "  -  " + originalBlocklistEntry);
                             }
                         } else if (blocklistEntry.contains("\\")) {  // Process a regular expression black list entry.
                             // Prepare a string to hold the entry.
@@ -957,8 +849,6 @@ public class BlocklistHelper {
 
                             // Add the entry to the black list.
                             thirdPartyRegularExpressionBlacklist.add(singleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " third-party regular expression black list added: " + entry + "  -  " + originalBlocklistEntry);
                         } else if (blocklistEntry.contains("*")) {  // Third-party and regular expression black list entries.
                             // Get the entry.
                             String entry = blocklistEntry.substring(0, blocklistEntry.indexOf("$"));
@@ -972,8 +862,6 @@ public class BlocklistHelper {
 
                                 // Add the entry to the black list.
                                 thirdPartyBlacklist.add(singleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " third party black list added: " + entry + "  -  " + originalBlocklistEntry);
                             } else {  // There are two or more entries.
                                 // Get the index of the wildcard.
                                 int wildcardIndex = entry.indexOf("*");
@@ -1003,8 +891,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the black list.
                                         thirdPartyBlacklist.add(quadrupleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " third-party black list added: " + firstEntry + " , " + realSecondEntry + " , " + realThirdEntry + " , " +
                                         //        fourthEntry + "  -  " + originalBlocklistEntry);
                                     } else {  // Process a third-party black list triple entry.
                                         // Create an entry string array.
@@ -1012,8 +898,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the black list.
                                         thirdPartyBlacklist.add(tripleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " third-party black list added: " + firstEntry + " , " + realSecondEntry + " , " + thirdEntry + "  -  " +
                                         //        originalBlocklistEntry);
                                     }
                                 } else {  // Process a third-party black list double entry.
@@ -1022,8 +906,6 @@ public class BlocklistHelper {
 
                                     // Add the entry to the black list.
                                     thirdPartyBlacklist.add(doubleEntry);
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " third-party black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                                 }
                             }
                         } else {  // Process a third party black list single entry.
@@ -1035,8 +917,6 @@ public class BlocklistHelper {
 
                             // Add the entry to the black list.
                             thirdPartyBlacklist.add(singleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " third party black list added: " + entry + "  -  " + originalBlocklistEntry);
                         }
                     } else if (blocklistEntry.substring(blocklistEntry.indexOf("$")).contains("domain=")) {  // Domain entries.
                         if (blocklistEntry.contains("~")) {  // Domain white list entries.
@@ -1089,8 +969,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the white list.
                                         domainWhitelist.add(domainTripleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " domain white list added: " + domain + " , " + firstEntry + " , " + realSecondEntry + " , " + thirdEntry +
                                         //        "  -  " + originalBlocklistEntry);
                                     } else {  // Process a domain white list double entry.
                                         // Create an entry string array.
@@ -1098,8 +976,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the white list.
                                         domainWhitelist.add(domainDoubleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " domain white list added: " + domain + " , " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                                     }
                                 } else {  // Process a domain white list single entry.
                                     // Create an entry string array.
@@ -1107,8 +983,6 @@ public class BlocklistHelper {
 
                                     // Add the entry to the white list.
                                     domainWhitelist.add(domainEntry);
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " domain white list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                 }
                             } while (domains.contains("|"));
                         } else {  // Domain black list entries.
@@ -1137,21 +1011,18 @@ public class BlocklistHelper {
                                     if (entry.startsWith("|")) {  // Domain initial black list entries.
                                         // Remove the initial `|`;
                                         String entryBase = entry.substring(1);
+                                        hostAnchored = false;
 
                                         //noinspection StatementWithEmptyBody
                                         if (entryBase.equals("http://") || entryBase.equals("https://")) {
                                             // Do nothing.  These entries will entirely block the website.
                                             // Often the original entry blocks `$script` but Privacy Browser does not currently differentiate between scripts and other entries.
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " not added: " + originalBlocklistEntry);
                                         } else {  // Process a domain initial black list entry
                                             // Create an entry string array.
                                             String[] domainEntry = {domain, entryBase, originalBlocklistEntry};
 
                                             // Add the entry to the black list.
                                             domainInitialBlacklist.add(domainEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " domain initial black list added: " + domain + " , " + entryBase + "  -  " + originalBlocklistEntry);
                                         }
                                     } else if (entry.endsWith("|")) {  // Domain final black list entries.
                                         // Remove the final `|`.
@@ -1170,8 +1041,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the black list.
                                             domainFinalBlacklist.add(domainDoubleEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " domain final black list added: " + domain + " , " + firstEntry + " , " + secondEntry + "  -  " +
                                             //        originalBlocklistEntry);
                                         } else {  // Process a domain final black list single entry.
                                             // Create an entry string array.
@@ -1179,8 +1048,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the black list.
                                             domainFinalBlacklist.add(domainEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " domain final black list added: " + domain + " , " + entryBase + "  -  " + originalBlocklistEntry);
                                         }
                                     } else if (entry.contains("\\")) {  // Process a domain regular expression black list entry.
                                         // Create an entry string array.
@@ -1188,8 +1055,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the black list.
                                         domainRegularExpressionBlacklist.add(domainEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " domain regular expression black list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                     } else if (entry.contains("*")) {  // There are two or more entries.
                                         // Get the index of the wildcard.
                                         int wildcardIndex = entry.indexOf("*");
@@ -1211,8 +1076,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the black list.
                                             domainBlacklist.add(domainTripleEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " domain black list added: " + domain + " , " + firstEntry + " , " + realSecondEntry + " , " + thirdEntry +
                                             //        "  -  " + originalBlocklistEntry);
                                         } else {  // Process a domain black list double entry.
                                             // Create an entry string array.
@@ -1220,8 +1083,6 @@ public class BlocklistHelper {
 
                                             // Add the entry to the black list.
                                             domainBlacklist.add(domainDoubleEntry);
-
-                                            //Log.i("Blocklists", headers.get(1)[0] + " domain black list added: " + domain + " , " + firstEntry + " , " + secondEntry + "  -  " +
                                             //        originalBlocklistEntry);
                                         }
                                     } else {  // Process a domain black list single entry.
@@ -1230,8 +1091,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the black list.
                                         domainBlacklist.add(domainEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " domain black list added: " + domain + " , " + entry + "  -  " + originalBlocklistEntry);
                                     }
                                 } while (domains.contains("|"));
                             }
@@ -1258,16 +1117,12 @@ public class BlocklistHelper {
 
                             // Add the entry to the white list.
                             mainWhitelist.add(doubleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " main white list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                         } else {  // Process a white list single entry.
                             // Create an entry string array.
                             String[] singleEntry = {blocklistEntry, originalBlocklistEntry};
 
                             // Add the entry to the white list.
                             mainWhitelist.add(singleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " main white list added: " + blocklistEntry + "  -  + " + originalBlocklistEntry);
                         }
                     } else if (blocklistEntry.contains("\\")) {  // Process a regular expression black list entry.
                         // Remove the filter options.
@@ -1278,8 +1133,6 @@ public class BlocklistHelper {
 
                         // Add the entry to the black list.
                         regularExpressionBlacklist.add(singleEntry);
-
-                        //Log.i("Blocklists", headers.get(1)[0] + " regular expression black list added: " + blocklistEntry + "  -  " + originalBlocklistEntry);
                     } else {  // Black list entries.
                         // Remove the filter options.
                         if (!blocklistEntry.contains("$file")) {  // EasyPrivacy contains an entry with `$file` that does not have filter options.
@@ -1294,6 +1147,7 @@ public class BlocklistHelper {
                         if (blocklistEntry.startsWith("|")) {  // Initial black list entries.
                             // Strip the initial `|`.
                             String entry = blocklistEntry.substring(1);
+                            hostAnchored = false;
 
                             if (entry.contains("*")) {  // Process an initial black list double entry.
                                 // Get the index of the wildcard.
@@ -1308,16 +1162,12 @@ public class BlocklistHelper {
 
                                 // Add the entry to the black list.
                                 initialBlacklist.add(doubleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " initial black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                             } else {  // Process an initial black list single entry.
                                 // Create an entry string array.
                                 String[] singleEntry = {entry, originalBlocklistEntry};
 
                                 // Add the entry to the black list.
                                 initialBlacklist.add(singleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " initial black list added: " + entry + "  -  " + originalBlocklistEntry);
                             }
                         } else if (blocklistEntry.endsWith("|")) {  // Final black list entries.
                             // Ignore entries with `object` filters.  They can block entire websites and don't have any meaning in the context of Privacy Browser.
@@ -1346,8 +1196,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the black list.
                                         finalBlacklist.add(tripleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " final black list added: " + firstEntry + " , " + realSecondEntry + " , " + thirdEntry + "  -  " +
                                         //        originalBlocklistEntry);
                                     } else {  // Process a final black list double entry.
                                         // Create an entry string array.
@@ -1355,8 +1203,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the black list.
                                         finalBlacklist.add(doubleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " final black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                                     }
                                 } else {  // Process a final black list single entry.
                                     // Create an entry sting array.
@@ -1364,8 +1210,6 @@ public class BlocklistHelper {
 
                                     // Add the entry to the black list.
                                     finalBlacklist.add(singleEntry);
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " final black list added: " + entry + "  -  " + originalBlocklistEntry);
                                 }
                             }
                         } else if (blocklistEntry.contains("*")) {  // There are two or more entries.
@@ -1389,16 +1233,12 @@ public class BlocklistHelper {
 
                                 // Add the entry to the black list.
                                 mainBlacklist.add(tripleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " main black list added: " + firstEntry + " , " + realSecondEntry + " , " + thirdEntry + "  -  " + originalBlocklistEntry);
                             } else {  // Process a main black list double entry.
                                 // Create an entry string array.
                                 String[] doubleEntry = {firstEntry, secondEntry, originalBlocklistEntry};
 
                                 // Add the entry to the black list.
                                 mainBlacklist.add(doubleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " main black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                             }
                         } else {  // Process a main black list single entry.
                             // Create an entry string array.
@@ -1406,19 +1246,19 @@ public class BlocklistHelper {
 
                             // Add the entry to the black list.
                             mainBlacklist.add(singleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " main black list added: " + blocklistEntry + "  -  " + originalBlocklistEntry);
                         }
                     }
                 } else {  // Main black list entries
-                    // Strip out any initial `||`.  These will be treated like any other entry.
+                    // Strip out any initial `||`, which is put back when the entry is added.
                     if (blocklistEntry.startsWith("||")) {
                         blocklistEntry = blocklistEntry.substring(2);
+                        hostAnchored = true;
                     }
 
                     // Strip out any initial `*`.
                     if (blocklistEntry.startsWith("*")) {
                         blocklistEntry = blocklistEntry.substring(1);
+                        hostAnchored = false;
                     }
 
                     // Strip out any trailing `*`.
@@ -1429,6 +1269,7 @@ public class BlocklistHelper {
                     if (blocklistEntry.startsWith("|")) {  // Initial black list entries.
                         // Strip the initial `|`.
                         String entry = blocklistEntry.substring(1);
+                        hostAnchored = false;
 
                         if (entry.contains("*")) {  // Process an initial black list double entry.
                             // Get the index of the wildcard.
@@ -1443,16 +1284,12 @@ public class BlocklistHelper {
 
                             // Add the entry to the black list.
                             initialBlacklist.add(doubleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " initial black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                         } else {  // Process an initial black list single entry.
                             // Create an entry string array.
                             String[] singleEntry = {entry, originalBlocklistEntry};
 
                             // Add the entry to the black list.
                             initialBlacklist.add(singleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " initial black list added: " + entry + "  -  " + originalBlocklistEntry);
                         }
                     } else if (blocklistEntry.endsWith("|")) {  // Final black list entries.
                         // Strip the final `|`.
@@ -1479,8 +1316,6 @@ public class BlocklistHelper {
 
                                 // Add the entry to the black list.
                                 finalBlacklist.add(tripleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " final black list added: " + firstEntry + " , " + realSecondEntry + " , " + thirdEntry + "  -  " +
                                 //        originalBlocklistEntry);
                             } else {  // Process a final black list double entry.
                                 // Create an entry string array.
@@ -1488,8 +1323,6 @@ public class BlocklistHelper {
 
                                 // Add the entry to the black list.
                                 finalBlacklist.add(doubleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " final black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                             }
                         } else {  // Process a final black list single entry.
                             // Create an entry string array.
@@ -1497,8 +1330,6 @@ public class BlocklistHelper {
 
                             // Add the entry to the black list.
                             finalBlacklist.add(singleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " final black list added: " + entry + "  -  " + originalBlocklistEntry);
                         }
                     } else {  // Main black list entries.
                         if (blocklistEntry.contains("*")) {  // There are two or more entries.
@@ -1538,8 +1369,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the black list.
                                         mainBlacklist.add(quintupleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " main black list added: " + firstEntry + " , " + realSecondEntry + " , " + realThirdEntry + " , " +
                                         //        realFourthEntry + " , " + fifthEntry + "  -  " + originalBlocklistEntry);
                                     } else {  // Process a main black list quadruple entry.
                                         // Create an entry string array.
@@ -1547,8 +1376,6 @@ public class BlocklistHelper {
 
                                         // Add the entry to the black list.
                                         mainBlacklist.add(quadrupleEntry);
-
-                                        //Log.i("Blocklists", headers.get(1)[0] + " main black list added: " + firstEntry + " , " + realSecondEntry + " , " + realThirdEntry + " , " +
                                         //        fourthEntry + "  -  " + originalBlocklistEntry);
                                     }
                                 } else {  // Process a main black list triple entry.
@@ -1557,8 +1384,6 @@ public class BlocklistHelper {
 
                                     // Add the entry to the black list.
                                     mainBlacklist.add(tripleEntry);
-
-                                    //Log.i("Blocklists", headers.get(1)[0] + " main black list added: " + firstEntry + " , " + realSecondEntry + " , " + thirdEntry + "  -  " + originalBlocklistEntry);
                                 }
                             } else {  // Process a main black list double entry.
                                 // Create an entry string array.
@@ -1566,8 +1391,6 @@ public class BlocklistHelper {
 
                                 // Add the entry to the black list.
                                 mainBlacklist.add(doubleEntry);
-
-                                //Log.i("Blocklists", headers.get(1)[0] + " main black list added: " + firstEntry + " , " + secondEntry + "  -  " + originalBlocklistEntry);
                             }
                         } else {  // Process a main black list single entry.
                             // Create an entry string array.
@@ -1575,16 +1398,10 @@ public class BlocklistHelper {
 
                             // Add the entry to the black list.
                             mainBlacklist.add(singleEntry);
-
-                            //Log.i("Blocklists", headers.get(1)[0] + " main black list added: " + blocklistEntry + "  -  " + originalBlocklistEntry);
                         }
                     }
                 }
             }
-            // Close `bufferedReader`.
-            bufferedReader.close();
-        } catch (IOException e) {
-            // The asset exists, so the `IOException` will never be thrown.
         }
 
         // Initialize the combined list.
@@ -1619,503 +1436,105 @@ public class BlocklistHelper {
         combinedLists.add(thirdPartyDomainRegularExpressionBlacklist);  // 21.
         combinedLists.add(regularExpressionBlacklist);  // 22.
 
+        // Add the element hiding lists (23-24).
+        combinedLists.add(elementHidingList);  // 23.
+        combinedLists.add(elementHidingExceptionList);  // 24.
+
         return combinedLists;
     }
 
-    public String[] checkBlocklist(String currentDomain, String resourceUrl, boolean isThirdPartyRequest, ArrayList<List<String[]>> blocklist) {
-        // Get the blocklist name.
-        String BLOCK_LIST_NAME_STRING = blocklist.get(0).get(1)[0];
-
-        // Assert that currentDomain != null only if this is a third party request.  Apparently, lint can't tell that this isn't redundant.
-        //noinspection RedundantIfStatement
-        if (isThirdPartyRequest) {
-            assert currentDomain != null;
-        }
-
-        // Process the white lists.
-        // Main white list.
-        for (String[] whitelistEntry : blocklist.get(Integer.valueOf(MAIN_WHITELIST))) {
-            switch (whitelistEntry.length) {
-                case 2:  // There is one entry.
-                    if (resourceUrl.contains(whitelistEntry[0])) {
-                        // Return a whitelist match request allowed.
-                        return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, MAIN_WHITELIST, whitelistEntry[0], whitelistEntry[1]};
-                    }
-                    break;
-
-                case 3:  // There are two entries.
-                    if (resourceUrl.contains(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1])) {
-                        // Return a whitelist match request allowed.
-                        return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, MAIN_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1], whitelistEntry[2]};
-                    }
-                    break;
-
-                case 4:  // There are three entries.
-                    if (resourceUrl.contains(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2])) {
-                        // Return a whitelist match request allowed.
-                        return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, MAIN_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2], whitelistEntry[3]};
-                    }
-                    break;
+    private void parseElementHidingEntry(String blocklistEntry) {
+        // Find the first marker.
+        int markerStart = Integer.MAX_VALUE;
+        for (String marker : new String[] {"##", "#?#", "#@#"}) {
+            int markerIndex = blocklistEntry.indexOf(marker);
+            if (markerIndex != -1) {
+                markerStart = Math.min(markerStart, markerIndex);
             }
         }
 
-        // Final white list.
-        for (String[] whitelistEntry : blocklist.get(Integer.valueOf(FINAL_WHITELIST))) {
-            if (whitelistEntry.length == 2) {  // There is one entry.
-                if (resourceUrl.contains(whitelistEntry[0])) {
-                    // Return a whitelist match request allowed.
-                    return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, FINAL_WHITELIST, whitelistEntry[0], whitelistEntry[1]};
-                }
-            } else {  // There are two entries.
-                if (resourceUrl.contains(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1])) {
-                    // Return a whitelist match request allowed.
-                    return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, FINAL_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1], whitelistEntry[2]};
-                }
-            }
+        // Ignore the extended CSS entries, which contain `#?#`.
+        if (blocklistEntry.charAt(markerStart + 1) == '?') {
+            return;
         }
 
-        // Only check the domain lists if the current domain is not null (like `about:blank`).
-        if (currentDomain != null) {
-            // Domain white list.
-            for (String[] whitelistEntry : blocklist.get(Integer.valueOf(DOMAIN_WHITELIST))) {
-                switch (whitelistEntry.length) {
-                    case 3:  // There is one entry.
-                        if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1], whitelistEntry[2]};
-                        }
-                        break;
-
-                    case 4:  // There are two entries.
-                        if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2],
-                                    whitelistEntry[3]};
-                        }
-                        break;
-
-                    case 5:  // There are three entries.
-                        if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2]) && resourceUrl.contains(whitelistEntry[3])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2] + "\n" +
-                                    whitelistEntry[3], whitelistEntry[4]};
-                        }
-                        break;
-
-                    case 6:  // There are four entries.
-                        if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2]) && resourceUrl.contains(whitelistEntry[3]) &&
-                                resourceUrl.contains(whitelistEntry[4])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2] + "\n" +
-                                    whitelistEntry[3] + "\n" + whitelistEntry[4], whitelistEntry[5]};
-                        }
-                        break;
-                }
-            }
-
-            // Domain initial white list.
-            for (String[] whitelistEntry : blocklist.get(Integer.valueOf(DOMAIN_INITIAL_WHITELIST))) {
-                switch (whitelistEntry.length) {
-                    case 3:  // There is one entry.
-                        if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.startsWith(whitelistEntry[1])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_INITIAL_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1], whitelistEntry[2]};
-                        }
-                        break;
+        // Determine if the entry is an exception, which contains `#@#`.
+        boolean isException = (blocklistEntry.charAt(markerStart + 1) == '@');
 
-                    case 4:  // There are two entries.
-                        if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.startsWith(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_INITIAL_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2],
-                                    whitelistEntry[3]};
-                        }
-                        break;
+        // Get the selector, which follows the marker.
+        String selector = blocklistEntry.substring(markerStart + (isException ? 3 : 2)).trim();
 
-                    case 5:  // There are three entries.
-                        if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.startsWith(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2]) && resourceUrl.startsWith(whitelistEntry[3])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_INITIAL_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2] + "\n" +
-                                    whitelistEntry[3], whitelistEntry[4]};
-                        }
-                        break;
-                }
-            }
-
-            // Domain final white list.
-            for (String[] whitelistEntry : blocklist.get(Integer.valueOf(DOMAIN_FINAL_WHITELIST))) {
-                switch (whitelistEntry.length) {
-                    case 3:  // There is one entry;
-                        if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.endsWith(whitelistEntry[1])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_FINAL_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1], whitelistEntry[2]};
-                        }
-                        break;
-
-                    case 4:  // There are two entries;
-                        if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1]) && resourceUrl.endsWith(whitelistEntry[2])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_FINAL_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2],
-                                    whitelistEntry[3]};
-                        }
-                        break;
-                }
-            }
+        // Ignore the selectors that a style sheet can't use.
+        if (!ElementHidingStylesheets.isSupportedSelector(selector)) {
+            return;
         }
 
-        // Only check the third-party white lists if this is a third-party request.
-        if (isThirdPartyRequest) {
-            // Third-party white list.
-            for (String[] whitelistEntry : blocklist.get(Integer.valueOf(THIRD_PARTY_WHITELIST))) {
-                switch (whitelistEntry.length) {
-                    case 2:  // There is one entry
-                        if (resourceUrl.contains(whitelistEntry[0])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_WHITELIST, whitelistEntry[0], whitelistEntry[1]};
-                        }
-                        break;
+        // Get the list of the entry.
+        List<String[]> list = isException ? elementHidingExceptionList : elementHidingList;
 
-                    case 3:  // There are two entries.
-                        if (resourceUrl.contains(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1], whitelistEntry[2]};
-                        }
-                        break;
-
-                    case 4:  // There are three entries.
-                        if (resourceUrl.contains(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2],
-                                    whitelistEntry[3]};
-                        }
-                        break;
+        // Track if the entry has a domain it applies to.
+        boolean hasDomain = false;
 
-                    case 5:  // There are four entries.
-                        if (resourceUrl.contains(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2]) && resourceUrl.contains(whitelistEntry[3])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2] + "\n" +
-                                    whitelistEntry[3], whitelistEntry[4]};
-                        }
-                        break;
-
-                    case 6:  // There are five entries.
-                        if (resourceUrl.contains(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2]) && resourceUrl.contains(whitelistEntry[3]) &&
-                                resourceUrl.contains(whitelistEntry[4])) {
-                            // Return a whitelist match request allowed.
-                            return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2] + "\n" +
-                                    whitelistEntry[3] + "\n" + whitelistEntry[4], whitelistEntry[5]};
-                        }
-                        break;
+        // Add an entry for each domain.
+        for (String domain : blocklistEntry.substring(0, markerStart).split(",")) {
+            if (domain.startsWith("~")) {  // The entry doesn't apply to the domain.
+                // An element hiding entry is excepted on the domain.  The `~` domains of an exception are ignored.
+                if (!isException) {
+                    elementHidingExceptionList.add(new String[] {domain.substring(1), selector, blocklistEntry});
                 }
-            }
+            } else if (!domain.isEmpty()) {  // The entry applies to the domain.
+                // Add the entry.
+                list.add(new String[] {domain, selector, blocklistEntry});
 
-            // Third-party domain white list.
-            for (String[] whitelistEntry : blocklist.get(Integer.valueOf(THIRD_PARTY_DOMAIN_WHITELIST))) {
-                if (whitelistEntry.length == 3) {  // There is one entry.
-                    if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1])) {
-                        // Return a whitelist match request allowed.
-                        return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1], whitelistEntry[2]};
-                    }
-                } else {  // There are two entries.
-                    if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.contains(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2])) {
-                        // Return a whitelist match request allowed.
-                        return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2],
-                                whitelistEntry[3]};
-                    }
-                }
-            }
-
-            // Third-party domain initial white list.
-            for (String[] whitelistEntry : blocklist.get(Integer.valueOf(THIRD_PARTY_DOMAIN_INITIAL_WHITELIST))) {
-                if (whitelistEntry.length == 3) {  // There is one entry.
-                    if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.startsWith(whitelistEntry[1])) {
-                        // Return a whitelist match request allowed.
-                        return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_INITIAL_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1], whitelistEntry[2]};
-                    }
-                } else {  // There are two entries.
-                    if (currentDomain.endsWith(whitelistEntry[0]) && resourceUrl.startsWith(whitelistEntry[1]) && resourceUrl.contains(whitelistEntry[2])) {
-                        // Return a whitelist match request allowed.
-                        return new String[] {REQUEST_ALLOWED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_WHITELIST, whitelistEntry[0] + "\n" + whitelistEntry[1] + "\n" + whitelistEntry[2],
-                                whitelistEntry[3]};
-                    }
-                }
-            }
-        }
-
-        // Process the black lists.
-        // Main black list.
-        for (String[] blacklistEntry : blocklist.get(Integer.valueOf(MAIN_BLACKLIST))) {
-            switch (blacklistEntry.length) {
-                case 2:  // There is one entry.
-                    if (resourceUrl.contains(blacklistEntry[0])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, MAIN_BLACKLIST, blacklistEntry[0], blacklistEntry[1]};
-                    }
-                    break;
-
-                case 3:  // There are two entries.
-                    if (resourceUrl.contains(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, MAIN_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                    }
-                    break;
-
-                case 4:  // There are three entries.
-                    if (resourceUrl.contains(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, MAIN_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2], blacklistEntry[3]};
-                    }
-                    break;
-
-                case 5:  // There are four entries.
-                    if (resourceUrl.contains(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2]) && resourceUrl.contains(blacklistEntry[3])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, MAIN_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2] + "\n" +
-                                blacklistEntry[3], blacklistEntry[4]};
-                    }
-                    break;
-
-                case 6:  // There are five entries.
-                    if (resourceUrl.contains(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2]) && resourceUrl.contains(blacklistEntry[3]) &&
-                            resourceUrl.contains(blacklistEntry[4])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, MAIN_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2] + "\n" +
-                                blacklistEntry[3] + "\n" + blacklistEntry[4], blacklistEntry[5]};
-                    }
-                    break;
+                // Note that the entry has a domain.
+                hasDomain = true;
             }
         }
 
-        // Initial black list.
-        for (String[] blacklistEntry : blocklist.get(Integer.valueOf(INITIAL_BLACKLIST))) {
-            if (blacklistEntry.length == 2) {  // There is one entry.
-                if (resourceUrl.startsWith(blacklistEntry[0])) {
-                    // Return a blacklist match request blocked.
-                    return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, INITIAL_BLACKLIST, blacklistEntry[0], blacklistEntry[1]};
-                }
-            } else {  // There are two entries
-                if (resourceUrl.startsWith(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1])) {
-                    // Return a blacklist match request blocked.
-                    return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, INITIAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                }
-            }
+        // Entries without a domain they apply to are generic, and are stored with an empty domain.
+        if (!hasDomain) {
+            list.add(new String[] {"", selector, blocklistEntry});
         }
+    }
 
-        // Final black list.
-        for (String[] blacklistEntry : blocklist.get(Integer.valueOf(FINAL_BLACKLIST))) {
-            switch (blacklistEntry.length) {
-                case 2:  // There is one entry.
-                    if (resourceUrl.endsWith(blacklistEntry[0])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, FINAL_BLACKLIST, blacklistEntry[0], blacklistEntry[1]};
-                    }
-                    break;
-
-                case 3:  // There are two entries.
-                    if (resourceUrl.contains(blacklistEntry[0]) && resourceUrl.endsWith(blacklistEntry[1])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, FINAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                    }
-                    break;
-
-                case 4:  // There are three entries.
-                    if (resourceUrl.contains(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.endsWith(blacklistEntry[2])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, FINAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2], blacklistEntry[3]};
-                    }
-                    break;
+    private static boolean contains(int[] array, int value) {
+        // Search the array.
+        for (int arrayValue : array) {
+            if (arrayValue == value) {
+                return true;
             }
         }
 
-        // Only check the domain lists if the current domain is not null (like `about:blank`).
-        if (currentDomain != null) {
-            // Domain black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(DOMAIN_BLACKLIST))) {
-                switch (blacklistEntry.length) {
-                    case 3:  // There is one entry.
-                        if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                        }
-                        break;
-
-                    case 4:  // There are two entries.
-                        if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2],
-                                    blacklistEntry[3]};
-                        }
-                        break;
+        // The value wasn't found.
+        return false;
+    }
 
-                    case 5:  // There are three entries.
-                        if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2]) && resourceUrl.contains(blacklistEntry[3])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2] + "\n" +
-                                    blacklistEntry[3], blacklistEntry[4]};
-                        }
-                        break;
-                }
-            }
+    // A request sublist puts back the `||` that was stripped from the line when an entry that starts right after it is added.
+    private class Sublist extends ArrayList<String[]> {
+        // The sublists are never serialized, but `ArrayList` is serializable.
+        private final static long serialVersionUID = 1L;
 
-            // Domain initial black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(DOMAIN_INITIAL_BLACKLIST))) {
-                // Store the entry in the resource request log.
-                if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.startsWith(blacklistEntry[1])) {
-                    // Return a blacklist match request blocked.
-                    return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_INITIAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                }
-            }
+        // Whether the sublist keeps the `||`, which the regular expression sublists don't.
+        private final boolean keepsHostAnchor;
 
-            // Domain final black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(DOMAIN_FINAL_BLACKLIST))) {
-                switch (blacklistEntry.length) {
-                    case 3:  // There is one entry.
-                        if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.endsWith(blacklistEntry[1])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_FINAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                        }
-                        break;
+        // The first fragment of the entries, which follows the domain in the domain sublists.
+        private final int firstFragment;
 
-                    case 4:  // There are two entries.
-                        if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.endsWith(blacklistEntry[2])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_FINAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2],
-                                    blacklistEntry[3]};
-                        }
-                        break;
-                }
-            }
-
-            // Domain regular expression black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(DOMAIN_REGULAR_EXPRESSION_BLACKLIST))) {
-                if (currentDomain.endsWith(blacklistEntry[0]) && Pattern.matches(blacklistEntry[1], resourceUrl)) {
-                    // Return a blacklist match request blocked.
-                    return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, DOMAIN_REGULAR_EXPRESSION_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                }
-            }
+        Sublist(int sublist) {
+            // Get the layout of the sublist.
+            keepsHostAnchor = !ReferenceBlocklistParser.contains(REGULAR_EXPRESSION_SUBLISTS, sublist);
+            firstFragment = ReferenceBlocklistParser.contains(DOMAIN_SUBLISTS, sublist) ? 1 : 0;
         }
 
-        // Only check the third-party black lists if this is a third-party request.
-        if (isThirdPartyRequest) {
-            // Third-party black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(THIRD_PARTY_BLACKLIST))) {
-                switch (blacklistEntry.length) {
-                    case 2:  // There is one entry.
-                        if (resourceUrl.contains(blacklistEntry[0])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_BLACKLIST, blacklistEntry[0], blacklistEntry[1]};
-                        }
-                        break;
-
-                    case 3:  // There are two entries.
-                        if (resourceUrl.contains(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                        }
-                        break;
-
-                    case 4:  // There are three entries.
-                        if (resourceUrl.contains(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2],
-                                    blacklistEntry[3]};
-                        }
-                        break;
-
-                    case 5:  // There are four entries.
-                        if (resourceUrl.contains(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2]) && resourceUrl.contains(blacklistEntry[3])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2] + "\n" +
-                                    blacklistEntry[3], blacklistEntry[4]};
-                        }
-                        break;
-                }
+        @Override
+        public boolean add(String[] entry) {
+            // Put back the `||` in the first fragment.
+            if (hostAnchored && keepsHostAnchor) {
+                entry[firstFragment] = "||" + entry[firstFragment];
             }
 
-            // Third-party initial black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(THIRD_PARTY_INITIAL_BLACKLIST))) {
-                if (blacklistEntry.length == 2) {  // There is one entry.
-                    if (resourceUrl.startsWith(blacklistEntry[0])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_INITIAL_BLACKLIST, blacklistEntry[0], blacklistEntry[1]};
-                    }
-                } else {  // There are two entries.
-                    if (resourceUrl.startsWith(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_INITIAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                    }
-                }
-            }
-
-            // Third-party domain black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(THIRD_PARTY_DOMAIN_BLACKLIST))) {
-                if (blacklistEntry.length == 3) {  // There is one entry.
-                    if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                    }
-                } else { // There are two entries.
-                    if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.contains(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2])) {
-                        // Return a blacklist match request blocked.
-                        return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" + blacklistEntry[2],
-                                blacklistEntry[3]};
-                    }
-                }
-            }
-
-            // Third-party domain initial black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(THIRD_PARTY_DOMAIN_INITIAL_BLACKLIST))) {
-                switch (blacklistEntry.length) {
-                    case 3:  // There is one entry.
-                        if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.startsWith(blacklistEntry[1])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_INITIAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                        }
-                        break;
-
-                    case 4:  // There are two entries.
-                        if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.startsWith(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_INITIAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" +
-                                    blacklistEntry[2], blacklistEntry[3]};
-                        }
-                        break;
-
-                    case 5:  // There are three entries.
-                        if (currentDomain.endsWith(blacklistEntry[0]) && resourceUrl.startsWith(blacklistEntry[1]) && resourceUrl.contains(blacklistEntry[2]) && resourceUrl.contains(blacklistEntry[3])) {
-                            // Return a blacklist match request blocked.
-                            return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_INITIAL_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1] + "\n" +
-                                    blacklistEntry[2] + "\n" + blacklistEntry[3], blacklistEntry[4]};
-                        }
-                        break;
-                }
-            }
-
-            // Third-party regular expression black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(THIRD_PARTY_REGULAR_EXPRESSION_BLACKLIST))) {
-                if (Pattern.matches(blacklistEntry[0], resourceUrl)) {
-                    // Return a blacklist match request blocked.
-                    return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_REGULAR_EXPRESSION_BLACKLIST, blacklistEntry[0], blacklistEntry[1]};
-                }
-            }
-
-            // Third-party domain regular expression black list.
-            for (String[] blacklistEntry : blocklist.get(Integer.valueOf(THIRD_PARTY_DOMAIN_REGULAR_EXPRESSION_BLACKLIST))) {
-                if (currentDomain.endsWith(blacklistEntry[0]) && Pattern.matches(blacklistEntry[1], resourceUrl)) {
-                    // Return a blacklist match request blocked.
-                    return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, THIRD_PARTY_DOMAIN_REGULAR_EXPRESSION_BLACKLIST, blacklistEntry[0] + "\n" + blacklistEntry[1], blacklistEntry[2]};
-                }
-            }
-        }
-
-        // Regular expression black list.
-        for (String[] blacklistEntry : blocklist.get(Integer.valueOf(REGULAR_EXPRESSION_BLACKLIST))) {
-            if (Pattern.matches(blacklistEntry[0], resourceUrl)) {
-                // Return a blacklist match request blocked.
-                return new String[] {REQUEST_BLOCKED, resourceUrl, BLOCK_LIST_NAME_STRING, REGULAR_EXPRESSION_BLACKLIST, blacklistEntry[0], blacklistEntry[1]};
-            }
+            // Add the entry.
+            return super.add(entry);
         }
-
-        // Return a no match request default.
-        return new String[] {REQUEST_DEFAULT};
     }
-}
\ No newline at end of file
+}
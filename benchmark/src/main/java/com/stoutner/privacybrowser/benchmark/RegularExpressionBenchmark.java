@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.Blocklist;
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.LinearRegularExpression;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Measure the time it takes to match an adversarial URL against every regular expression of the bundled blocklists, with `LinearRegularExpression` and with `java.util.regex`.
+// The URL repeats `-a!` and ends with a character none of the regular expressions accept there, which makes `java.util.regex` backtrack through the `.*` and the quantified character classes.
+// The time of the linear regular expressions grows with the length of the URL, while the time of `java.util.regex` grows with its square or worse.
+// The regular expressions are stored with the slashes that surround them in the blocklists, which are removed here so that the patterns are matched as their authors wrote them.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegularExpressionBenchmark {
+    // The regular expression engine.
+    @Param({"linear", "javaUtilRegex"})
+    public String engine;
+
+    // The length of the adversarial URL.
+    @Param({"256", "1024", "4096"})
+    public int urlLength;
+
+    // The sublists that hold regular expressions.
+    private final static int[] REGULAR_EXPRESSION_SUBLISTS = {15, 20, 21, 22};
+
+    // The domain regular expression sublists, whose entries begin with a domain that is followed by the regular expression.
+    private final static int DOMAIN_REGULAR_EXPRESSION_SUBLIST = 15;
+    private final static int THIRD_PARTY_DOMAIN_REGULAR_EXPRESSION_SUBLIST = 21;
+
+    // The compiled regular expressions of the selected engine.
+    private LinearRegularExpression[] linearRegularExpressions;
+    private Pattern[] patterns;
+
+    // The adversarial URL.
+    private String url;
+
+    @Setup
+    public void compileRegularExpressions() throws IOException {
+        // Load the blocklists.
+        Blocklist[] blocklists = BenchmarkBlocklists.loadBlocklists(new BlocklistHelper());
+
+        // Collect the unique regular expressions, without the slashes that surround them.
+        LinkedHashSet<String> regularExpressions = new LinkedHashSet<>();
+        for (Blocklist blocklist : blocklists) {
+            for (int sublist : REGULAR_EXPRESSION_SUBLISTS) {
+                // Get the position of the regular expression in the entries.
+                int regularExpressionIndex = ((sublist == DOMAIN_REGULAR_EXPRESSION_SUBLIST) || (sublist == THIRD_PARTY_DOMAIN_REGULAR_EXPRESSION_SUBLIST)) ? 1 : 0;
+
+                // Add each regular expression.
+                for (String[] entry : blocklist.getSublist(sublist)) {
+                    String regularExpression = entry[regularExpressionIndex];
+                    regularExpressions.add(regularExpression.substring(1, regularExpression.length() - 1));
+                }
+            }
+        }
+
+        // Compile the regular expressions with the selected engine.  Every regular expression of the bundled blocklists is supported by the linear engine.
+        if (engine.equals("linear")) {
+            linearRegularExpressions = regularExpressions.stream().map(LinearRegularExpression::compile).toArray(LinearRegularExpression[]::new);
+        } else {
+            patterns = regularExpressions.stream().map(Pattern::compile).toArray(Pattern[]::new);
+        }
+
+        // Build the adversarial URL.
+        StringBuilder urlStringBuilder = new StringBuilder("http://a.b/1");
+        while (urlStringBuilder.length() < urlLength - 1) {
+            urlStringBuilder.append("-a!");
+        }
+        urlStringBuilder.append('!');
+        url = urlStringBuilder.toString();
+    }
+
+    @Benchmark
+    public int matchRegularExpressions() {
+        // Count the matches.  Returning the count keeps JMH from optimizing the matching away.
+        int matches = 0;
+
+        // Match the URL against every regular expression.
+        if (linearRegularExpressions != null) {
+            for (LinearRegularExpression linearRegularExpression : linearRegularExpressions) {
+                if (linearRegularExpression.matches(url)) {
+                    matches++;
+                }
+            }
+        } else {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(url).matches()) {
+                    matches++;
+                }
+            }
+        }
+
+        // Return the number of matches.
+        return matches;
+    }
+}
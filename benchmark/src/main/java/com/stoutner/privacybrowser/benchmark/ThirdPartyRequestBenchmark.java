@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.RegistrableDomainCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Measure the latency of `BlocklistHelper.isThirdPartyRequest()` for each request of the corpus, with the public suffix list and with the last two labels used before it is loaded.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ThirdPartyRequestBenchmark {
+    // How the registrable domains are found.
+    @Param({"publicSuffixList", "lastTwoLabels"})
+    public String registrableDomains;
+
+    // The registrable domain cache, which is null when the last two labels are used.
+    private RegistrableDomainCache registrableDomainCache;
+
+    // The requests and the index of the next one.
+    private UrlCorpus.Request[] requests;
+    private int nextRequest;
+
+    @Setup
+    public void loadPublicSuffixList() throws IOException {
+        // Create the registrable domain cache with the size the app uses.
+        if (registrableDomains.equals("publicSuffixList")) {
+            registrableDomainCache = new RegistrableDomainCache(BenchmarkBlocklists.loadPublicSuffixList(), 1024);
+        }
+
+        // Load the requests.
+        requests = UrlCorpus.load(UrlCorpus.ALL);
+    }
+
+    @Benchmark
+    public boolean isThirdPartyRequest() {
+        // Get the next request.
+        UrlCorpus.Request request = requests[nextRequest];
+
+        // Advance to the following request, wrapping around at the end of the corpus.
+        nextRequest++;
+        if (nextRequest == requests.length) {
+            nextRequest = 0;
+        }
+
+        // Check the request.  Returning the result keeps JMH from optimizing the check away.
+        return BlocklistHelper.isThirdPartyRequest(request.currentDomain, request.url, registrableDomainCache);
+    }
+}
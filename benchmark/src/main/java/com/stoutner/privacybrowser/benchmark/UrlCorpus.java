@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.ResourceTypes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+// The URL corpus is a checked-in list of resource requests.  It is frozen, so that the benchmark results of different commits measure the same requests.  The requests added since are in the additions,
+// which are generated by `UrlCorpusGenerator`.  Each line has a category, the current domain, whether the request is third-party, and the resource URL, separated by tabs.  Lines beginning with `#` are comments.
+class UrlCorpus {
+    // The corpus resource name.
+    final static String RESOURCE_NAME = "url_corpus.tsv";
+
+    // The resource name of the additions, which aren't used by the benchmarks.
+    final static String ADDITIONS_RESOURCE_NAME = "url_corpus_additions.tsv";
+
+    // The categories, which describe how the bundled blocklists decided each request when the file was generated.
+    final static String FIRST_PARTY = "first-party";
+    final static String THIRD_PARTY = "third-party";
+    final static String WHITELISTED = "whitelisted";
+    final static String BLOCKED = "blocked";
+
+    // The pseudo-category that contains every request.
+    final static String ALL = "all";
+
+    // A resource request from the corpus.  The corpus doesn't have `Accept` headers, so the resource type is guessed from the URL alone.
+    static class Request {
+        final String currentDomain;
+        final boolean isThirdPartyRequest;
+        final String url;
+        final int resourceType;
+
+        Request(String currentDomain, boolean isThirdPartyRequest, String url) {
+            // Store the values.
+            this.currentDomain = currentDomain;
+            this.isThirdPartyRequest = isThirdPartyRequest;
+            this.url = url;
+
+            // Guess the resource type.
+            resourceType = ResourceTypes.getResourceType(url, null);
+        }
+    }
+
+    // Load the requests of the category from the frozen corpus, in corpus order.
+    static Request[] load(String category) throws IOException {
+        // Load the requests from the frozen corpus.
+        return load(RESOURCE_NAME, category);
+    }
+
+    // Load the requests of the category from the corpus resource, in corpus order.
+    static Request[] load(String resourceName, String category) throws IOException {
+        // Initialize the requests.
+        ArrayList<Request> requests = new ArrayList<>();
+
+        // Open the corpus.
+        InputStream corpusInputStream = UrlCorpus.class.getResourceAsStream(resourceName);
+
+        // The corpus is part of the benchmark module, so it should always be there.
+        if (corpusInputStream == null) {
+            throw new IOException("The URL corpus " + resourceName + " is missing.");
+        }
+
+        // Read the corpus.
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(corpusInputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                // Skip comments and empty lines.
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                // Split the line into its four fields.  The URL is last, so it may contain anything but a line break.
+                String[] fields = line.split("\t", 4);
+
+                // Add the request if it is in the category.
+                if (category.equals(ALL) || category.equals(fields[0])) {
+                    requests.add(new Request(fields[1], Boolean.parseBoolean(fields[2]), fields[3]));
+                }
+            }
+        }
+
+        // A category without requests would make the benchmark meaningless.
+        if (requests.isEmpty()) {
+            throw new IOException("The URL corpus " + resourceName + " has no " + category + " requests.");
+        }
+
+        // Return the requests.
+        return requests.toArray(new Request[0]);
+    }
+}
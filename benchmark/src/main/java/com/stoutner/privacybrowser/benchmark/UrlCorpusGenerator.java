@@ -0,0 +1,236 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.benchmark;
+
+import com.stoutner.privacybrowser.helpers.Blocklist;
+import com.stoutner.privacybrowser.helpers.BlocklistHelper;
+import com.stoutner.privacybrowser.helpers.CombinedBlocklist;
+import com.stoutner.privacybrowser.helpers.PublicSuffixList;
+import com.stoutner.privacybrowser.helpers.RegistrableDomainCache;
+import com.stoutner.privacybrowser.helpers.ResourceTypes;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+// Generate the URL corpus additions, which are checked along with the frozen URL corpus by `BlocklistEngineCheck`.  The frozen corpus is never regenerated, so that benchmark results from different commits
+// measure the same requests.  The additions cover what the blocklist engine has learned since the corpus was frozen, like host anchors and the public suffix list, and are regenerated with:
+//     ./gradlew :benchmark:generateUrlCorpus
+// The requests are a mix of made up URLs and URLs built from the blocklist entries, sorted into categories by how the bundled blocklists decide them.
+public class UrlCorpusGenerator {
+    // The words used to make up domains and paths.
+    private final static String[] WORDS = {"news", "cdn", "static", "img", "api", "www", "media", "assets", "video", "shop", "blog", "app", "js", "css", "lib", "core", "main", "v2", "content", "files"};
+
+    // The top level domains used to make up domains.
+    private final static String[] TOP_LEVEL_DOMAINS = {"com", "org", "net", "co.uk", "de", "io"};
+
+    // The sublists whose entries begin with a domain.
+    private final static int[] DOMAIN_SUBLISTS = {3, 4, 5, 7, 8, 12, 13, 14, 15, 18, 19, 21};
+
+    // The sublists whose entries must match the beginning of the URL.
+    private final static int[] INITIAL_SUBLISTS = {4, 8, 10, 13, 17, 19};
+
+    // The sublists that hold regular expressions, which can't be turned back into URLs.
+    private final static int[] REGULAR_EXPRESSION_SUBLISTS = {15, 20, 21, 22};
+
+    // The random seed, which keeps the corpus reproducible.
+    private final static long RANDOM_SEED = 42;
+
+    public static void main(String[] arguments) throws IOException {
+        // Get the output file and the number of requests in each category.
+        String outputFileName = arguments[0];
+        int requestsPerCategory = (arguments.length > 1) ? Integer.parseInt(arguments[1]) : 1000;
+
+        // Load the blocklists.
+        BlocklistHelper blocklistHelper = new BlocklistHelper();
+        Blocklist[] blocklists = BenchmarkBlocklists.loadBlocklists(blocklistHelper);
+        CombinedBlocklist combinedBlocklist = CombinedBlocklist.createMerged(blocklists);
+
+        // Load the public suffix list.
+        PublicSuffixList publicSuffixList = BenchmarkBlocklists.loadPublicSuffixList();
+        RegistrableDomainCache registrableDomainCache = new RegistrableDomainCache(publicSuffixList, 1024);
+
+        // Initialize the random number generator.
+        Random random = new Random(RANDOM_SEED);
+
+        // Make up some current domains.
+        List<String> currentDomains = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            currentDomains.add(getRandomWord(random) + getRandomWord(random) + "." + TOP_LEVEL_DOMAINS[random.nextInt(TOP_LEVEL_DOMAINS.length)]);
+        }
+
+        // Add current domains from the domain sublists, so that the domain entries get a chance to match.
+        for (Blocklist blocklist : blocklists) {
+            for (int sublist : DOMAIN_SUBLISTS) {
+                List<String[]> entries = blocklist.getSublist(sublist);
+                for (int i = 0; i < Math.min(40, entries.size()); i++) {
+                    currentDomains.add("www." + entries.get(random.nextInt(entries.size()))[0]);
+                }
+            }
+        }
+
+        // Initialize the requests of each category.
+        String[] categories = {UrlCorpus.FIRST_PARTY, UrlCorpus.THIRD_PARTY, UrlCorpus.WHITELISTED, UrlCorpus.BLOCKED};
+        HashMap<String, List<String>> categoryRequests = new HashMap<>();
+        for (String category : categories) {
+            categoryRequests.put(category, new ArrayList<>());
+        }
+
+        // Generate requests until every category is full.  The attempts are limited in case the blocklists stop producing a category.
+        int fullCategories = 0;
+        for (int attempt = 0; (fullCategories < categories.length) && (attempt < 1000 * requestsPerCategory); attempt++) {
+            // Pick the current domain.
+            String currentDomain = currentDomains.get(random.nextInt(currentDomains.size()));
+
+            // Pick the request host, which is on the current domain a third of the time.
+            String host = (random.nextInt(3) == 0) ? getRandomWord(random) + "." + publicSuffixList.getRegistrableDomain(currentDomain) :
+                    getRandomWord(random) + "." + getRandomWord(random) + getRandomWord(random) + "." + TOP_LEVEL_DOMAINS[random.nextInt(TOP_LEVEL_DOMAINS.length)];
+
+            // Generate the URL.
+            String url;
+            if (random.nextBoolean()) {  // Make up the URL.
+                // Add a few path segments.
+                StringBuilder urlStringBuilder = new StringBuilder("https://" + host);
+                int numberOfSegments = 1 + random.nextInt(4);
+                for (int i = 0; i < numberOfSegments; i++) {
+                    urlStringBuilder.append('/').append(getRandomWord(random));
+                }
+
+                // Add a file name.
+                urlStringBuilder.append(random.nextBoolean() ? ".js" : ".png?v=" + random.nextInt(1000));
+
+                // Store the URL.
+                url = urlStringBuilder.toString();
+            } else {  // Build the URL from a blocklist entry.
+                // Pick the entry.
+                int sublist = 1 + random.nextInt(BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS - 1);
+                List<String[]> entries = blocklists[random.nextInt(blocklists.length)].getSublist(sublist);
+                if (entries.isEmpty() || contains(REGULAR_EXPRESSION_SUBLISTS, sublist)) {
+                    continue;
+                }
+                String[] entry = entries.get(random.nextInt(entries.size()));
+
+                // Request the entry from its own domain.  The last item of an entry is the original entry.
+                int firstFragment = 0;
+                if (contains(DOMAIN_SUBLISTS, sublist)) {
+                    currentDomain = (random.nextBoolean() ? "www." : "") + entry[0];
+                    firstFragment = 1;
+                }
+
+                // Start with the host unless the entry must match the beginning of the URL.  A fragment with a host anchor supplies its own host.
+                StringBuilder urlStringBuilder = new StringBuilder();
+                if (entry[firstFragment].startsWith("||")) {
+                    urlStringBuilder.append("https://");
+                } else if (!contains(INITIAL_SUBLISTS, sublist)) {
+                    urlStringBuilder.append("https://").append(host).append('/');
+                }
+
+                // Join the fragments of the entry with random words, which the wildcards between them match.  The host anchors are removed and the separators become slashes.
+                for (int fragment = firstFragment; fragment < entry.length - 1; fragment++) {
+                    urlStringBuilder.append(entry[fragment].replace("||", "").replace('^', '/'));
+                    if (fragment < entry.length - 2) {
+                        urlStringBuilder.append(getRandomWord(random));
+                    }
+                }
+
+                // Sometimes add a query.
+                if (random.nextInt(3) == 0) {
+                    urlStringBuilder.append("?x=").append(random.nextInt(100));
+                }
+
+                // Store the URL.
+                url = urlStringBuilder.toString();
+            }
+
+            // Determine if the request is third-party.
+            boolean isThirdPartyRequest = BlocklistHelper.isThirdPartyRequest(currentDomain, url, registrableDomainCache);
+
+            // Check the request with every blocklist enabled.  The resource type is guessed from the URL, like `UrlCorpus` does.
+            long match = blocklistHelper.checkBlocklists(currentDomain, url, isThirdPartyRequest, ResourceTypes.getResourceType(url, null), combinedBlocklist, BenchmarkBlocklists.ALL_BLOCKLISTS_MASK);
+
+            // Categorize the request.
+            String category;
+            if (match == BlocklistHelper.NO_MATCH) {
+                category = isThirdPartyRequest ? UrlCorpus.THIRD_PARTY : UrlCorpus.FIRST_PARTY;
+            } else {
+                category = BlocklistHelper.isBlockedMatch(match) ? UrlCorpus.BLOCKED : UrlCorpus.WHITELISTED;
+            }
+
+            // Add the request if its category isn't full.  Tabs and line breaks would break the corpus format.
+            List<String> requests = categoryRequests.get(category);
+            if ((requests.size() < requestsPerCategory) && (url.indexOf('\t') == -1) && (url.indexOf('\n') == -1) && (url.indexOf('\r') == -1)) {
+                requests.add(category + "\t" + currentDomain + "\t" + isThirdPartyRequest + "\t" + url);
+
+                // Note when the category is full.
+                if (requests.size() == requestsPerCategory) {
+                    fullCategories++;
+                }
+            }
+        }
+
+        // Shuffle the categories together, so that the `all` category is a mix.
+        List<String> allRequests = new ArrayList<>();
+        for (String category : categories) {
+            allRequests.addAll(categoryRequests.get(category));
+        }
+        Collections.shuffle(allRequests, random);
+
+        // Write the corpus.
+        try (PrintWriter printWriter = new PrintWriter(new OutputStreamWriter(new FileOutputStream(outputFileName), StandardCharsets.UTF_8))) {
+            // Describe the corpus.
+            printWriter.println("# The URL corpus additions, generated by UrlCorpusGenerator.  Do not edit them by hand.");
+            printWriter.println("# Category, current domain, third-party request, and URL, separated by tabs.");
+
+            // Write the requests.
+            for (String request : allRequests) {
+                printWriter.println(request);
+            }
+        }
+
+        // Report the size of each category.
+        for (String category : categories) {
+            System.out.println(category + ": " + categoryRequests.get(category).size() + " requests.");
+        }
+    }
+
+    private static String getRandomWord(Random random) {
+        // Return a random word.
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static boolean contains(int[] array, int value) {
+        // Search the array.
+        for (int arrayValue : array) {
+            if (arrayValue == value) {
+                return true;
+            }
+        }
+
+        // The value wasn't found.
+        return false;
+    }
+}
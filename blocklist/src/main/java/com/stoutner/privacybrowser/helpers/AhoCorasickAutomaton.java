@@ -0,0 +1,512 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// The Aho-Corasick automaton finds every fragment of a sublist that is contained in a URL in one pass over the URL.
+// It is used for the sublists whose entries match when the URL contains all of their fragments in order.  The automaton holds the literal pieces of fragments with anchors.
+// The entries with anchors or with more than one fragment are checked with `FragmentMatcher` once all their pieces are found, because the automaton doesn't know where the pieces are.
+public class AhoCorasickAutomaton {
+    // The root node of the trie.
+    private final static int ROOT = 0;
+
+    // The children of each node are stored sorted by character.  The children of node `n` are in `childCharacters` and `childNodes` from `childStart[n]` to `childStart[n + 1]`.
+    private final int[] childStart;
+    private final char[] childCharacters;
+    private final int[] childNodes;
+
+    // The children of the root for each ASCII character, or -1.  Most characters of a URL are read at the root, so its children are looked up directly instead of searched.
+    private final int[] rootChildren = new int[128];
+
+    // The node to move to when a node has no child for the next character.
+    private final int[] failureLinks;
+
+    // The fragment that ends at each node, or -1.
+    private final int[] nodeFragments;
+
+    // The nearest node on the failure chain that ends a fragment, or -1.
+    private final int[] outputLinks;
+
+    // The fragments of each entry are listed in `entryFragments` from `entryFragmentStart[e]` to `entryFragmentStart[e + 1]`.
+    private final int[] entryFragmentStart;
+    private final int[] entryFragments;
+
+    // The sublist, and whether each entry has anchors or more than one fragment, which needs to be checked after all its pieces are found.
+    private final List<String[]> sublist;
+    private final boolean[] checkedEntries;
+
+    // The entries that are triggered by each fragment, in ascending order.  Each entry is triggered by its longest fragment.
+    private final int[][] triggeredEntries;
+
+    // The entries that only contain empty fragments, which are contained in every URL.
+    private final int[] alwaysMatchingEntries;
+
+    // The number of unique fragments.  The empty fragment, if any, is always fragment 0 and is never reported by the automaton.
+    private final int numberOfFragments;
+
+    // Each thread keeps its own scratch space for recording which fragments were found in a URL.
+    private final ThreadLocal<Scratch> scratchThreadLocal;
+
+    // Only the included entries are added to the automaton, which lets the entries that are looked up another way be left out.
+    public AhoCorasickAutomaton(List<String[]> sublist, int maximumNumberOfFragments, boolean[] includedEntries) {
+        // Store the sublist.
+        this.sublist = sublist;
+
+        // Get the number of entries.
+        int numberOfEntries = sublist.size();
+
+        // Initialize the checked entries.
+        checkedEntries = new boolean[numberOfEntries];
+
+        // Assign an ID to each unique fragment.  The empty fragment is assigned ID 0.
+        HashMap<String, Integer> fragmentIds = new HashMap<>();
+        fragmentIds.put("", 0);
+
+        // Split the fragments of each included entry into their literal pieces.  Plain fragments are their own piece.
+        String[][] entryPieces = new String[numberOfEntries][];
+        int numberOfEntryFragments = 0;
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            // Get the entry.
+            String[] entry = sublist.get(entryIndex);
+
+            // Entries with more fragments than the sublist allows never match, so they are left out along with the entries that aren't included.
+            if ((entry.length - 1 > maximumNumberOfFragments) || !includedEntries[entryIndex]) {
+                continue;
+            }
+
+            // The order of the fragments must be checked if there is more than one.  The last item in each entry is the original blocklist entry, which is not matched against the URL.
+            checkedEntries[entryIndex] = (entry.length - 1 > 1);
+
+            // Split the fragments.
+            String[] pieces = new String[entry.length - 1];
+            int numberOfPieces = 0;
+            for (int fragmentIndex = 0; fragmentIndex < entry.length - 1; fragmentIndex++) {
+                // Get the fragment.
+                String fragment = entry[fragmentIndex];
+
+                if (fragment.startsWith(FragmentMatcher.HOST_ANCHOR) || (fragment.indexOf(FragmentMatcher.SEPARATOR) != -1)) {  // The fragment has anchors.
+                    // Note that the entry must be checked.
+                    checkedEntries[entryIndex] = true;
+
+                    // Add the literal pieces.
+                    for (String literal : FragmentMatcher.getLiterals(fragment)) {
+                        // Grow the pieces if needed.
+                        if (numberOfPieces == pieces.length) {
+                            pieces = Arrays.copyOf(pieces, numberOfPieces * 2);
+                        }
+
+                        // Add the piece.
+                        pieces[numberOfPieces++] = literal;
+                    }
+                } else {  // The fragment is plain.
+                    // Grow the pieces if needed.
+                    if (numberOfPieces == pieces.length) {
+                        pieces = Arrays.copyOf(pieces, numberOfPieces * 2);
+                    }
+
+                    // Add the fragment.
+                    pieces[numberOfPieces++] = fragment;
+                }
+            }
+
+            // Store the pieces.  An entry whose anchors are all it has is stored with the empty piece, so that it is always checked.
+            entryPieces[entryIndex] = (numberOfPieces == 0) ? new String[] {""} : Arrays.copyOf(pieces, numberOfPieces);
+            numberOfEntryFragments += entryPieces[entryIndex].length;
+        }
+
+        // Initialize the entry fragment arrays.
+        entryFragmentStart = new int[numberOfEntries + 1];
+        entryFragments = new int[numberOfEntryFragments];
+
+        // Initialize the trie.  The arrays are grown as needed.
+        TrieBuilder trieBuilder = new TrieBuilder();
+
+        // Track the fragment that triggers each entry.  Entries with only empty fragments have a trigger of 0 and entries that are left out have a trigger of -1.
+        int[] entryTriggers = new int[numberOfEntries];
+
+        // Add each entry.
+        int entryFragmentPosition = 0;
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            // Get the pieces of the entry, which are the fragments the automaton finds.
+            String[] pieces = entryPieces[entryIndex];
+
+            // Store the start of the entry's fragments.
+            entryFragmentStart[entryIndex] = entryFragmentPosition;
+
+            // Skip the entries that are left out.
+            if (pieces == null) {
+                entryTriggers[entryIndex] = -1;
+                continue;
+            }
+
+            // Track the longest fragment, which is the least likely to be found in a URL.
+            int longestFragmentLength = 0;
+
+            // Add each fragment.
+            for (String fragment : pieces) {
+                // Get the fragment ID.
+                Integer fragmentId = fragmentIds.get(fragment);
+
+                // Add new fragments to the trie.
+                if (fragmentId == null) {
+                    // Assign the next ID.
+                    fragmentId = fragmentIds.size();
+
+                    // Store the ID.
+                    fragmentIds.put(fragment, fragmentId);
+
+                    // Add the fragment to the trie.
+                    trieBuilder.addFragment(fragment, fragmentId);
+                }
+
+                // Store the fragment ID.
+                entryFragments[entryFragmentPosition++] = fragmentId;
+
+                // Use the longest fragment as the trigger.
+                if (fragment.length() > longestFragmentLength) {
+                    longestFragmentLength = fragment.length();
+                    entryTriggers[entryIndex] = fragmentId;
+                }
+            }
+        }
+
+        // Store the end of the last entry's fragments.
+        entryFragmentStart[numberOfEntries] = entryFragmentPosition;
+
+        // Store the number of fragments.
+        numberOfFragments = fragmentIds.size();
+
+        // Count the entries triggered by each fragment.
+        int[] triggeredEntryCounts = new int[numberOfFragments];
+        for (int entryTrigger : entryTriggers) {
+            if (entryTrigger >= 0) {
+                triggeredEntryCounts[entryTrigger]++;
+            }
+        }
+
+        // Initialize the triggered entries.
+        triggeredEntries = new int[numberOfFragments][];
+        for (int fragmentId = 1; fragmentId < numberOfFragments; fragmentId++) {
+            triggeredEntries[fragmentId] = new int[triggeredEntryCounts[fragmentId]];
+        }
+        alwaysMatchingEntries = new int[triggeredEntryCounts[0]];
+
+        // Populate the triggered entries in ascending order.
+        int[] triggeredEntryPositions = new int[numberOfFragments];
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            // Get the trigger.
+            int entryTrigger = entryTriggers[entryIndex];
+
+            // Add the entry.
+            if (entryTrigger == -1) {  // The entry is left out.
+                continue;
+            } else if (entryTrigger == 0) {  // The entry only contains empty fragments.
+                alwaysMatchingEntries[triggeredEntryPositions[0]++] = entryIndex;
+            } else {  // The entry is triggered by a fragment.
+                triggeredEntries[entryTrigger][triggeredEntryPositions[entryTrigger]++] = entryIndex;
+            }
+        }
+
+        // Get the number of nodes.
+        int numberOfNodes = trieBuilder.numberOfNodes;
+
+        // Compact the children of each node into arrays sorted by character.
+        childStart = new int[numberOfNodes + 1];
+        childCharacters = new char[numberOfNodes - 1];
+        childNodes = new int[numberOfNodes - 1];
+        int childPosition = 0;
+        for (int node = 0; node < numberOfNodes; node++) {
+            // Store the start of the node's children.
+            childStart[node] = childPosition;
+
+            // Copy the children.
+            for (int child = trieBuilder.firstChild[node]; child != -1; child = trieBuilder.nextSibling[child]) {
+                childCharacters[childPosition] = trieBuilder.nodeCharacters[child];
+                childNodes[childPosition] = child;
+                childPosition++;
+            }
+
+            // Sort the children by character.  Each node has few children, so an insertion sort is used.
+            for (int sortedPosition = childStart[node] + 1; sortedPosition < childPosition; sortedPosition++) {
+                char character = childCharacters[sortedPosition];
+                int childNode = childNodes[sortedPosition];
+                int insertPosition = sortedPosition - 1;
+                while ((insertPosition >= childStart[node]) && (childCharacters[insertPosition] > character)) {
+                    childCharacters[insertPosition + 1] = childCharacters[insertPosition];
+                    childNodes[insertPosition + 1] = childNodes[insertPosition];
+                    insertPosition--;
+                }
+                childCharacters[insertPosition + 1] = character;
+                childNodes[insertPosition + 1] = childNode;
+            }
+        }
+        childStart[numberOfNodes] = childPosition;
+
+        // Populate the children of the root for each ASCII character.
+        for (char character = 0; character < rootChildren.length; character++) {
+            rootChildren[character] = searchChild(ROOT, character);
+        }
+
+        // Store the fragments that end at each node.
+        nodeFragments = Arrays.copyOf(trieBuilder.nodeFragments, numberOfNodes);
+
+        // Initialize the failure and output links.
+        failureLinks = new int[numberOfNodes];
+        outputLinks = new int[numberOfNodes];
+        outputLinks[ROOT] = -1;
+
+        // Populate the failure and output links in breadth-first order, so that the links of shallower nodes are always ready.
+        int[] queue = new int[numberOfNodes];
+        int queueHead = 0;
+        int queueTail = 0;
+        queue[queueTail++] = ROOT;
+        while (queueHead < queueTail) {
+            // Get the next node.
+            int node = queue[queueHead++];
+
+            // Process each child.
+            for (int childPosition2 = childStart[node]; childPosition2 < childStart[node + 1]; childPosition2++) {
+                // Get the child and its character.
+                int child = childNodes[childPosition2];
+                char character = childCharacters[childPosition2];
+
+                // Find the failure link, which is the longest proper suffix of the child that is also in the trie.
+                if (node == ROOT) {  // The children of the root fail back to the root.
+                    failureLinks[child] = ROOT;
+                } else {  // Follow the failure chain of the parent.
+                    // Start with the parent's failure link.
+                    int failureNode = failureLinks[node];
+
+                    // Move up the failure chain until a node with a child for this character is found.
+                    int failureChild = getChild(failureNode, character);
+                    while ((failureChild == -1) && (failureNode != ROOT)) {
+                        failureNode = failureLinks[failureNode];
+                        failureChild = getChild(failureNode, character);
+                    }
+
+                    // Store the failure link.
+                    failureLinks[child] = (failureChild == -1) ? ROOT : failureChild;
+                }
+
+                // The output link points to the failure node if it ends a fragment, or to the failure node's output link.
+                int failureLink = failureLinks[child];
+                outputLinks[child] = (nodeFragments[failureLink] != -1) ? failureLink : outputLinks[failureLink];
+
+                // Queue the child.
+                queue[queueTail++] = child;
+            }
+        }
+
+        // Initialize the thread local scratch space.
+        scratchThreadLocal = ThreadLocal.withInitial(() -> new Scratch(numberOfFragments));
+    }
+
+    // Record the first entry of each collected blocklist whose fragments are all contained in the URL.  The host bounds are used to check the entries with anchors.
+    public void findMatches(String resourceUrl, int hostStart, int hostEnd, FirstMatchCollector firstMatchCollector) {
+        // Get the scratch space for this thread.
+        Scratch scratch = scratchThreadLocal.get();
+
+        // Start a new generation, which marks all the fragments as not found without clearing the array.
+        scratch.generation++;
+        if (scratch.generation == 0) {  // The generation has wrapped around.
+            Arrays.fill(scratch.fragmentGenerations, 0);
+            scratch.generation = 1;
+        }
+        int generation = scratch.generation;
+
+        // The empty fragment is contained in every URL.
+        scratch.fragmentGenerations[0] = generation;
+
+        // Reset the found fragments.
+        int numberOfFoundFragments = 0;
+
+        // Walk the URL through the automaton, unless it doesn't have any fragments besides the empty one.
+        int node = ROOT;
+        for (int position = 0; (position < resourceUrl.length()) && (numberOfFragments > 1); position++) {
+            // Get the character.
+            char character = resourceUrl.charAt(position);
+
+            // Move to the next node, following the failure links until a node has a child for this character.
+            int child = getChild(node, character);
+            while ((child == -1) && (node != ROOT)) {
+                node = failureLinks[node];
+                child = getChild(node, character);
+            }
+            node = (child == -1) ? ROOT : child;
+
+            // Record every fragment that ends at this position.
+            for (int outputNode = (nodeFragments[node] != -1) ? node : outputLinks[node]; outputNode != -1; outputNode = outputLinks[outputNode]) {
+                // Get the fragment.
+                int fragmentId = nodeFragments[outputNode];
+
+                // Record the fragment if it hasn't already been found.
+                if (scratch.fragmentGenerations[fragmentId] != generation) {
+                    scratch.fragmentGenerations[fragmentId] = generation;
+                    scratch.foundFragments[numberOfFoundFragments++] = fragmentId;
+                }
+            }
+        }
+
+        // Entries with only empty fragments always match.
+        collectMatches(alwaysMatchingEntries, resourceUrl, hostStart, hostEnd, firstMatchCollector, scratch.fragmentGenerations, generation);
+
+        // Check the entries triggered by each found fragment.
+        for (int foundFragmentPosition = 0; foundFragmentPosition < numberOfFoundFragments; foundFragmentPosition++) {
+            collectMatches(triggeredEntries[scratch.foundFragments[foundFragmentPosition]], resourceUrl, hostStart, hostEnd, firstMatchCollector, scratch.fragmentGenerations, generation);
+        }
+    }
+
+    private void collectMatches(int[] entries, String resourceUrl, int hostStart, int hostEnd, FirstMatchCollector firstMatchCollector, int[] fragmentGenerations, int generation) {
+        // Check the entries, which are in ascending order.
+        for (int entryIndex : entries) {
+            // Stop once the entries are past the first match of every collected blocklist.
+            if (firstMatchCollector.isFinished(entryIndex)) {
+                break;
+            }
+
+            // Get the blocklists that still need this entry.
+            int neededBlocklistsMask = firstMatchCollector.getNeededBlocklists(entryIndex);
+
+            // Record the entry if all its fragments were found, checking the anchors and the order of the fragments of the entries that need it.
+            if ((neededBlocklistsMask != 0) && allFragmentsFound(entryIndex, fragmentGenerations, generation) && (!checkedEntries[entryIndex] || fragmentsMatch(entryIndex, resourceUrl, hostStart, hostEnd))) {
+                firstMatchCollector.record(entryIndex, neededBlocklistsMask);
+            }
+        }
+    }
+
+    private boolean allFragmentsFound(int entryIndex, int[] fragmentGenerations, int generation) {
+        // Check each fragment of the entry.
+        for (int position = entryFragmentStart[entryIndex]; position < entryFragmentStart[entryIndex + 1]; position++) {
+            if (fragmentGenerations[entryFragments[position]] != generation) {
+                return false;
+            }
+        }
+
+        // All the fragments were found.
+        return true;
+    }
+
+    private boolean fragmentsMatch(int entryIndex, String resourceUrl, int hostStart, int hostEnd) {
+        // Get the entry.
+        String[] entry = sublist.get(entryIndex);
+
+        // Check the fragments in order with their anchors.  The last item in each entry is the original blocklist entry.
+        return FragmentMatcher.containsInOrder(resourceUrl, hostStart, hostEnd, entry, 0, entry.length - 1, false, false);
+    }
+
+    private int getChild(int node, char character) {
+        // Look up the children of the root directly.
+        if ((node == ROOT) && (character < rootChildren.length)) {
+            return rootChildren[character];
+        }
+
+        // Search the children of other nodes.
+        return searchChild(node, character);
+    }
+
+    private int searchChild(int node, char character) {
+        // Binary search the node's children.
+        int low = childStart[node];
+        int high = childStart[node + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char middleCharacter = childCharacters[middle];
+            if (middleCharacter < character) {
+                low = middle + 1;
+            } else if (middleCharacter > character) {
+                high = middle - 1;
+            } else {
+                return childNodes[middle];
+            }
+        }
+
+        // The node does not have a child for this character.
+        return -1;
+    }
+
+    // The trie builder stores the children of each node as a linked list while the fragments are being added.
+    private static class TrieBuilder {
+        int numberOfNodes = 1;
+        int[] firstChild = {-1};
+        int[] nextSibling = {-1};
+        char[] nodeCharacters = {0};
+        int[] nodeFragments = {-1};
+
+        void addFragment(String fragment, int fragmentId) {
+            // Start at the root.
+            int node = ROOT;
+
+            // Walk the fragment, adding nodes as needed.
+            for (int position = 0; position < fragment.length(); position++) {
+                // Get the character.
+                char character = fragment.charAt(position);
+
+                // Look for an existing child.
+                int child = firstChild[node];
+                while ((child != -1) && (nodeCharacters[child] != character)) {
+                    child = nextSibling[child];
+                }
+
+                // Add a new child if needed.
+                if (child == -1) {
+                    // Grow the arrays if needed.
+                    if (numberOfNodes == firstChild.length) {
+                        int newLength = firstChild.length * 2;
+                        firstChild = Arrays.copyOf(firstChild, newLength);
+                        nextSibling = Arrays.copyOf(nextSibling, newLength);
+                        nodeCharacters = Arrays.copyOf(nodeCharacters, newLength);
+                        nodeFragments = Arrays.copyOf(nodeFragments, newLength);
+                    }
+
+                    // Create the child.
+                    child = numberOfNodes++;
+                    firstChild[child] = -1;
+                    nodeCharacters[child] = character;
+                    nodeFragments[child] = -1;
+
+                    // Link the child to its parent.
+                    nextSibling[child] = firstChild[node];
+                    firstChild[node] = child;
+                }
+
+                // Move to the child.
+                node = child;
+            }
+
+            // Mark the end of the fragment.
+            nodeFragments[node] = fragmentId;
+        }
+    }
+
+    // The scratch space records which fragments have been found in the current URL.
+    private static class Scratch {
+        int generation;
+        final int[] fragmentGenerations;
+        final int[] foundFragments;
+
+        Scratch(int numberOfFragments) {
+            fragmentGenerations = new int[numberOfFragments];
+            foundFragments = new int[numberOfFragments];
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// A blocklist holds the sublists created by `BlocklistHelper.parseBlocklist()` along with the indexes used to check them.
+public class Blocklist {
+    // The sublists, numbered as described by the sublist constants in `BlocklistHelper`.  The last item of each entry, the original blocklist entry, is moved into the string arena and replaced by null.
+    private final ArrayList<List<String[]>> sublists;
+
+    // The string arena that holds the original blocklist entries, and the offset of the original entry of each entry in each sublist.
+    private final StringArena originalEntriesArena;
+    private final int[][] originalEntryOffsets;
+
+    // The token indexes.  The regular expression sublists, the domain sublists, and the sublists with automatons are not indexed by token.
+    private final TokenIndex[] tokenIndexes;
+
+    // The domain tries of the domain sublists, which include the element hiding sublists.  The app parses the element hiding entries separately, so its element hiding sublists are empty.
+    private final DomainTrie[] domainTries;
+
+    // The compiled regular expressions of each entry in the regular expression sublists.
+    private final CompiledRegularExpression[][] regularExpressions;
+
+    // The Aho-Corasick automatons of the sublists whose entries only need to be contained in the URL.
+    private final AhoCorasickAutomaton[] automatons;
+
+    // The n-gram filters of the sublists with automatons, and the automatons of the entries the filters don't hold, which are used when a filter skips the full automaton.
+    private final NgramFilter[] ngramFilters;
+    private final AhoCorasickAutomaton[] unkeyedAutomatons;
+
+    // The host tries of the sublists with automatons, which hold the entries like `||example.com^` that only match a host and its subdomains.  These entries are left out of the automatons.
+    private final DomainTrie[] hostTries;
+
+    // The resource types mask of each entry in each request sublist, which is null if every entry of the sublist applies to every resource type.  The masks fit in a short.
+    private final short[][] entryResourceTypes;
+
+    // The automatons of the entries that only apply to some resource types, which are left out of the other automatons and the n-gram filters, and the types they apply to.
+    private final AhoCorasickAutomaton[] typedAutomatons;
+    private final int[] typedAutomatonResourceTypesMasks;
+
+    public Blocklist(ArrayList<List<String[]>> sublists, StringArena originalEntriesArena) {
+        // Get the resource types of the entries from their original entries, and then move the original entries into the arena.  The arguments are evaluated in order.
+        this(sublists, originalEntriesArena, createEntryResourceTypes(sublists), moveOriginalEntries(sublists, originalEntriesArena));
+    }
+
+    // The original entries of these sublists have already been moved into the arena and their resource types are already known, which is the case when blocklists are merged.
+    Blocklist(ArrayList<List<String[]>> sublists, StringArena originalEntriesArena, short[][] entryResourceTypes, int[][] originalEntryOffsets) {
+        // Store the sublists, the resource types of the entries, and the original entries.
+        this.sublists = sublists;
+        this.entryResourceTypes = entryResourceTypes;
+        this.originalEntriesArena = originalEntriesArena;
+        this.originalEntryOffsets = originalEntryOffsets;
+
+        // Initialize the token indexes, domain tries, automatons, and n-gram filters arrays.
+        tokenIndexes = new TokenIndex[sublists.size()];
+        domainTries = new DomainTrie[sublists.size()];
+        automatons = new AhoCorasickAutomaton[sublists.size()];
+        ngramFilters = new NgramFilter[sublists.size()];
+        unkeyedAutomatons = new AhoCorasickAutomaton[sublists.size()];
+        hostTries = new DomainTrie[sublists.size()];
+        typedAutomatons = new AhoCorasickAutomaton[sublists.size()];
+        typedAutomatonResourceTypesMasks = new int[sublists.size()];
+        regularExpressions = new CompiledRegularExpression[sublists.size()][];
+
+        // Many entries share the same regular expression, once for each of their domains, so each regular expression is only compiled once.
+        HashMap<String, CompiledRegularExpression> compiledRegularExpressions = new HashMap<>();
+
+        // Index each sublist except the headers.
+        for (int sublist = 1; sublist < sublists.size(); sublist++) {
+            if (BlocklistHelper.isContainsSublist(sublist)) {  // Compile the sublist into an automaton.
+                // Get the entries.
+                List<String[]> entries = sublists.get(sublist);
+
+                // The third-party white list allows up to five entries.
+                int maximumNumberOfFragments = (sublist == 6) ? 5 : Integer.MAX_VALUE;
+
+                // Get the resource types of the entries.
+                short[] resourceTypes = entryResourceTypes[sublist];
+
+                // Sort the entries into the ones that only match a host, the ones that only apply to some resource types, the ones that have a key for the n-gram filter, and the ones that don't.
+                String[] hostDomains = new String[entries.size()];
+                boolean[] typedEntries = new boolean[entries.size()];
+                boolean[] automatonEntries = new boolean[entries.size()];
+                boolean[] unkeyedEntries = new boolean[entries.size()];
+                int typedResourceTypesMask = 0;
+                for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+                    // Get the entry.
+                    String[] entry = entries.get(entryIndex);
+
+                    // Get the domain of the entries that only match a host.
+                    hostDomains[entryIndex] = FragmentMatcher.getHostAnchoredDomain(entry);
+
+                    // The other entries that only apply to some resource types are added to the typed automaton.
+                    typedEntries[entryIndex] = (hostDomains[entryIndex] == null) && (resourceTypes != null) && (resourceTypes[entryIndex] != ResourceTypes.ALL_RESOURCE_TYPES_MASK);
+
+                    // Track the resource types of the typed automaton.
+                    if (typedEntries[entryIndex]) {
+                        typedResourceTypesMask |= resourceTypes[entryIndex];
+                    }
+
+                    // The rest of the entries are added to the automaton, and to the unkeyed automaton if they don't have a key.
+                    automatonEntries[entryIndex] = (hostDomains[entryIndex] == null) && !typedEntries[entryIndex];
+                    unkeyedEntries[entryIndex] = automatonEntries[entryIndex] && !NgramFilter.hasKey(entry);
+                }
+
+                // File the entries that only match a host by their domain.
+                hostTries[sublist] = new DomainTrie(hostDomains);
+
+                // Compile the automaton of the other entries.
+                automatons[sublist] = new AhoCorasickAutomaton(entries, maximumNumberOfFragments, automatonEntries);
+
+                // Filter the other entries by substring, and compile the automaton of the entries that are too short to be filtered.
+                ngramFilters[sublist] = new NgramFilter(entries, automatonEntries);
+                unkeyedAutomatons[sublist] = new AhoCorasickAutomaton(entries, maximumNumberOfFragments, unkeyedEntries);
+
+                // Compile the automaton of the typed entries if there are any.
+                if (typedResourceTypesMask != 0) {
+                    typedAutomatons[sublist] = new AhoCorasickAutomaton(entries, maximumNumberOfFragments, typedEntries);
+                    typedAutomatonResourceTypesMasks[sublist] = typedResourceTypesMask;
+                }
+            } else if (BlocklistHelper.isDomainSublist(sublist)) {  // File the sublist by domain.
+                domainTries[sublist] = new DomainTrie(sublists.get(sublist));
+            } else if (!BlocklistHelper.isRegularExpressionSublist(sublist)) {  // Index the sublist by token.
+                tokenIndexes[sublist] = new TokenIndex(sublists.get(sublist));
+            }
+
+            // Compile the regular expressions.
+            if (BlocklistHelper.isRegularExpressionSublist(sublist)) {
+                // Get the entries.
+                List<String[]> entries = sublists.get(sublist);
+
+                // Initialize the compiled regular expressions of the sublist.
+                regularExpressions[sublist] = new CompiledRegularExpression[entries.size()];
+
+                // Compile each entry.
+                for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+                    // The domain sublists store the domain in the first item, followed by the regular expression.
+                    String regularExpression = entries.get(entryIndex)[BlocklistHelper.isDomainSublist(sublist) ? 1 : 0];
+
+                    // Get the existing compiled regular expression.
+                    CompiledRegularExpression compiledRegularExpression = compiledRegularExpressions.get(regularExpression);
+
+                    // Compile the regular expression if it is new.
+                    if (compiledRegularExpression == null) {
+                        compiledRegularExpression = new CompiledRegularExpression(regularExpression);
+                        compiledRegularExpressions.put(regularExpression, compiledRegularExpression);
+                    }
+
+                    // Store the compiled regular expression.
+                    regularExpressions[sublist][entryIndex] = compiledRegularExpression;
+                }
+            }
+        }
+    }
+
+    private static short[][] createEntryResourceTypes(ArrayList<List<String[]>> sublists) {
+        // Initialize the resource types.
+        short[][] entryResourceTypes = new short[sublists.size()][];
+
+        // Get the resource types of the entries in each request sublist.
+        for (int sublist = 1; sublist < BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS; sublist++) {
+            // Get the entries.
+            List<String[]> entries = sublists.get(sublist);
+
+            // Get the resource types of each entry, tracking if any of them don't apply to every type.
+            short[] resourceTypes = new short[entries.size()];
+            boolean hasTypedEntries = false;
+            for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+                // Get the entry.
+                String[] entry = entries.get(entryIndex);
+
+                // Get the resource types from the filter options of the original entry, which is the last item.
+                resourceTypes[entryIndex] = (short) ResourceTypes.getEntryResourceTypesMask(entry[entry.length - 1]);
+
+                // Note a typed entry.
+                if (resourceTypes[entryIndex] != ResourceTypes.ALL_RESOURCE_TYPES_MASK) {
+                    hasTypedEntries = true;
+                }
+            }
+
+            // Store the resource types, which are null if every entry applies to every type.
+            entryResourceTypes[sublist] = hasTypedEntries ? resourceTypes : null;
+        }
+
+        // Return the resource types.
+        return entryResourceTypes;
+    }
+
+    private static int[][] moveOriginalEntries(ArrayList<List<String[]>> sublists, StringArena originalEntriesArena) {
+        // Initialize the offsets.
+        int[][] originalEntryOffsets = new int[sublists.size()][];
+
+        // Move the original entry of each entry except the headers.
+        for (int sublist = 1; sublist < sublists.size(); sublist++) {
+            // Get the entries.
+            List<String[]> entries = sublists.get(sublist);
+
+            // Initialize the offsets of the sublist.
+            originalEntryOffsets[sublist] = new int[entries.size()];
+
+            // Move each original entry.
+            for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+                // Get the entry.
+                String[] entry = entries.get(entryIndex);
+
+                // Add the original entry to the arena.  Entries that came from one line with several domains share it.
+                originalEntryOffsets[sublist][entryIndex] = originalEntriesArena.add(entry[entry.length - 1]);
+
+                // Release the string.
+                entry[entry.length - 1] = null;
+            }
+        }
+
+        // Return the offsets.
+        return originalEntryOffsets;
+    }
+
+    public String getVersion() {
+        // Return the version, which is the first header.
+        return sublists.get(0).get(0)[0];
+    }
+
+    public String getName() {
+        // Return the name, which is the second header.
+        return sublists.get(0).get(1)[0];
+    }
+
+    public List<String[]> getSublist(int sublist) {
+        // Return the sublist.
+        return sublists.get(sublist);
+    }
+
+    public String getOriginalEntry(int sublist, int entryIndex) {
+        // Return the original blocklist entry from the arena.
+        return originalEntriesArena.get(originalEntryOffsets[sublist][entryIndex]);
+    }
+
+    StringArena getOriginalEntriesArena() {
+        // Return the string arena.
+        return originalEntriesArena;
+    }
+
+    int[][] getOriginalEntryOffsets() {
+        // Return the offsets of the original entries in the arena, indexed by sublist and entry.
+        return originalEntryOffsets;
+    }
+
+    int getOriginalEntryOffset(int sublist, int entryIndex) {
+        // Return the offset of the original entry in the arena.
+        return originalEntryOffsets[sublist][entryIndex];
+    }
+
+    public TokenIndex getTokenIndex(int sublist) {
+        // Return the token index, which is null for the regular expression sublists and the sublists with automatons.
+        return tokenIndexes[sublist];
+    }
+
+    public DomainTrie getDomainTrie(int sublist) {
+        // Return the domain trie, which is null for the sublists that don't have domains.
+        return domainTries[sublist];
+    }
+
+    public CompiledRegularExpression getRegularExpression(int sublist, int entryIndex) {
+        // Return the compiled regular expression of the entry.
+        return regularExpressions[sublist][entryIndex];
+    }
+
+    public AhoCorasickAutomaton getAutomaton(int sublist) {
+        // Return the automaton, which is null for the sublists that aren't compiled into one.
+        return automatons[sublist];
+    }
+
+    public NgramFilter getNgramFilter(int sublist) {
+        // Return the n-gram filter, which is null for the sublists without an automaton.
+        return ngramFilters[sublist];
+    }
+
+    public AhoCorasickAutomaton getUnkeyedAutomaton(int sublist) {
+        // Return the automaton of the entries the n-gram filter doesn't hold, which is null for the sublists without an automaton.
+        return unkeyedAutomatons[sublist];
+    }
+
+    public DomainTrie getHostTrie(int sublist) {
+        // Return the host trie, which is null for the sublists without an automaton.
+        return hostTries[sublist];
+    }
+
+    short[] getEntryResourceTypes(int sublist) {
+        // Return the resource types mask of each entry, which is null if every entry applies to every resource type.
+        return entryResourceTypes[sublist];
+    }
+
+    int getEntryResourceTypesMask(int sublist, int entryIndex) {
+        // Return the resource types mask of the entry.
+        return (entryResourceTypes[sublist] == null) ? ResourceTypes.ALL_RESOURCE_TYPES_MASK : entryResourceTypes[sublist][entryIndex];
+    }
+
+    public AhoCorasickAutomaton getTypedAutomaton(int sublist, int requestResourceTypesMask) {
+        // Return the automaton of the typed entries, which is null if none of them apply to the resource types of the request.
+        return ((typedAutomatonResourceTypesMasks[sublist] & requestResourceTypesMask) == 0) ? null : typedAutomatons[sublist];
+    }
+}
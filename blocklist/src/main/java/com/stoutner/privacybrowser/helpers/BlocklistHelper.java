@@ -0,0 +1,772 @@
+/*
+ * Copyright © 2018-2019 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BlocklistHelper {
+    // Describe the schema of the string array in each entry of the resource requests array list.
+    public final static int REQUEST_DISPOSITION = 0;
+    public final static int REQUEST_URL = 1;
+    public final static int REQUEST_BLOCKLIST = 2;
+    public final static int REQUEST_SUBLIST = 3;
+    public final static int REQUEST_BLOCKLIST_ENTRIES = 4;
+    public final static int REQUEST_BLOCKLIST_ORIGINAL_ENTRY = 5;
+
+    // The request disposition options.
+    public final static String REQUEST_DEFAULT = "0";
+    public final static String REQUEST_ALLOWED = "1";
+    public final static String REQUEST_THIRD_PARTY = "2";
+    public final static String REQUEST_BLOCKED = "3";
+
+    // The whitelists.
+    public final static String MAIN_WHITELIST = "1";
+    public final static String FINAL_WHITELIST = "2";
+    public final static String DOMAIN_WHITELIST = "3";
+    public final static String DOMAIN_INITIAL_WHITELIST = "4";
+    public final static String DOMAIN_FINAL_WHITELIST = "5";
+    public final static String THIRD_PARTY_WHITELIST = "6";
+    public final static String THIRD_PARTY_DOMAIN_WHITELIST = "7";
+    public final static String THIRD_PARTY_DOMAIN_INITIAL_WHITELIST = "8";
+
+    // The blacklists.
+    public final static String MAIN_BLACKLIST = "9";
+    public final static String INITIAL_BLACKLIST = "10";
+    public final static String FINAL_BLACKLIST = "11";
+    public final static String DOMAIN_BLACKLIST = "12";
+    public final static String DOMAIN_INITIAL_BLACKLIST = "13";
+    public final static String DOMAIN_FINAL_BLACKLIST = "14";
+    public final static String DOMAIN_REGULAR_EXPRESSION_BLACKLIST = "15";
+    public final static String THIRD_PARTY_BLACKLIST = "16";
+    public final static String THIRD_PARTY_INITIAL_BLACKLIST = "17";
+    public final static String THIRD_PARTY_DOMAIN_BLACKLIST = "18";
+    public final static String THIRD_PARTY_DOMAIN_INITIAL_BLACKLIST = "19";
+    public final static String THIRD_PARTY_REGULAR_EXPRESSION_BLACKLIST = "20";
+    public final static String THIRD_PARTY_DOMAIN_REGULAR_EXPRESSION_BLACKLIST = "21";
+    public final static String REGULAR_EXPRESSION_BLACKLIST = "22";
+
+    // The element hiding lists, which are used to create style sheets instead of being checked against requests.
+    public final static String ELEMENT_HIDING_LIST = "23";
+    public final static String ELEMENT_HIDING_EXCEPTION_LIST = "24";
+
+    // The entries `parseBlocklist()` can be limited to.  The headers are always parsed.  The element hiding entries are only needed by pages with JavaScript enabled, so the app parses them separately.
+    public final static int REQUEST_ENTRIES = 1;
+    public final static int ELEMENT_HIDING_ENTRIES = 1 << 1;
+    public final static int ALL_ENTRIES = REQUEST_ENTRIES | ELEMENT_HIDING_ENTRIES;
+
+    // The number of sublists, including the headers.
+    public final static int NUMBER_OF_SUBLISTS = 25;
+
+    // The number of sublists that are checked against requests, which are numbered before the element hiding lists.
+    public final static int NUMBER_OF_REQUEST_SUBLISTS = 23;
+
+    // `checkBlocklists()` returns `NO_MATCH` if no blocklist decided the request.
+    public final static long NO_MATCH = -1;
+
+    // Requests that are blocked because all third-party requests are blocked are recorded as `THIRD_PARTY_MATCH`.
+    public final static long THIRD_PARTY_MATCH = -2;
+
+    // Requests that are blocked because their blocklists weren't ready before the wait timed out are recorded as `BLOCKLISTS_NOT_READY_MATCH`.
+    public final static long BLOCKLISTS_NOT_READY_MATCH = -3;
+
+    // The order in which the blocklists decide a request.
+    private final static int[] DECIDING_ORDER = {CombinedBlocklist.ULTRALIST, CombinedBlocklist.ULTRAPRIVACY, CombinedBlocklist.EASYLIST, CombinedBlocklist.EASYPRIVACY,
+            CombinedBlocklist.FANBOYS_ANNOYANCE_LIST, CombinedBlocklist.FANBOYS_SOCIAL_BLOCKING_LIST};
+
+    // The sublist strings, indexed by their number.
+    private final static String[] SUBLISTS = {null, MAIN_WHITELIST, FINAL_WHITELIST, DOMAIN_WHITELIST, DOMAIN_INITIAL_WHITELIST, DOMAIN_FINAL_WHITELIST, THIRD_PARTY_WHITELIST,
+            THIRD_PARTY_DOMAIN_WHITELIST, THIRD_PARTY_DOMAIN_INITIAL_WHITELIST, MAIN_BLACKLIST, INITIAL_BLACKLIST, FINAL_BLACKLIST, DOMAIN_BLACKLIST, DOMAIN_INITIAL_BLACKLIST,
+            DOMAIN_FINAL_BLACKLIST, DOMAIN_REGULAR_EXPRESSION_BLACKLIST, THIRD_PARTY_BLACKLIST, THIRD_PARTY_INITIAL_BLACKLIST, THIRD_PARTY_DOMAIN_BLACKLIST,
+            THIRD_PARTY_DOMAIN_INITIAL_BLACKLIST, THIRD_PARTY_REGULAR_EXPRESSION_BLACKLIST, THIRD_PARTY_DOMAIN_REGULAR_EXPRESSION_BLACKLIST, REGULAR_EXPRESSION_BLACKLIST,
+            ELEMENT_HIDING_LIST, ELEMENT_HIDING_EXCEPTION_LIST};
+
+    // The last white list.  The black lists are numbered after it.
+    private final static int THIRD_PARTY_DOMAIN_INITIAL_WHITELIST_INT = 8;
+
+    // Each thread keeps the tokens of the last URL it checked, so that a URL is only tokenized once when it is checked against all the blocklists.
+    private final static ThreadLocal<UrlTokens> urlTokensThreadLocal = ThreadLocal.withInitial(UrlTokens::new);
+
+    // Parse the blocklist bytes, which may be mapped from a file or wrapped around an array.
+    public ArrayList<List<String[]>> parseBlocklist(ByteBuffer blocklistBytes) {
+        // Parse all the entries.
+        return parseBlocklist(blocklistBytes, ALL_ENTRIES);
+    }
+
+    // Parse the blocklist from the stream, which is read to the end but not closed.
+    public ArrayList<List<String[]>> parseBlocklist(InputStream blocklistInputStream) throws IOException {
+        // Parse all the entries.
+        return parseBlocklist(blocklistInputStream, ALL_ENTRIES);
+    }
+
+    // Parse the blocklist file, which is mapped instead of read.
+    public ArrayList<List<String[]>> parseBlocklist(Path blocklistPath) throws IOException {
+        // Parse all the entries.
+        return parseBlocklist(blocklistPath, ALL_ENTRIES);
+    }
+
+    // Parse the entries of the blocklist bytes described by the entries constants.  The sublists of the other entries are left empty.
+    public ArrayList<List<String[]>> parseBlocklist(ByteBuffer blocklistBytes, int parsedEntries) {
+        // Parse the blocklist.
+        return new BlocklistParser(parsedEntries).parse(blocklistBytes);
+    }
+
+    // Parse the entries of the blocklist from the stream, which is read to the end but not closed.
+    public ArrayList<List<String[]>> parseBlocklist(InputStream blocklistInputStream, int parsedEntries) throws IOException {
+        // Read and parse the blocklist.
+        return parseBlocklist(BlocklistParser.read(blocklistInputStream), parsedEntries);
+    }
+
+    // Parse the entries of the blocklist file, which is mapped instead of read.
+    public ArrayList<List<String[]>> parseBlocklist(Path blocklistPath, int parsedEntries) throws IOException {
+        // Map and parse the blocklist.
+        return parseBlocklist(BlocklistParser.map(blocklistPath), parsedEntries);
+    }
+
+    // Determine if the request is third-party, which is the case when its host has a different registrable domain (eTLD+1) than the current domain.
+    // The registrable domain cache is null until the public suffix list is loaded, in which case the last two labels of each domain are compared instead.
+    // Requests without a current domain, like those from `about:blank`, and requests without a host, like `data:` URLs, are never third-party.  Nothing is created unless a host isn't cached.
+    public static boolean isThirdPartyRequest(String currentDomain, String resourceUrl, RegistrableDomainCache registrableDomainCache) {
+        // Nobody is happy when comparing null strings.
+        if ((currentDomain == null) || currentDomain.isEmpty() || (resourceUrl == null)) {
+            return false;
+        }
+
+        // Find the request host.
+        long hostBounds = getHostBounds(resourceUrl);
+
+        // Only check for third-party requests if the request has a host.
+        if (hostBounds == -1) {
+            return false;
+        }
+
+        // Unpack the host bounds.
+        int hostStart = (int) (hostBounds >>> 32);
+        int hostEnd = (int) hostBounds;
+
+        // Find the start of each registrable domain.
+        int currentRegistrableDomainStart;
+        int requestRegistrableDomainStart;
+        if (registrableDomainCache == null) {  // The public suffix list hasn't been loaded yet.
+            currentRegistrableDomainStart = getLastTwoLabelsStart(currentDomain, 0, currentDomain.length());
+            requestRegistrableDomainStart = getLastTwoLabelsStart(resourceUrl, hostStart, hostEnd);
+        } else {  // The public suffix list has been loaded.
+            currentRegistrableDomainStart = registrableDomainCache.getRegistrableDomainStart(currentDomain, 0, currentDomain.length());
+            requestRegistrableDomainStart = registrableDomainCache.getRegistrableDomainStart(resourceUrl, hostStart, hostEnd);
+        }
+
+        // Compare the registrable domains in place.
+        int registrableDomainLength = currentDomain.length() - currentRegistrableDomainStart;
+        return (registrableDomainLength != hostEnd - requestRegistrableDomainStart) ||
+                !currentDomain.regionMatches(true, currentRegistrableDomainStart, resourceUrl, requestRegistrableDomainStart, registrableDomainLength);
+    }
+
+    // Get the host of the URL the way `android.net.Uri.getHost()` does, without the user info or the port.  Null is returned if the URL doesn't have an authority.
+    public static String getHost(String url) {
+        // Find the host.
+        long hostBounds = getHostBounds(url);
+
+        // Return the host.
+        return (hostBounds == -1) ? null : url.substring((int) (hostBounds >>> 32), (int) hostBounds);
+    }
+
+    // Find the host of the URL without creating a string.  The start is packed into the upper half of the returned long and the end into the lower half, or -1 is returned if there is no authority.
+    private static long getHostBounds(String url) {
+        // Get the URL length.
+        int urlLength = url.length();
+
+        // Find the end of the scheme, which is the first `:` before any `/`, `?`, or `#`.
+        int authorityStart = 0;
+        for (int index = 0; index < urlLength; index++) {
+            // Get the character.
+            char character = url.charAt(index);
+
+            // Stop at the end of the scheme.
+            if (character == ':') {
+                authorityStart = index + 1;
+                break;
+            }
+
+            // Stop if the URL doesn't have a scheme.
+            if ((character == '/') || (character == '?') || (character == '#')) {
+                break;
+            }
+        }
+
+        // The authority only exists if it is introduced by `//`.
+        if (!url.startsWith("//", authorityStart)) {
+            return -1;
+        }
+        authorityStart += 2;
+
+        // Find the end of the authority.
+        int authorityEnd = authorityStart;
+        while ((authorityEnd < urlLength) && (url.charAt(authorityEnd) != '/') && (url.charAt(authorityEnd) != '?') && (url.charAt(authorityEnd) != '#')) {
+            authorityEnd++;
+        }
+
+        // Skip the user info, which ends with the last `@`.
+        int hostStart = Math.max(url.lastIndexOf('@', authorityEnd - 1) + 1, authorityStart);
+
+        // Remove the port, which follows the last `:` unless that is inside the brackets of an IPv6 address.
+        int hostEnd = authorityEnd;
+        int portSeparator = url.lastIndexOf(':', authorityEnd - 1);
+        if ((portSeparator >= hostStart) && (portSeparator > url.lastIndexOf(']', authorityEnd - 1))) {
+            hostEnd = portSeparator;
+        }
+
+        // Pack the host bounds.
+        return ((long) hostStart << 32) | hostEnd;
+    }
+
+    // Get the start of the last two labels of the domain that is between the start and the end of the text, which was how base domains were found before the public suffix list.
+    private static int getLastTwoLabelsStart(String text, int domainStart, int domainEnd) {
+        // Find the last `.`.
+        int lastDotIndex = text.lastIndexOf('.', domainEnd - 1);
+
+        // A domain without a `.` is its own base domain.
+        if (lastDotIndex < domainStart) {
+            return domainStart;
+        }
+
+        // Return the start of the label before the last `.`.
+        return Math.max(text.lastIndexOf('.', lastDotIndex - 1) + 1, domainStart);
+    }
+
+    // Check the resource request against all the enabled blocklists at once.  The enabled blocklists mask has a bit set for each `CombinedBlocklist` index.
+    // The blocklists decide in the order UltraList, UltraPrivacy, EasyList, EasyPrivacy, and Fanboy's lists.  A black list match or an Ultra white list match decides the request,
+    // while the white lists of the other blocklists only allow the request if no later blocklist blocks it.  The deciding match is returned, or `NO_MATCH`.
+    // The resource type is one of the `ResourceTypes` types, or `ResourceTypes.UNKNOWN`.  Only the entries that apply to the resource type are checked.
+    public long checkBlocklists(String currentDomain, String resourceUrl, boolean isThirdPartyRequest, int resourceType, CombinedBlocklist combinedBlocklist, int enabledBlocklistsMask) {
+        // Assert that currentDomain != null only if this is a third party request.  Apparently, lint can't tell that this isn't redundant.
+        //noinspection RedundantIfStatement
+        if (isThirdPartyRequest) {
+            assert currentDomain != null;
+        }
+
+        // Fanboy's Social Blocking List is only checked if Fanboy's Annoyance List is disabled, because the annoyance list includes it.
+        if ((enabledBlocklistsMask & (1 << CombinedBlocklist.FANBOYS_ANNOYANCE_LIST)) != 0) {
+            enabledBlocklistsMask &= ~(1 << CombinedBlocklist.FANBOYS_SOCIAL_BLOCKING_LIST);
+        }
+
+        // Only check the blocklists that have been loaded.
+        enabledBlocklistsMask &= combinedBlocklist.getLoadedBlocklistsMask();
+
+        // Get the tokens of the resource URL.
+        UrlTokens urlTokens = getUrlTokens(resourceUrl);
+
+        // Get the resource types an entry must apply to.
+        int requestResourceTypesMask = ResourceTypes.getRequestResourceTypesMask(resourceType);
+
+        // Reset the first match of each blocklist.
+        long[] blocklistMatches = urlTokens.blocklistMatches;
+        Arrays.fill(blocklistMatches, NO_MATCH);
+
+        // Track the blocklists that need to be checked, which are the enabled blocklists that haven't matched and might still change the decision.
+        int neededBlocklistsMask = enabledBlocklistsMask;
+
+        // Process the sublists in order.  The white lists are numbered before the black lists, so the first sublist a blocklist matches is its result.
+        for (int sublist = 1; (sublist < NUMBER_OF_REQUEST_SUBLISTS) && (neededBlocklistsMask != 0); sublist++) {
+            // Only check the third-party lists if this is a third-party request.
+            if (isThirdPartySublist(sublist) && !isThirdPartyRequest) {
+                continue;
+            }
+
+            // Only check the domain lists if the current domain is not null (like `about:blank`).
+            if (isDomainSublist(sublist) && !isThirdPartySublist(sublist) && (currentDomain == null)) {
+                continue;
+            }
+
+            // Search the sublist in each part that holds a needed blocklist.  Once the blocklists are merged there is only one part.
+            for (int part = 0; part < combinedBlocklist.getNumberOfParts(); part++) {
+                // Get the needed blocklists in this part.
+                int partNeededBlocklistsMask = neededBlocklistsMask & combinedBlocklist.getPartBlocklistsMask(part);
+
+                // Skip the part if none of its blocklists are needed.
+                if (partNeededBlocklistsMask == 0) {
+                    continue;
+                }
+
+                // Prepare the collector for this part.
+                FirstMatchCollector firstMatchCollector = urlTokens.firstMatchCollector;
+                firstMatchCollector.reset(partNeededBlocklistsMask, combinedBlocklist.getEntryBlocklistsMasks(part, sublist), combinedBlocklist.getPartBlocklistsMask(part),
+                        combinedBlocklist.getPart(part).getEntryResourceTypes(sublist), requestResourceTypesMask);
+
+                // Find the first matching entry of each needed blocklist.
+                findMatches(sublist, combinedBlocklist.getPart(part), urlTokens, firstMatchCollector, currentDomain, resourceUrl, requestResourceTypesMask);
+
+                // Store the matches.
+                for (int blocklistIndex = 0; blocklistIndex < CombinedBlocklist.NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+                    if ((partNeededBlocklistsMask & (1 << blocklistIndex)) != 0) {
+                        // Get the first entry.
+                        int entryIndex = firstMatchCollector.getFirstEntry(blocklistIndex);
+
+                        // Store the match.
+                        if (entryIndex >= 0) {
+                            blocklistMatches[blocklistIndex] = packMatch(blocklistIndex, sublist, part, entryIndex);
+
+                            // Count the hit of the blocklist.  An entry shared by several blocklists that matched it counts a hit for each of them.
+                            combinedBlocklist.recordHit(blocklistIndex, part, sublist, entryIndex);
+                        }
+                    }
+                }
+            }
+
+            // Update the needed blocklists.
+            neededBlocklistsMask = getNeededBlocklists(blocklistMatches, enabledBlocklistsMask);
+        }
+
+        // Return the deciding match.
+        return getDecidingMatch(blocklistMatches, enabledBlocklistsMask);
+    }
+
+    // Get the enabled blocklists that haven't matched and are checked before any blocklist whose match decides the request.
+    private int getNeededBlocklists(long[] blocklistMatches, int enabledBlocklistsMask) {
+        // Initialize the needed blocklists.
+        int neededBlocklistsMask = 0;
+
+        // Check the blocklists in the order they decide a request.
+        for (int blocklistIndex : DECIDING_ORDER) {
+            // Skip the disabled blocklists.
+            if ((enabledBlocklistsMask & (1 << blocklistIndex)) == 0) {
+                continue;
+            }
+
+            // Get the match.
+            long match = blocklistMatches[blocklistIndex];
+
+            if (match == NO_MATCH) {  // The blocklist still needs to be checked.
+                neededBlocklistsMask |= 1 << blocklistIndex;
+            } else if (isDecidingMatch(match)) {  // The later blocklists can't change the decision.
+                break;
+            }
+        }
+
+        // Return the needed blocklists.
+        return neededBlocklistsMask;
+    }
+
+    // Get the match that decides the request.  Every needed blocklist has been checked.
+    private long getDecidingMatch(long[] blocklistMatches, int enabledBlocklistsMask) {
+        // Track the last white list match, which allows the request if no blocklist decides it.
+        long whitelistMatch = NO_MATCH;
+
+        // Check the blocklists in the order they decide a request.
+        for (int blocklistIndex : DECIDING_ORDER) {
+            // Skip the disabled blocklists.
+            if ((enabledBlocklistsMask & (1 << blocklistIndex)) == 0) {
+                continue;
+            }
+
+            // Get the match.
+            long match = blocklistMatches[blocklistIndex];
+
+            // Process the match.
+            if (match == NO_MATCH) {  // The blocklist didn't match.
+                continue;
+            } else if (isDecidingMatch(match)) {  // The match decides the request.
+                return match;
+            }
+
+            // Store the white list match.
+            whitelistMatch = match;
+        }
+
+        // Return the white list match, or `NO_MATCH`.
+        return whitelistMatch;
+    }
+
+    // A match decides the request if it is a black list match or if it is from the white list of UltraList or UltraPrivacy.
+    private static boolean isDecidingMatch(long match) {
+        // Get the blocklist index.
+        int blocklistIndex = getMatchBlocklist(match);
+
+        // Return the decision.
+        return isBlockedMatch(match) || (blocklistIndex == CombinedBlocklist.ULTRALIST) || (blocklistIndex == CombinedBlocklist.ULTRAPRIVACY);
+    }
+
+    // Pack a match into a long.  From the least significant bits: the blocklist index uses 3 bits, the sublist 5 bits, the part 8 bits, and the entry index the rest.
+    private static long packMatch(int blocklistIndex, int sublist, int part, int entryIndex) {
+        return ((long) entryIndex << 16) | (part << 8) | (sublist << 3) | blocklistIndex;
+    }
+
+    // Get the `CombinedBlocklist` index of the blocklist that matched.
+    public static int getMatchBlocklist(long match) {
+        return (int) (match & 0x7);
+    }
+
+    // Get the sublist that matched.
+    public static int getMatchSublist(long match) {
+        return (int) (match >>> 3) & 0x1F;
+    }
+
+    // Get the part of the combined blocklist that holds the entry that matched.
+    static int getMatchPart(long match) {
+        return (int) (match >>> 8) & 0xFF;
+    }
+
+    // Get the index of the entry that matched in its sublist.
+    static int getMatchEntry(long match) {
+        return (int) (match >>> 16);
+    }
+
+    // Check if the match is from a black list.
+    public static boolean isBlockedMatch(long match) {
+        // The white lists are numbered before the black lists.
+        return (match >= 0) && (getMatchSublist(match) > THIRD_PARTY_DOMAIN_INITIAL_WHITELIST_INT);
+    }
+
+    // Create the resource request result of a match and its attribution, in the schema described by the request constants.  This allocates the display strings, so it is only used when the requests are shown.
+    public String[] getResult(long match, String resourceUrl, MatchAttribution matchAttribution) {
+        // Return a no match request default.
+        if (match == NO_MATCH) {
+            return new String[] {REQUEST_DEFAULT, resourceUrl};
+        }
+
+        // Return a third-party request.
+        if (match == THIRD_PARTY_MATCH) {
+            return new String[] {REQUEST_THIRD_PARTY, resourceUrl};
+        }
+
+        // Return a request that was blocked without being checked.
+        if (match == BLOCKLISTS_NOT_READY_MATCH) {
+            return new String[] {REQUEST_BLOCKED, resourceUrl};
+        }
+
+        // Create the result.
+        return createResult(getMatchSublist(match), matchAttribution.getEntry(), matchAttribution.getOriginalEntry(), matchAttribution.getBlocklistName(), resourceUrl);
+    }
+
+    private UrlTokens getUrlTokens(String resourceUrl) {
+        // Get the URL tokens for this thread.
+        UrlTokens urlTokens = urlTokensThreadLocal.get();
+
+        // Tokenize and hash the URL if it is different than the last one.
+        if (urlTokens.url != resourceUrl) {
+            urlTokens.tokens = TokenIndex.tokenizeUrl(resourceUrl, urlTokens.tokens);
+            urlTokens.ngramHashes = NgramFilter.hashUrl(resourceUrl, urlTokens.ngramHashes);
+            urlTokens.url = resourceUrl;
+
+            // Find the host, which the host anchors match against.  A URL without a host has an empty one.
+            long hostBounds = getHostBounds(resourceUrl);
+            urlTokens.hostStart = (hostBounds == -1) ? 0 : (int) (hostBounds >>> 32);
+            urlTokens.hostEnd = (hostBounds == -1) ? 0 : (int) hostBounds;
+        }
+
+        // Return the tokens.
+        return urlTokens;
+    }
+
+    private void findMatches(int sublist, Blocklist blocklist, UrlTokens urlTokens, FirstMatchCollector firstMatchCollector, String currentDomain, String resourceUrl, int requestResourceTypesMask) {
+        // Get the automaton.
+        AhoCorasickAutomaton automaton = blocklist.getAutomaton(sublist);
+
+        // The automaton finds the entries whose fragments are all contained in the URL in one pass.
+        if (automaton != null) {
+            // Grow the domain entries array if needed.  There is at most one item for each label of the host.
+            if (urlTokens.domainEntries.length < urlTokens.hostEnd - urlTokens.hostStart + 2) {
+                urlTokens.domainEntries = new int[urlTokens.hostEnd - urlTokens.hostStart + 2][];
+            }
+
+            // Look up the `||domain^` entries, which match the host or any of its parent domains, by the host alone.
+            int numberOfHostEntries = blocklist.getHostTrie(sublist).lookup(resourceUrl, urlTokens.hostStart, urlTokens.hostEnd, urlTokens.domainEntries);
+
+            // Record the host entries.  They contain nothing but the host anchor, so they don't need to be checked again.
+            for (int hostPosition = 0; hostPosition < numberOfHostEntries; hostPosition++) {
+                collectMatches(urlTokens.domainEntries[hostPosition], firstMatchCollector);
+            }
+
+            // Note if the host entries matched, so that they aren't counted against the n-gram filter.
+            boolean hostEntriesMatched = firstMatchCollector.hasMatches();
+
+            // Get the n-gram filter.
+            NgramFilter ngramFilter = blocklist.getNgramFilter(sublist);
+
+            if (ngramFilter.mightContainKey(urlTokens.ngramHashes)) {  // The URL might contain the key of an entry, so every entry is checked.
+                // Find the matches with the automaton of all the entries.
+                automaton.findMatches(resourceUrl, urlTokens.hostStart, urlTokens.hostEnd, firstMatchCollector);
+
+                // Record a false positive if the automaton didn't add a match.
+                if (!hostEntriesMatched && !firstMatchCollector.hasMatches()) {
+                    ngramFilter.recordFalsePositive();
+                }
+            } else {  // The URL doesn't contain the key of any entry, so only the entries without a key can match.
+                blocklist.getUnkeyedAutomaton(sublist).findMatches(resourceUrl, urlTokens.hostStart, urlTokens.hostEnd, firstMatchCollector);
+            }
+
+            // Get the automaton of the entries that only apply to some resource types, which is null if none of them apply to this request.
+            AhoCorasickAutomaton typedAutomaton = blocklist.getTypedAutomaton(sublist, requestResourceTypesMask);
+
+            // Find the matches of the typed entries.  The first match collector skips the entries of other types.
+            if (typedAutomaton != null) {
+                typedAutomaton.findMatches(resourceUrl, urlTokens.hostStart, urlTokens.hostEnd, firstMatchCollector);
+            }
+
+            // The sublists with automatons are finished.
+            return;
+        }
+
+        // Get the sublist entries, the domain trie, and the token index.
+        List<String[]> entries = blocklist.getSublist(sublist);
+        DomainTrie domainTrie = blocklist.getDomainTrie(sublist);
+        TokenIndex tokenIndex = blocklist.getTokenIndex(sublist);
+
+        // Only check the entries that apply to the current domain in the domain sublists.
+        if (domainTrie != null) {
+            // Grow the domain entries array if needed.  There is at most one item for each label, plus one for the entries with an empty domain.
+            if (urlTokens.domainEntries.length < currentDomain.length() + 2) {
+                urlTokens.domainEntries = new int[currentDomain.length() + 2][];
+            }
+
+            // Look up the entries for the current domain and its parent domains.
+            int numberOfDomainEntries = domainTrie.lookup(currentDomain, urlTokens.domainEntries);
+
+            // Check the entries of each domain, which are in ascending order.  Each domain has its own entries, so the lowest matching index of each blocklist is kept to preserve the order of the sublist.
+            for (int domainPosition = 0; domainPosition < numberOfDomainEntries; domainPosition++) {
+                collectMatches(urlTokens.domainEntries[domainPosition], null, 0, sublist, blocklist, firstMatchCollector, urlTokens);
+            }
+
+            // The domain sublists are finished.
+            return;
+        }
+
+        // Check every entry in the regular expression sublists, which are not indexed.
+        if (tokenIndex == null) {
+            for (int entryIndex = 0; (entryIndex < entries.size()) && !firstMatchCollector.isFinished(entryIndex); entryIndex++) {
+                // Get the blocklists that still need this entry.
+                int neededBlocklistsMask = firstMatchCollector.getNeededBlocklists(entryIndex);
+
+                // Record the entry if it matches.
+                if ((neededBlocklistsMask != 0) && entryMatches(sublist, blocklist, entryIndex, urlTokens)) {
+                    firstMatchCollector.record(entryIndex, neededBlocklistsMask);
+                }
+            }
+
+            // The regular expression sublists are finished.
+            return;
+        }
+
+        // Check the entries that share a token with the URL.  The first item of the URL tokens array is the number of tokens.  The entries are checked by token, so the lowest matching index of each blocklist is kept.
+        for (int tokenPosition = 1; tokenPosition <= urlTokens.tokens[0]; tokenPosition++) {
+            // Get the token.
+            int token = urlTokens.tokens[tokenPosition];
+
+            // Get the bucket.
+            int[] bucket = tokenIndex.getBucket(token);
+
+            // Check the entries in the bucket whose token is this token.
+            if (bucket != null) {
+                collectMatches(bucket, tokenIndex, token, sublist, blocklist, firstMatchCollector, urlTokens);
+            }
+        }
+
+        // Check the entries without a token.
+        collectMatches(tokenIndex.getUntokenizedEntries(), null, 0, sublist, blocklist, firstMatchCollector, urlTokens);
+    }
+
+    // Record the entries, which are in ascending order and are already known to match.
+    private void collectMatches(int[] entryIndexes, FirstMatchCollector firstMatchCollector) {
+        for (int entryIndex : entryIndexes) {
+            // Stop once the entries are past the first match of every collected blocklist.
+            if (firstMatchCollector.isFinished(entryIndex)) {
+                break;
+            }
+
+            // Get the blocklists that still need this entry.
+            int neededBlocklistsMask = firstMatchCollector.getNeededBlocklists(entryIndex);
+
+            // Record the entry.
+            if (neededBlocklistsMask != 0) {
+                firstMatchCollector.record(entryIndex, neededBlocklistsMask);
+            }
+        }
+    }
+
+    // Check the entries, which are in ascending order.  If the token index is not null, only the entries whose token is the given token are checked.
+    private void collectMatches(int[] entryIndexes, TokenIndex tokenIndex, int token, int sublist, Blocklist blocklist, FirstMatchCollector firstMatchCollector, UrlTokens urlTokens) {
+        for (int entryIndex : entryIndexes) {
+            // Stop once the entries are past the first match of every collected blocklist.
+            if (firstMatchCollector.isFinished(entryIndex)) {
+                break;
+            }
+
+            // Skip the entries that are filed under a different token.
+            if ((tokenIndex != null) && (tokenIndex.getEntryToken(entryIndex) != token)) {
+                continue;
+            }
+
+            // Get the blocklists that still need this entry.
+            int neededBlocklistsMask = firstMatchCollector.getNeededBlocklists(entryIndex);
+
+            // Record the entry if it matches.
+            if ((neededBlocklistsMask != 0) && entryMatches(sublist, blocklist, entryIndex, urlTokens)) {
+                firstMatchCollector.record(entryIndex, neededBlocklistsMask);
+            }
+        }
+    }
+
+    private boolean entryMatches(int sublist, Blocklist blocklist, int entryIndex, UrlTokens urlTokens) {
+        // Get the entry and the resource URL.
+        String[] entry = blocklist.getSublist(sublist).get(entryIndex);
+        String resourceUrl = urlTokens.url;
+
+        // Each sublist compares its entries in a specific way.  The fragments of an entry are separated by wildcards, so they must be found in the URL in order.
+        // The entries of the domain sublists are only checked once the domain trie has matched their domain to the current domain, so the domain isn't compared again.
+        switch (sublist) {
+            case 1:  // Main white list.
+            case 9:  // Main black list.
+            case 16:  // Third-party black list.
+                // All the entries must be contained in the URL.
+                return containsInOrder(urlTokens, entry, 0, false, false);
+
+            case 6:  // Third-party white list.
+                // All the entries must be contained in the URL.  There can be up to five entries.
+                return (entry.length <= 6) && containsInOrder(urlTokens, entry, 0, false, false);
+
+            case 2:  // Final white list.
+                // There are one or two entries, which must be contained in the URL.
+                return containsInOrder(urlTokens, entry, 0, false, false);
+
+            case 3:  // Domain white list.
+            case 12:  // Domain black list.
+            case 7:  // Third-party domain white list.
+            case 18:  // Third-party domain black list.
+                // All the entries must be contained in the URL.
+                return containsInOrder(urlTokens, entry, 1, false, false);
+
+            case 4:  // Domain initial white list.
+                // The URL must start with the first entry and contain the rest.  There can be up to three entries.
+                return (entry.length <= 5) && containsInOrder(urlTokens, entry, 1, true, false);
+
+            case 5:  // Domain final white list.
+            case 14:  // Domain final black list.
+                // The URL must contain the first entry and end with the last.  There can be up to two entries.
+                return (entry.length <= 4) && containsInOrder(urlTokens, entry, 1, false, true);
+
+            case 8:  // Third-party domain initial white list.
+            case 13:  // Domain initial black list.
+                // The URL must start with the first entry and contain the rest.
+                return containsInOrder(urlTokens, entry, 1, true, false);
+
+            case 10:  // Initial black list.
+            case 17:  // Third-party initial black list.
+                // The URL must start with the first entry and contain the rest.
+                return containsInOrder(urlTokens, entry, 0, true, false);
+
+            case 11:  // Final black list.
+                // All the entries except the last must be contained in the URL, which must end with the last entry.
+                return (entry.length <= 4) && containsInOrder(urlTokens, entry, 0, false, true);
+
+            case 15:  // Domain regular expression black list.
+            case 21:  // Third-party domain regular expression black list.
+                return blocklist.getRegularExpression(sublist, entryIndex).matches(resourceUrl);
+
+            case 19:  // Third-party domain initial black list.
+                // The URL must start with the first entry and contain the rest.
+                return (entry.length <= 5) && containsInOrder(urlTokens, entry, 1, true, false);
+
+            case 20:  // Third-party regular expression black list.
+            case 22:  // Regular expression black list.
+                return blocklist.getRegularExpression(sublist, entryIndex).matches(resourceUrl);
+
+            default:
+                // The default value is required but should never be used.
+                return false;
+        }
+    }
+
+    private boolean containsInOrder(UrlTokens urlTokens, String[] entry, int firstFragment, boolean anchoredAtStart, boolean anchoredAtEnd) {
+        // Check if the URL contains the fragments in order, which might have anchors.  The last item in each entry is the original blocklist entry.
+        return FragmentMatcher.containsInOrder(urlTokens.url, urlTokens.hostStart, urlTokens.hostEnd, entry, firstFragment, entry.length - 1, anchoredAtStart, anchoredAtEnd);
+    }
+
+    private String[] createResult(int sublist, String[] entry, String originalEntry, String blocklistName, String resourceUrl) {
+        // The white lists are numbered before the black lists.
+        String disposition = (sublist <= THIRD_PARTY_DOMAIN_INITIAL_WHITELIST_INT) ? REQUEST_ALLOWED : REQUEST_BLOCKED;
+
+        // Get the sublist string.  Matches against the third-party domain initial white list with two entries have always been reported as the third-party domain white list.
+        String sublistString = ((sublist == THIRD_PARTY_DOMAIN_INITIAL_WHITELIST_INT) && (entry.length != 3)) ? THIRD_PARTY_DOMAIN_WHITELIST : SUBLISTS[sublist];
+
+        // Combine the entries, which are every item except the original blocklist entry.
+        StringBuilder entriesStringBuilder = new StringBuilder(entry[0]);
+        for (int fragmentIndex = 1; fragmentIndex < entry.length - 1; fragmentIndex++) {
+            entriesStringBuilder.append("\n").append(entry[fragmentIndex]);
+        }
+
+        // Return the result.
+        return new String[] {disposition, resourceUrl, blocklistName, sublistString, entriesStringBuilder.toString(), originalEntry};
+    }
+
+    static boolean isDomainSublist(int sublist) {
+        // The domain sublists store the domain in the first item of each entry.
+        switch (sublist) {
+            case 3:  // Domain white list.
+            case 4:  // Domain initial white list.
+            case 5:  // Domain final white list.
+            case 7:  // Third-party domain white list.
+            case 8:  // Third-party domain initial white list.
+            case 12:  // Domain black list.
+            case 13:  // Domain initial black list.
+            case 14:  // Domain final black list.
+            case 15:  // Domain regular expression black list.
+            case 18:  // Third-party domain black list.
+            case 19:  // Third-party domain initial black list.
+            case 21:  // Third-party domain regular expression black list.
+            case 23:  // Element hiding list.
+            case 24:  // Element hiding exception list.
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    static boolean isThirdPartySublist(int sublist) {
+        // The third-party sublists are only checked for third-party requests.
+        return ((sublist >= 6) && (sublist <= 8)) || ((sublist >= 16) && (sublist <= 21));
+    }
+
+    static boolean isContainsSublist(int sublist) {
+        // The entries of these sublists match when all their fragments are contained in the URL.
+        return (sublist == 1) || (sublist == 6) || (sublist == 9) || (sublist == 16);
+    }
+
+    static boolean isRegularExpressionSublist(int sublist) {
+        // The regular expression sublists.
+        return (sublist == 15) || (sublist == 20) || (sublist == 21) || (sublist == 22);
+    }
+
+    // Each thread keeps the host, tokens, and n-gram hashes of the last URL it checked and the scratch space for looking up domains and collecting matches.
+    private static class UrlTokens {
+        String url;
+        int hostStart;
+        int hostEnd;
+        int[] tokens = new int[128];
+        long[] ngramHashes = new long[128];
+        int[][] domainEntries = new int[16][];
+        final long[] blocklistMatches = new long[CombinedBlocklist.NUMBER_OF_BLOCKLISTS];
+        final FirstMatchCollector firstMatchCollector = new FirstMatchCollector(CombinedBlocklist.NUMBER_OF_BLOCKLISTS);
+    }
+}
@@ -0,0 +1,1012 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The blocklist parser turns a text blocklist into the sublists used by `BlocklistHelper`, producing the entries the original line-by-line string parser did, except that the anchors are kept.
+// It scans the bytes of the blocklist once.  Each line is copied into a buffer, and the few rare bytes that can be part of a marker are checked as they are copied.  The filter option markers are checked at each `$` once the line is complete.
+// The entries are then cut out of the buffer by index, so the only strings created are the ones stored in the sublists.  The original line is left in the blocklist until the line creates an entry.
+// The blocklists are UTF-8, and every marker is ASCII, so the indexes never split a character.  The `||` and `^` anchors are kept in the entries and matched by `FragmentMatcher`.
+class BlocklistParser {
+    // The markers noted while a line is copied.
+    private final static int ELEMENT_HIDING = 1;  // `##`, `#?#`, or `#@#`.
+    private final static int CSP_SCRIPT_SOURCE = 1 << 1;  // `$csp=script-src`.
+    private final static int NOT_A_REQUEST = 1 << 2;  // Filter options that only apply to something other than a resource request, like `$popup`, `$generichide`, or `$websocket`.
+    private final static int THIRD_PARTY = 1 << 3;  // `third-party`.
+    private final static int NOT_THIRD_PARTY = 1 << 4;  // `~third-party`.
+    private final static int DOMAIN = 1 << 5;  // `domain=`.
+    private final static int FILE = 1 << 6;  // `$file`.
+    private final static int TILDE = 1 << 7;  // `~`.
+    private final static int BACKSLASH = 1 << 8;  // `\`.
+    private final static int WILDCARD = 1 << 9;  // `*`.
+
+    // The bytes that need to be checked as a line is copied.  Checking every byte against every marker is slower than the rest of the parser combined.
+    private final static boolean[] MARKER_BYTES = createMarkerBytes("#$~\\*y=");
+
+    // The sublists, in the order described in `BlocklistHelper`.
+    private final ArrayList<List<String[]>> sublists = new ArrayList<>(BlocklistHelper.NUMBER_OF_SUBLISTS);
+
+    // The current line, which all the entries are cut from.
+    private byte[] line = new byte[256];
+    private int lineLength;
+
+    // The blocklist bytes and the bounds of the current line in it, which is the line as it appears in the blocklist.
+    private ByteBuffer blocklistBytes;
+    private int originalLineStart;
+    private int originalLineEnd;
+
+    // The original line, which is stored with each entry.  It is null until the line creates an entry.
+    private String originalLineString;
+
+    // The markers of the current line.
+    private int markers;
+
+    // The index that follows an initial `||`, or -1.  An entry that starts at this index keeps the `||`.
+    private int hostAnchorIndex;
+
+    // The index of the first `$` in the line, and of the first `domain=` after it, or -1 if they aren't present.
+    private int firstDollarIndex;
+    private int filterDomainIndex;
+
+    // The indexes of every `$` in the line.
+    private int[] dollarIndexes = new int[8];
+    private int numberOfDollars;
+
+    // The entries that are parsed, as described by the entries constants in `BlocklistHelper`.  The headers are always parsed.
+    private final int parsedEntries;
+
+    BlocklistParser(int parsedEntries) {
+        // Store the entries that are parsed.
+        this.parsedEntries = parsedEntries;
+
+        // Initialize the sublists.
+        for (int sublist = 0; sublist < BlocklistHelper.NUMBER_OF_SUBLISTS; sublist++) {
+            sublists.add(new ArrayList<>());
+        }
+    }
+
+    ArrayList<List<String[]>> parse(ByteBuffer blocklistBytes) {
+        // Scan the blocklist.
+        scan(blocklistBytes);
+
+        // Return the sublists.
+        return sublists;
+    }
+
+    static ByteBuffer map(Path blocklistPath) throws IOException {
+        // Map the file, which lets the scanner read it without copying it.  The mapping stays valid after the channel is closed.
+        try (FileChannel fileChannel = FileChannel.open(blocklistPath, StandardOpenOption.READ)) {
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+    }
+
+    static ByteBuffer read(InputStream inputStream) throws IOException {
+        // Create a buffer one byte larger than the stream, so that reaching the end of the stream doesn't grow it.  `available()` returns the uncompressed size of an Android asset.
+        byte[] blocklistBytes = new byte[Math.max(inputStream.available(), 64 * 1024) + 1];
+        int blocklistLength = 0;
+
+        // Read the stream.
+        int readBytes;
+        while ((readBytes = inputStream.read(blocklistBytes, blocklistLength, blocklistBytes.length - blocklistLength)) != -1) {
+            // Track the length.
+            blocklistLength += readBytes;
+
+            // Grow the buffer if it is full.
+            if (blocklistLength == blocklistBytes.length) {
+                blocklistBytes = Arrays.copyOf(blocklistBytes, blocklistBytes.length * 2);
+            }
+        }
+
+        // Return the blocklist.
+        return ByteBuffer.wrap(blocklistBytes, 0, blocklistLength);
+    }
+
+    private void scan(ByteBuffer blocklistBytes) {
+        // Store the blocklist.
+        this.blocklistBytes = blocklistBytes;
+
+        // Get the bounds of the blocklist.
+        int position = blocklistBytes.position();
+        int limit = blocklistBytes.limit();
+
+        // Parse each line.  Lines end with `\n`, `\r`, or `\r\n`, like `BufferedReader.readLine()`.
+        while (position < limit) {
+            // Reset the line.
+            originalLineString = null;
+            markers = 0;
+            hostAnchorIndex = -1;
+            firstDollarIndex = -1;
+            filterDomainIndex = -1;
+            numberOfDollars = 0;
+
+            // Note the start of the original line.
+            originalLineStart = position;
+
+            // Get local copies of the line buffer and its length, which are updated for every byte.
+            byte[] lineBuffer = line;
+            int length = 0;
+
+            // Copy the line.
+            while (position < limit) {
+                // Get the next byte.
+                byte nextByte = blocklistBytes.get(position);
+
+                // Stop at the end of the line.
+                if ((nextByte == '\n') || (nextByte == '\r')) {
+                    break;
+                }
+
+                // Move to the next byte.
+                position++;
+
+                // Grow the line buffer if it is full.
+                if (length == lineBuffer.length) {
+                    lineBuffer = Arrays.copyOf(lineBuffer, length * 2);
+                    line = lineBuffer;
+                }
+
+                // Copy the byte.
+                lineBuffer[length] = nextByte;
+
+                // Note any marker.
+                if (MARKER_BYTES[nextByte & 0xFF]) {
+                    noteMarkers(nextByte, length);
+                }
+
+                // Count the byte.
+                length++;
+            }
+
+            // Store the bounds of the line.
+            lineLength = length;
+            originalLineEnd = position;
+
+            // Note the filter option markers.
+            noteFilterMarkers();
+
+            // Skip the end of the line.
+            if ((position < limit) && (blocklistBytes.get(position++) == '\r') && (position < limit) && (blocklistBytes.get(position) == '\n')) {
+                position++;
+            }
+
+            // Parse the line.
+            parseLine();
+        }
+    }
+
+    private void noteMarkers(byte lastByte, int lastIndex) {
+        // Note the markers that end with the last byte.
+        switch (lastByte) {
+            case '#':
+                if (endsWith(lastIndex, "##") || endsWith(lastIndex, "#?#") || endsWith(lastIndex, "#@#")) {
+                    markers |= ELEMENT_HIDING;
+                }
+                break;
+
+            case '$':
+                // Note the first `$`.
+                if (firstDollarIndex == -1) {
+                    firstDollarIndex = lastIndex;
+                }
+
+                // Grow the dollar indexes if they are full.
+                if (numberOfDollars == dollarIndexes.length) {
+                    dollarIndexes = Arrays.copyOf(dollarIndexes, numberOfDollars * 2);
+                }
+
+                // Store the index, so that the filter option markers can be checked once the line is complete.
+                dollarIndexes[numberOfDollars++] = lastIndex;
+                break;
+
+            case 'y':
+                if (endsWith(lastIndex, "third-party")) {
+                    markers |= THIRD_PARTY;
+
+                    if (endsWith(lastIndex, "~third-party")) {
+                        markers |= NOT_THIRD_PARTY;
+                    }
+                }
+                break;
+
+            case '=':
+                if (endsWith(lastIndex, "domain=")) {
+                    markers |= DOMAIN;
+
+                    // Note the first `domain=` in the filter options.
+                    if ((filterDomainIndex == -1) && (firstDollarIndex != -1)) {
+                        filterDomainIndex = lastIndex - 6;
+                    }
+                }
+                break;
+
+            case '~':
+                markers |= TILDE;
+                break;
+
+            case '\\':
+                markers |= BACKSLASH;
+                break;
+
+            case '*':
+                markers |= WILDCARD;
+                break;
+        }
+    }
+
+    private void noteFilterMarkers() {
+        // Check the markers that start at each `$`.
+        for (int dollar = 0; dollar < numberOfDollars; dollar++) {
+            // Get the index of the `$`.
+            int dollarIndex = dollarIndexes[dollar];
+
+            // Note the markers.
+            if (startsWith(dollarIndex, lineLength, "$csp=script-src")) {
+                markers |= CSP_SCRIPT_SOURCE;
+            }
+
+            if (startsWith(dollarIndex, lineLength, "$file")) {
+                markers |= FILE;
+            }
+        }
+
+        // Note the entries whose filter options, which follow the last `$`, don't apply to any resource type.  Comments are left alone.
+        if ((numberOfDollars > 0) && !startsWith(0, lineLength, "!") && (ResourceTypes.getOptionsResourceTypesMask(getString(dollarIndexes[numberOfDollars - 1] + 1, lineLength), 0) == 0)) {
+            markers |= NOT_A_REQUEST;
+        }
+    }
+
+    private void parseLine() {
+        //noinspection StatementWithEmptyBody
+        if (startsWith(0, lineLength, "[") || (((markers & ELEMENT_HIDING) != 0) && startsWith(0, lineLength, "!"))) {
+            // Entries that start with `[` describe the AdBlock compatibility level.  Comments that happen to contain an element hiding marker are ignored like the rest of the comments.
+            // Do nothing.  Privacy Browser does not use these entries.
+        } else if ((markers & ELEMENT_HIDING) != 0) {  // Entries that contain `##`, `#?#`, and `#@#` are for hiding elements in the main page's HTML.
+            // Only parse the element hiding entries if they were requested.
+            if ((parsedEntries & BlocklistHelper.ELEMENT_HIDING_ENTRIES) != 0) {
+                parseElementHidingLine();
+            }
+        } else //noinspection StatementWithEmptyBody
+            if ((markers & CSP_SCRIPT_SOURCE) != 0) {  // Ignore entries that contain `$csp=script-src`.
+                // Do nothing.  It is uncertain what this directive is even supposed to mean, and it is blocking entire websites like androidcentral.com.  https://redmine.stoutner.com/issues/306.
+        } else //noinspection StatementWithEmptyBody
+            if ((markers & NOT_A_REQUEST) != 0) {  // Ignore entries that don't apply to any resource request.
+                // Do nothing.  The main frame is never blocked, pop-ups and element hiding aren't resource requests, and WebView doesn't report WebSocket connections, so these entries would only cause false positives.
+        } else if (startsWith(0, lineLength, "!")) {  //  Comment entries.
+            if (startsWith(0, lineLength, "! Version:")) {
+                // Store the list version in the headers list.
+                sublists.get(0).add(new String[] {getString(11, lineLength)});
+            }
+
+            if (startsWith(0, lineLength, "! Title:")) {
+                // Store the list title in the headers list.
+                sublists.get(0).add(new String[] {getString(9, lineLength)});
+            }
+        } else //noinspection StatementWithEmptyBody
+            if ((parsedEntries & BlocklistHelper.REQUEST_ENTRIES) == 0) {  // The request entries weren't requested.
+                // Do nothing.  Only the element hiding entries are being parsed.
+        } else if (startsWith(0, lineLength, "@@")) {  // Entries that begin with `@@` are whitelists.
+            parseWhitelistLine();
+        } else if (endsWith(0, lineLength, '|')) {  // Final black list entries.
+            // Strip out the final "|".
+            int entryStart = 0;
+            int entryEnd = lineLength - 1;
+
+            // Skip any initial `||`.
+            entryStart = skipHostAnchor(entryStart, entryEnd);
+
+            // Add the final black list entry.
+            addEntry(11, null, entryStart, entryEnd, 2);
+        } else if (firstDollarIndex != -1) {  // Entries with filter options.
+            parseFilterLine();
+        } else {  // Main black list entries.
+            parseMainLine();
+        }
+    }
+
+    private void parseWhitelistLine() {
+        // Remove the `@@`
+        int entryStart = 2;
+
+        // Skip any initial `||`.
+        entryStart = skipHostAnchor(entryStart, lineLength);
+
+        if (firstDollarIndex != -1) {  // Filter entries.
+            //noinspection StatementWithEmptyBody
+            if ((markers & NOT_THIRD_PARTY) != 0) {  // Ignore entries that contain `~third-party`.
+                // Do nothing.
+            } else if ((markers & THIRD_PARTY) != 0) {  // Third-party white list entries.
+                if ((markers & DOMAIN) != 0) {  // Third-party domain white list entries.
+                    // Get the start of the domains.
+                    int domainsStart = getDomainsStart(firstDollarIndex + 1, filterDomainIndex);
+
+                    //noinspection StatementWithEmptyBody
+                    if (indexOf('~', domainsStart, lineLength) != -1) {  // It is uncertain what a `~` domain means inside an `@@` entry.
+                        // Do Nothing
+                    } else if (startsWith(entryStart, lineLength, "|")) {  // Third-party domain initial white list entries.
+                        //noinspection StatementWithEmptyBody
+                        if (equals(entryStart + 1, firstDollarIndex, "http://") || equals(entryStart + 1, firstDollarIndex, "https://")) {  // Ignore generic entries.
+                            // Do nothing.  These entries are designed for filter options that Privacy Browser does not use.
+                        } else {  // Process third-party domain initial white list entries.
+                            // Add an entry for each domain.
+                            int domainStart = domainsStart;
+                            do {
+                                // Get the end of the domain.
+                                int domainEnd = getDomainEnd(domainStart);
+
+                                // Add the third-party domain initial white list entry.
+                                addEntry(8, getString(domainStart, domainEnd), entryStart + 1, firstDollarIndex, 2);
+
+                                // Move to the next domain.
+                                domainStart = getNextDomainStart(domainStart, domainEnd);
+                            } while (indexOf('|', domainStart, lineLength) != -1);
+                        }
+                    } else {  // Third-party domain entries.
+                        // Track the end of the entry.
+                        int entryEnd = firstDollarIndex;
+
+                        // Add an entry for each domain.
+                        int domainStart = domainsStart;
+                        do {
+                            // Get the end of the domain.
+                            int domainEnd = getDomainEnd(domainStart);
+
+                            // Remove any trailing `*` from the entry.
+                            if (endsWith(entryStart, entryEnd, '*')) {
+                                entryEnd--;
+                            }
+
+                            // Add the third-party domain white list entry.
+                            addEntry(7, getString(domainStart, domainEnd), entryStart, entryEnd, 2);
+
+                            // Move to the next domain.
+                            domainStart = getNextDomainStart(domainStart, domainEnd);
+                        } while (indexOf('|', domainStart, lineLength) != -1);
+                    }
+                } else {  // Process third-party white list entries.
+                    // Add the third-party white list entry.
+                    addEntry(6, null, entryStart, firstDollarIndex, 5);
+                }
+            } else if ((markers & DOMAIN) != 0) {  // Process domain white list entries.
+                // Get the start of the domains.
+                int domainsStart = getDomainsStart(firstDollarIndex + 1, filterDomainIndex);
+
+                if (startsWith(entryStart, firstDollarIndex, "|")) {  // Initial domain white list entries.
+                    //noinspection StatementWithEmptyBody
+                    if (equals(entryStart + 1, firstDollarIndex, "http://") || equals(entryStart + 1, firstDollarIndex, "https://")) {  // Ignore generic entries.
+                        // Do nothing.  These entries are designed for filter options that Privacy Browser does not use.
+                    } else {  // Initial domain white list entry.
+                        // Add an entry for each domain.
+                        int domainStart = domainsStart;
+                        do {
+                            // Get the end of the domain.
+                            int domainEnd = getDomainEnd(domainStart);
+
+                            // Add the domain initial white list entry.
+                            addEntry(4, getString(domainStart, domainEnd), entryStart + 1, firstDollarIndex, 3);
+
+                            // Move to the next domain.
+                            domainStart = getNextDomainStart(domainStart, domainEnd);
+                        } while (indexOf('|', domainStart, lineLength) != -1);
+                    }
+                } else if (endsWith(entryStart, firstDollarIndex, '|')) {  // Final domain white list entries.
+                    // Add an entry for each domain.
+                    int domainStart = domainsStart;
+                    do {
+                        // Get the end of the domain.
+                        int domainEnd = getDomainEnd(domainStart);
+
+                        // Add the domain final white list entry without the final `|`.
+                        addEntry(5, getString(domainStart, domainEnd), entryStart, firstDollarIndex - 1, 2);
+
+                        // Move to the next domain.
+                        domainStart = getNextDomainStart(domainStart, domainEnd);
+                    } while (indexOf('|', domainStart, lineLength) != -1);
+                } else {  // Standard domain white list entries with filters.
+                    //noinspection StatementWithEmptyBody
+                    if (indexOf('~', domainsStart, lineLength) != -1) {  // It is uncertain what a `~` domain means inside an `@@` entry.
+                        // Do Nothing
+                    } else {
+                        // Add an entry for each domain.
+                        int domainStart = domainsStart;
+                        do {
+                            // Get the end of the domain.
+                            int domainEnd = getDomainEnd(domainStart);
+
+                            // Add the domain white list entry.
+                            addEntry(3, getString(domainStart, domainEnd), entryStart, firstDollarIndex, 4);
+
+                            // Move to the next domain.
+                            domainStart = getNextDomainStart(domainStart, domainEnd);
+                        } while (indexOf('|', domainStart, lineLength) != -1);
+                    }
+                }
+            }  // Ignore all other filter entries.
+        } else if (endsWith(entryStart, lineLength, '|')) {  // Final white list entries.
+            // Add the final white list entry without the final `|`.
+            addEntry(2, null, entryStart, lineLength - 1, 2);
+        } else {  // Main white list entries.
+            // Add the main white list entry.
+            addEntry(1, null, entryStart, lineLength, 3);
+        }
+    }
+
+    private void parseFilterLine() {
+        // Track the start of the entry.
+        int entryStart = 0;
+
+        // Skip any initial `||`.
+        entryStart = skipHostAnchor(entryStart, lineLength);
+
+        if ((markers & THIRD_PARTY) != 0) {  // Third-party entries.
+            //noinspection StatementWithEmptyBody
+            if ((markers & NOT_THIRD_PARTY) != 0) {  // Third-party filter white list entries.
+                // Do not process these white list entries.  They are designed to combine with block filters that Privacy Browser doesn't use, like `subdocument` and `xmlhttprequest`.
+            } else if ((markers & DOMAIN) != 0) {  // Third-party domain entries.
+                if (startsWith(entryStart, lineLength, "|")) {  // Third-party domain initial entries.
+                    // Strip the initial `|`.
+                    entryStart++;
+
+                    // Get the start of the domains.
+                    int domainsStart = getDomainsStart(firstDollarIndex + 1, filterDomainIndex);
+
+                    //noinspection StatementWithEmptyBody
+                    if (equals(entryStart, firstDollarIndex, "http:") || equals(entryStart, firstDollarIndex, "https:") || equals(entryStart, firstDollarIndex, "http://") ||
+                            equals(entryStart, firstDollarIndex, "https://")) {  // Ignore generic entries.
+                        // Do nothing.  These entries will almost entirely disable the website.
+                        // Often the original entry is limited to a type like `$script`, but it would still block every request of that type from the website.
+                    } else {  // Third-party domain initial entries.
+                        // Add an entry for each domain.
+                        int domainStart = domainsStart;
+                        do {
+                            // Get the end of the domain.
+                            int domainEnd = getDomainEnd(domainStart);
+
+                            // Add the third-party domain initial black list entry.
+                            addEntry(19, getString(domainStart, domainEnd), entryStart, firstDollarIndex, 3);
+
+                            // Move to the next domain.
+                            domainStart = getNextDomainStart(domainStart, domainEnd);
+                        } while (indexOf('|', domainStart, lineLength) != -1);
+                    }
+                } else if ((markers & BACKSLASH) != 0) {  // Process a third-party domain black list regular expression.
+                    // Parse the entry.  At least one regular expression in this entry contains `$`, so the parser uses `/$`.
+                    int regularExpressionEnd = indexOf("/$", entryStart);
+                    int entryEnd = (regularExpressionEnd == -1) ? entryStart : (regularExpressionEnd + 1);
+                    int filtersStart = entryEnd + 1;
+
+                    // Get the start of the domains.
+                    int domainsStart = getDomainsStart(filtersStart, indexOf("domain=", filtersStart));
+
+                    // Add an entry for each domain.
+                    int domainStart = domainsStart;
+                    do {
+                        // Get the end of the domain.
+                        int domainEnd = getDomainEnd(domainStart);
+
+                        // Add the third-party domain regular expression black list entry.
+                        addEntry(21, getString(domainStart, domainEnd), entryStart, entryEnd, 1);
+
+                        // Move to the next domain.
+                        domainStart = getNextDomainStart(domainStart, domainEnd);
+                    } while (indexOf('|', domainStart, lineLength) != -1);
+                } else {  // Third-party domain entries.
+                    // Get the start of the domains.
+                    int domainsStart = getDomainsStart(firstDollarIndex + 1, filterDomainIndex);
+
+                    // Strip any trailing "*" from the entry.
+                    int entryEnd = firstDollarIndex;
+                    if (endsWith(entryStart, entryEnd, '*')) {
+                        entryEnd--;
+                    }
+
+                    // Track if any third-party white list filters are applied.
+                    boolean whitelistDomain = false;
+
+                    // Add an entry for each domain.
+                    int domainStart = domainsStart;
+                    do {
+                        // Get the end of the domain.
+                        int domainEnd = getDomainEnd(domainStart);
+
+                        // Differentiate between block list domains and white list domains.
+                        if (startsWith(domainStart, domainEnd, "~")) {  // White list third-party domain entry.
+                            // Set the white list domain flag.
+                            whitelistDomain = true;
+
+                            // Add the third-party domain white list entry without the initial `~`.
+                            addEntry(7, getString(domainStart + 1, domainEnd), entryStart, entryEnd, 2);
+                        } else {  // Third-party domain black list entries.
+                            // Add the third-party domain black list entry.
+                            addEntry(18, getString(domainStart, domainEnd), entryStart, entryEnd, 2);
+                        }
+
+                        // Move to the next domain.
+                        domainStart = getNextDomainStart(domainStart, domainEnd);
+                    } while (indexOf('|', domainStart, lineLength) != -1);
+
+                    // Add a third-party black list entry if a white list domain was processed.
+                    if (whitelistDomain) {
+                        addEntry(16, null, entryStart, entryEnd, 2);
+                    }
+                }
+            } else if (startsWith(entryStart, lineLength, "|")) {  // Third-party initial black list entries.
+                // Add the third-party initial black list entry without the initial `|`.
+                addEntry(17, null, entryStart + 1, firstDollarIndex, 2);
+            } else if ((markers & BACKSLASH) != 0) {  // Process a regular expression black list entry.
+                // Get the end of the entry.
+                int regularExpressionEnd = indexOf("$/$", entryStart);
+                int entryEnd = (regularExpressionEnd == -1) ? firstDollarIndex : (regularExpressionEnd + 2);  // If the entry contains `$/$`, the first `$` is part of the regular expression.
+
+                // Add the third-party regular expression black list entry.
+                addEntry(20, null, entryStart, entryEnd, 1);
+            } else if ((markers & WILDCARD) != 0) {  // Third-party and regular expression black list entries.
+                if (endsWith(entryStart, firstDollarIndex, '*')) {  // Process a third-party black list single entry.
+                    // Add the third-party black list entry without the final `*`.
+                    addEntry(16, null, entryStart, firstDollarIndex - 1, 1);
+                } else {  // There are two or more entries.
+                    // Add the third-party black list entry.
+                    addEntry(16, null, entryStart, firstDollarIndex, 4);
+                }
+            } else {  // Process a third party black list single entry.
+                // Add the third-party black list entry.
+                addEntry(16, null, entryStart, firstDollarIndex, 1);
+            }
+        } else if (filterDomainIndex != -1) {  // Domain entries.
+            // Get the start of the domains.
+            int domainsStart = filterDomainIndex + 7;
+
+            if ((markers & TILDE) != 0) {  // Domain white list entries.
+                // Strip any final `*` from the entry.  They are redundant.
+                int entryEnd = firstDollarIndex;
+                if (endsWith(entryStart, entryEnd, '*')) {
+                    entryEnd--;
+                }
+
+                // Add an entry for each domain.
+                int domainStart = domainsStart;
+                do {
+                    // Get the end of the domain.
+                    int domainEnd = getDomainEnd(domainStart);
+
+                    // Add the domain white list entry without the initial `~`.
+                    addEntry(3, getString(getNextCharacterIndex(domainStart, domainEnd), domainEnd), entryStart, entryEnd, 3);
+
+                    // Move to the next domain.
+                    domainStart = getNextDomainStart(domainStart, domainEnd);
+                } while (indexOf('|', domainStart, lineLength) != -1);
+            } else if (entryStart < firstDollarIndex) {  // Domain black list entries.  Lines that begin with a filter option, like `$websocket`, don't have an entry.
+                // Add an entry for each domain.
+                int domainStart = domainsStart;
+                do {
+                    // Get the end of the domain.
+                    int domainEnd = getDomainEnd(domainStart);
+
+                    if (startsWith(entryStart, firstDollarIndex, "|")) {  // Domain initial black list entries.
+                        //noinspection StatementWithEmptyBody
+                        if (equals(entryStart + 1, firstDollarIndex, "http://") || equals(entryStart + 1, firstDollarIndex, "https://")) {
+                            // Do nothing.  These entries will entirely block the website.
+                            // Often the original entry is limited to a type like `$script`, but it would still block every request of that type from the website.
+                        } else {  // Process a domain initial black list entry
+                            // Add the domain initial black list entry without the initial `|`.
+                            addEntry(13, getString(domainStart, domainEnd), entryStart + 1, firstDollarIndex, 1);
+                        }
+                    } else if (endsWith(entryStart, firstDollarIndex, '|')) {  // Domain final black list entries.
+                        // Add the domain final black list entry without the final `|`.
+                        addEntry(14, getString(domainStart, domainEnd), entryStart, firstDollarIndex - 1, 2);
+                    } else if (indexOf('\\', entryStart, firstDollarIndex) != -1) {  // Process a domain regular expression black list entry.
+                        // Add the domain regular expression black list entry.
+                        addEntry(15, getString(domainStart, domainEnd), entryStart, firstDollarIndex, 1);
+                    } else {  // Process a domain black list entry.
+                        // Add the domain black list entry.
+                        addEntry(12, getString(domainStart, domainEnd), entryStart, firstDollarIndex, 3);
+                    }
+
+                    // Move to the next domain.
+                    domainStart = getNextDomainStart(domainStart, domainEnd);
+                } while (indexOf('|', domainStart, lineLength) != -1);
+            }
+        } else if ((markers & TILDE) != 0) {  // White list entries.  Privacy Browser does not differentiate against these filter options, so they are just generally white listed.
+            // Remove the filter options and strip any trailing `*`.
+            int entryEnd = firstDollarIndex;
+            if (endsWith(entryStart, entryEnd, '*')) {
+                entryEnd--;
+            }
+
+            // Add the main white list entry.
+            addEntry(1, null, entryStart, entryEnd, 2);
+        } else if ((markers & BACKSLASH) != 0) {  // Process a regular expression black list entry.
+            // Add the regular expression black list entry without the filter options.
+            addEntry(22, null, entryStart, firstDollarIndex, 1);
+        } else {  // Black list entries.
+            // Remove the filter options.  EasyPrivacy contains an entry with `$file` that does not have filter options.
+            int entryEnd = ((markers & FILE) != 0) ? lineLength : firstDollarIndex;
+
+            // Strip any trailing `*`.  These are redundant.
+            if (endsWith(entryStart, entryEnd, '*')) {
+                entryEnd--;
+            }
+
+            if (startsWith(entryStart, entryEnd, "|")) {  // Initial black list entries.
+                // Add the initial black list entry without the initial `|`.
+                addEntry(10, null, entryStart + 1, entryEnd, 2);
+            } else if (endsWith(entryStart, entryEnd, '|')) {  // Final black list entries.
+                // Ignore entries with `object` filters.  They can block entire websites and don't have any meaning in the context of Privacy Browser.
+                if (!originalLineContains("$object")) {
+                    // Add the final black list entry without the final `|`.
+                    addEntry(11, null, entryStart, entryEnd - 1, 3);
+                }
+            } else {  // Main black list entries.
+                // Add the main black list entry.
+                addEntry(9, null, entryStart, entryEnd, 3);
+            }
+        }
+    }
+
+    private void parseMainLine() {
+        // Track the bounds of the entry.
+        int entryStart = 0;
+        int entryEnd = lineLength;
+
+        // Skip any initial `||`.
+        entryStart = skipHostAnchor(entryStart, entryEnd);
+
+        // Strip out any initial `*`.
+        if (startsWith(entryStart, entryEnd, "*")) {
+            entryStart++;
+        }
+
+        // Strip out any trailing `*`.
+        if (endsWith(entryStart, entryEnd, '*')) {
+            entryEnd--;
+        }
+
+        if (startsWith(entryStart, entryEnd, "|")) {  // Initial black list entries.
+            // Add the initial black list entry without the initial `|`.
+            addEntry(10, null, entryStart + 1, entryEnd, 2);
+        } else if (endsWith(entryStart, entryEnd, '|')) {  // Final black list entries.
+            // Add the final black list entry without the final `|`.
+            addEntry(11, null, entryStart, entryEnd - 1, 3);
+        } else {  // Main black list entries.
+            // Add the main black list entry.
+            addEntry(9, null, entryStart, entryEnd, 5);
+        }
+    }
+
+    private void parseElementHidingLine() {
+        // Find the marker.
+        int markerStart = getElementHidingMarkerStart();
+
+        // Ignore the extended CSS entries, which contain `#?#`.  Their selectors need a script to be evaluated, which a style sheet can't do.
+        if (line[markerStart + 1] == '?') {
+            return;
+        }
+
+        // Determine if the entry is an exception, which contains `#@#`.
+        boolean isException = (line[markerStart + 1] == '@');
+
+        // Get the selector, which follows the marker.
+        String selector = getString(markerStart + (isException ? 3 : 2), lineLength).trim();
+
+        // Ignore the selectors that a style sheet can't use.
+        if (!ElementHidingStylesheets.isSupportedSelector(selector)) {
+            return;
+        }
+
+        // Get the sublist of the entry.
+        int sublist = isException ? 24 : 23;
+
+        // Track if the entry has a domain it applies to.
+        boolean hasDomain = false;
+
+        // Add an entry for each domain, which are separated by `,`.
+        int domainStart = 0;
+        while (domainStart < markerStart) {
+            // Get the end of the domain.
+            int separatorIndex = indexOf(',', domainStart, markerStart);
+            int domainEnd = (separatorIndex == -1) ? markerStart : separatorIndex;
+
+            if (startsWith(domainStart, domainEnd, "~")) {  // The entry doesn't apply to the domain.
+                // An element hiding entry is excepted on the domain.  The `~` domains of an exception would apply it everywhere else, which isn't supported.
+                if (!isException) {
+                    addElementHidingEntry(24, getString(domainStart + 1, domainEnd), selector);
+                }
+            } else if (domainEnd > domainStart) {  // The entry applies to the domain.
+                // Add the entry.
+                addElementHidingEntry(sublist, getString(domainStart, domainEnd), selector);
+
+                // Note that the entry has a domain.
+                hasDomain = true;
+            }
+
+            // Move to the next domain.
+            domainStart = domainEnd + 1;
+        }
+
+        // Entries without a domain they apply to are generic and apply to every domain.  They are stored with an empty domain.
+        if (!hasDomain) {
+            addElementHidingEntry(sublist, "", selector);
+        }
+    }
+
+    // Get the start of the first `##`, `#?#`, or `#@#` in the line.
+    private int getElementHidingMarkerStart() {
+        // Check each `#` that is followed by enough characters to be a marker.
+        for (int index = 0; index < lineLength - 1; index++) {
+            if ((line[index] == '#') && ((line[index + 1] == '#') || ((index < lineLength - 2) && ((line[index + 1] == '?') || (line[index + 1] == '@')) && (line[index + 2] == '#')))) {
+                return index;
+            }
+        }
+
+        // The marker was noted while the line was copied, so this isn't reached.
+        return -1;
+    }
+
+    // Add an element hiding entry, which holds the domain, the selector, and the original line.
+    private void addElementHidingEntry(int sublist, String domain, String selector) {
+        // Convert the original line the first time the line creates an entry.
+        if (originalLineString == null) {
+            originalLineString = getOriginalLine();
+        }
+
+        // Add the entry to the sublist.
+        sublists.get(sublist).add(new String[] {domain, selector, originalLineString});
+    }
+
+    // Add an entry to the sublist.  The entry is split at each `*` into at most the maximum number of fragments, with any further `*` left in the last fragment.
+    private void addEntry(int sublist, String domain, int entryStart, int entryEnd, int maximumFragments) {
+        // Count the fragments.
+        int numberOfFragments = 1;
+        int wildcardIndex = entryStart - 1;
+        while ((numberOfFragments < maximumFragments) && ((wildcardIndex = indexOf('*', wildcardIndex + 1, entryEnd)) != -1)) {
+            numberOfFragments++;
+        }
+
+        // Create the entry, which holds the domain if there is one, the fragments, and the original line.
+        int domainOffset = (domain == null) ? 0 : 1;
+        String[] entry = new String[domainOffset + numberOfFragments + 1];
+
+        // Store the domain.
+        if (domain != null) {
+            entry[0] = domain;
+        }
+
+        // Store the fragments.  An entry that starts right after an initial `||` keeps it in its first fragment, unless the entry is a regular expression.
+        int fragmentStart = ((entryStart == hostAnchorIndex) && !BlocklistHelper.isRegularExpressionSublist(sublist)) ? (entryStart - 2) : entryStart;
+        for (int fragment = 0; fragment < numberOfFragments - 1; fragment++) {
+            // Get the end of the fragment.
+            int fragmentEnd = indexOf('*', fragmentStart, entryEnd);
+
+            // Store the fragment.
+            entry[domainOffset + fragment] = getString(fragmentStart, fragmentEnd);
+
+            // Move past the `*`.
+            fragmentStart = fragmentEnd + 1;
+        }
+
+        // Store the last fragment, which runs to the end of the entry.
+        entry[domainOffset + numberOfFragments - 1] = getString(fragmentStart, entryEnd);
+
+        // Convert the original line the first time the line creates an entry.
+        if (originalLineString == null) {
+            originalLineString = getOriginalLine();
+        }
+
+        // Store the original line.
+        entry[entry.length - 1] = originalLineString;
+
+        // Add the entry to the sublist.
+        sublists.get(sublist).add(entry);
+    }
+
+    // Skip an initial `||`, which is kept out of the way while the entry is classified.  The index after it is noted so that `addEntry()` can put it back.
+    private int skipHostAnchor(int entryStart, int entryEnd) {
+        // Return the entry start if it isn't anchored.
+        if (!startsWith(entryStart, entryEnd, "||")) {
+            return entryStart;
+        }
+
+        // Note the index after the anchor.
+        hostAnchorIndex = entryStart + 2;
+
+        // Return the index after the anchor.
+        return hostAnchorIndex;
+    }
+
+    private static boolean[] createMarkerBytes(String markerCharacters) {
+        // Create the table.
+        boolean[] markerBytes = new boolean[256];
+
+        // Mark each character.
+        for (int index = 0; index < markerCharacters.length(); index++) {
+            markerBytes[markerCharacters.charAt(index)] = true;
+        }
+
+        // Return the table.
+        return markerBytes;
+    }
+
+    // Get the start of the domains in the filter options, which follows the first `domain=` or, if there isn't one, the first six characters of the filter options.
+    private int getDomainsStart(int filtersStart, int domainIndex) {
+        // Return the index after `domain=`.
+        if (domainIndex != -1) {
+            return domainIndex + 7;
+        }
+
+        // Skip the first six characters of the filter options, which can't go past the end of the line.
+        int domainsStart = filtersStart;
+        for (int character = 0; (character < 6) && (domainsStart < lineLength); character++) {
+            domainsStart = getNextCharacterIndex(domainsStart, lineLength);
+        }
+
+        // Return the start of the domains.
+        return Math.min(domainsStart, lineLength);
+    }
+
+    // Get the end of the domain that starts at the index.  The domains are separated by `|`.
+    private int getDomainEnd(int domainStart) {
+        // Get the next separator.
+        int separatorIndex = indexOf('|', domainStart, lineLength);
+
+        // Return the end of the domain.
+        return (separatorIndex == -1) ? lineLength : separatorIndex;
+    }
+
+    // Get the start of the domain that follows the domain.
+    private int getNextDomainStart(int domainStart, int domainEnd) {
+        // The last domain is followed by nothing.
+        return (domainEnd == lineLength) ? domainStart : (domainEnd + 1);
+    }
+
+    private String getString(int start, int end) {
+        // Create a string from the bytes of the line.
+        return new String(line, start, Math.max(end - start, 0), StandardCharsets.UTF_8);
+    }
+
+    // Get the index of the character that follows the one at the index.  Every domain in these entries is expected to start with `~`, but the first character is removed either way.
+    private int getNextCharacterIndex(int index, int end) {
+        // Move past the first byte.
+        index++;
+
+        // Move past the continuation bytes of a multi-byte character.
+        while ((index < end) && ((line[index] & 0xC0) == 0x80)) {
+            index++;
+        }
+
+        // Return the index of the next character.
+        return index;
+    }
+
+    private int indexOf(char character, int start, int end) {
+        // Find the character.
+        for (int index = start; index < end; index++) {
+            if (line[index] == character) {
+                return index;
+            }
+        }
+
+        // The character isn't present.
+        return -1;
+    }
+
+    private int indexOf(String string, int start) {
+        // Find the string in the rest of the line.
+        for (int index = start; index <= lineLength - string.length(); index++) {
+            if (regionMatches(index, string)) {
+                return index;
+            }
+        }
+
+        // The string isn't present.
+        return -1;
+    }
+
+    private boolean startsWith(int start, int end, String prefix) {
+        // Check if the range starts with the prefix.
+        return (end - start >= prefix.length()) && regionMatches(start, prefix);
+    }
+
+    private boolean endsWith(int start, int end, char character) {
+        // Check if the range ends with the character.
+        return (end > start) && (line[end - 1] == character);
+    }
+
+    // Check if the line ends with the suffix at the index.  The last character of the suffix has already been matched, and the rest is compared backwards, which usually fails on the first comparison.
+    private boolean endsWith(int lastIndex, String suffix) {
+        // The line is too short.
+        if (lastIndex + 1 < suffix.length()) {
+            return false;
+        }
+
+        // Compare the rest of the suffix.
+        for (int suffixIndex = suffix.length() - 2; suffixIndex >= 0; suffixIndex--) {
+            if (line[lastIndex - (suffix.length() - 1 - suffixIndex)] != suffix.charAt(suffixIndex)) {
+                return false;
+            }
+        }
+
+        // The line ends with the suffix.
+        return true;
+    }
+
+    private boolean equals(int start, int end, String string) {
+        // Check if the range is the string.
+        return (end - start == string.length()) && regionMatches(start, string);
+    }
+
+    private boolean regionMatches(int start, String string) {
+        // Compare each character.  The strings are ASCII.
+        for (int index = 0; index < string.length(); index++) {
+            if (line[start + index] != string.charAt(index)) {
+                return false;
+            }
+        }
+
+        // The region matches.
+        return true;
+    }
+
+    private String getOriginalLine() {
+        // Get the length of the original line.
+        int originalLineLength = originalLineEnd - originalLineStart;
+
+        // Create the string directly from a blocklist that was read into an array.
+        if (blocklistBytes.hasArray()) {
+            return new String(blocklistBytes.array(), blocklistBytes.arrayOffset() + originalLineStart, originalLineLength, StandardCharsets.UTF_8);
+        }
+
+        // Copy the original line out of a mapped blocklist.
+        byte[] originalLineBytes = new byte[originalLineLength];
+        for (int index = 0; index < originalLineLength; index++) {
+            originalLineBytes[index] = blocklistBytes.get(originalLineStart + index);
+        }
+
+        // Create the string.
+        return new String(originalLineBytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean originalLineContains(String string) {
+        // Find the string in the original line.
+        for (int start = originalLineStart; start <= originalLineEnd - string.length(); start++) {
+            // Compare the characters.
+            int index = 0;
+            while ((index < string.length()) && (blocklistBytes.get(start + index) == string.charAt(index))) {
+                index++;
+            }
+
+            // Return true if every character matched.
+            if (index == string.length()) {
+                return true;
+            }
+        }
+
+        // The string isn't present.
+        return false;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// A blocklist snapshot stores the sublists created by `BlocklistHelper.parseBlocklist()` in a compact binary file, so that the text blocklists only need to be parsed once for each installation of the app.
+// The file starts with a magic number, the format version, and the key.  It is followed by a table of the unique strings and then by each sublist, with every entry stored as indexes into the string table.
+public class BlocklistSnapshotHelper {
+    // The magic number identifies a blocklist snapshot file.
+    private final static int MAGIC_NUMBER = 0x50424253;  // `PBBS`.
+
+    // The format version must be incremented whenever the layout of the file or the output of `parseBlocklist()` changes.
+    private final static int FORMAT_VERSION = 5;
+
+    // Read the sublists from the snapshot.  Null is returned if the snapshot doesn't exist, was created with a different key, or can't be read.
+    public static ArrayList<List<String[]>> readSnapshot(File snapshotFile, long key) {
+        // Only read the snapshot if it exists.
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+
+        // Map the snapshot into memory.  The `try` closes the stream when it is finished.
+        try (FileInputStream snapshotFileInputStream = new FileInputStream(snapshotFile)) {
+            // Get the file channel.
+            FileChannel snapshotFileChannel = snapshotFileInputStream.getChannel();
+
+            // Map the snapshot, which lets the kernel page it in with a bulk read.
+            MappedByteBuffer snapshotByteBuffer = snapshotFileChannel.map(FileChannel.MapMode.READ_ONLY, 0, snapshotFileChannel.size());
+
+            // Check the header.
+            if ((snapshotByteBuffer.getInt() != MAGIC_NUMBER) || (snapshotByteBuffer.getInt() != FORMAT_VERSION) || (snapshotByteBuffer.getLong() != key)) {
+                // The snapshot is from another version of the app or the blocklists.
+                return null;
+            }
+
+            // Get the number of strings.
+            int numberOfStrings = snapshotByteBuffer.getInt();
+
+            // Initialize the strings array.
+            String[] strings = new String[numberOfStrings];
+
+            // Create a byte array for decoding the strings, which is grown as needed.
+            byte[] stringBytes = new byte[256];
+
+            // Read the strings.
+            for (int stringIndex = 0; stringIndex < numberOfStrings; stringIndex++) {
+                // Get the length of the string in bytes.
+                int stringLength = snapshotByteBuffer.getInt();
+
+                // Grow the byte array if needed.
+                if (stringBytes.length < stringLength) {
+                    stringBytes = new byte[Math.max(stringLength, stringBytes.length * 2)];
+                }
+
+                // Read the string.
+                snapshotByteBuffer.get(stringBytes, 0, stringLength);
+                strings[stringIndex] = new String(stringBytes, 0, stringLength, StandardCharsets.UTF_8);
+            }
+
+            // Get the number of sublists.
+            int numberOfSublists = snapshotByteBuffer.getInt();
+
+            // Initialize the sublists.
+            ArrayList<List<String[]>> sublists = new ArrayList<>(numberOfSublists);
+
+            // Read the sublists.
+            for (int sublistIndex = 0; sublistIndex < numberOfSublists; sublistIndex++) {
+                // Get the number of entries.
+                int numberOfEntries = snapshotByteBuffer.getInt();
+
+                // Initialize the sublist.
+                List<String[]> sublist = new ArrayList<>(numberOfEntries);
+
+                // Read the entries.
+                for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+                    // Get the number of items.
+                    int numberOfItems = snapshotByteBuffer.getInt();
+
+                    // Initialize the entry.
+                    String[] entry = new String[numberOfItems];
+
+                    // Read the items, which are indexes into the string table.
+                    for (int itemIndex = 0; itemIndex < numberOfItems; itemIndex++) {
+                        entry[itemIndex] = strings[snapshotByteBuffer.getInt()];
+                    }
+
+                    // Add the entry to the sublist.
+                    sublist.add(entry);
+                }
+
+                // Add the sublist.
+                sublists.add(sublist);
+            }
+
+            // Return the sublists.
+            return sublists;
+        } catch (IOException | RuntimeException exception) {
+            // The snapshot is truncated or corrupt, so the blocklist will be parsed instead.
+            return null;
+        }
+    }
+
+    // Write the sublists to the snapshot.  The snapshot is written to a temporary file and then renamed, so a partial snapshot is never read.
+    public static void writeSnapshot(File snapshotFile, long key, ArrayList<List<String[]>> sublists) {
+        // Get a handle for the temporary file.
+        File temporarySnapshotFile = new File(snapshotFile.getPath() + ".tmp");
+
+        // Assign an index to each unique string.  Many strings, like the original blocklist entry of a rule with several domains, are repeated.
+        HashMap<String, Integer> stringIndexes = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        for (List<String[]> sublist : sublists) {
+            for (String[] entry : sublist) {
+                for (String item : entry) {
+                    if (!stringIndexes.containsKey(item)) {
+                        stringIndexes.put(item, strings.size());
+                        strings.add(item);
+                    }
+                }
+            }
+        }
+
+        // Write the snapshot.  The `try` closes the stream when it is finished.
+        try (DataOutputStream snapshotDataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporarySnapshotFile)))) {
+            // Write the header.
+            snapshotDataOutputStream.writeInt(MAGIC_NUMBER);
+            snapshotDataOutputStream.writeInt(FORMAT_VERSION);
+            snapshotDataOutputStream.writeLong(key);
+
+            // Write the string table.
+            snapshotDataOutputStream.writeInt(strings.size());
+            for (String string : strings) {
+                // Encode the string.
+                byte[] stringBytes = string.getBytes(StandardCharsets.UTF_8);
+
+                // Write the length and the bytes.
+                snapshotDataOutputStream.writeInt(stringBytes.length);
+                snapshotDataOutputStream.write(stringBytes);
+            }
+
+            // Write the sublists.
+            snapshotDataOutputStream.writeInt(sublists.size());
+            for (List<String[]> sublist : sublists) {
+                // Write the number of entries.
+                snapshotDataOutputStream.writeInt(sublist.size());
+
+                // Write each entry.
+                for (String[] entry : sublist) {
+                    // Write the number of items.
+                    snapshotDataOutputStream.writeInt(entry.length);
+
+                    // Write the index of each item.
+                    for (String item : entry) {
+                        snapshotDataOutputStream.writeInt(stringIndexes.get(item));
+                    }
+                }
+            }
+        } catch (IOException exception) {
+            // The snapshot couldn't be written, so the blocklist will be parsed again next time.
+            //noinspection ResultOfMethodCallIgnored
+            temporarySnapshotFile.delete();
+            return;
+        }
+
+        // Replace the old snapshot.
+        if (!temporarySnapshotFile.renameTo(snapshotFile)) {
+            // Delete the temporary file if it couldn't be renamed.
+            //noinspection ResultOfMethodCallIgnored
+            temporarySnapshotFile.delete();
+        }
+    }
+
+    // Create a key from the values that determine the contents of the blocklists.
+    public static long createKey(long... values) {
+        // Start with the FNV-1a offset basis.
+        long key = 0xCBF29CE484222325L;
+
+        // Hash each value.
+        for (long value : values) {
+            key = (key ^ value) * 0x100000001B3L;
+        }
+
+        // Return the key.
+        return key;
+    }
+}
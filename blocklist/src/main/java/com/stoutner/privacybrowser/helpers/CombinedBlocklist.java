@@ -0,0 +1,664 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+// The combined blocklist lets `BlocklistHelper.checkBlocklists()` check a request against all the enabled blocklists at once.
+// Once the enabled blocklists are loaded they are merged into a single part, where each entry carries a mask of the blocklists it came from.  While they are still loading, and when a blocklist is loaded later, each new blocklist is its own part.
+// The merged part can later be reordered, so that the entries that match the most requests are at the front of their sublists.
+public class CombinedBlocklist {
+    // The blocklist indexes.
+    public final static int EASYLIST = 0;
+    public final static int EASYPRIVACY = 1;
+    public final static int FANBOYS_ANNOYANCE_LIST = 2;
+    public final static int FANBOYS_SOCIAL_BLOCKING_LIST = 3;
+    public final static int ULTRALIST = 4;
+    public final static int ULTRAPRIVACY = 5;
+
+    // The number of blocklists.
+    public final static int NUMBER_OF_BLOCKLISTS = 6;
+
+    // The generation of the next combined blocklist.
+    private final static AtomicLong nextGeneration = new AtomicLong();
+
+    // The generation increases with each combined blocklist that is created.  Each combined blocklist is created from the one that was published before it, so a later published combined blocklist always has a higher generation.
+    private final long generation = nextGeneration.getAndIncrement();
+
+    // The names and versions of the blocklists, which are null for the blocklists that haven't been loaded.
+    private final String[] names = new String[NUMBER_OF_BLOCKLISTS];
+    private final String[] versions = new String[NUMBER_OF_BLOCKLISTS];
+
+    // The parts and the mask of the blocklists in each part.
+    private final Blocklist[] parts;
+    private final int[] partBlocklistsMasks;
+
+    // The blocklists mask of each entry, indexed by part and sublist.  It is null for the parts that only hold one blocklist.
+    private final int[][][] partEntryBlocklistsMasks;
+
+    // The source entries of each request sublist entry, indexed by part and sublist, which are the indexes of the entry in the blocklists it came from.  They are null for the parts that only hold one blocklist.
+    // An entry of a single blocklist stores its index in that blocklist.  An entry shared by several blocklists stores the complement of the position of its source entries in the shared source entries, in ascending blocklist order.
+    private final int[][][] partEntrySources;
+    private final int[][][] partSharedEntrySources;
+
+    // The original entry offsets of each loaded blocklist, indexed by sublist and by the index of the entry in its own blocklist.  Only the request sublists are kept.
+    private final int[][][] blocklistOriginalEntryOffsets;
+
+    // The mask of the loaded blocklists.
+    private final int loadedBlocklistsMask;
+
+    // The rule hit counters, which count the hits of each blocklist by the index of the entry in its own blocklist.  They are shared with the combined blocklists created from this one, so the hits are kept when the blocklists are merged.
+    private final RuleHitCounters hitCounters;
+
+    private CombinedBlocklist(String[] names, String[] versions, Blocklist[] parts, int[] partBlocklistsMasks, int[][][] partEntryBlocklistsMasks, int[][][] partEntrySources, int[][][] partSharedEntrySources,
+                              int[][][] blocklistOriginalEntryOffsets, RuleHitCounters hitCounters) {
+        // Store the parts.
+        this.parts = parts;
+        this.partBlocklistsMasks = partBlocklistsMasks;
+        this.partEntryBlocklistsMasks = partEntryBlocklistsMasks;
+        this.partEntrySources = partEntrySources;
+        this.partSharedEntrySources = partSharedEntrySources;
+
+        // Store the original entry offsets and the hits.
+        this.blocklistOriginalEntryOffsets = blocklistOriginalEntryOffsets;
+        this.hitCounters = hitCounters;
+
+        // Copy the names and versions of the loaded blocklists.
+        System.arraycopy(names, 0, this.names, 0, NUMBER_OF_BLOCKLISTS);
+        System.arraycopy(versions, 0, this.versions, 0, NUMBER_OF_BLOCKLISTS);
+
+        // Combine the masks of the parts.
+        int loadedMask = 0;
+        for (int partBlocklistsMask : partBlocklistsMasks) {
+            loadedMask |= partBlocklistsMask;
+        }
+        loadedBlocklistsMask = loadedMask;
+    }
+
+    // Combine the loaded blocklists without merging them, which is quick enough to repeat each time a blocklist finishes loading.  Blocklists that haven't been loaded are null.
+    public static CombinedBlocklist createUnmerged(Blocklist[] blocklists) {
+        // Count the loaded blocklists.
+        int numberOfParts = 0;
+        for (Blocklist blocklist : blocklists) {
+            if (blocklist != null) {
+                numberOfParts++;
+            }
+        }
+
+        // Initialize the part arrays, the names and versions, the original entry offsets, and the hit counters.
+        Blocklist[] parts = new Blocklist[numberOfParts];
+        int[] partBlocklistsMasks = new int[numberOfParts];
+        String[] names = new String[NUMBER_OF_BLOCKLISTS];
+        String[] versions = new String[NUMBER_OF_BLOCKLISTS];
+        int[][][] blocklistOriginalEntryOffsets = new int[NUMBER_OF_BLOCKLISTS][][];
+        RuleHitCounters hitCounters = new RuleHitCounters();
+
+        // Use each loaded blocklist as its own part.
+        int part = 0;
+        for (int blocklistIndex = 0; blocklistIndex < NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+            if (blocklists[blocklistIndex] != null) {
+                parts[part] = blocklists[blocklistIndex];
+                partBlocklistsMasks[part] = 1 << blocklistIndex;
+                names[blocklistIndex] = blocklists[blocklistIndex].getName();
+                versions[blocklistIndex] = blocklists[blocklistIndex].getVersion();
+                blocklistOriginalEntryOffsets[blocklistIndex] = getRequestOriginalEntryOffsets(blocklists[blocklistIndex]);
+                hitCounters = hitCounters.createAdded(blocklistIndex, blocklists[blocklistIndex]);
+                part++;
+            }
+        }
+
+        // Create the combined blocklist.  Every entry of a part belongs to its one blocklist, so the entry masks and the source entries aren't needed.
+        return new CombinedBlocklist(names, versions, parts, partBlocklistsMasks, new int[numberOfParts][][], new int[numberOfParts][][], new int[numberOfParts][][], blocklistOriginalEntryOffsets, hitCounters);
+    }
+
+    private static int[][] getRequestOriginalEntryOffsets(Blocklist blocklist) {
+        // Return the original entry offsets of the request sublists.  The arrays are shared with the blocklist, so this only allocates the outer array.
+        return Arrays.copyOf(blocklist.getOriginalEntryOffsets(), BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS);
+    }
+
+    // Add a blocklist that was loaded later as its own part, which is quick enough to do as soon as it is loaded.  The parts that are already combined are kept as they are, including a merged part.
+    public CombinedBlocklist createAdded(int blocklistIndex, Blocklist blocklist) {
+        // Copy the parts and add the blocklist at the end.
+        Blocklist[] addedParts = Arrays.copyOf(parts, parts.length + 1);
+        int[] addedPartBlocklistsMasks = Arrays.copyOf(partBlocklistsMasks, parts.length + 1);
+        int[][][] addedPartEntryBlocklistsMasks = Arrays.copyOf(partEntryBlocklistsMasks, parts.length + 1);
+        int[][][] addedPartEntrySources = Arrays.copyOf(partEntrySources, parts.length + 1);
+        int[][][] addedPartSharedEntrySources = Arrays.copyOf(partSharedEntrySources, parts.length + 1);
+        addedParts[parts.length] = blocklist;
+        addedPartBlocklistsMasks[parts.length] = 1 << blocklistIndex;
+
+        // Copy the names and versions and the original entry offsets and add those of the blocklist.
+        String[] addedNames = names.clone();
+        String[] addedVersions = versions.clone();
+        int[][][] addedBlocklistOriginalEntryOffsets = blocklistOriginalEntryOffsets.clone();
+        addedNames[blocklistIndex] = blocklist.getName();
+        addedVersions[blocklistIndex] = blocklist.getVersion();
+        addedBlocklistOriginalEntryOffsets[blocklistIndex] = getRequestOriginalEntryOffsets(blocklist);
+
+        // Create the combined blocklist.  The hits counted so far are kept.
+        return new CombinedBlocklist(addedNames, addedVersions, addedParts, addedPartBlocklistsMasks, addedPartEntryBlocklistsMasks, addedPartEntrySources, addedPartSharedEntrySources,
+                addedBlocklistOriginalEntryOffsets, hitCounters.createAdded(blocklistIndex, blocklist));
+    }
+
+    private static List<String> getNormalizedEntry(String[] entry, int resourceTypesMask) {
+        // Entries that apply to every resource type are normalized to their fragments.
+        if (resourceTypesMask == ResourceTypes.ALL_RESOURCE_TYPES_MASK) {
+            return Arrays.asList(entry).subList(0, entry.length - 1);
+        }
+
+        // Replace the original entry with the resource types.
+        String[] normalizedEntry = entry.clone();
+        normalizedEntry[entry.length - 1] = Integer.toString(resourceTypesMask);
+
+        // Return the normalized entry, which is never equal to an entry that applies to every resource type because it is longer.
+        return Arrays.asList(normalizedEntry);
+    }
+
+    // Merge the loaded blocklists into a single part, so that each sublist is searched once for all of them.
+    public static CombinedBlocklist createMerged(Blocklist[] blocklists) {
+        // Merge the parts of the unmerged blocklists.
+        return createUnmerged(blocklists).createMerged();
+    }
+
+    // Merge the parts into a single part.  This builds the indexes over all the blocklists, so it should be run on a background thread.
+    // Identical entries from different blocklists are merged into one entry whose mask holds all of them, so each shared rule is stored and checked once.  The entry keeps its source entry in each of the blocklists,
+    // so that a match is reported with the original entry of the blocklist that matched and counted as a hit of that blocklist.
+    public CombinedBlocklist createMerged() {
+        // Initialize the merged sublists.  The merged part doesn't have headers, because the names and versions are stored separately.
+        ArrayList<List<String[]>> mergedSublists = new ArrayList<>(BlocklistHelper.NUMBER_OF_SUBLISTS);
+        mergedSublists.add(new ArrayList<>());
+
+        // Initialize the entry masks, the resource types of the entries, the original entry offsets, and the source entries.
+        int[][] entryBlocklistsMasks = new int[BlocklistHelper.NUMBER_OF_SUBLISTS][];
+        short[][] entryResourceTypes = new short[BlocklistHelper.NUMBER_OF_SUBLISTS][];
+        int[][] originalEntryOffsets = new int[BlocklistHelper.NUMBER_OF_SUBLISTS][];
+        int[][] entrySources = new int[BlocklistHelper.NUMBER_OF_SUBLISTS][];
+        int[][] sharedEntrySources = new int[BlocklistHelper.NUMBER_OF_SUBLISTS][];
+
+        // Track the string arena of the original entries, which is shared by all the blocklists.
+        StringArena originalEntriesArena = null;
+
+        // Merge each sublist.
+        for (int sublist = 1; sublist < BlocklistHelper.NUMBER_OF_SUBLISTS; sublist++) {
+            // Count the merged entries.
+            int numberOfEntries = 0;
+            for (Blocklist part : parts) {
+                numberOfEntries += part.getSublist(sublist).size();
+            }
+
+            // Initialize the merged sublist, its entry masks, and its original entry offsets.
+            List<String[]> mergedSublist = new ArrayList<>(numberOfEntries);
+            int[] mergedEntryBlocklistsMasks = new int[numberOfEntries];
+            short[] mergedEntryResourceTypes = new short[numberOfEntries];
+            int[] mergedOriginalEntryOffsets = new int[numberOfEntries];
+
+            // Initialize the source entries of each loaded blocklist, indexed by merged entry.  Only the request sublists report their matches and count hits, so only they keep their source entries.
+            boolean isRequestSublist = sublist < BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS;
+            int[][] mergedSourceEntries = new int[NUMBER_OF_BLOCKLISTS][];
+            for (int blocklistIndex = 0; blocklistIndex < NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+                if (isRequestSublist && ((loadedBlocklistsMask & (1 << blocklistIndex)) != 0)) {
+                    mergedSourceEntries[blocklistIndex] = new int[numberOfEntries];
+                }
+            }
+
+            // Track if any of the merged entries don't apply to every resource type.
+            boolean hasTypedEntries = false;
+
+            // Track the merged index of each normalized entry, which is the entry without its original text.
+            HashMap<List<String>, Integer> mergedEntryIndexes = new HashMap<>(numberOfEntries * 2);
+
+            // Append the entries of each part in order.  An entry that is already in the merged sublist only adds its blocklists to the existing entry, where the first blocklist that had it placed it.
+            // The entries of each blocklist keep their relative order except for those shared with an earlier blocklist, so the first merged match of a blocklist is in the same sublist as its own first match.
+            for (int part = 0; part < parts.length; part++) {
+                // Get the part sublist and its entry masks, which are null if the part only holds one blocklist.
+                List<String[]> partSublist = parts[part].getSublist(sublist);
+                int[] partEntryBlocklistsMasks = getEntryBlocklistsMasks(part, sublist);
+
+                // Merge each entry.
+                for (int entryIndex = 0; entryIndex < partSublist.size(); entryIndex++) {
+                    // Get the entry and its blocklists.
+                    String[] entry = partSublist.get(entryIndex);
+                    int entryBlocklistsMask = (partEntryBlocklistsMasks == null) ? partBlocklistsMasks[part] : partEntryBlocklistsMasks[entryIndex];
+
+                    // Look up the normalized entry.  The last item of an entry is the original entry, which may be written differently for the same rule.
+                    // The same rule with different resource types is a different entry, so the resource types take the place of the original entry in the entries that don't apply to every type.
+                    int entryResourceTypesMask = parts[part].getEntryResourceTypesMask(sublist, entryIndex);
+                    List<String> normalizedEntry = getNormalizedEntry(entry, entryResourceTypesMask);
+                    Integer mergedEntryIndex = mergedEntryIndexes.get(normalizedEntry);
+
+                    // Append the first copy of the entry.
+                    if (mergedEntryIndex == null) {
+                        // Store the merged index of the entry.
+                        mergedEntryIndex = mergedSublist.size();
+                        mergedEntryIndexes.put(normalizedEntry, mergedEntryIndex);
+
+                        // Copy the resource types and the original entry offset.
+                        mergedEntryResourceTypes[mergedEntryIndex] = (short) entryResourceTypesMask;
+                        mergedOriginalEntryOffsets[mergedEntryIndex] = parts[part].getOriginalEntryOffset(sublist, entryIndex);
+
+                        // Note a typed entry.
+                        if (entryResourceTypesMask != ResourceTypes.ALL_RESOURCE_TYPES_MASK) {
+                            hasTypedEntries = true;
+                        }
+
+                        // Append the entry.
+                        mergedSublist.add(entry);
+                    }
+
+                    // Store the source entries of the blocklists that the merged entry doesn't have yet.  A blocklist that has the same rule more than once keeps its first entry.
+                    if (isRequestSublist) {
+                        int newBlocklistsMask = entryBlocklistsMask & ~mergedEntryBlocklistsMasks[mergedEntryIndex];
+                        for (int blocklistIndex = 0; blocklistIndex < NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+                            if ((newBlocklistsMask & (1 << blocklistIndex)) != 0) {
+                                mergedSourceEntries[blocklistIndex][mergedEntryIndex] = getSourceEntry(part, sublist, entryIndex, blocklistIndex);
+                            }
+                        }
+                    }
+
+                    // Add the blocklists to the merged entry.
+                    mergedEntryBlocklistsMasks[mergedEntryIndex] |= entryBlocklistsMask;
+                }
+
+                // Get the string arena.
+                originalEntriesArena = parts[part].getOriginalEntriesArena();
+            }
+
+            // Store the merged sublist and trim its entry masks, resource types, and original entry offsets to the merged entries.  The resource types are null if every entry applies to every type.
+            mergedSublists.add(mergedSublist);
+            entryBlocklistsMasks[sublist] = Arrays.copyOf(mergedEntryBlocklistsMasks, mergedSublist.size());
+            entryResourceTypes[sublist] = hasTypedEntries ? Arrays.copyOf(mergedEntryResourceTypes, mergedSublist.size()) : null;
+            originalEntryOffsets[sublist] = Arrays.copyOf(mergedOriginalEntryOffsets, mergedSublist.size());
+
+            // Pack the source entries of the request sublists.
+            if (isRequestSublist) {
+                // Count the source entries of the entries that are shared by several blocklists.
+                int numberOfSharedSourceEntries = 0;
+                for (int mergedEntryIndex = 0; mergedEntryIndex < mergedSublist.size(); mergedEntryIndex++) {
+                    int numberOfEntryBlocklists = Integer.bitCount(mergedEntryBlocklistsMasks[mergedEntryIndex]);
+                    if (numberOfEntryBlocklists > 1) {
+                        numberOfSharedSourceEntries += numberOfEntryBlocklists;
+                    }
+                }
+
+                // Initialize the source entries.
+                entrySources[sublist] = new int[mergedSublist.size()];
+                sharedEntrySources[sublist] = new int[numberOfSharedSourceEntries];
+                int sharedPosition = 0;
+
+                // Store the source entries of each merged entry.
+                for (int mergedEntryIndex = 0; mergedEntryIndex < mergedSublist.size(); mergedEntryIndex++) {
+                    // Get the blocklists of the entry.
+                    int entryBlocklistsMask = mergedEntryBlocklistsMasks[mergedEntryIndex];
+
+                    if (Integer.bitCount(entryBlocklistsMask) == 1) {  // The entry belongs to one blocklist.
+                        // Store the source entry.
+                        entrySources[sublist][mergedEntryIndex] = mergedSourceEntries[Integer.numberOfTrailingZeros(entryBlocklistsMask)][mergedEntryIndex];
+                    } else {  // The entry is shared by several blocklists.
+                        // Store the complement of the position of the shared source entries.
+                        entrySources[sublist][mergedEntryIndex] = ~sharedPosition;
+
+                        // Store the source entry of each blocklist in ascending blocklist order.
+                        for (int blocklistIndex = 0; blocklistIndex < NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+                            if ((entryBlocklistsMask & (1 << blocklistIndex)) != 0) {
+                                sharedEntrySources[sublist][sharedPosition++] = mergedSourceEntries[blocklistIndex][mergedEntryIndex];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // Create the combined blocklist with the merged part, which builds the indexes over all the blocklists.  The hit counters are shared, so the hits counted so far are kept.
+        return new CombinedBlocklist(names, versions, new Blocklist[] {new Blocklist(mergedSublists, originalEntriesArena, entryResourceTypes, originalEntryOffsets)}, new int[] {loadedBlocklistsMask},
+                new int[][][] {entryBlocklistsMasks}, new int[][][] {entrySources}, new int[][][] {sharedEntrySources}, blocklistOriginalEntryOffsets, hitCounters);
+    }
+
+    // Reorder the merged part, moving the entries that have been hit to the front of their sublist, with the most hits first.  The other entries keep their order behind them.
+    // The sublists themselves keep their order, so the white lists are still checked before the black lists and every request gets the same disposition.  Only the entry reported for a request can change.
+    // This rebuilds the indexes of the merged part, which needs as much memory again while it runs, so it should be run once on a background thread.  A combined blocklist that isn't merged is returned as it is.
+    public CombinedBlocklist createReordered() {
+        // Only the merged part can be reordered.
+        if (!isMerged()) {
+            return this;
+        }
+
+        // Get the merged part.
+        Blocklist mergedPart = parts[0];
+
+        // Initialize the reordered sublists, entry masks, original entry offsets, and source entries.  The merged part doesn't have headers.
+        ArrayList<List<String[]>> reorderedSublists = new ArrayList<>(BlocklistHelper.NUMBER_OF_SUBLISTS);
+        reorderedSublists.add(new ArrayList<>());
+        int[][] reorderedEntryBlocklistsMasks = new int[BlocklistHelper.NUMBER_OF_SUBLISTS][];
+        short[][] reorderedEntryResourceTypes = new short[BlocklistHelper.NUMBER_OF_SUBLISTS][];
+        int[][] reorderedOriginalEntryOffsets = new int[BlocklistHelper.NUMBER_OF_SUBLISTS][];
+        int[][] reorderedEntrySources = new int[BlocklistHelper.NUMBER_OF_SUBLISTS][];
+
+        // Reorder each sublist.
+        for (int sublist = 1; sublist < BlocklistHelper.NUMBER_OF_SUBLISTS; sublist++) {
+            // Get the entries.
+            List<String[]> entries = mergedPart.getSublist(sublist);
+            int numberOfEntries = entries.size();
+
+            // Get the new order of the entries.  The sublists that aren't checked against requests keep their order.
+            int[] order = (sublist < BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS) ? getHitOrder(sublist, numberOfEntries) : null;
+
+            // Initialize the reordered sublist, its entry masks, its resource types if any of the entries don't apply to every type, its original entry offsets, and its source entries if it has them.
+            List<String[]> reorderedSublist = new ArrayList<>(numberOfEntries);
+            short[] resourceTypes = mergedPart.getEntryResourceTypes(sublist);
+            int[] entrySources = partEntrySources[0][sublist];
+            reorderedEntryBlocklistsMasks[sublist] = new int[numberOfEntries];
+            reorderedEntryResourceTypes[sublist] = (resourceTypes == null) ? null : new short[numberOfEntries];
+            reorderedOriginalEntryOffsets[sublist] = new int[numberOfEntries];
+            reorderedEntrySources[sublist] = (entrySources == null) ? null : new int[numberOfEntries];
+
+            // Copy the entries in their new order.
+            for (int newIndex = 0; newIndex < numberOfEntries; newIndex++) {
+                // Get the old index of the entry.
+                int oldIndex = (order == null) ? newIndex : order[newIndex];
+
+                // Copy the entry, its mask, its resource types, its original entry offset, and its source entries.  The shared source entries don't move, so they are shared with the reordered part.
+                reorderedSublist.add(entries.get(oldIndex));
+                reorderedEntryBlocklistsMasks[sublist][newIndex] = partEntryBlocklistsMasks[0][sublist][oldIndex];
+                if (resourceTypes != null) {
+                    reorderedEntryResourceTypes[sublist][newIndex] = resourceTypes[oldIndex];
+                }
+                reorderedOriginalEntryOffsets[sublist][newIndex] = mergedPart.getOriginalEntryOffset(sublist, oldIndex);
+                if (entrySources != null) {
+                    reorderedEntrySources[sublist][newIndex] = entrySources[oldIndex];
+                }
+            }
+
+            // Add the reordered sublist.
+            reorderedSublists.add(reorderedSublist);
+        }
+
+        // Create the reordered part, which builds its indexes.
+        Blocklist reorderedPart = new Blocklist(reorderedSublists, mergedPart.getOriginalEntriesArena(), reorderedEntryResourceTypes, reorderedOriginalEntryOffsets);
+
+        // Create the reordered combined blocklist.  The hits are counted by the index of each entry in its own blocklist, so the reordering doesn't change them.
+        return new CombinedBlocklist(names, versions, new Blocklist[] {reorderedPart}, partBlocklistsMasks, new int[][][] {reorderedEntryBlocklistsMasks}, new int[][][] {reorderedEntrySources},
+                partSharedEntrySources, blocklistOriginalEntryOffsets, hitCounters);
+    }
+
+    // Get the old index of each entry of the merged part in the new order of the sublist, with the entries that have been hit first.
+    private int[] getHitOrder(int sublist, int numberOfEntries) {
+        // Get the hits of each entry, which are the hits of all the blocklists it came from.
+        int[] entryHits = new int[numberOfEntries];
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            // Get the blocklists of the entry.
+            int entryBlocklistsMask = partEntryBlocklistsMasks[0][sublist][entryIndex];
+
+            // Add the hits of each blocklist.
+            for (int blocklistIndex = 0; blocklistIndex < NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+                if ((entryBlocklistsMask & (1 << blocklistIndex)) != 0) {
+                    entryHits[entryIndex] += hitCounters.getHits(blocklistIndex, sublist, getSourceEntry(0, sublist, entryIndex, blocklistIndex));
+                }
+            }
+        }
+
+        // Pack the entries that have been hit into sort keys, with the fewest hits in the upper half and the index in the lower half, so that sorting puts the most hits first and keeps ties in order.
+        long[] hitKeys = new long[numberOfEntries];
+        int numberOfHitEntries = 0;
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            if (entryHits[entryIndex] > 0) {
+                hitKeys[numberOfHitEntries++] = ((long) (Integer.MAX_VALUE - entryHits[entryIndex]) << 32) | entryIndex;
+            }
+        }
+
+        // Sort the entries that have been hit.
+        Arrays.sort(hitKeys, 0, numberOfHitEntries);
+
+        // Initialize the order.
+        int[] order = new int[numberOfEntries];
+        int newIndex = 0;
+
+        // Add the entries that have been hit.
+        for (int hitEntry = 0; hitEntry < numberOfHitEntries; hitEntry++) {
+            order[newIndex++] = (int) hitKeys[hitEntry];
+        }
+
+        // Add the entries that haven't been hit in their current order.
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            if (entryHits[entryIndex] == 0) {
+                order[newIndex++] = entryIndex;
+            }
+        }
+
+        // Return the order.
+        return order;
+    }
+
+    // Create a report of the rule hits, with the hits of each sublist followed by the entries with the most hits.  The report is tab separated, so that it can be opened as a spreadsheet.
+    // An entry shared by several blocklists is reported for each of them, with the original entry and the hits of that blocklist.
+    public String createHitReport(int maximumNumberOfEntries) {
+        // Initialize the report.
+        StringBuilder reportStringBuilder = new StringBuilder();
+
+        // Add the total hits.
+        reportStringBuilder.append("Rule hits: ").append(getNumberOfHits()).append('\n');
+
+        // Add the hits of each sublist of each blocklist that has been hit.
+        reportStringBuilder.append("Blocklist\tSublist\tHits\n");
+        for (int blocklistIndex = 0; blocklistIndex < NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+            // Skip the blocklists that haven't been loaded.
+            if (!hitCounters.hasBlocklist(blocklistIndex)) {
+                continue;
+            }
+
+            for (int sublist = 1; sublist < BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS; sublist++) {
+                if (hitCounters.getSublistHits(blocklistIndex, sublist) > 0) {
+                    reportStringBuilder.append(names[blocklistIndex]).append('\t').append(sublist).append('\t').append(hitCounters.getSublistHits(blocklistIndex, sublist)).append('\n');
+                }
+            }
+        }
+
+        // Collect the entries of each blocklist that have been hit.  Each item holds the hits, the blocklist index, the sublist, and the index of the entry in its blocklist.
+        ArrayList<int[]> hitEntries = new ArrayList<>();
+        for (int blocklistIndex = 0; blocklistIndex < NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+            // Skip the blocklists that haven't been loaded.
+            if (!hitCounters.hasBlocklist(blocklistIndex)) {
+                continue;
+            }
+
+            for (int sublist = 1; sublist < BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS; sublist++) {
+                for (int entryIndex = 0; entryIndex < hitCounters.getNumberOfEntries(blocklistIndex, sublist); entryIndex++) {
+                    // Get the hits of the entry.
+                    int hits = hitCounters.getHits(blocklistIndex, sublist, entryIndex);
+
+                    // Add the entry if it has been hit.
+                    if (hits > 0) {
+                        hitEntries.add(new int[] {hits, blocklistIndex, sublist, entryIndex});
+                    }
+                }
+            }
+        }
+
+        // Sort the entries by their hits, with the most hits first.
+        hitEntries.sort((firstHitEntry, secondHitEntry) -> Integer.compare(secondHitEntry[0], firstHitEntry[0]));
+
+        // Get the string arena of the original entries, which is shared by all the parts.
+        StringArena originalEntriesArena = (parts.length == 0) ? null : parts[0].getOriginalEntriesArena();
+
+        // Add the entries with the most hits.
+        reportStringBuilder.append("Hits\tBlocklist\tSublist\tEntry\n");
+        for (int hitEntry = 0; hitEntry < Math.min(hitEntries.size(), maximumNumberOfEntries); hitEntry++) {
+            // Get the hits, the blocklist index, the sublist, and the entry index.
+            int[] hitEntryItems = hitEntries.get(hitEntry);
+            int blocklistIndex = hitEntryItems[1];
+            int sublist = hitEntryItems[2];
+            int entryIndex = hitEntryItems[3];
+
+            // Add the hits, the name of the blocklist, the sublist, and the original entry.  Entries are only hit once a blocklist has been loaded, so the arena exists.
+            assert originalEntriesArena != null;
+            reportStringBuilder.append(hitEntryItems[0]).append('\t').append(names[blocklistIndex]).append('\t').append(sublist).append('\t')
+                    .append(originalEntriesArena.get(blocklistOriginalEntryOffsets[blocklistIndex][sublist][entryIndex])).append('\n');
+        }
+
+        // Return the report.
+        return reportStringBuilder.toString();
+    }
+
+    public long getGeneration() {
+        // Return the generation.
+        return generation;
+    }
+
+    public boolean isMerged() {
+        // Only the merged part has entry masks.
+        return (parts.length == 1) && (partEntryBlocklistsMasks[0] != null);
+    }
+
+    public long getNumberOfHits() {
+        // Return the hits of all the blocklists.
+        return hitCounters.getTotalHits();
+    }
+
+    public int getLoadedBlocklistsMask() {
+        // Return the mask of the loaded blocklists.
+        return loadedBlocklistsMask;
+    }
+
+    public String getName(int blocklistIndex) {
+        // Return the name of the blocklist.
+        return names[blocklistIndex];
+    }
+
+    public String getVersion(int blocklistIndex) {
+        // Return the version of the blocklist.
+        return versions[blocklistIndex];
+    }
+
+    public long getNgramFilterChecks() {
+        // Return the number of times a URL was checked against an n-gram filter.
+        return sumNgramFilterStatistic(NgramFilter::getChecks);
+    }
+
+    public long getNgramFilterSkips() {
+        // Return the number of times an n-gram filter let a URL skip the full automaton.
+        return sumNgramFilterStatistic(NgramFilter::getSkips);
+    }
+
+    public long getNgramFilterFalsePositives() {
+        // Return the number of times a URL passed an n-gram filter but didn't match the full automaton.
+        return sumNgramFilterStatistic(NgramFilter::getFalsePositives);
+    }
+
+    private long sumNgramFilterStatistic(ToLongFunction<NgramFilter> statistic) {
+        // Initialize the sum.
+        long sum = 0;
+
+        // Add the statistic of the n-gram filter of each sublist in each part.
+        for (Blocklist part : parts) {
+            for (int sublist = 1; sublist < BlocklistHelper.NUMBER_OF_SUBLISTS; sublist++) {
+                // Get the n-gram filter.
+                NgramFilter ngramFilter = part.getNgramFilter(sublist);
+
+                // Only the sublists with automatons have n-gram filters.
+                if (ngramFilter != null) {
+                    sum += statistic.applyAsLong(ngramFilter);
+                }
+            }
+        }
+
+        // Return the sum.
+        return sum;
+    }
+
+    int getNumberOfParts() {
+        // Return the number of parts.
+        return parts.length;
+    }
+
+    Blocklist getPart(int part) {
+        // Return the part.
+        return parts[part];
+    }
+
+    int getPartBlocklistsMask(int part) {
+        // Return the mask of the blocklists in the part.
+        return partBlocklistsMasks[part];
+    }
+
+    // Count a hit of the blocklist, which matched the entry of the part.
+    void recordHit(int blocklistIndex, int part, int sublist, int entryIndex) {
+        // Count the hit of the source entry in the blocklist.
+        hitCounters.record(blocklistIndex, sublist, getSourceEntry(part, sublist, entryIndex, blocklistIndex));
+    }
+
+    // Count a hit of the entry that decided a request whose decision was cached, so that the hits follow the requests and not only the decision cache misses.
+    // Only the deciding blocklist is counted, while checking the blocklists also counts the first matches of the blocklists that didn't decide the request.
+    public void recordCachedHit(long match) {
+        // Count the hit if there was a match.
+        if (match >= 0) {
+            recordHit(BlocklistHelper.getMatchBlocklist(match), BlocklistHelper.getMatchPart(match), BlocklistHelper.getMatchSublist(match), BlocklistHelper.getMatchEntry(match));
+        }
+    }
+
+    // Get the attribution of a match, which identifies its entry after this combined blocklist has been replaced.  Requests that didn't match an entry don't have one.
+    // The original entry is the one of the blocklist that matched, which can be written differently than the same rule in another blocklist.
+    public MatchAttribution getMatchAttribution(long match) {
+        // Only the matches of an entry have an attribution.
+        if (match < 0) {
+            return null;
+        }
+
+        // Unpack the match.
+        int blocklistIndex = BlocklistHelper.getMatchBlocklist(match);
+        int part = BlocklistHelper.getMatchPart(match);
+        int sublist = BlocklistHelper.getMatchSublist(match);
+        int entryIndex = BlocklistHelper.getMatchEntry(match);
+
+        // Get the original entry offset of the source entry in the blocklist.
+        int originalEntryOffset = blocklistOriginalEntryOffsets[blocklistIndex][sublist][getSourceEntry(part, sublist, entryIndex, blocklistIndex)];
+
+        // Create the attribution.
+        return new MatchAttribution(names[blocklistIndex], parts[part].getSublist(sublist).get(entryIndex), parts[part].getOriginalEntriesArena(), originalEntryOffset);
+    }
+
+    // Get the index of an entry of a request sublist of the part in the blocklist it came from.
+    private int getSourceEntry(int part, int sublist, int entryIndex, int blocklistIndex) {
+        // The entries of a part that only holds one blocklist are indexed as in the blocklist.
+        if (partEntrySources[part] == null) {
+            return entryIndex;
+        }
+
+        // Get the source entry.
+        int entrySource = partEntrySources[part][sublist][entryIndex];
+
+        // Return the source entry of an entry that belongs to one blocklist.
+        if (entrySource >= 0) {
+            return entrySource;
+        }
+
+        // The source entries of a shared entry are stored in ascending blocklist order, so the blocklist's position is the number of the entry's blocklists before it.
+        int earlierBlocklistsMask = partEntryBlocklistsMasks[part][sublist][entryIndex] & ((1 << blocklistIndex) - 1);
+        return partSharedEntrySources[part][sublist][~entrySource + Integer.bitCount(earlierBlocklistsMask)];
+    }
+
+    int[] getEntryBlocklistsMasks(int part, int sublist) {
+        // Return the entry masks of the sublist, which are null if the part only holds one blocklist.
+        return (partEntryBlocklistsMasks[part] == null) ? null : partEntryBlocklistsMasks[part][sublist];
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// A compiled regular expression from a blocklist, along with a literal that any matching URL must contain.
+// The regular expression is matched in linear time by `LinearRegularExpression` when it only uses the supported constructs, which all of the bundled blocklists do.  Otherwise `java.util.regex` is used.
+public class CompiledRegularExpression {
+    // The linear regular expression, which is null if the regular expression is invalid or uses a construct that it doesn't support.
+    private final LinearRegularExpression linearRegularExpression;
+
+    // The longest literal that must be contained in every matching URL, or null if there isn't one.
+    private final String requiredLiteral;
+
+    // Each thread reuses its own `java.util.regex` matcher, because matchers are not thread safe.  This is null if the regular expression is invalid or the linear regular expression is used.
+    private final ThreadLocal<Matcher> matcherThreadLocal;
+
+    public CompiledRegularExpression(String regularExpression) {
+        // Compile the pattern, which also makes sure that the linear regular expression only sees valid syntax.
+        Pattern compiledPattern;
+        try {
+            compiledPattern = Pattern.compile(regularExpression);
+        } catch (PatternSyntaxException exception) {
+            // An invalid regular expression never matches.
+            compiledPattern = null;
+        }
+
+        // Store the pattern.
+        final Pattern pattern = compiledPattern;
+
+        // Compile the linear regular expression.
+        linearRegularExpression = (pattern == null) ? null : LinearRegularExpression.compile(regularExpression);
+
+        // Find the required literal.
+        requiredLiteral = (pattern == null) ? null : getRequiredLiteral(regularExpression);
+
+        // Initialize the thread local matcher if the pattern is needed.
+        matcherThreadLocal = ((pattern == null) || (linearRegularExpression != null)) ? null : ThreadLocal.withInitial(() -> pattern.matcher(""));
+    }
+
+    // Check if the entire resource URL matches the regular expression, like `Pattern.matches()`.
+    public boolean matches(String resourceUrl) {
+        // An invalid regular expression never matches.
+        if ((linearRegularExpression == null) && (matcherThreadLocal == null)) {
+            return false;
+        }
+
+        // Skip the regular expression if the URL doesn't contain the required literal.
+        if ((requiredLiteral != null) && !resourceUrl.contains(requiredLiteral)) {
+            return false;
+        }
+
+        // Match the URL in linear time if possible.
+        if (linearRegularExpression != null) {
+            return linearRegularExpression.matches(resourceUrl);
+        }
+
+        // Match the URL with this thread's matcher.
+        return matcherThreadLocal.get().reset(resourceUrl).matches();
+    }
+
+    // Get the longest run of literal characters outside of any group, alternation, or quantifier.  Null is returned if no literal is certain to be required.
+    private static String getRequiredLiteral(String regularExpression) {
+        // Flags like `(?i)` change how literals are matched.
+        for (int position = regularExpression.indexOf("(?"); position != -1; position = regularExpression.indexOf("(?", position + 2)) {
+            if ((position + 2 >= regularExpression.length()) || (regularExpression.charAt(position + 2) != ':')) {
+                return null;
+            }
+        }
+
+        // Track the longest literal and the current run.
+        String longestLiteral = "";
+        StringBuilder currentRun = new StringBuilder();
+
+        // Track if the last item was a literal character in the current run, so that it can be removed if it turns out to be quantified.
+        boolean lastItemWasLiteral = false;
+
+        // Parse the regular expression.
+        int position = 0;
+        while (position < regularExpression.length()) {
+            // Get the character.
+            char character = regularExpression.charAt(position);
+
+            switch (character) {
+                case '|':  // An alternation at the top level means that no literal is required.
+                    return null;
+
+                case '*':
+                case '?':
+                case '+':
+                case '{':  // A quantifier makes the last item optional or repeated.
+                    // Remove the quantified character from the current run.
+                    if (lastItemWasLiteral) {
+                        currentRun.setLength(currentRun.length() - 1);
+                    }
+
+                    // End the current run.
+                    longestLiteral = endRun(longestLiteral, currentRun);
+                    lastItemWasLiteral = false;
+
+                    // Skip the quantifier.
+                    if (character == '{') {
+                        // Find the end of the quantifier.
+                        int quantifierEnd = regularExpression.indexOf('}', position);
+
+                        // An unterminated quantifier is unexpected.
+                        if (quantifierEnd == -1) {
+                            return null;
+                        }
+
+                        // Move to the end of the quantifier.
+                        position = quantifierEnd + 1;
+                    } else {
+                        position++;
+                    }
+                    break;
+
+                case '(':  // Skip the group, which might contain alternations.
+                    // End the current run.
+                    longestLiteral = endRun(longestLiteral, currentRun);
+                    lastItemWasLiteral = false;
+
+                    // Find the end of the group.
+                    position = skipGroup(regularExpression, position);
+
+                    // An unterminated group is unexpected.
+                    if (position == -1) {
+                        return null;
+                    }
+                    break;
+
+                case '[':  // Skip the character class.
+                    // End the current run.
+                    longestLiteral = endRun(longestLiteral, currentRun);
+                    lastItemWasLiteral = false;
+
+                    // Find the end of the character class.
+                    position = skipCharacterClass(regularExpression, position);
+
+                    // An unterminated character class is unexpected.
+                    if (position == -1) {
+                        return null;
+                    }
+                    break;
+
+                case '.':
+                case '^':
+                case '$':  // These don't match a specific character.
+                    // End the current run.
+                    longestLiteral = endRun(longestLiteral, currentRun);
+                    lastItemWasLiteral = false;
+                    position++;
+                    break;
+
+                case '\\':  // Process the escape.
+                    // A trailing backslash is unexpected.
+                    if (position + 1 >= regularExpression.length()) {
+                        return null;
+                    }
+
+                    // Get the escaped character.
+                    char escapedCharacter = regularExpression.charAt(position + 1);
+
+                    if (!Character.isLetterOrDigit(escapedCharacter)) {  // The escaped character is a literal.
+                        currentRun.append(escapedCharacter);
+                        lastItemWasLiteral = true;
+                    } else if ("dDwWsSbBAGZzhHvVR".indexOf(escapedCharacter) != -1) {  // The escape is a predefined class or a boundary.
+                        longestLiteral = endRun(longestLiteral, currentRun);
+                        lastItemWasLiteral = false;
+                    } else {  // Other escapes, like hexadecimal characters or back references, are not handled.
+                        return null;
+                    }
+
+                    // Move past the escape.
+                    position += 2;
+                    break;
+
+                default:  // The character is a literal.
+                    currentRun.append(character);
+                    lastItemWasLiteral = true;
+                    position++;
+            }
+        }
+
+        // End the last run.
+        longestLiteral = endRun(longestLiteral, currentRun);
+
+        // Return the longest literal, or null if there isn't one.
+        return longestLiteral.isEmpty() ? null : longestLiteral;
+    }
+
+    private static String endRun(String longestLiteral, StringBuilder currentRun) {
+        // Keep the current run if it is the longest.
+        if (currentRun.length() > longestLiteral.length()) {
+            longestLiteral = currentRun.toString();
+        }
+
+        // Reset the current run.
+        currentRun.setLength(0);
+
+        // Return the longest literal.
+        return longestLiteral;
+    }
+
+    // Return the position after the group that starts at the given position, or -1 if the group is not terminated.
+    private static int skipGroup(String regularExpression, int position) {
+        // Track the depth of nested groups.
+        int depth = 0;
+
+        while (position < regularExpression.length()) {
+            // Get the character.
+            char character = regularExpression.charAt(position);
+
+            if (character == '\\') {  // Skip the escaped character.
+                position += 2;
+            } else if (character == '[') {  // Skip the character class, which might contain parentheses.
+                position = skipCharacterClass(regularExpression, position);
+
+                // Stop if the character class is not terminated.
+                if (position == -1) {
+                    return -1;
+                }
+            } else {
+                // Track the depth.
+                if (character == '(') {
+                    depth++;
+                } else if (character == ')') {
+                    depth--;
+                }
+
+                // Move to the next character.
+                position++;
+
+                // Return the position after the group.
+                if (depth == 0) {
+                    return position;
+                }
+            }
+        }
+
+        // The group is not terminated.
+        return -1;
+    }
+
+    // Return the position after the character class that starts at the given position, or -1 if the character class is not terminated.
+    private static int skipCharacterClass(String regularExpression, int position) {
+        // Track the depth of nested character classes.
+        int depth = 0;
+
+        while (position < regularExpression.length()) {
+            // Get the character.
+            char character = regularExpression.charAt(position);
+
+            if (character == '\\') {  // Skip the escaped character.
+                position += 2;
+            } else if (character == '[') {  // Start a character class.
+                // Track the depth.
+                depth++;
+
+                // Move to the next character.
+                position++;
+
+                // Skip a negation.
+                if ((position < regularExpression.length()) && (regularExpression.charAt(position) == '^')) {
+                    position++;
+                }
+
+                // A closing bracket at the start of a character class is a literal.
+                if ((position < regularExpression.length()) && (regularExpression.charAt(position) == ']')) {
+                    position++;
+                }
+            } else {
+                // Track the depth.
+                if (character == ']') {
+                    depth--;
+                }
+
+                // Move to the next character.
+                position++;
+
+                // Return the position after the character class.
+                if (depth == 0) {
+                    return position;
+                }
+            }
+        }
+
+        // The character class is not terminated.
+        return -1;
+    }
+}
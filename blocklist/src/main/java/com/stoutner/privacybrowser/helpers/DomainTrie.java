@@ -0,0 +1,267 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// The domain trie files the entries of a domain sublist under the labels of their domain, starting with the top-level domain.
+// Looking up a host only walks its own labels, so the entries for other domains are never visited.
+public class DomainTrie {
+    // The root node, which holds the entries with an empty domain.
+    private final static int ROOT = 0;
+
+    // The edges are stored in an open addressing hash table keyed by the parent node and the label of the child.  Empty slots have a child of -1.
+    private final int[] edgeParents;
+    private final int[] edgeChildren;
+
+    // The label of each node, which is the first label of its domain.  The labels of all the nodes are stored in one string, the label of node `n` from `nodeLabelStart[n]` to `nodeLabelStart[n + 1]`.
+    // A label string for each slot of the edge table took several times as much memory, because most of the slots are empty and each label was a separate object.
+    private final int[] nodeLabelStart;
+    private final String nodeLabels;
+
+    // The mask used to convert an edge hash into a slot.
+    private final int edgeMask;
+
+    // The entries whose domain ends at each node, in ascending order.  Nodes without entries are null.
+    private final int[][] nodeEntries;
+
+    public DomainTrie(List<String[]> sublist) {
+        // File the entries under their domain, which is the first item of the entry.
+        this(getFirstItems(sublist));
+    }
+
+    // File each entry under its domain.  The entries with a null domain are left out.
+    public DomainTrie(String[] entryDomains) {
+        // Get the number of entries.
+        int numberOfEntries = entryDomains.length;
+
+        // Assign an ID to each domain and each of its parent domains.  The root is the empty domain.
+        HashMap<String, Integer> nodeIds = new HashMap<>();
+        ArrayList<String> nodeDomains = new ArrayList<>();
+        nodeIds.put("", ROOT);
+        nodeDomains.add("");
+
+        // Add the domain of each entry.  The entries that are left out have a node of -1.
+        int[] entryNodes = new int[numberOfEntries];
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            entryNodes[entryIndex] = (entryDomains[entryIndex] == null) ? -1 : addNode(entryDomains[entryIndex], nodeIds, nodeDomains);
+        }
+
+        // Get the number of nodes.
+        int numberOfNodes = nodeDomains.size();
+
+        // Count the entries of each node.
+        int[] nodeEntryCounts = new int[numberOfNodes];
+        for (int entryNode : entryNodes) {
+            if (entryNode != -1) {
+                nodeEntryCounts[entryNode]++;
+            }
+        }
+
+        // Populate the node entries in ascending order.
+        nodeEntries = new int[numberOfNodes][];
+        int[] nodeEntryPositions = new int[numberOfNodes];
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            // Get the node.
+            int entryNode = entryNodes[entryIndex];
+
+            // Skip the entries that are left out.
+            if (entryNode == -1) {
+                continue;
+            }
+
+            // Create the node entries if this is the first one.
+            if (nodeEntries[entryNode] == null) {
+                nodeEntries[entryNode] = new int[nodeEntryCounts[entryNode]];
+            }
+
+            // Add the entry.
+            nodeEntries[entryNode][nodeEntryPositions[entryNode]++] = entryIndex;
+        }
+
+        // Size the edge table to a power of two at least twice the number of edges.
+        int numberOfSlots = 16;
+        while (numberOfSlots < (numberOfNodes * 2)) {
+            numberOfSlots = numberOfSlots << 1;
+        }
+
+        // Initialize the edge table.
+        edgeMask = numberOfSlots - 1;
+        edgeParents = new int[numberOfSlots];
+        edgeChildren = new int[numberOfSlots];
+        for (int slot = 0; slot < numberOfSlots; slot++) {
+            edgeChildren[slot] = -1;
+        }
+
+        // Initialize the node labels.  The label of the root is empty.
+        nodeLabelStart = new int[numberOfNodes + 1];
+        StringBuilder nodeLabelsStringBuilder = new StringBuilder();
+
+        // Add an edge from each node to its parent.
+        for (int node = 1; node < numberOfNodes; node++) {
+            // Get the domain.
+            String domain = nodeDomains.get(node);
+
+            // Split the domain into its first label and its parent domain.
+            int firstDot = domain.indexOf('.');
+            int labelLength = (firstDot == -1) ? domain.length() : firstDot;
+            int parent = (firstDot == -1) ? ROOT : nodeIds.get(domain.substring(firstDot + 1));
+
+            // Store the label.
+            nodeLabelStart[node] = nodeLabelsStringBuilder.length();
+            nodeLabelsStringBuilder.append(domain, 0, labelLength);
+
+            // Find an empty slot.
+            int slot = hashEdge(parent, domain, 0, labelLength) & edgeMask;
+            while (edgeChildren[slot] != -1) {
+                slot = (slot + 1) & edgeMask;
+            }
+
+            // Store the edge.
+            edgeParents[slot] = parent;
+            edgeChildren[slot] = node;
+        }
+
+        // Store the end of the last label and the labels.
+        nodeLabelStart[numberOfNodes] = nodeLabelsStringBuilder.length();
+        nodeLabels = nodeLabelsStringBuilder.toString();
+    }
+
+    // Fill the matching entries array with the entries of each node on the path of the domain, starting from the root.
+    // The domain of every returned entry is the domain itself or one of its parent domains.  The number of filled items is returned.
+    public int lookup(String domain, int[][] matchingEntries) {
+        // Look up the whole domain.
+        return lookup(domain, 0, domain.length(), matchingEntries);
+    }
+
+    // Look up the domain that is between the start and the end of the text, like the host of a URL, without creating a string.
+    public int lookup(String text, int domainStart, int domainEnd, int[][] matchingEntries) {
+        // Track the number of filled items.
+        int numberOfMatchingEntries = 0;
+
+        // The entries with an empty domain apply to every domain.
+        if (nodeEntries[ROOT] != null) {
+            matchingEntries[numberOfMatchingEntries++] = nodeEntries[ROOT];
+        }
+
+        // Walk the labels from the end of the domain.
+        int node = ROOT;
+        int labelEnd = domainEnd;
+        while ((labelEnd >= domainStart) && (numberOfMatchingEntries < matchingEntries.length)) {
+            // Find the start of the label.
+            int labelStart = Math.max(text.lastIndexOf('.', labelEnd - 1) + 1, domainStart);
+
+            // Move to the child for this label.
+            node = getChild(node, text, labelStart, labelEnd);
+
+            // Stop if there are no entries for this domain or its subdomains.
+            if (node == -1) {
+                break;
+            }
+
+            // Add the node's entries.
+            if (nodeEntries[node] != null) {
+                matchingEntries[numberOfMatchingEntries++] = nodeEntries[node];
+            }
+
+            // Move to the next label, skipping the dot.
+            labelEnd = labelStart - 1;
+        }
+
+        // Return the number of filled items.
+        return numberOfMatchingEntries;
+    }
+
+    private static String[] getFirstItems(List<String[]> sublist) {
+        // Initialize the first items.
+        String[] firstItems = new String[sublist.size()];
+
+        // Get the first item of each entry.
+        for (int entryIndex = 0; entryIndex < firstItems.length; entryIndex++) {
+            firstItems[entryIndex] = sublist.get(entryIndex)[0];
+        }
+
+        // Return the first items.
+        return firstItems;
+    }
+
+    private int getChild(int parent, String domain, int labelStart, int labelEnd) {
+        // Get the label length.
+        int labelLength = labelEnd - labelStart;
+
+        // Probe the edge table until the edge or an empty slot is found.
+        for (int slot = hashEdge(parent, domain, labelStart, labelEnd) & edgeMask; edgeChildren[slot] != -1; slot = (slot + 1) & edgeMask) {
+            // Check the label if the parent matches.
+            if (edgeParents[slot] == parent) {
+                // Get the child of the edge.
+                int child = edgeChildren[slot];
+
+                // Return the child if the label matches.
+                if ((nodeLabelStart[child + 1] - nodeLabelStart[child] == labelLength) && domain.regionMatches(labelStart, nodeLabels, nodeLabelStart[child], labelLength)) {
+                    return child;
+                }
+            }
+        }
+
+        // There is no child for this label.
+        return -1;
+    }
+
+    private static int addNode(String domain, HashMap<String, Integer> nodeIds, ArrayList<String> nodeDomains) {
+        // Get the existing node.
+        Integer nodeId = nodeIds.get(domain);
+
+        // Add the node if it doesn't exist.
+        if (nodeId == null) {
+            // Add the parent domain first so that every node has a parent.
+            int firstDot = domain.indexOf('.');
+            if (firstDot != -1) {
+                addNode(domain.substring(firstDot + 1), nodeIds, nodeDomains);
+            }
+
+            // Add the node.
+            nodeId = nodeDomains.size();
+            nodeIds.put(domain, nodeId);
+            nodeDomains.add(domain);
+        }
+
+        // Return the node ID.
+        return nodeId;
+    }
+
+    // Edges are hashed from the parent node and the characters of the label, which is read in place so that lookups don't allocate.
+    private static int hashEdge(int parent, String domain, int labelStart, int labelEnd) {
+        // Start with the parent.
+        int hash = parent * 0x9E3779B9;
+
+        // Combine the characters.
+        for (int position = labelStart; position < labelEnd; position++) {
+            hash = (hash * 31) + domain.charAt(position);
+        }
+
+        // Mix the bits.
+        hash = hash * 0x9E3779B9;
+
+        // Return the hash.
+        return hash ^ (hash >>> 16);
+    }
+}
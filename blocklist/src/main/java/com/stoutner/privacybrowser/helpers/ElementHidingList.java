@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// An element hiding list holds the element hiding sublists of one blocklist, which are parsed separately from the request sublists because they are only needed by pages with JavaScript enabled.
+// Each entry is stored as its domain and its selector, without the original blocklist entry, which the style sheets don't use.  Equal strings are stored once, because most domains and many selectors repeat.
+public class ElementHidingList {
+    // The domains and selectors of the element hiding sublist and the element hiding exception sublist, indexed by the sublist minus `ElementHidingStylesheets.ELEMENT_HIDING_SUBLIST`.
+    private final String[][] domains = new String[2][];
+    private final String[][] selectors = new String[2][];
+
+    // The domain tries of the two sublists.
+    private final DomainTrie[] domainTries = new DomainTrie[2];
+
+    // Create the element hiding list from the sublists created by `BlocklistHelper.parseBlocklist()` with the element hiding entries.
+    public ElementHidingList(ArrayList<List<String[]>> sublists) {
+        // Track the unique strings.
+        HashMap<String, String> uniqueStrings = new HashMap<>();
+
+        // Store each element hiding sublist.
+        for (int sublist = ElementHidingStylesheets.ELEMENT_HIDING_SUBLIST; sublist <= ElementHidingStylesheets.ELEMENT_HIDING_EXCEPTION_SUBLIST; sublist++) {
+            // Get the entries.
+            List<String[]> entries = sublists.get(sublist);
+
+            // Get the index of the sublist in the arrays.
+            int sublistIndex = sublist - ElementHidingStylesheets.ELEMENT_HIDING_SUBLIST;
+
+            // Initialize the arrays of the sublist.
+            domains[sublistIndex] = new String[entries.size()];
+            selectors[sublistIndex] = new String[entries.size()];
+
+            // Store the domain and selector of each entry.
+            for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+                // Get the entry, which holds the domain, the selector, and the original blocklist entry.
+                String[] entry = entries.get(entryIndex);
+
+                // Store the unique copies of the domain and the selector.
+                domains[sublistIndex][entryIndex] = getUniqueString(uniqueStrings, entry[0]);
+                selectors[sublistIndex][entryIndex] = getUniqueString(uniqueStrings, entry[1]);
+            }
+
+            // File the entries by domain.
+            domainTries[sublistIndex] = new DomainTrie(domains[sublistIndex]);
+        }
+    }
+
+    private static String getUniqueString(HashMap<String, String> uniqueStrings, String string) {
+        // Get the stored copy of the string.
+        String uniqueString = uniqueStrings.putIfAbsent(string, string);
+
+        // Return the stored copy, which is the string itself the first time it is seen.
+        return (uniqueString == null) ? string : uniqueString;
+    }
+
+    String getDomain(int sublist, int entryIndex) {
+        // Return the domain of the entry, which is empty for the generic entries.
+        return domains[sublist - ElementHidingStylesheets.ELEMENT_HIDING_SUBLIST][entryIndex];
+    }
+
+    String getSelector(int sublist, int entryIndex) {
+        // Return the selector of the entry.
+        return selectors[sublist - ElementHidingStylesheets.ELEMENT_HIDING_SUBLIST][entryIndex];
+    }
+
+    DomainTrie getDomainTrie(int sublist) {
+        // Return the domain trie of the sublist.
+        return domainTries[sublist - ElementHidingStylesheets.ELEMENT_HIDING_SUBLIST];
+    }
+}
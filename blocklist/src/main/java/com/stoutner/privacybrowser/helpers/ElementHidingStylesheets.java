@@ -0,0 +1,256 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+// The element hiding style sheets hide the ad placeholders and annoyance boxes described by the element hiding sublists before the page is laid out.
+// The generic entries apply to every domain, so their style sheet is only built once for each combination of enabled blocklists.  A domain only needs its own style sheet if it has entries,
+// and that style sheet is shared by all of its subdomains that don't have entries of their own, which usually makes it the style sheet of the registrable domain (eTLD+1).
+// The entries come from the element hiding list of each blocklist, which is set the first time a page with JavaScript enabled needs it.
+public class ElementHidingStylesheets {
+    // The element hiding sublists.
+    final static int ELEMENT_HIDING_SUBLIST = 23;
+    final static int ELEMENT_HIDING_EXCEPTION_SUBLIST = 24;
+
+    // The declaration block that hides the selected elements.
+    private final static String HIDING_DECLARATION_BLOCK = "{display:none!important}";
+
+    // The number of selectors in each rule.  A selector the WebView doesn't understand drops its whole rule, so the selectors are grouped into small rules instead of one large one.
+    private final static int SELECTORS_PER_RULE = 20;
+
+    // The selector syntax that is only understood by content blocker scripts.
+    private final static String[] UNSUPPORTED_SELECTOR_SYNTAX = {"+js(", ":-abp-", ":has-text(", ":matches-css", ":matches-path(", ":min-text-length(", ":remove(", ":style(", ":upward(", ":watch-attr(", ":xpath("};
+
+    // The element hiding lists, indexed by the `CombinedBlocklist` indexes.  A list that couldn't be loaded is null.
+    private final ElementHidingList[] elementHidingLists = new ElementHidingList[CombinedBlocklist.NUMBER_OF_BLOCKLISTS];
+
+    // The generic style sheets, keyed by the enabled blocklists mask.
+    private final HashMap<Integer, GenericStylesheet> genericStylesheets = new HashMap<>();
+
+    // Set the element hiding list of a blocklist.  The lists of the enabled blocklists must be set, and the setting must be visible to the calling thread, before their style sheets are requested.
+    public void setElementHidingList(int blocklistIndex, ElementHidingList elementHidingList) {
+        // Store the element hiding list.
+        elementHidingLists[blocklistIndex] = elementHidingList;
+    }
+
+    // Get the domain whose style sheet applies to the host, which is the most specific domain of the host that has element hiding entries in the enabled blocklists.
+    // An empty string is returned if only the generic entries apply to the host.
+    public String getStylesheetDomain(String host, int enabledBlocklistsMask) {
+        // Track the length of the most specific domain with entries.
+        int stylesheetDomainLength = 0;
+
+        // Initialize the matching entries array.  There is at most one item for each label, plus one for the entries with an empty domain.
+        int[][] matchingEntries = new int[host.length() + 2][];
+
+        // Look up the host in each element hiding sublist of each enabled blocklist.
+        for (int blocklistIndex = 0; blocklistIndex < CombinedBlocklist.NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+            // Get the element hiding list.
+            ElementHidingList elementHidingList = getEnabledElementHidingList(blocklistIndex, enabledBlocklistsMask);
+
+            // Skip the blocklists that aren't enabled.
+            if (elementHidingList == null) {
+                continue;
+            }
+
+            for (int sublist = ELEMENT_HIDING_SUBLIST; sublist <= ELEMENT_HIDING_EXCEPTION_SUBLIST; sublist++) {
+                // Look up the entries for the host and its parent domains.
+                int numberOfMatchingEntries = elementHidingList.getDomainTrie(sublist).lookup(host, matchingEntries);
+
+                // Note the length of each domain that has entries.  All of the entries of a domain have the same domain.
+                for (int domainPosition = 0; domainPosition < numberOfMatchingEntries; domainPosition++) {
+                    stylesheetDomainLength = Math.max(stylesheetDomainLength, elementHidingList.getDomain(sublist, matchingEntries[domainPosition][0]).length());
+                }
+            }
+        }
+
+        // Return the domain.
+        return host.substring(host.length() - stylesheetDomainLength);
+    }
+
+    // Create the style sheet of the domain returned by `getStylesheetDomain()`.  The generic style sheet is returned without being copied if the domain is empty.
+    public String createStylesheet(String stylesheetDomain, int enabledBlocklistsMask) {
+        // Get the generic style sheet.
+        GenericStylesheet genericStylesheet = getGenericStylesheet(enabledBlocklistsMask);
+
+        // Only the generic entries apply if the domain is empty.
+        if (stylesheetDomain.isEmpty()) {
+            return genericStylesheet.stylesheet;
+        }
+
+        // Collect the selectors of the domain and the selectors that are excepted on it.  The generic entries are already in the generic style sheet.
+        LinkedHashSet<String> domainSelectors = new LinkedHashSet<>();
+        HashSet<String> exceptedSelectors = new HashSet<>();
+        collectSelectors(stylesheetDomain, ELEMENT_HIDING_SUBLIST, false, enabledBlocklistsMask, domainSelectors);
+        collectSelectors(stylesheetDomain, ELEMENT_HIDING_EXCEPTION_SUBLIST, false, enabledBlocklistsMask, exceptedSelectors);
+
+        // Determine if any of the generic selectors are excepted on the domain.
+        boolean genericSelectorsExcepted = false;
+        for (String exceptedSelector : exceptedSelectors) {
+            if (genericStylesheet.selectors.contains(exceptedSelector)) {
+                genericSelectorsExcepted = true;
+                break;
+            }
+        }
+
+        // Initialize the style sheet.
+        StringBuilder stylesheetStringBuilder = new StringBuilder(genericStylesheet.stylesheet.length() + (domainSelectors.size() * 64));
+
+        if (genericSelectorsExcepted) {  // Add the generic selectors that aren't excepted.
+            LinkedHashSet<String> remainingGenericSelectors = new LinkedHashSet<>(genericStylesheet.selectors);
+            remainingGenericSelectors.removeAll(exceptedSelectors);
+            appendRules(stylesheetStringBuilder, remainingGenericSelectors);
+        } else {  // Add the generic style sheet.
+            stylesheetStringBuilder.append(genericStylesheet.stylesheet);
+        }
+
+        // Add the domain selectors that aren't excepted or already generic.
+        domainSelectors.removeAll(exceptedSelectors);
+        domainSelectors.removeAll(genericStylesheet.selectors);
+        appendRules(stylesheetStringBuilder, domainSelectors);
+
+        // Return the style sheet.
+        return stylesheetStringBuilder.toString();
+    }
+
+    // Check if a style sheet can use the selector.  The selectors with curly brackets are rejected so that a selector can't add its own declarations.
+    public static boolean isSupportedSelector(String selector) {
+        // Reject the empty selectors, the curly brackets, and the HTML filters, which start with `^`.
+        if (selector.isEmpty() || (selector.indexOf('{') != -1) || (selector.indexOf('}') != -1) || selector.startsWith("^")) {
+            return false;
+        }
+
+        // Reject the syntax that is only understood by content blocker scripts.
+        for (String unsupportedSyntax : UNSUPPORTED_SELECTOR_SYNTAX) {
+            if (selector.contains(unsupportedSyntax)) {
+                return false;
+            }
+        }
+
+        // The selector is supported.
+        return true;
+    }
+
+    private GenericStylesheet getGenericStylesheet(int enabledBlocklistsMask) {
+        synchronized (genericStylesheets) {
+            // Get the cached generic style sheet.
+            GenericStylesheet genericStylesheet = genericStylesheets.get(enabledBlocklistsMask);
+
+            // Create the generic style sheet if it hasn't been created for these blocklists.
+            if (genericStylesheet == null) {
+                // Collect the generic selectors and the selectors that are excepted everywhere.
+                LinkedHashSet<String> genericSelectors = new LinkedHashSet<>();
+                HashSet<String> exceptedSelectors = new HashSet<>();
+                collectSelectors("", ELEMENT_HIDING_SUBLIST, true, enabledBlocklistsMask, genericSelectors);
+                collectSelectors("", ELEMENT_HIDING_EXCEPTION_SUBLIST, true, enabledBlocklistsMask, exceptedSelectors);
+
+                // Remove the excepted selectors.
+                genericSelectors.removeAll(exceptedSelectors);
+
+                // Create the style sheet.
+                StringBuilder stylesheetStringBuilder = new StringBuilder(genericSelectors.size() * 32);
+                appendRules(stylesheetStringBuilder, genericSelectors);
+
+                // Cache the generic style sheet.
+                genericStylesheet = new GenericStylesheet(genericSelectors, stylesheetStringBuilder.toString());
+                genericStylesheets.put(enabledBlocklistsMask, genericStylesheet);
+            }
+
+            // Return the generic style sheet.
+            return genericStylesheet;
+        }
+    }
+
+    // Collect the selectors of the enabled entries that apply to the domain.  Either the generic entries, which have an empty domain, or the entries of the domain and its parent domains are collected.
+    private void collectSelectors(String domain, int sublist, boolean generic, int enabledBlocklistsMask, HashSet<String> selectors) {
+        // Initialize the matching entries array.  There is at most one item for each label, plus one for the entries with an empty domain.
+        int[][] matchingEntries = new int[domain.length() + 2][];
+
+        // Look up the domain in each enabled blocklist.
+        for (int blocklistIndex = 0; blocklistIndex < CombinedBlocklist.NUMBER_OF_BLOCKLISTS; blocklistIndex++) {
+            // Get the element hiding list.
+            ElementHidingList elementHidingList = getEnabledElementHidingList(blocklistIndex, enabledBlocklistsMask);
+
+            // Skip the blocklists that aren't enabled.
+            if (elementHidingList == null) {
+                continue;
+            }
+
+            // Look up the entries for the domain and its parent domains.
+            int numberOfMatchingEntries = elementHidingList.getDomainTrie(sublist).lookup(domain, matchingEntries);
+
+            // Add the selectors of the entries.
+            for (int domainPosition = 0; domainPosition < numberOfMatchingEntries; domainPosition++) {
+                for (int entryIndex : matchingEntries[domainPosition]) {
+                    // Add the selector if the entry is of the requested kind.
+                    if (elementHidingList.getDomain(sublist, entryIndex).isEmpty() == generic) {
+                        selectors.add(elementHidingList.getSelector(sublist, entryIndex));
+                    }
+                }
+            }
+        }
+    }
+
+    private ElementHidingList getEnabledElementHidingList(int blocklistIndex, int enabledBlocklistsMask) {
+        // Return the element hiding list if the blocklist is enabled, or null if it isn't.
+        return ((enabledBlocklistsMask & (1 << blocklistIndex)) == 0) ? null : elementHidingLists[blocklistIndex];
+    }
+
+    private static void appendRules(StringBuilder stylesheetStringBuilder, Iterable<String> selectors) {
+        // Track the number of selectors in the current rule.
+        int numberOfRuleSelectors = 0;
+
+        // Add each selector.
+        for (String selector : selectors) {
+            // Separate the selector from the previous one in the rule.
+            if (numberOfRuleSelectors > 0) {
+                stylesheetStringBuilder.append(',');
+            }
+
+            // Add the selector.
+            stylesheetStringBuilder.append(selector);
+
+            // Finish the rule once it is full.
+            if (++numberOfRuleSelectors == SELECTORS_PER_RULE) {
+                stylesheetStringBuilder.append(HIDING_DECLARATION_BLOCK);
+                numberOfRuleSelectors = 0;
+            }
+        }
+
+        // Finish the last rule.
+        if (numberOfRuleSelectors > 0) {
+            stylesheetStringBuilder.append(HIDING_DECLARATION_BLOCK);
+        }
+    }
+
+    // The generic style sheet keeps its selectors so that the domain style sheets can remove the ones that are excepted on the domain.
+    private static class GenericStylesheet {
+        final HashSet<String> selectors;
+        final String stylesheet;
+
+        GenericStylesheet(HashSet<String> selectors, String stylesheet) {
+            // Store the values.
+            this.selectors = selectors;
+            this.stylesheet = stylesheet;
+        }
+    }
+}
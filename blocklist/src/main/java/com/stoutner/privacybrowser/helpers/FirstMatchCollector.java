@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.Arrays;
+
+// The first match collector tracks the first matching entry of each blocklist while a merged sublist is searched.
+// Every entry carries a mask of the blocklists it came from, so one search of the merged sublist finds the first match of every blocklist at once.
+public class FirstMatchCollector {
+    // The first matching entry of each blocklist, or `Integer.MAX_VALUE` if it hasn't matched.
+    private final int[] firstEntries;
+
+    // The blocklists that are being collected.
+    private int collectedBlocklistsMask;
+
+    // The blocklists mask of each entry, or null if every entry belongs to the default blocklists.
+    private int[] entryBlocklistsMasks;
+    private int defaultBlocklistsMask;
+
+    // The resource types mask of each entry, or null if every entry applies to every type, and the types of the request, which an entry must share to apply to it.
+    private short[] entryResourceTypes;
+    private int requestResourceTypesMask;
+
+    // Entries at or past the last needed entry can't improve the first match of any collected blocklist.
+    private int lastNeededEntry;
+
+    public FirstMatchCollector(int numberOfBlocklists) {
+        // Initialize the first entries.
+        firstEntries = new int[numberOfBlocklists];
+    }
+
+    // Start collecting the first matches of the blocklists in the mask.
+    void reset(int collectedBlocklistsMask, int[] entryBlocklistsMasks, int defaultBlocklistsMask, short[] entryResourceTypes, int requestResourceTypesMask) {
+        // Store the masks.
+        this.collectedBlocklistsMask = collectedBlocklistsMask;
+        this.entryBlocklistsMasks = entryBlocklistsMasks;
+        this.defaultBlocklistsMask = defaultBlocklistsMask;
+        this.entryResourceTypes = entryResourceTypes;
+        this.requestResourceTypesMask = requestResourceTypesMask;
+
+        // Mark every blocklist as not matched.
+        Arrays.fill(firstEntries, Integer.MAX_VALUE);
+        lastNeededEntry = Integer.MAX_VALUE;
+    }
+
+    // Check if the search can stop, because the entries are checked in ascending order and every collected blocklist has matched before this entry.
+    boolean isFinished(int entryIndex) {
+        return entryIndex >= lastNeededEntry;
+    }
+
+    // Get the blocklists of the entry that haven't already matched this or an earlier entry.  Zero means the entry doesn't need to be checked.
+    int getNeededBlocklists(int entryIndex) {
+        // Entries that don't apply to the resource type of the request aren't needed by any blocklist.
+        if ((entryResourceTypes != null) && ((entryResourceTypes[entryIndex] & requestResourceTypesMask) == 0)) {
+            return 0;
+        }
+
+        // Get the blocklists of the entry that are being collected.
+        int entryBlocklistsMask = ((entryBlocklistsMasks == null) ? defaultBlocklistsMask : entryBlocklistsMasks[entryIndex]) & collectedBlocklistsMask;
+
+        // Remove the blocklists that have already matched an earlier entry.
+        for (int blocklistIndex = 0; blocklistIndex < firstEntries.length; blocklistIndex++) {
+            if (((entryBlocklistsMask & (1 << blocklistIndex)) != 0) && (firstEntries[blocklistIndex] <= entryIndex)) {
+                entryBlocklistsMask &= ~(1 << blocklistIndex);
+            }
+        }
+
+        // Return the needed blocklists.
+        return entryBlocklistsMask;
+    }
+
+    // Record a matching entry for the blocklists returned by `getNeededBlocklists()`.
+    void record(int entryIndex, int neededBlocklistsMask) {
+        // Store the entry for each blocklist.
+        for (int blocklistIndex = 0; blocklistIndex < firstEntries.length; blocklistIndex++) {
+            if ((neededBlocklistsMask & (1 << blocklistIndex)) != 0) {
+                firstEntries[blocklistIndex] = entryIndex;
+            }
+        }
+
+        // Update the last needed entry, which is the highest first entry of the collected blocklists.
+        lastNeededEntry = 0;
+        for (int blocklistIndex = 0; blocklistIndex < firstEntries.length; blocklistIndex++) {
+            if ((collectedBlocklistsMask & (1 << blocklistIndex)) != 0) {
+                lastNeededEntry = Math.max(lastNeededEntry, firstEntries[blocklistIndex]);
+            }
+        }
+    }
+
+    // Check if any collected blocklist has matched.
+    boolean hasMatches() {
+        // Check each collected blocklist.
+        for (int blocklistIndex = 0; blocklistIndex < firstEntries.length; blocklistIndex++) {
+            if (((collectedBlocklistsMask & (1 << blocklistIndex)) != 0) && (firstEntries[blocklistIndex] != Integer.MAX_VALUE)) {
+                return true;
+            }
+        }
+
+        // None of the collected blocklists have matched.
+        return false;
+    }
+
+    // Get the first matching entry of the blocklist, or -1 if it didn't match.
+    int getFirstEntry(int blocklistIndex) {
+        return (firstEntries[blocklistIndex] == Integer.MAX_VALUE) ? -1 : firstEntries[blocklistIndex];
+    }
+}
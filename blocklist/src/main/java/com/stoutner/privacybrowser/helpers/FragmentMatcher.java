@@ -0,0 +1,320 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.ArrayList;
+
+// The fragment matcher compares the fragments of blocklist entries with URLs.  Most fragments are plain strings, but they can also contain the anchors of the blocklist syntax.
+// An initial `||` anchors the fragment to the start of the host or of one of its labels, and each `^` matches a separator or the end of the URL.
+// A separator is any ASCII character except a letter, a digit, `_`, `-`, `.`, and `%`.
+class FragmentMatcher {
+    // The anchors.
+    final static String HOST_ANCHOR = "||";
+    final static char SEPARATOR = '^';
+
+    // The ASCII characters that are separators.
+    private final static boolean[] SEPARATORS = createSeparators();
+
+    // Check if the fragments of the entry from the first fragment to the end fragment are contained in the URL in order, each starting at or after the end of the one before it.
+    // The host bounds are found by `BlocklistHelper`, and are both 0 if the URL doesn't have a host.
+    // This is how the `*` between the fragments matches, so the URL is walked once from left to right.  The first fragment can be anchored to the start of the URL and the last one to its end.
+    static boolean containsInOrder(String url, int hostStart, int hostEnd, String[] entry, int firstFragment, int endFragment, boolean anchoredAtStart, boolean anchoredAtEnd) {
+        // Start at the beginning of the URL.
+        int position = 0;
+
+        // Match each fragment after the one before it.
+        for (int fragmentIndex = firstFragment; fragmentIndex < endFragment; fragmentIndex++) {
+            // Get the fragment.
+            String fragment = entry[fragmentIndex];
+
+            // The last fragment of an entry anchored at the end must run to the end of the URL.
+            if (anchoredAtEnd && (fragmentIndex == endFragment - 1)) {
+                // A fragment that is also anchored at the start must cover the whole URL.
+                if (anchoredAtStart && (fragmentIndex == firstFragment)) {
+                    return matchStart(url, fragment) == url.length();
+                }
+
+                // Match the fragment at the end of the URL.
+                return endsWith(url, hostStart, hostEnd, fragment, position);
+            }
+
+            // Find the end of the fragment, which must be at the start of the URL for the first fragment of an entry anchored at the start.
+            position = (anchoredAtStart && (fragmentIndex == firstFragment)) ? matchStart(url, fragment) : find(url, hostStart, hostEnd, fragment, position);
+
+            // Stop if the fragment wasn't found.
+            if (position == -1) {
+                return false;
+            }
+        }
+
+        // Every fragment was found in order.
+        return true;
+    }
+
+    // Find the first match of the fragment that starts at or after the from index.  The end of the match is returned, or -1 if the fragment isn't found.
+    private static int find(String url, int hostStart, int hostEnd, String fragment, int fromIndex) {
+        // Match a host anchored fragment at the start of each label of the host.
+        if (fragment.startsWith(HOST_ANCHOR)) {
+            return matchAtLabel(url, hostStart, hostEnd, fragment, fromIndex, false);
+        }
+
+        // Get the first separator.
+        int firstSeparator = fragment.indexOf(SEPARATOR);
+
+        // Plain fragments are found as strings.
+        if (firstSeparator == -1) {
+            int matchStart = url.indexOf(fragment, fromIndex);
+            return (matchStart == -1) ? -1 : matchStart + fragment.length();
+        }
+
+        // A fragment that starts with a separator is tried at every position.
+        if (firstSeparator == 0) {
+            for (int start = fromIndex; start <= url.length(); start++) {
+                // Get the end of the match.
+                int matchEnd = matchAt(url, start, fragment, 0);
+
+                // Return the end of the first match.
+                if (matchEnd != -1) {
+                    return matchEnd;
+                }
+            }
+
+            // The fragment isn't found.
+            return -1;
+        }
+
+        // Otherwise, the fragment is only tried where the URL has its first character.
+        char firstCharacter = fragment.charAt(0);
+        for (int start = url.indexOf(firstCharacter, fromIndex); start != -1; start = url.indexOf(firstCharacter, start + 1)) {
+            // Get the end of the match.
+            int matchEnd = matchAt(url, start, fragment, 0);
+
+            // Return the end of the first match.
+            if (matchEnd != -1) {
+                return matchEnd;
+            }
+        }
+
+        // The fragment isn't found.
+        return -1;
+    }
+
+    // Match the fragment at the start of the URL.  The end of the match is returned, or -1 if the URL doesn't start with the fragment.
+    private static int matchStart(String url, String fragment) {
+        // Plain fragments are matched as strings.
+        if (fragment.indexOf(SEPARATOR) == -1) {
+            return url.startsWith(fragment) ? fragment.length() : -1;
+        }
+
+        // Match the fragment at the start of the URL.
+        return matchAt(url, 0, fragment, 0);
+    }
+
+    // Check if the URL ends with the fragment, starting at or after the from index.
+    private static boolean endsWith(String url, int hostStart, int hostEnd, String fragment, int fromIndex) {
+        // Get the URL length.
+        int urlLength = url.length();
+
+        // Match a host anchored fragment at the start of each label of the host.
+        if (fragment.startsWith(HOST_ANCHOR)) {
+            return matchAtLabel(url, hostStart, hostEnd, fragment, fromIndex, true) != -1;
+        }
+
+        // Plain fragments are matched as strings.
+        if (fragment.indexOf(SEPARATOR) == -1) {
+            return url.endsWith(fragment) && (urlLength - fragment.length() >= fromIndex);
+        }
+
+        // Each separator matches one character, except at the end of the URL, so the match can't start more than the length of the fragment before the end.
+        for (int start = Math.max(urlLength - fragment.length(), fromIndex); start <= urlLength; start++) {
+            if (matchAt(url, start, fragment, 0) == urlLength) {
+                return true;
+            }
+        }
+
+        // The URL doesn't end with the fragment.
+        return false;
+    }
+
+    // Get the domain of an entry that only blocks a host and its subdomains, which has a single fragment of the form `||example.com^`.  Null is returned for other entries.
+    // These entries match exactly the hosts that are the domain or end with `.` and the domain, because a host is always followed by a separator or the end of the URL.
+    static String getHostAnchoredDomain(String[] entry) {
+        // The last item in each entry is the original blocklist entry.
+        if (entry.length != 2) {
+            return null;
+        }
+
+        // Get the fragment.
+        String fragment = entry[0];
+
+        // The fragment must start with `||` and end with `^`, with a domain between them.
+        if (!fragment.startsWith(HOST_ANCHOR) || (fragment.length() <= HOST_ANCHOR.length() + 1) || (fragment.charAt(fragment.length() - 1) != SEPARATOR)) {
+            return null;
+        }
+
+        // The domain must only contain the characters of a host, and can't start or end with a `.`.
+        for (int index = HOST_ANCHOR.length(); index < fragment.length() - 1; index++) {
+            // Get the character.
+            char character = fragment.charAt(index);
+
+            // Check the character.
+            if (!(((character >= 'a') && (character <= 'z')) || ((character >= 'A') && (character <= 'Z')) || ((character >= '0') && (character <= '9')) || (character == '-') || (character == '_') ||
+                    ((character == '.') && (index != HOST_ANCHOR.length()) && (index != fragment.length() - 2)))) {
+                return null;
+            }
+        }
+
+        // Return the domain.
+        return fragment.substring(HOST_ANCHOR.length(), fragment.length() - 1);
+    }
+
+    // Get the literal pieces of the fragment, which are the runs of characters between its anchors.  Every piece is contained in any URL that contains the fragment.
+    static String[] getLiterals(String fragment) {
+        // Track the literals.
+        ArrayList<String> literals = new ArrayList<>();
+
+        // Start after any host anchor.
+        int literalStart = getLiteralsStart(fragment);
+
+        // Split the rest of the fragment at each separator.
+        while (literalStart <= fragment.length()) {
+            // Find the end of the literal.
+            int literalEnd = fragment.indexOf(SEPARATOR, literalStart);
+            if (literalEnd == -1) {
+                literalEnd = fragment.length();
+            }
+
+            // Store the literal if it isn't empty.
+            if (literalEnd > literalStart) {
+                literals.add(fragment.substring(literalStart, literalEnd));
+            }
+
+            // Move past the separator.
+            literalStart = literalEnd + 1;
+        }
+
+        // Return the literals.
+        return literals.toArray(new String[0]);
+    }
+
+    // Check if the characters of the fragment from the start to the end are literal, which means they are not part of an anchor.
+    static boolean isLiteral(String fragment, int start, int end) {
+        // The host anchor is not literal.
+        if (start < getLiteralsStart(fragment)) {
+            return false;
+        }
+
+        // Check for separators.
+        for (int index = start; index < end; index++) {
+            if (fragment.charAt(index) == SEPARATOR) {
+                return false;
+            }
+        }
+
+        // The characters are literal.
+        return true;
+    }
+
+    private static int getLiteralsStart(String fragment) {
+        // The literals start after any host anchor.
+        return fragment.startsWith(HOST_ANCHOR) ? HOST_ANCHOR.length() : 0;
+    }
+
+    // Match a host anchored fragment at the start of each label of the host that starts at or after the from index.  If the match must reach the end, the fragment only matches if it runs to the end of the URL.
+    // The end of the first match is returned, or -1 if the fragment doesn't match at any label.
+    private static int matchAtLabel(String url, int hostStart, int hostEnd, String fragment, int fromIndex, boolean mustReachEnd) {
+        // Try each label, starting with the whole host.
+        int labelStart = hostStart;
+        while (labelStart < hostEnd) {
+            // Skip the labels before the from index.
+            if (labelStart >= fromIndex) {
+                // Match the fragment after the anchor.
+                int matchEnd = matchAt(url, labelStart, fragment, HOST_ANCHOR.length());
+
+                // Return the end of the match if the fragment matches at this label.
+                if ((matchEnd != -1) && (!mustReachEnd || (matchEnd == url.length()))) {
+                    return matchEnd;
+                }
+            }
+
+            // Find the next label.
+            int nextDot = url.indexOf('.', labelStart);
+
+            // Stop at the last label.
+            if ((nextDot == -1) || (nextDot >= hostEnd)) {
+                break;
+            }
+
+            // Move to the next label.
+            labelStart = nextDot + 1;
+        }
+
+        // The fragment doesn't match at any label.
+        return -1;
+    }
+
+    // Match the fragment, starting at the fragment index, against the URL at the URL index.  The end of the match in the URL is returned, or -1 if the fragment doesn't match.
+    private static int matchAt(String url, int urlIndex, String fragment, int fragmentIndex) {
+        // Get the URL length.
+        int urlLength = url.length();
+
+        // Match each character of the fragment.
+        for (; fragmentIndex < fragment.length(); fragmentIndex++) {
+            // Get the fragment character.
+            char fragmentCharacter = fragment.charAt(fragmentIndex);
+
+            if (fragmentCharacter == SEPARATOR) {  // The fragment needs a separator.
+                // The end of the URL matches a separator without using a character.
+                if (urlIndex == urlLength) {
+                    continue;
+                }
+
+                // Check the URL character.
+                char urlCharacter = url.charAt(urlIndex);
+                if ((urlCharacter >= SEPARATORS.length) || !SEPARATORS[urlCharacter]) {
+                    return -1;
+                }
+            } else if ((urlIndex == urlLength) || (url.charAt(urlIndex) != fragmentCharacter)) {  // The fragment needs this character.
+                return -1;
+            }
+
+            // Move to the next URL character.
+            urlIndex++;
+        }
+
+        // Return the end of the match.
+        return urlIndex;
+    }
+
+    private static boolean[] createSeparators() {
+        // Create the table.
+        boolean[] separators = new boolean[128];
+
+        // Mark each ASCII character that isn't a letter, a digit, `_`, `-`, `.`, or `%`.
+        for (char character = 0; character < separators.length; character++) {
+            separators[character] = !(((character >= 'a') && (character <= 'z')) || ((character >= 'A') && (character <= 'Z')) || ((character >= '0') && (character <= '9')) ||
+                    (character == '_') || (character == '-') || (character == '.') || (character == '%'));
+        }
+
+        // Return the table.
+        return separators;
+    }
+}
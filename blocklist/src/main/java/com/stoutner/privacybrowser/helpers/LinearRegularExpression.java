@@ -0,0 +1,1023 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The linear regular expression matches the subset of `java.util.regex` used by the blocklists without backtracking, so that no URL can make a regular expression take more than linear time.
+// The regular expression is compiled to a nondeterministic automaton, and all of the states the automaton could be in are followed together, one character of the URL at a time.
+// Literals, `.`, character classes, `\d`, `\w`, `\s`, groups, alternations, the greedy and lazy quantifiers, and `^` and `$` are supported.
+// Other constructs, like back references, lookarounds, possessive quantifiers, and flags, return null from `compile()`, so that `java.util.regex` can be used instead.
+public class LinearRegularExpression {
+    // The instructions of the automaton.
+    private final static int CHARACTER = 0;
+    private final static int CHARACTER_CLASS = 1;
+    private final static int ANY_CHARACTER = 2;
+    private final static int SPLIT = 3;
+    private final static int JUMP = 4;
+    private final static int BEGINNING_OF_INPUT = 5;
+    private final static int END_OF_INPUT = 6;
+    private final static int MATCH = 7;
+
+    // The largest automaton that is compiled, which keeps counted repetitions like `{1000}` from using too much memory.
+    private final static int MAXIMUM_INSTRUCTIONS = 10000;
+
+    // The largest code point.
+    private final static int MAXIMUM_CODE_POINT = Character.MAX_CODE_POINT;
+
+    // The predefined character classes as ranges of code points.
+    private final static int[] DIGIT_RANGES = {'0', '9'};
+    private final static int[] WORD_RANGES = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private final static int[] SPACE_RANGES = {'\t', '\r', ' ', ' '};
+
+    // The instructions.  The first argument is the character, the character class, the jump target, or the first target of a split.  The second argument is the second target of a split.
+    private final int[] instructions;
+    private final int[] firstArguments;
+    private final int[] secondArguments;
+
+    // The character classes used by the instructions.
+    private final CharacterClass[] characterClasses;
+
+    // Each thread reuses its own state sets.
+    private final ThreadLocal<Scratch> scratchThreadLocal;
+
+    private LinearRegularExpression(ProgramBuilder programBuilder) {
+        // Store the instructions.
+        instructions = Arrays.copyOf(programBuilder.instructions, programBuilder.size);
+        firstArguments = Arrays.copyOf(programBuilder.firstArguments, programBuilder.size);
+        secondArguments = Arrays.copyOf(programBuilder.secondArguments, programBuilder.size);
+
+        // Store the character classes.
+        characterClasses = programBuilder.characterClasses.toArray(new CharacterClass[0]);
+
+        // Initialize the thread local scratch space.
+        int numberOfInstructions = instructions.length;
+        scratchThreadLocal = ThreadLocal.withInitial(() -> new Scratch(numberOfInstructions));
+    }
+
+    // Compile a regular expression that `Pattern.compile()` accepts.  Null is returned if the regular expression uses a construct that isn't supported.
+    public static LinearRegularExpression compile(String regularExpression) {
+        try {
+            // Parse the regular expression.
+            Parser parser = new Parser(regularExpression);
+            Node node = parser.parseAlternation();
+
+            // A closing parenthesis without an opening one is unexpected.
+            if (parser.position < regularExpression.length()) {
+                return null;
+            }
+
+            // Compile the automaton, which ends with the match instruction.
+            ProgramBuilder programBuilder = new ProgramBuilder();
+            programBuilder.compile(node);
+            programBuilder.add(MATCH, 0, 0);
+
+            // Return the linear regular expression.
+            return new LinearRegularExpression(programBuilder);
+        } catch (UnsupportedRegularExpressionException exception) {
+            // The regular expression must be matched by `java.util.regex`.
+            return null;
+        }
+    }
+
+    // Check if the entire input matches the regular expression, like `Pattern.matches()`.
+    public boolean matches(String input) {
+        // Get this thread's scratch space.
+        Scratch scratch = scratchThreadLocal.get();
+        StateSet currentStates = scratch.firstStates;
+        StateSet nextStates = scratch.secondStates;
+
+        // Start with the states reachable from the first instruction.
+        currentStates.clear();
+        addStates(scratch, currentStates, 0, input, 0);
+
+        // Follow the states through the input one code point at a time, like `java.util.regex` does.
+        int length = input.length();
+        int position = 0;
+        while (position < length) {
+            // Stop if no state is left.
+            if (currentStates.size == 0) {
+                return false;
+            }
+
+            // Get the code point and the position after it.
+            int codePoint = input.codePointAt(position);
+            int nextPosition = position + Character.charCount(codePoint);
+
+            // Advance each state that matches the code point.
+            nextStates.clear();
+            for (int stateIndex = 0; stateIndex < currentStates.size; stateIndex++) {
+                // Get the instruction.
+                int instructionIndex = currentStates.states[stateIndex];
+
+                // Check if the instruction matches the code point.  The other instructions were followed when the states were added.
+                boolean codePointMatches;
+                switch (instructions[instructionIndex]) {
+                    case CHARACTER:
+                        codePointMatches = (codePoint == firstArguments[instructionIndex]);
+                        break;
+
+                    case CHARACTER_CLASS:
+                        codePointMatches = characterClasses[firstArguments[instructionIndex]].contains(codePoint);
+                        break;
+
+                    case ANY_CHARACTER:
+                        codePointMatches = !isLineTerminator(codePoint);
+                        break;
+
+                    default:
+                        codePointMatches = false;
+                }
+
+                // Add the states after the instruction.
+                if (codePointMatches) {
+                    addStates(scratch, nextStates, instructionIndex + 1, input, nextPosition);
+                }
+            }
+
+            // Swap the state sets.
+            StateSet swappedStates = currentStates;
+            currentStates = nextStates;
+            nextStates = swappedStates;
+
+            // Move to the next code point.
+            position = nextPosition;
+        }
+
+        // The input matches if the match instruction, which is the last one, was reached at the end of the input.
+        return currentStates.contains(instructions.length - 1);
+    }
+
+    // Add the instruction to the state set, along with every instruction that can be reached from it without consuming a character.
+    private void addStates(Scratch scratch, StateSet stateSet, int firstInstructionIndex, String input, int position) {
+        // Push the first instruction onto the stack.  The stack never holds more than two entries per instruction, because each instruction is only followed once.
+        int[] stack = scratch.stack;
+        int stackSize = 0;
+        stack[stackSize++] = firstInstructionIndex;
+
+        // Follow the instructions.
+        while (stackSize > 0) {
+            // Pop the next instruction.
+            int instructionIndex = stack[--stackSize];
+
+            // Skip the instruction if it has already been added.
+            if (stateSet.contains(instructionIndex)) {
+                continue;
+            }
+
+            // Add the instruction.
+            stateSet.add(instructionIndex);
+
+            // Follow the instructions that don't consume a character.
+            switch (instructions[instructionIndex]) {
+                case SPLIT:
+                    // Push both targets.  The order doesn't matter, because every path is followed.
+                    stack[stackSize++] = secondArguments[instructionIndex];
+                    stack[stackSize++] = firstArguments[instructionIndex];
+                    break;
+
+                case JUMP:
+                    // Push the target.
+                    stack[stackSize++] = firstArguments[instructionIndex];
+                    break;
+
+                case BEGINNING_OF_INPUT:
+                    // Continue only at the beginning of the input.
+                    if (position == 0) {
+                        stack[stackSize++] = instructionIndex + 1;
+                    }
+                    break;
+
+                case END_OF_INPUT:
+                    // Continue only at the end of the input.
+                    if (isEndOfInput(input, position)) {
+                        stack[stackSize++] = instructionIndex + 1;
+                    }
+                    break;
+            }
+        }
+    }
+
+    // Check if `$` matches at the position, which is the end of the input or before a line terminator at the end of the input, like in `java.util.regex`.
+    private static boolean isEndOfInput(String input, int position) {
+        // Get the number of remaining characters.
+        int remainingCharacters = input.length() - position;
+
+        // Check the remaining characters.
+        switch (remainingCharacters) {
+            case 0:  // The position is the end of the input.
+                return true;
+
+            case 1:  // The last character must be a line terminator, but `$` doesn't match between `\r` and `\n`.
+                char lastCharacter = input.charAt(position);
+                return isLineTerminator(lastCharacter) && !((lastCharacter == '\n') && (position > 0) && (input.charAt(position - 1) == '\r'));
+
+            case 2:  // The last two characters must be `\r\n`.
+                return (input.charAt(position) == '\r') && (input.charAt(position + 1) == '\n');
+
+            default:  // The position is too far from the end of the input.
+                return false;
+        }
+    }
+
+    // Check if the code point is a line terminator, which `.` doesn't match.
+    private static boolean isLineTerminator(int codePoint) {
+        return (codePoint == '\n') || (codePoint == '\r') || (codePoint == '\u0085') || (codePoint == '\u2028') || (codePoint == '\u2029');
+    }
+
+    // The parser turns the regular expression into a tree of nodes.
+    private static class Parser {
+        final String regularExpression;
+        int position;
+
+        Parser(String regularExpression) {
+            // Store the regular expression.
+            this.regularExpression = regularExpression;
+        }
+
+        // Parse alternatives separated by `|` until the end of the regular expression or of the group.
+        Node parseAlternation() throws UnsupportedRegularExpressionException {
+            // Parse the first alternative.
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseConcatenation());
+
+            // Parse the other alternatives.
+            while ((position < regularExpression.length()) && (regularExpression.charAt(position) == '|')) {
+                position++;
+                alternatives.add(parseConcatenation());
+            }
+
+            // Return the single alternative or the alternation.
+            return (alternatives.size() == 1) ? alternatives.get(0) : Node.createParent(Node.ALTERNATION, alternatives);
+        }
+
+        // Parse quantified atoms until the end of the alternative.
+        private Node parseConcatenation() throws UnsupportedRegularExpressionException {
+            // Parse the items.
+            List<Node> items = new ArrayList<>();
+            while (position < regularExpression.length()) {
+                // Get the character.
+                char character = regularExpression.charAt(position);
+
+                // Stop at the end of the alternative.
+                if ((character == '|') || (character == ')')) {
+                    break;
+                }
+
+                // Parse the atom and its quantifier.
+                items.add(parseQuantifier(parseAtom()));
+            }
+
+            // Return the concatenation.
+            return Node.createParent(Node.CONCATENATION, items);
+        }
+
+        // Parse the quantifier after the atom, if there is one.
+        private Node parseQuantifier(Node atom) throws UnsupportedRegularExpressionException {
+            // Return the atom if it isn't quantified.
+            if (position == regularExpression.length()) {
+                return atom;
+            }
+
+            // Get the bounds of the quantifier.
+            int minimum;
+            int maximum;
+            switch (regularExpression.charAt(position)) {
+                case '*':
+                    minimum = 0;
+                    maximum = -1;
+                    position++;
+                    break;
+
+                case '+':
+                    minimum = 1;
+                    maximum = -1;
+                    position++;
+                    break;
+
+                case '?':
+                    minimum = 0;
+                    maximum = 1;
+                    position++;
+                    break;
+
+                case '{':
+                    // Parse the minimum.
+                    position++;
+                    minimum = parseCount();
+
+                    // Parse the maximum.  It is the minimum if there is no comma, and unbounded if nothing follows the comma.
+                    if (regularExpression.charAt(position) == ',') {
+                        position++;
+                        maximum = (regularExpression.charAt(position) == '}') ? -1 : parseCount();
+                    } else {
+                        maximum = minimum;
+                    }
+
+                    // The quantifier must be closed.
+                    if (regularExpression.charAt(position) != '}') {
+                        throw new UnsupportedRegularExpressionException();
+                    }
+                    position++;
+                    break;
+
+                default:  // The atom isn't quantified.
+                    return atom;
+            }
+
+            // The anchors can't be quantified.
+            if ((atom.type == Node.BEGINNING_OF_INPUT) || (atom.type == Node.END_OF_INPUT)) {
+                throw new UnsupportedRegularExpressionException();
+            }
+
+            // Process the suffix of the quantifier.
+            if (position < regularExpression.length()) {
+                // Get the suffix.
+                char suffix = regularExpression.charAt(position);
+
+                if (suffix == '?') {  // A lazy quantifier matches the same inputs as a greedy one.
+                    position++;
+                } else if (suffix == '+') {  // A possessive quantifier gives up paths, which this engine doesn't do.
+                    throw new UnsupportedRegularExpressionException();
+                }
+            }
+
+            // Return the repetition.
+            return Node.createRepetition(atom, minimum, maximum);
+        }
+
+        // Parse the decimal count of a quantifier.
+        private int parseCount() throws UnsupportedRegularExpressionException {
+            // Get the start of the count.
+            int countStart = position;
+
+            // Find the end of the count.
+            while ((position < regularExpression.length()) && (regularExpression.charAt(position) >= '0') && (regularExpression.charAt(position) <= '9')) {
+                position++;
+            }
+
+            // The count must have between one and nine digits, which keeps it from overflowing.
+            if ((position == countStart) || (position - countStart > 9) || (position == regularExpression.length())) {
+                throw new UnsupportedRegularExpressionException();
+            }
+
+            // Return the count.
+            return Integer.parseInt(regularExpression.substring(countStart, position));
+        }
+
+        // Parse a single atom.
+        private Node parseAtom() throws UnsupportedRegularExpressionException {
+            // Get the character.
+            char character = regularExpression.charAt(position);
+
+            // Parse the atom.
+            switch (character) {
+                case '(':
+                    // Move past the parenthesis.
+                    position++;
+
+                    // Only capturing groups and `(?:` are supported.  The captures themselves aren't needed to check a match.
+                    if (regularExpression.startsWith("?:", position)) {
+                        position += 2;
+                    } else if (regularExpression.startsWith("?", position)) {
+                        throw new UnsupportedRegularExpressionException();
+                    }
+
+                    // Parse the contents of the group.
+                    Node group = parseAlternation();
+
+                    // The group must be closed.
+                    if ((position == regularExpression.length()) || (regularExpression.charAt(position) != ')')) {
+                        throw new UnsupportedRegularExpressionException();
+                    }
+                    position++;
+
+                    // Return the group.
+                    return group;
+
+                case '[':
+                    // Parse the character class.
+                    return Node.createCharacterClass(parseCharacterClass());
+
+                case '.':
+                    // Match any character except a line terminator.
+                    position++;
+                    return new Node(Node.ANY_CHARACTER);
+
+                case '^':
+                    // Match the beginning of the input.
+                    position++;
+                    return new Node(Node.BEGINNING_OF_INPUT);
+
+                case '$':
+                    // Match the end of the input.
+                    position++;
+                    return new Node(Node.END_OF_INPUT);
+
+                case '\\':
+                    // Parse the escape, which is either a predefined character class or a single character.
+                    int[] predefinedRanges = parsePredefinedCharacterClass();
+                    if (predefinedRanges != null) {
+                        return Node.createCharacterClass(new CharacterClass(predefinedRanges));
+                    } else {
+                        return Node.createCharacter(parseEscapedCharacter());
+                    }
+
+                case '*':
+                case '+':
+                case '?':
+                case '{':  // A quantifier without an atom is unexpected.
+                    throw new UnsupportedRegularExpressionException();
+
+                default:
+                    // Surrogate pairs are matched as single code points by `java.util.regex`.
+                    if (Character.isSurrogate(character)) {
+                        throw new UnsupportedRegularExpressionException();
+                    }
+
+                    // Match the literal character.
+                    position++;
+                    return Node.createCharacter(character);
+            }
+        }
+
+        // Parse a character class that starts at the current position.
+        private CharacterClass parseCharacterClass() throws UnsupportedRegularExpressionException {
+            // Move past the opening bracket.
+            position++;
+
+            // Check if the character class is negated.
+            boolean negated = (position < regularExpression.length()) && (regularExpression.charAt(position) == '^');
+            if (negated) {
+                position++;
+            }
+
+            // Collect the ranges of the character class.
+            List<int[]> rangesList = new ArrayList<>();
+
+            // A closing bracket at the start of the character class, nested character classes, and intersections have their own rules in `java.util.regex`.
+            if ((position < regularExpression.length()) && (regularExpression.charAt(position) == ']')) {
+                throw new UnsupportedRegularExpressionException();
+            }
+
+            // Parse the items.
+            while (true) {
+                // An unterminated character class is unexpected.
+                if (position == regularExpression.length()) {
+                    throw new UnsupportedRegularExpressionException();
+                }
+
+                // Get the character.
+                char character = regularExpression.charAt(position);
+
+                // Stop at the end of the character class.
+                if (character == ']') {
+                    position++;
+                    break;
+                }
+
+                // Nested character classes and intersections are not supported.
+                if ((character == '[') || regularExpression.startsWith("&&", position)) {
+                    throw new UnsupportedRegularExpressionException();
+                }
+
+                // Parse a predefined character class.
+                if (character == '\\') {
+                    int[] predefinedRanges = parsePredefinedCharacterClass();
+                    if (predefinedRanges != null) {
+                        // A predefined character class can't start a range.
+                        if ((regularExpression.charAt(position) == '-') && (regularExpression.charAt(position + 1) != ']')) {
+                            throw new UnsupportedRegularExpressionException();
+                        }
+
+                        // Add the predefined character class.
+                        rangesList.add(predefinedRanges);
+                        continue;
+                    }
+                }
+
+                // Parse the first character.
+                int rangeStart = parseClassCharacter();
+
+                // Parse the end of a range.  A `-` before the closing bracket is a literal.
+                int rangeEnd = rangeStart;
+                if ((regularExpression.charAt(position) == '-') && (regularExpression.charAt(position + 1) != ']')) {
+                    // Move past the `-`.
+                    position++;
+
+                    // The end of the range must be a single character.
+                    if ((regularExpression.charAt(position) == '[') || ((regularExpression.charAt(position) == '\\') && (parsePredefinedCharacterClass() != null))) {
+                        throw new UnsupportedRegularExpressionException();
+                    }
+
+                    // Parse the end of the range.
+                    rangeEnd = parseClassCharacter();
+                }
+
+                // Add the range.
+                rangesList.add(new int[] {rangeStart, rangeEnd});
+            }
+
+            // Merge the ranges.
+            int[] ranges = mergeRanges(rangesList);
+
+            // Return the character class.
+            return new CharacterClass(negated ? complementRanges(ranges) : ranges);
+        }
+
+        // Parse a character inside a character class.
+        private int parseClassCharacter() throws UnsupportedRegularExpressionException {
+            // Parse an escaped character.
+            if (regularExpression.charAt(position) == '\\') {
+                return parseEscapedCharacter();
+            }
+
+            // Get the character.
+            char character = regularExpression.charAt(position);
+
+            // Surrogate pairs are matched as single code points by `java.util.regex`.
+            if (Character.isSurrogate(character)) {
+                throw new UnsupportedRegularExpressionException();
+            }
+
+            // Return the character.
+            position++;
+            return character;
+        }
+
+        // Parse the predefined character class at the current backslash.  Null is returned, without moving the position, if the escape isn't a predefined character class.
+        private int[] parsePredefinedCharacterClass() {
+            // A trailing backslash isn't a predefined character class.
+            if (position + 1 == regularExpression.length()) {
+                return null;
+            }
+
+            // Get the ranges.
+            int[] ranges;
+            switch (regularExpression.charAt(position + 1)) {
+                case 'd':
+                    ranges = DIGIT_RANGES;
+                    break;
+
+                case 'D':
+                    ranges = complementRanges(DIGIT_RANGES);
+                    break;
+
+                case 'w':
+                    ranges = WORD_RANGES;
+                    break;
+
+                case 'W':
+                    ranges = complementRanges(WORD_RANGES);
+                    break;
+
+                case 's':
+                    ranges = SPACE_RANGES;
+                    break;
+
+                case 'S':
+                    ranges = complementRanges(SPACE_RANGES);
+                    break;
+
+                default:  // The escape is not a predefined character class.
+                    return null;
+            }
+
+            // Move past the escape.
+            position += 2;
+
+            // Return the ranges.
+            return ranges;
+        }
+
+        // Parse an escaped character at the current backslash.
+        private int parseEscapedCharacter() throws UnsupportedRegularExpressionException {
+            // A trailing backslash is unexpected.
+            if (position + 1 == regularExpression.length()) {
+                throw new UnsupportedRegularExpressionException();
+            }
+
+            // Get the escaped character.
+            char escapedCharacter = regularExpression.charAt(position + 1);
+
+            // Get the character.
+            int character;
+            switch (escapedCharacter) {
+                case 't':
+                    character = '\t';
+                    break;
+
+                case 'n':
+                    character = '\n';
+                    break;
+
+                case 'r':
+                    character = '\r';
+                    break;
+
+                case 'f':
+                    character = '\f';
+                    break;
+
+                case 'a':
+                    character = '\u0007';
+                    break;
+
+                case 'e':
+                    character = '\u001B';
+                    break;
+
+                default:
+                    // Other letters and digits are back references, boundaries, quotes, and other constructs that aren't supported.
+                    if (Character.isLetterOrDigit(escapedCharacter) || Character.isSurrogate(escapedCharacter)) {
+                        throw new UnsupportedRegularExpressionException();
+                    }
+
+                    // Any other escaped character is a literal.
+                    character = escapedCharacter;
+            }
+
+            // Move past the escape.
+            position += 2;
+
+            // Return the character.
+            return character;
+        }
+    }
+
+    // Merge a list of ranges into sorted ranges that don't overlap or touch.
+    private static int[] mergeRanges(List<int[]> rangesList) {
+        // Collect the individual ranges.
+        List<int[]> individualRanges = new ArrayList<>();
+        for (int[] ranges : rangesList) {
+            for (int rangeIndex = 0; rangeIndex < ranges.length; rangeIndex += 2) {
+                individualRanges.add(new int[] {ranges[rangeIndex], ranges[rangeIndex + 1]});
+            }
+        }
+
+        // Sort the ranges by their start.
+        individualRanges.sort((firstRange, secondRange) -> Integer.compare(firstRange[0], secondRange[0]));
+
+        // Merge the overlapping and touching ranges.
+        int[] mergedRanges = new int[individualRanges.size() * 2];
+        int mergedLength = 0;
+        for (int[] range : individualRanges) {
+            if ((mergedLength > 0) && (range[0] <= mergedRanges[mergedLength - 1] + 1)) {  // Extend the last merged range.
+                mergedRanges[mergedLength - 1] = Math.max(mergedRanges[mergedLength - 1], range[1]);
+            } else {  // Start a new merged range.
+                mergedRanges[mergedLength++] = range[0];
+                mergedRanges[mergedLength++] = range[1];
+            }
+        }
+
+        // Return the merged ranges.
+        return Arrays.copyOf(mergedRanges, mergedLength);
+    }
+
+    // Get the ranges of the code points that aren't in the sorted ranges.
+    private static int[] complementRanges(int[] ranges) {
+        // There is at most one more range in the complement.
+        int[] complement = new int[ranges.length + 2];
+        int complementLength = 0;
+
+        // Add the gaps between the ranges.
+        int nextCodePoint = 0;
+        for (int rangeIndex = 0; rangeIndex < ranges.length; rangeIndex += 2) {
+            // Add the gap before the range.
+            if (ranges[rangeIndex] > nextCodePoint) {
+                complement[complementLength++] = nextCodePoint;
+                complement[complementLength++] = ranges[rangeIndex] - 1;
+            }
+
+            // Move past the range.
+            nextCodePoint = ranges[rangeIndex + 1] + 1;
+        }
+
+        // Add the gap after the last range.
+        if (nextCodePoint <= MAXIMUM_CODE_POINT) {
+            complement[complementLength++] = nextCodePoint;
+            complement[complementLength++] = MAXIMUM_CODE_POINT;
+        }
+
+        // Return the complement.
+        return Arrays.copyOf(complement, complementLength);
+    }
+
+    // A node of the parsed regular expression.
+    private static class Node {
+        // The types of nodes.
+        final static int CHARACTER = 0;
+        final static int CHARACTER_CLASS = 1;
+        final static int ANY_CHARACTER = 2;
+        final static int BEGINNING_OF_INPUT = 3;
+        final static int END_OF_INPUT = 4;
+        final static int CONCATENATION = 5;
+        final static int ALTERNATION = 6;
+        final static int REPETITION = 7;
+
+        final int type;
+        int character;
+        CharacterClass characterClass;
+        List<Node> children;
+        int minimum;
+        int maximum;
+
+        Node(int type) {
+            // Store the type.
+            this.type = type;
+        }
+
+        static Node createCharacter(int character) {
+            // Create the character node.
+            Node node = new Node(CHARACTER);
+            node.character = character;
+            return node;
+        }
+
+        static Node createCharacterClass(CharacterClass characterClass) {
+            // Create the character class node.
+            Node node = new Node(CHARACTER_CLASS);
+            node.characterClass = characterClass;
+            return node;
+        }
+
+        static Node createParent(int type, List<Node> children) {
+            // Create the concatenation or alternation node.
+            Node node = new Node(type);
+            node.children = children;
+            return node;
+        }
+
+        static Node createRepetition(Node child, int minimum, int maximum) {
+            // Create the repetition node.  A maximum of -1 is unbounded.
+            Node node = new Node(REPETITION);
+            node.children = new ArrayList<>();
+            node.children.add(child);
+            node.minimum = minimum;
+            node.maximum = maximum;
+            return node;
+        }
+    }
+
+    // The program builder compiles the nodes into instructions.
+    private static class ProgramBuilder {
+        int[] instructions = new int[64];
+        int[] firstArguments = new int[64];
+        int[] secondArguments = new int[64];
+        int size;
+        final List<CharacterClass> characterClasses = new ArrayList<>();
+
+        // Add an instruction and return its index.
+        int add(int instruction, int firstArgument, int secondArgument) throws UnsupportedRegularExpressionException {
+            // Stop if the automaton is too large.
+            if (size == MAXIMUM_INSTRUCTIONS) {
+                throw new UnsupportedRegularExpressionException();
+            }
+
+            // Grow the arrays if they are full.
+            if (size == instructions.length) {
+                instructions = Arrays.copyOf(instructions, size * 2);
+                firstArguments = Arrays.copyOf(firstArguments, size * 2);
+                secondArguments = Arrays.copyOf(secondArguments, size * 2);
+            }
+
+            // Add the instruction.
+            instructions[size] = instruction;
+            firstArguments[size] = firstArgument;
+            secondArguments[size] = secondArgument;
+
+            // Return the index of the instruction.
+            return size++;
+        }
+
+        // Compile the node.
+        void compile(Node node) throws UnsupportedRegularExpressionException {
+            switch (node.type) {
+                case Node.CHARACTER:
+                    add(CHARACTER, node.character, 0);
+                    break;
+
+                case Node.CHARACTER_CLASS:
+                    // Add the character class.
+                    characterClasses.add(node.characterClass);
+
+                    // Add the instruction.
+                    add(CHARACTER_CLASS, characterClasses.size() - 1, 0);
+                    break;
+
+                case Node.ANY_CHARACTER:
+                    add(ANY_CHARACTER, 0, 0);
+                    break;
+
+                case Node.BEGINNING_OF_INPUT:
+                    add(BEGINNING_OF_INPUT, 0, 0);
+                    break;
+
+                case Node.END_OF_INPUT:
+                    add(END_OF_INPUT, 0, 0);
+                    break;
+
+                case Node.CONCATENATION:
+                    // Compile the items in order.
+                    for (Node child : node.children) {
+                        compile(child);
+                    }
+                    break;
+
+                case Node.ALTERNATION:
+                    compileAlternation(node.children);
+                    break;
+
+                case Node.REPETITION:
+                    compileRepetition(node.children.get(0), node.minimum, node.maximum);
+                    break;
+            }
+        }
+
+        private void compileAlternation(List<Node> alternatives) throws UnsupportedRegularExpressionException {
+            // Track the jumps to the end of the alternation.
+            List<Integer> endJumps = new ArrayList<>();
+
+            // Each alternative except the last one is preceded by a split to it and to the next alternative.
+            for (int alternativeIndex = 0; alternativeIndex < alternatives.size() - 1; alternativeIndex++) {
+                // Add the split.
+                int split = add(SPLIT, size + 1, 0);
+
+                // Compile the alternative and jump to the end.
+                compile(alternatives.get(alternativeIndex));
+                endJumps.add(add(JUMP, 0, 0));
+
+                // Point the split at the next alternative.
+                secondArguments[split] = size;
+            }
+
+            // Compile the last alternative.
+            compile(alternatives.get(alternatives.size() - 1));
+
+            // Point the jumps at the end.
+            for (int endJump : endJumps) {
+                firstArguments[endJump] = size;
+            }
+        }
+
+        private void compileRepetition(Node child, int minimum, int maximum) throws UnsupportedRegularExpressionException {
+            // Compile the required repetitions.
+            for (int repetition = 0; repetition < minimum; repetition++) {
+                compile(child);
+            }
+
+            if (maximum == -1) {  // Loop over the child any number of times.
+                // Add the split into the loop and past it.
+                int split = add(SPLIT, size + 1, 0);
+
+                // Compile the child and jump back to the split.
+                compile(child);
+                add(JUMP, split, 0);
+
+                // Point the split past the loop.
+                secondArguments[split] = size;
+            } else {  // Compile the optional repetitions, each of which can skip to the end.
+                // Track the splits.
+                List<Integer> splits = new ArrayList<>();
+
+                // Compile each optional repetition.
+                for (int repetition = minimum; repetition < maximum; repetition++) {
+                    splits.add(add(SPLIT, size + 1, 0));
+                    compile(child);
+                }
+
+                // Point the splits at the end.
+                for (int split : splits) {
+                    secondArguments[split] = size;
+                }
+            }
+        }
+    }
+
+    // A set of code points.
+    private static class CharacterClass {
+        // The ASCII code points are looked up in a bit mask.
+        final long lowAsciiBits;
+        final long highAsciiBits;
+
+        // The other code points are found in the sorted ranges, which hold the first and last code point of each range.
+        final int[] ranges;
+
+        CharacterClass(int[] ranges) {
+            // Store the ranges.
+            this.ranges = ranges;
+
+            // Set the ASCII bits.
+            long lowBits = 0;
+            long highBits = 0;
+            for (int rangeIndex = 0; rangeIndex < ranges.length; rangeIndex += 2) {
+                for (int codePoint = ranges[rangeIndex]; (codePoint <= ranges[rangeIndex + 1]) && (codePoint < 128); codePoint++) {
+                    if (codePoint < 64) {
+                        lowBits |= 1L << codePoint;
+                    } else {
+                        highBits |= 1L << (codePoint - 64);
+                    }
+                }
+            }
+
+            // Store the ASCII bits.
+            lowAsciiBits = lowBits;
+            highAsciiBits = highBits;
+        }
+
+        boolean contains(int codePoint) {
+            // Check the ASCII bits.
+            if (codePoint < 64) {
+                return (lowAsciiBits & (1L << codePoint)) != 0;
+            } else if (codePoint < 128) {
+                return (highAsciiBits & (1L << (codePoint - 64))) != 0;
+            }
+
+            // Search the ranges for the last one that starts at or before the code point.
+            int low = 0;
+            int high = (ranges.length / 2) - 1;
+            while (low <= high) {
+                // Get the middle range.
+                int middle = (low + high) >>> 1;
+
+                if (ranges[middle * 2] > codePoint) {  // The range starts after the code point.
+                    high = middle - 1;
+                } else if (ranges[(middle * 2) + 1] < codePoint) {  // The range ends before the code point.
+                    low = middle + 1;
+                } else {  // The range contains the code point.
+                    return true;
+                }
+            }
+
+            // No range contains the code point.
+            return false;
+        }
+    }
+
+    // A set of instruction indexes that can be cleared in constant time.  The states are kept in the order they were added, and each index points to its position in the states.
+    private static class StateSet {
+        final int[] states;
+        final int[] positions;
+        int size;
+
+        StateSet(int numberOfInstructions) {
+            states = new int[numberOfInstructions];
+            positions = new int[numberOfInstructions];
+        }
+
+        boolean contains(int instructionIndex) {
+            // The position is only valid if the state stored there is the instruction.
+            int position = positions[instructionIndex];
+            return (position < size) && (states[position] == instructionIndex);
+        }
+
+        void add(int instructionIndex) {
+            // Add the instruction and record its position.
+            positions[instructionIndex] = size;
+            states[size++] = instructionIndex;
+        }
+
+        void clear() {
+            // The old states are ignored once the size is reset.
+            size = 0;
+        }
+    }
+
+    // The scratch space holds the state sets and the stack used while following the instructions.
+    private static class Scratch {
+        final StateSet firstStates;
+        final StateSet secondStates;
+        final int[] stack;
+
+        Scratch(int numberOfInstructions) {
+            firstStates = new StateSet(numberOfInstructions);
+            secondStates = new StateSet(numberOfInstructions);
+            stack = new int[(numberOfInstructions * 2) + 1];
+        }
+    }
+
+    // Thrown when the regular expression uses a construct that isn't supported.
+    private static class UnsupportedRegularExpressionException extends Exception {
+        // The exception is never serialized, but it is serializable because it is an exception.
+        private final static long serialVersionUID = 1L;
+    }
+}
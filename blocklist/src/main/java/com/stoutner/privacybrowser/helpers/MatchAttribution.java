@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.stoutner.privacybrowser.helpers;
+
+// The match attribution identifies the entry that decided a request without keeping the combined blocklist that checked it, which is replaced each time the blocklists are merged.
+// It holds the name of the blocklist, the entry, and the offset of the original entry in the string arena, which is shared by every combined blocklist.
+public class MatchAttribution {
+    // The name of the blocklist that matched.
+    private final String blocklistName;
+
+    // The entry.  Its last item, where the original entry was, is null.
+    private final String[] entry;
+
+    // The string arena and the offset of the original entry.
+    private final StringArena originalEntriesArena;
+    private final int originalEntryOffset;
+
+    MatchAttribution(String blocklistName, String[] entry, StringArena originalEntriesArena, int originalEntryOffset) {
+        // Store the attribution.
+        this.blocklistName = blocklistName;
+        this.entry = entry;
+        this.originalEntriesArena = originalEntriesArena;
+        this.originalEntryOffset = originalEntryOffset;
+    }
+
+    String getBlocklistName() {
+        // Return the name of the blocklist.
+        return blocklistName;
+    }
+
+    String[] getEntry() {
+        // Return the entry.
+        return entry;
+    }
+
+    String getOriginalEntry() {
+        // Return the original blocklist entry from the arena.
+        return originalEntriesArena.get(originalEntryOffset);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// The n-gram filter is a Bloom filter that holds the rarest eight character literal substring of each entry in a sublist whose entries match when the URL contains all of their fragments.
+// An entry can only match if its substring is in the URL, so a URL without any substring in the filter only needs to be checked against the few entries that don't have one.
+// The filter is blocked, which means all the bits of a substring are in the same long, so each substring of the URL costs one memory read.
+public class NgramFilter {
+    // The number of characters in each substring.  Shorter substrings are found in too many URLs and longer substrings leave too many entries without one.
+    public final static int KEY_LENGTH = 8;
+
+    // The number of bits the filter sets for each substring, and the number of bits in the filter for each substring it holds.
+    private final static int BITS_PER_KEY = 6;
+    private final static int FILTER_BITS_PER_KEY = 32;
+
+    // The base of the rolling hash, and the base raised to the key length, which removes the character leaving the window.
+    private final static long HASH_BASE = 0x100000001B3L;
+    private final static long HASH_BASE_POWER = getHashBasePower();
+
+    // The filter words, whose number is a power of two.
+    private final long[] filterWords;
+
+    // The number of entries with and without a substring in the filter.
+    private final int numberOfKeys;
+    private final int numberOfUnkeyedEntries;
+
+    // The number of URLs checked against the filter, the number that didn't need the full sublist, and the number that needed it but didn't match.
+    // These are updated by every request, so they are adders, which don't make the threads wait for each other.
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder skips = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    // Only the included entries are held by the filter.  The substrings that include an anchor are not used, because they don't appear in the URL as they are written.
+    public NgramFilter(List<String[]> sublist, boolean[] includedEntries) {
+        // Count the substrings of the included entries.
+        int numberOfSubstrings = 0;
+        for (int entryIndex = 0; entryIndex < sublist.size(); entryIndex++) {
+            // Get the entry.
+            String[] entry = sublist.get(entryIndex);
+
+            // The last item in each entry is the original blocklist entry, which is not matched against the URL.
+            for (int fragmentIndex = 0; (fragmentIndex < entry.length - 1) && includedEntries[entryIndex]; fragmentIndex++) {
+                numberOfSubstrings += Math.max(entry[fragmentIndex].length() - KEY_LENGTH + 1, 0);
+            }
+        }
+
+        // Size the count table to a power of two at least as large as the number of substrings, so that few substrings share a count.
+        int countMask = Integer.highestOneBit(Math.max(numberOfSubstrings, 8) * 2 - 1) - 1;
+
+        // Count how often each substring appears across the included entries.
+        int[] substringCounts = new int[countMask + 1];
+        for (int entryIndex = 0; entryIndex < sublist.size(); entryIndex++) {
+            // Get the entry.
+            String[] entry = sublist.get(entryIndex);
+
+            for (int fragmentIndex = 0; (fragmentIndex < entry.length - 1) && includedEntries[entryIndex]; fragmentIndex++) {
+                // Get the fragment.
+                String fragment = entry[fragmentIndex];
+
+                // Count each literal substring in the fragment.
+                for (int position = 0; position <= fragment.length() - KEY_LENGTH; position++) {
+                    if (FragmentMatcher.isLiteral(fragment, position, position + KEY_LENGTH)) {
+                        substringCounts[(int) (mixHash(hashSubstring(fragment, position)) >>> 32) & countMask]++;
+                    }
+                }
+            }
+        }
+
+        // Select the rarest substring of each included entry.
+        long[] keys = new long[sublist.size()];
+        int keyPosition = 0;
+        int numberOfIncludedEntries = 0;
+        for (int entryIndex = 0; entryIndex < sublist.size(); entryIndex++) {
+            // Skip the entries that aren't included.
+            if (!includedEntries[entryIndex]) {
+                continue;
+            }
+
+            // Get the entry and count it.
+            String[] entry = sublist.get(entryIndex);
+            numberOfIncludedEntries++;
+
+            // Track the rarest substring.
+            int rarestSubstringCount = Integer.MAX_VALUE;
+            long rarestSubstringHash = 0;
+
+            // Check each substring in each fragment.
+            for (int fragmentIndex = 0; fragmentIndex < entry.length - 1; fragmentIndex++) {
+                // Get the fragment.
+                String fragment = entry[fragmentIndex];
+
+                for (int position = 0; position <= fragment.length() - KEY_LENGTH; position++) {
+                    // Skip the substrings that include an anchor.
+                    if (!FragmentMatcher.isLiteral(fragment, position, position + KEY_LENGTH)) {
+                        continue;
+                    }
+
+                    // Hash the substring.
+                    long substringHash = mixHash(hashSubstring(fragment, position));
+
+                    // Keep the substring if it is the rarest so far.
+                    int substringCount = substringCounts[(int) (substringHash >>> 32) & countMask];
+                    if (substringCount < rarestSubstringCount) {
+                        rarestSubstringCount = substringCount;
+                        rarestSubstringHash = substringHash;
+                    }
+                }
+            }
+
+            // Store the key if the entry has one.
+            if (rarestSubstringCount != Integer.MAX_VALUE) {
+                keys[keyPosition++] = rarestSubstringHash;
+            }
+        }
+
+        // Store the number of entries with and without a key.
+        numberOfKeys = keyPosition;
+        numberOfUnkeyedEntries = numberOfIncludedEntries - keyPosition;
+
+        // Size the filter to a power of two number of words.
+        filterWords = new long[Integer.highestOneBit(Math.max((numberOfKeys * FILTER_BITS_PER_KEY) / 64, 1) * 2 - 1)];
+
+        // Add each key.
+        for (int keyIndex = 0; keyIndex < numberOfKeys; keyIndex++) {
+            filterWords[getWordIndex(keys[keyIndex])] |= getWordBits(keys[keyIndex]);
+        }
+    }
+
+    // Check if an entry has a literal substring long enough to be held by the filter.  The entries without one must always be checked.
+    public static boolean hasKey(String[] entry) {
+        // Check each fragment.
+        for (int fragmentIndex = 0; fragmentIndex < entry.length - 1; fragmentIndex++) {
+            // Get the fragment.
+            String fragment = entry[fragmentIndex];
+
+            // Check each substring of the fragment.
+            for (int position = 0; position <= fragment.length() - KEY_LENGTH; position++) {
+                if (FragmentMatcher.isLiteral(fragment, position, position + KEY_LENGTH)) {
+                    return true;
+                }
+            }
+        }
+
+        // None of the fragments have a literal substring that is long enough.
+        return false;
+    }
+
+    // Hash every substring of the URL into the hashes array, which is grown as needed.  The first item stores the number of substrings, which are followed by the hash and the word bits of each one.
+    // Every filter uses the same word bits, so they are only calculated once for each URL.
+    public static long[] hashUrl(String url, long[] hashes) {
+        // Get the number of substrings in the URL.
+        int numberOfSubstrings = Math.max(url.length() - KEY_LENGTH + 1, 0);
+
+        // Grow the hashes array if needed.
+        if (hashes.length < (numberOfSubstrings * 2) + 1) {
+            hashes = new long[(numberOfSubstrings * 2) + 1];
+        }
+
+        // Store the number of substrings.
+        hashes[0] = numberOfSubstrings;
+
+        // Hash each substring, rolling the hash of the previous one forward by one character.
+        long hash = 0;
+        for (int position = 0; position < numberOfSubstrings; position++) {
+            if (position == 0) {  // Hash the first substring.
+                hash = hashSubstring(url, 0);
+            } else {  // Remove the character leaving the substring and add the one entering it.
+                hash = (hash * HASH_BASE) - (url.charAt(position - 1) * HASH_BASE_POWER) + url.charAt(position + KEY_LENGTH - 1);
+            }
+
+            // Store the mixed hash and its word bits.
+            long mixedHash = mixHash(hash);
+            hashes[(position * 2) + 1] = mixedHash;
+            hashes[(position * 2) + 2] = getWordBits(mixedHash);
+        }
+
+        // Return the hashes array, which might have been reallocated.
+        return hashes;
+    }
+
+    // Check if any substring hashed by `hashUrl()` might be in the filter.  False means that only the entries without a key can match the URL.
+    public boolean mightContainKey(long[] urlHashes) {
+        // Count the check.
+        checks.increment();
+
+        // Check each substring.
+        int hashesEnd = ((int) urlHashes[0] * 2) + 1;
+        for (int hashPosition = 1; hashPosition < hashesEnd; hashPosition += 2) {
+            // Get the bits of the substring.
+            long wordBits = urlHashes[hashPosition + 1];
+
+            // The substring might be in the filter if all its bits are set.
+            if ((filterWords[getWordIndex(urlHashes[hashPosition])] & wordBits) == wordBits) {
+                return true;
+            }
+        }
+
+        // Count the skip.
+        skips.increment();
+
+        // None of the substrings are in the filter.
+        return false;
+    }
+
+    // Record that the filter passed a URL but none of the entries matched it.  This also counts URLs that contained a key but not the rest of the entry, so it is an upper bound on the false positives.
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public int getNumberOfKeys() {
+        // Return the number of entries held by the filter.
+        return numberOfKeys;
+    }
+
+    public int getNumberOfUnkeyedEntries() {
+        // Return the number of entries that are always checked.
+        return numberOfUnkeyedEntries;
+    }
+
+    public long getChecks() {
+        // Return the number of URLs checked against the filter.
+        return checks.sum();
+    }
+
+    public long getSkips() {
+        // Return the number of URLs that only needed the entries without a key.
+        return skips.sum();
+    }
+
+    public long getFalsePositives() {
+        // Return the number of URLs that passed the filter without matching.
+        return falsePositives.sum();
+    }
+
+    private int getWordIndex(long hash) {
+        // The word is selected by the upper bits, which aren't used for the bits in the word.
+        return (int) (hash >>> 40) & (filterWords.length - 1);
+    }
+
+    private static long getWordBits(long hash) {
+        // Each group of six lower bits selects one bit in the word.
+        long wordBits = 0;
+        for (int bit = 0; bit < BITS_PER_KEY; bit++) {
+            wordBits |= 1L << (hash >>> (bit * 6));
+        }
+
+        // Return the word bits.
+        return wordBits;
+    }
+
+    private static long hashSubstring(String string, int position) {
+        // Combine the characters of the substring in the same way the rolling hash does.
+        long hash = 0;
+        for (int index = position; index < position + KEY_LENGTH; index++) {
+            hash = (hash * HASH_BASE) + string.charAt(index);
+        }
+
+        // Return the hash.
+        return hash;
+    }
+
+    private static long mixHash(long hash) {
+        // Mix the bits, because the rolling hash leaves the upper bits depending mostly on the first characters.
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+
+        // Return the mixed hash.
+        return hash ^ (hash >>> 33);
+    }
+
+    private static long getHashBasePower() {
+        // Raise the hash base to the key length.
+        long hashBasePower = 1;
+        for (int index = 0; index < KEY_LENGTH; index++) {
+            hashBasePower *= HASH_BASE;
+        }
+
+        // Return the power.
+        return hashBasePower;
+    }
+}
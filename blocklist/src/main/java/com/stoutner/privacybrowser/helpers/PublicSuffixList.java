@@ -0,0 +1,350 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// The public suffix list knows the suffixes under which anyone can register a domain, like `com`, `co.uk`, or `github.io`, so that the registrable domain (eTLD+1) of a host can be found.
+// The rules are stored as a trie of labels, read from the right.  The children of every node are stored in one open addressing table keyed by the parent and the label,
+// so that a host can be resolved in place, one label at a time, without creating any strings.  The labels are stored in their ASCII (punycode) form, which is how hosts appear in URLs.
+public class PublicSuffixList {
+    // The node flags.
+    private final static byte RULE = 1;  // The labels from the root to the node are a public suffix.
+    private final static byte WILDCARD = 1 << 1;  // Any label below the node is a public suffix.
+    private final static byte EXCEPTION = 1 << 2;  // The labels from the root to the node are not a public suffix, even though a wildcard covers them.
+
+    // The root node.
+    private final static int ROOT = 0;
+
+    // The bytes of the node labels, which are lower case ASCII.
+    private final byte[] labelBytes;
+
+    // The parent, the label start, the label length, and the flags of each node.
+    private final int[] nodeParents;
+    private final int[] nodeLabelStarts;
+    private final int[] nodeLabelLengths;
+    private final byte[] nodeFlags;
+
+    // The child table, which holds the node index plus one, or zero for an empty slot.  Its size is a power of two.
+    private final int[] childTable;
+
+    // The number of rules.
+    private final int numberOfRules;
+
+    private PublicSuffixList(byte[] labelBytes, int[] nodeParents, int[] nodeLabelStarts, int[] nodeLabelLengths, byte[] nodeFlags, int numberOfRules) {
+        // Store the nodes.
+        this.labelBytes = labelBytes;
+        this.nodeParents = nodeParents;
+        this.nodeLabelStarts = nodeLabelStarts;
+        this.nodeLabelLengths = nodeLabelLengths;
+        this.nodeFlags = nodeFlags;
+        this.numberOfRules = numberOfRules;
+
+        // Size the child table to be at most half full.
+        int tableSize = Integer.highestOneBit(Math.max(nodeParents.length, 2) * 2 - 1) * 2;
+        childTable = new int[tableSize];
+
+        // Add every node except the root to the child table.
+        for (int node = 1; node < nodeParents.length; node++) {
+            // Find an empty slot.
+            int slot = getSlot(nodeParents[node], getLabelHash(node));
+            while (childTable[slot] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+
+            // Store the node.
+            childTable[slot] = node + 1;
+        }
+    }
+
+    // Parse the public suffix list from the stream, which is read to the end but not closed.  The stream is in the format of `https://publicsuffix.org/list/public_suffix_list.dat`.
+    public static PublicSuffixList parse(InputStream publicSuffixListInputStream) throws IOException {
+        // Initialize the nodes with the root.
+        StringBuilder labelsStringBuilder = new StringBuilder();
+        int[] nodeParents = new int[16 * 1024];
+        int[] nodeLabelStarts = new int[nodeParents.length];
+        int[] nodeLabelLengths = new int[nodeParents.length];
+        byte[] nodeFlags = new byte[nodeParents.length];
+        int numberOfNodes = 1;
+        nodeParents[ROOT] = -1;
+
+        // Track the node of each parent and label while the trie is built.
+        HashMap<String, Integer> nodeIndexes = new HashMap<>();
+
+        // Count the rules.
+        int numberOfRules = 0;
+
+        // Read the rules.
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(publicSuffixListInputStream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            // Each rule is the first word of the line.
+            line = line.trim();
+            int whitespaceIndex = line.indexOf(' ');
+            if (whitespaceIndex != -1) {
+                line = line.substring(0, whitespaceIndex);
+            }
+
+            // Skip comments and empty lines.
+            if (line.isEmpty() || line.startsWith("//")) {
+                continue;
+            }
+
+            // Note exception rules, which begin with `!`.
+            byte ruleFlag = RULE;
+            if (line.startsWith("!")) {
+                ruleFlag = EXCEPTION;
+                line = line.substring(1);
+            }
+
+            // Note wildcard rules, which begin with `*.`.  No rule in the list has a wildcard anywhere else.
+            if (line.startsWith("*.")) {
+                ruleFlag = WILDCARD;
+                line = line.substring(2);
+            }
+
+            // Convert the rule to ASCII, which is how hosts appear in URLs.  Rules that can't be converted can never match a URL.
+            try {
+                line = IDN.toASCII(line).toLowerCase();
+            } catch (IllegalArgumentException exception) {
+                continue;
+            }
+
+            // Walk the labels from the right, adding the missing nodes.
+            int node = ROOT;
+            int labelEnd = line.length();
+            while (labelEnd > 0) {
+                // Get the label.
+                int labelStart = line.lastIndexOf('.', labelEnd - 1) + 1;
+                String label = line.substring(labelStart, labelEnd);
+
+                // Get the child node.
+                String nodeKey = node + "/" + label;
+                Integer childNode = nodeIndexes.get(nodeKey);
+
+                // Add the child node if it doesn't exist.
+                if (childNode == null) {
+                    // Grow the node arrays if they are full.
+                    if (numberOfNodes == nodeParents.length) {
+                        nodeParents = Arrays.copyOf(nodeParents, numberOfNodes * 2);
+                        nodeLabelStarts = Arrays.copyOf(nodeLabelStarts, numberOfNodes * 2);
+                        nodeLabelLengths = Arrays.copyOf(nodeLabelLengths, numberOfNodes * 2);
+                        nodeFlags = Arrays.copyOf(nodeFlags, numberOfNodes * 2);
+                    }
+
+                    // Add the node.
+                    childNode = numberOfNodes++;
+                    nodeParents[childNode] = node;
+                    nodeLabelStarts[childNode] = labelsStringBuilder.length();
+                    nodeLabelLengths[childNode] = label.length();
+                    labelsStringBuilder.append(label);
+                    nodeIndexes.put(nodeKey, childNode);
+                }
+
+                // Move to the child node.
+                node = childNode;
+
+                // Move to the next label.
+                labelEnd = labelStart - 1;
+            }
+
+            // Mark the node with the rule.
+            nodeFlags[node] |= ruleFlag;
+            numberOfRules++;
+        }
+
+        // Create the public suffix list.  The labels are ASCII, so each character is one byte.
+        return new PublicSuffixList(labelsStringBuilder.toString().getBytes(StandardCharsets.US_ASCII), Arrays.copyOf(nodeParents, numberOfNodes), Arrays.copyOf(nodeLabelStarts, numberOfNodes),
+                Arrays.copyOf(nodeLabelLengths, numberOfNodes), Arrays.copyOf(nodeFlags, numberOfNodes), numberOfRules);
+    }
+
+    // Parse the public suffix list file.
+    public static PublicSuffixList parse(Path publicSuffixListPath) throws IOException {
+        // Open and parse the file.
+        try (InputStream publicSuffixListInputStream = Files.newInputStream(publicSuffixListPath)) {
+            return parse(publicSuffixListInputStream);
+        }
+    }
+
+    public int getNumberOfRules() {
+        // Return the number of rules.
+        return numberOfRules;
+    }
+
+    // Get the registrable domain of the host, like `example.co.uk` for `www.example.co.uk`.  A host that is an IP address or a public suffix itself is returned whole.
+    public String getRegistrableDomain(String host) {
+        // Cut the registrable domain out of the host.
+        return host.substring(getRegistrableDomainStart(host, 0, host.length()));
+    }
+
+    // Get the start of the registrable domain of the host that is between the start and the end of the text, without creating any strings.
+    // The registrable domain ends at the end of the host.  The start of the host is returned for a host that is an IP address or a public suffix itself.
+    public int getRegistrableDomainStart(String text, int hostStart, int hostEnd) {
+        // Empty hosts and fully qualified hosts ending in `.` are returned whole.
+        if ((hostStart >= hostEnd) || (text.charAt(hostEnd - 1) == '.')) {
+            return hostStart;
+        }
+
+        // Get the first character of the last label.
+        char lastLabelCharacter = text.charAt(Math.max(text.lastIndexOf('.', hostEnd - 1) + 1, hostStart));
+
+        // IP addresses don't have public suffixes.  IPv6 addresses are in brackets, and no top level domain begins with a digit.
+        if ((text.charAt(hostStart) == '[') || ((lastLabelCharacter >= '0') && (lastLabelCharacter <= '9'))) {
+            return hostStart;
+        }
+
+        // Every host has a public suffix of at least one label, because the implicit default rule is `*`.
+        int suffixLabels = 1;
+
+        // Walk the labels from the right, following the matching nodes.
+        int node = ROOT;
+        int matchedLabels = 0;
+        int labelEnd = hostEnd;
+        while (true) {
+            // Get the start of the label.
+            int labelStart = Math.max(text.lastIndexOf('.', labelEnd - 1) + 1, hostStart);
+
+            // Find the child node of the label.
+            int childNode = findChild(node, text, labelStart, labelEnd);
+
+            // An exception rule makes its parent the public suffix, overriding every other rule.
+            if ((childNode != -1) && ((nodeFlags[childNode] & EXCEPTION) != 0)) {
+                suffixLabels = matchedLabels;
+                break;
+            }
+
+            // A wildcard makes the label part of the public suffix.
+            if ((nodeFlags[node] & WILDCARD) != 0) {
+                suffixLabels = Math.max(suffixLabels, matchedLabels + 1);
+            }
+
+            // Stop if the label doesn't match.
+            if (childNode == -1) {
+                break;
+            }
+
+            // Move to the child node.
+            node = childNode;
+            matchedLabels++;
+
+            // A rule makes the labels so far a public suffix.
+            if ((nodeFlags[node] & RULE) != 0) {
+                suffixLabels = Math.max(suffixLabels, matchedLabels);
+            }
+
+            // Stop at the start of the host.
+            if (labelStart == hostStart) {
+                break;
+            }
+
+            // Move to the next label.
+            labelEnd = labelStart - 1;
+        }
+
+        // Find the start of the registrable domain, which is the public suffix and one more label.
+        int registrableDomainStart = hostEnd;
+        for (int label = 0; label <= suffixLabels; label++) {
+            // The host is a public suffix itself if it runs out of labels.
+            if (registrableDomainStart <= hostStart) {
+                return hostStart;
+            }
+
+            // Move to the start of the label.
+            registrableDomainStart = Math.max(text.lastIndexOf('.', registrableDomainStart - 2) + 1, hostStart);
+        }
+
+        // Return the start of the registrable domain.
+        return registrableDomainStart;
+    }
+
+    private int findChild(int parentNode, String text, int labelStart, int labelEnd) {
+        // Get the label length.
+        int labelLength = labelEnd - labelStart;
+
+        // Hash the label in lower case.
+        int labelHash = 0;
+        for (int index = labelStart; index < labelEnd; index++) {
+            labelHash = (labelHash * 31) + toLowerCase(text.charAt(index));
+        }
+
+        // Probe the child table.
+        int slot = getSlot(parentNode, labelHash);
+        int childTableEntry;
+        while ((childTableEntry = childTable[slot]) != 0) {
+            // Get the node.
+            int node = childTableEntry - 1;
+
+            // Compare the parent and the label.
+            if ((nodeParents[node] == parentNode) && (nodeLabelLengths[node] == labelLength)) {
+                // Compare the characters.
+                int nodeLabelStart = nodeLabelStarts[node];
+                int index = 0;
+                while ((index < labelLength) && (labelBytes[nodeLabelStart + index] == toLowerCase(text.charAt(labelStart + index)))) {
+                    index++;
+                }
+
+                // Return the node if every character matched.
+                if (index == labelLength) {
+                    return node;
+                }
+            }
+
+            // Move to the next slot.
+            slot = (slot + 1) & (childTable.length - 1);
+        }
+
+        // The label isn't a child of the parent.
+        return -1;
+    }
+
+    private int getLabelHash(int node) {
+        // Hash the stored label, which is already lower case.
+        int labelHash = 0;
+        for (int index = nodeLabelStarts[node]; index < nodeLabelStarts[node] + nodeLabelLengths[node]; index++) {
+            labelHash = (labelHash * 31) + labelBytes[index];
+        }
+
+        // Return the hash.
+        return labelHash;
+    }
+
+    private int getSlot(int parentNode, int labelHash) {
+        // Mix the parent into the label hash, and spread the bits so that the low bits used for the slot depend on all of them.
+        int hash = (labelHash * 0x9E3779B9) ^ (parentNode * 0x85EBCA6B);
+        hash ^= hash >>> 16;
+
+        // Return the slot.
+        return hash & (childTable.length - 1);
+    }
+
+    private static int toLowerCase(char character) {
+        // Only ASCII letters are lowered, because the stored labels are ASCII.
+        return ((character >= 'A') && (character <= 'Z')) ? character + ('a' - 'A') : character;
+    }
+}
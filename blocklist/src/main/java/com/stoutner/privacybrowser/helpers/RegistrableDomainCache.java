@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+// The registrable domain cache remembers the registrable domains of recent hosts, because a page makes most of its requests to a handful of hosts.
+// It is a direct mapped table of a fixed size, so it never grows and never needs a lock.  Each slot holds an immutable entry, which threads may replace at any time.
+public class RegistrableDomainCache {
+    // The public suffix list used to find the registrable domains that aren't cached.
+    private final PublicSuffixList publicSuffixList;
+
+    // The entries, whose number is a power of two.
+    private final CacheEntry[] cacheEntries;
+
+    public RegistrableDomainCache(PublicSuffixList publicSuffixList, int minimumSize) {
+        // Store the public suffix list.
+        this.publicSuffixList = publicSuffixList;
+
+        // Round the size up to a power of two, so that a mask can select the slot.
+        cacheEntries = new CacheEntry[Integer.highestOneBit(Math.max(minimumSize, 2) * 2 - 1)];
+    }
+
+    // Get the start of the registrable domain of the host that is between the start and the end of the text, as described in `PublicSuffixList.getRegistrableDomainStart()`.
+    // Nothing is created unless the host isn't cached.
+    public int getRegistrableDomainStart(String text, int hostStart, int hostEnd) {
+        // Get the host length.
+        int hostLength = hostEnd - hostStart;
+
+        // Hash the host.
+        int hostHash = 0;
+        for (int index = hostStart; index < hostEnd; index++) {
+            hostHash = (hostHash * 31) + text.charAt(index);
+        }
+
+        // Get the slot, spreading the bits so that the low bits used for the slot depend on all of them.
+        int slot = ((hostHash * 0x9E3779B9) >>> 16) & (cacheEntries.length - 1);
+
+        // Read the entry once, because another thread might replace it.
+        CacheEntry cacheEntry = cacheEntries[slot];
+
+        // Return the cached registrable domain if the entry is for the host.
+        if ((cacheEntry != null) && (cacheEntry.hostHash == hostHash) && (cacheEntry.host.length() == hostLength) && cacheEntry.host.regionMatches(0, text, hostStart, hostLength)) {
+            return hostStart + cacheEntry.registrableDomainOffset;
+        }
+
+        // Find the registrable domain.
+        int registrableDomainStart = publicSuffixList.getRegistrableDomainStart(text, hostStart, hostEnd);
+
+        // Cache the registrable domain, replacing whatever host was in the slot.
+        cacheEntries[slot] = new CacheEntry(text.substring(hostStart, hostEnd), hostHash, registrableDomainStart - hostStart);
+
+        // Return the start of the registrable domain.
+        return registrableDomainStart;
+    }
+
+    // A cache entry holds a host and the offset of its registrable domain.  Its fields are final, so a thread that sees the entry sees all of them.
+    private static class CacheEntry {
+        final String host;
+        final int hostHash;
+        final int registrableDomainOffset;
+
+        CacheEntry(String host, int hostHash, int registrableDomainOffset) {
+            // Store the values.
+            this.host = host;
+            this.hostHash = hostHash;
+            this.registrableDomainOffset = registrableDomainOffset;
+        }
+    }
+}
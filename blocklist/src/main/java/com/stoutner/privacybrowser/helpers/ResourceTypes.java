@@ -0,0 +1,292 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+// The resource types let blocklist entries with type options like `$script`, `$image`, or `$~stylesheet` only apply to the requests of those types.
+// Each entry has a mask with a bit for each type it applies to.  Entries without type options apply to every type.
+// WebView doesn't report the type of a request, so it is guessed from the `Accept` header and the file extension of the URL.  Requests whose type can't be guessed are checked against every entry, like before the types were used.
+public class ResourceTypes {
+    // The resource types of requests.
+    public final static int SCRIPT = 0;
+    public final static int IMAGE = 1;
+    public final static int STYLESHEET = 2;
+    public final static int OBJECT = 3;
+    public final static int XMLHTTPREQUEST = 4;
+    public final static int SUBDOCUMENT = 5;
+    public final static int MEDIA = 6;
+    public final static int FONT = 7;
+    public final static int PING = 8;
+    public final static int OTHER = 9;
+
+    // The number of resource types.
+    public final static int NUMBER_OF_RESOURCE_TYPES = 10;
+
+    // The type of the requests whose type can't be guessed, which are checked against the entries of every type.
+    public final static int UNKNOWN = NUMBER_OF_RESOURCE_TYPES;
+
+    // The mask of the entries without type options, which apply to every type.
+    public final static int ALL_RESOURCE_TYPES_MASK = (1 << NUMBER_OF_RESOURCE_TYPES) - 1;
+
+    // The option bit of the options that apply to something other than a resource request, like `$popup` or `$generichide`.
+    private final static int NOT_A_REQUEST = -1;
+
+    // The option bit of the options that aren't types, like `$third-party` or `$domain=`.
+    private final static int NOT_A_TYPE = 0;
+
+    // Get the mask of the resource types a request must have for the entry to apply to it.  Zero means that the entry never applies to a resource request.
+    public static int getEntryResourceTypesMask(String originalEntry) {
+        // The filter options follow the last `$`.
+        int dollarIndex = originalEntry.lastIndexOf('$');
+
+        // Entries without filter options apply to every type.
+        if (dollarIndex == -1) {
+            return ALL_RESOURCE_TYPES_MASK;
+        }
+
+        // Get the resource types of the filter options.
+        return getOptionsResourceTypesMask(originalEntry, dollarIndex + 1);
+    }
+
+    // Get the mask of the resource types of the filter options that start at the options start.  The options are separated by commas, and the types are negated by `~`.
+    static int getOptionsResourceTypesMask(String line, int optionsStart) {
+        // A `$` that is followed by something other than options, like the end of a regular expression, doesn't start the filter options.
+        if (!isOptions(line, optionsStart)) {
+            return ALL_RESOURCE_TYPES_MASK;
+        }
+
+        // Track the included and the excluded types, and whether any option applies to something other than a request.
+        int includedTypesMask = 0;
+        int excludedTypesMask = 0;
+        boolean hasNonRequestOption = false;
+
+        // Process each option.
+        int optionStart = optionsStart;
+        while (optionStart <= line.length()) {
+            // Get the end of the option.
+            int optionEnd = line.indexOf(',', optionStart);
+            if (optionEnd == -1) {
+                optionEnd = line.length();
+            }
+
+            // Check if the option is negated.
+            boolean negated = (optionStart < optionEnd) && (line.charAt(optionStart) == '~');
+
+            // Get the name of the option, which ends at an `=`.
+            int nameStart = negated ? optionStart + 1 : optionStart;
+            int equalsIndex = line.indexOf('=', nameStart);
+            int nameEnd = ((equalsIndex == -1) || (equalsIndex > optionEnd)) ? optionEnd : equalsIndex;
+
+            // Get the option bit.
+            int optionBit = getOptionBit(line.substring(nameStart, nameEnd));
+
+            // Process the option bit.
+            if (optionBit == NOT_A_REQUEST) {  // The option applies to something other than a request.
+                // A negated option that isn't a request doesn't limit the types.
+                if (!negated) {
+                    hasNonRequestOption = true;
+                }
+            } else if (negated) {  // The type is excluded.
+                excludedTypesMask |= optionBit;
+            } else {  // The type is included.
+                includedTypesMask |= optionBit;
+            }
+
+            // Move to the next option.
+            optionStart = optionEnd + 1;
+        }
+
+        // Entries without included types apply to every type unless they only apply to something other than a request.
+        if (includedTypesMask == 0) {
+            includedTypesMask = hasNonRequestOption ? 0 : ALL_RESOURCE_TYPES_MASK;
+        }
+
+        // Return the included types that aren't excluded.
+        return includedTypesMask & ~excludedTypesMask;
+    }
+
+    // Check if the text that starts at the options start is filter options, which means that the name of the first option only contains lowercase letters, digits, `-`, `_`, `~`, and `,`.
+    private static boolean isOptions(String line, int optionsStart) {
+        // Empty text isn't filter options.
+        if (optionsStart == line.length()) {
+            return false;
+        }
+
+        // Check each character up to the first `=`.
+        for (int position = optionsStart; position < line.length(); position++) {
+            // Get the character.
+            char character = line.charAt(position);
+
+            // The values of the options can contain anything.
+            if (character == '=') {
+                return true;
+            }
+
+            // Any other character means that this isn't filter options.
+            if (!(((character >= 'a') && (character <= 'z')) || ((character >= '0') && (character <= '9')) || (character == '-') || (character == '_') || (character == '~') || (character == ','))) {
+                return false;
+            }
+        }
+
+        // The text is filter options.
+        return true;
+    }
+
+    // Get the bit of the option name, `NOT_A_REQUEST` if it applies to something other than a resource request, or `NOT_A_TYPE`.
+    private static int getOptionBit(String optionName) {
+        switch (optionName) {
+            case "script":
+                return 1 << SCRIPT;
+
+            case "image":
+                return 1 << IMAGE;
+
+            case "stylesheet":
+            case "css":
+                return 1 << STYLESHEET;
+
+            case "object":
+            case "object-subrequest":
+                return 1 << OBJECT;
+
+            case "xmlhttprequest":
+            case "xhr":
+                return 1 << XMLHTTPREQUEST;
+
+            case "subdocument":
+            case "frame":
+                return 1 << SUBDOCUMENT;
+
+            case "media":
+                return 1 << MEDIA;
+
+            case "font":
+                return 1 << FONT;
+
+            case "ping":
+                return 1 << PING;
+
+            case "other":
+                return 1 << OTHER;
+
+            case "document":
+            case "doc":
+            case "popup":
+            case "popunder":
+            case "elemhide":
+            case "ehide":
+            case "generichide":
+            case "ghide":
+            case "genericblock":
+            case "csp":
+            case "websocket":
+            case "webrtc":
+                // The main frame is never blocked, pop-ups and element hiding aren't resource requests, and WebView doesn't report WebSocket and WebRTC connections.
+                return NOT_A_REQUEST;
+
+            default:
+                // Options like `third-party` and `domain` are handled by the sublists.
+                return NOT_A_TYPE;
+        }
+    }
+
+    // Guess the resource type of a request from its `Accept` header, which can be null, and from the file extension of the URL.
+    public static int getResourceType(String resourceUrl, String acceptHeader) {
+        // WebView asks for images, style sheets, and frames with their own `Accept` headers.
+        if (acceptHeader != null) {
+            if (acceptHeader.startsWith("image/")) {
+                return IMAGE;
+            } else if (acceptHeader.startsWith("text/css")) {
+                return STYLESHEET;
+            } else if (acceptHeader.startsWith("text/html")) {
+                return SUBDOCUMENT;
+            }
+        }
+
+        // Get the end of the path, which is followed by the query or the fragment.
+        int pathEnd = resourceUrl.length();
+        int queryIndex = resourceUrl.indexOf('?');
+        if (queryIndex != -1) {
+            pathEnd = queryIndex;
+        }
+        int fragmentIndex = resourceUrl.indexOf('#');
+        if ((fragmentIndex != -1) && (fragmentIndex < pathEnd)) {
+            pathEnd = fragmentIndex;
+        }
+
+        // Get the start of the file extension, which must be in the last segment of the path.
+        int extensionDotIndex = resourceUrl.lastIndexOf('.', pathEnd - 1);
+        if ((extensionDotIndex == -1) || (resourceUrl.lastIndexOf('/', pathEnd - 1) > extensionDotIndex) || (resourceUrl.indexOf("://") + 3 > extensionDotIndex)) {
+            return UNKNOWN;
+        }
+
+        // Guess the type from the file extension.
+        switch (resourceUrl.substring(extensionDotIndex + 1, pathEnd).toLowerCase()) {
+            case "js":
+            case "mjs":
+                return SCRIPT;
+
+            case "png":
+            case "jpg":
+            case "jpeg":
+            case "gif":
+            case "webp":
+            case "svg":
+            case "ico":
+            case "bmp":
+            case "avif":
+                return IMAGE;
+
+            case "css":
+                return STYLESHEET;
+
+            case "woff":
+            case "woff2":
+            case "ttf":
+            case "otf":
+            case "eot":
+                return FONT;
+
+            case "mp4":
+            case "webm":
+            case "ogg":
+            case "ogv":
+            case "mp3":
+            case "m4a":
+            case "wav":
+            case "flac":
+            case "aac":
+            case "m3u8":
+            case "mpd":
+                return MEDIA;
+
+            case "swf":
+                return OBJECT;
+
+            default:
+                // The type can't be guessed from the file extension.
+                return UNKNOWN;
+        }
+    }
+
+    // Get the mask an entry must share with the request to apply to it.  Requests whose type is unknown are checked against every entry.
+    public static int getRequestResourceTypesMask(int resourceType) {
+        return (resourceType == UNKNOWN) ? ALL_RESOURCE_TYPES_MASK : (1 << resourceType);
+    }
+}
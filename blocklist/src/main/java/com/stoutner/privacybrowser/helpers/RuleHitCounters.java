@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.stoutner.privacybrowser.helpers;
+
+// The rule hit counters count how often each entry of each blocklist is the first match of that blocklist, and how often each sublist of each blocklist matches.
+// The entries are counted by their index in their own blocklist, which doesn't change when the blocklists are merged or reordered, so the counters are shared by each combined blocklist that is created from another and the hits are kept.
+// The hits only decide which entries are moved to the front when the merged part is reordered, so the counters are plain ints that cost four bytes per entry.
+// Requests are checked on several WebView threads at once, and an increment that is occasionally lost to another thread doesn't noticeably change the order.
+class RuleHitCounters {
+    // The entry counters, indexed by blocklist and sublist.  The blocklists that haven't been loaded and the sublists that aren't checked against requests don't have counters.
+    private final int[][][] entryHits;
+
+    // The hits of each sublist of each blocklist.
+    private final int[][] sublistHits;
+
+    RuleHitCounters() {
+        // Initialize the counter arrays.
+        entryHits = new int[CombinedBlocklist.NUMBER_OF_BLOCKLISTS][][];
+        sublistHits = new int[CombinedBlocklist.NUMBER_OF_BLOCKLISTS][];
+    }
+
+    private RuleHitCounters(int[][][] entryHits, int[][] sublistHits) {
+        // Store the counter arrays.
+        this.entryHits = entryHits;
+        this.sublistHits = sublistHits;
+    }
+
+    // Add the counters of a blocklist.  The counters of the other blocklists are shared with this rule hit counters, so their hits keep being counted in both.
+    RuleHitCounters createAdded(int blocklistIndex, Blocklist blocklist) {
+        // Copy the counter arrays of the blocklists.
+        int[][][] addedEntryHits = entryHits.clone();
+        int[][] addedSublistHits = sublistHits.clone();
+
+        // Create the entry counters of each sublist except the headers.
+        addedEntryHits[blocklistIndex] = new int[BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS][];
+        for (int sublist = 1; sublist < BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS; sublist++) {
+            addedEntryHits[blocklistIndex][sublist] = new int[blocklist.getSublist(sublist).size()];
+        }
+
+        // Create the sublist counters.
+        addedSublistHits[blocklistIndex] = new int[BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS];
+
+        // Create the rule hit counters.
+        return new RuleHitCounters(addedEntryHits, addedSublistHits);
+    }
+
+    // Record a hit of the entry, which is indexed as in its own blocklist.
+    void record(int blocklistIndex, int sublist, int entryIndex) {
+        // Count the hit.
+        entryHits[blocklistIndex][sublist][entryIndex]++;
+        sublistHits[blocklistIndex][sublist]++;
+    }
+
+    boolean hasBlocklist(int blocklistIndex) {
+        // Return true if the blocklist has counters.
+        return entryHits[blocklistIndex] != null;
+    }
+
+    int getNumberOfEntries(int blocklistIndex, int sublist) {
+        // Return the number of entries of the sublist of the blocklist.
+        return entryHits[blocklistIndex][sublist].length;
+    }
+
+    int getHits(int blocklistIndex, int sublist, int entryIndex) {
+        // Return the hits of the entry.
+        return entryHits[blocklistIndex][sublist][entryIndex];
+    }
+
+    long getSublistHits(int blocklistIndex, int sublist) {
+        // Return the hits of the sublist of the blocklist.
+        return sublistHits[blocklistIndex][sublist];
+    }
+
+    long getTotalHits() {
+        // Add the hits of each sublist of each blocklist.
+        long totalHits = 0;
+        for (int[] blocklistSublistHits : sublistHits) {
+            // Skip the blocklists that haven't been loaded.
+            if (blocklistSublistHits == null) {
+                continue;
+            }
+
+            // Add the hits of each sublist except the headers.
+            for (int sublist = 1; sublist < BlocklistHelper.NUMBER_OF_REQUEST_SUBLISTS; sublist++) {
+                totalHits += blocklistSublistHits[sublist];
+            }
+        }
+
+        // Return the total hits.
+        return totalHits;
+    }
+}
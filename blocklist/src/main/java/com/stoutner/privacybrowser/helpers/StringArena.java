@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// The string arena stores strings as UTF-8 bytes in one shared array, so that each string costs its bytes and an int offset instead of a separate object.
+// It holds the original blocklist entries, which are only needed when a request is displayed.  Each string is stored as its length in bytes, written as a variable length integer, followed by its bytes.
+public class StringArena {
+    // The bytes of the strings.
+    private byte[] bytes = new byte[64 * 1024];
+
+    // The number of bytes used.
+    private int size;
+
+    // The offsets of the strings that have been added, so that repeated strings are only stored once.  It is released by `finishAdding()` and rebuilt from the bytes if more strings are added.
+    private HashMap<String, Integer> stringOffsets = new HashMap<>();
+
+    // Add the string and return its offset.  Strings may be added from several loading threads at once.
+    public synchronized int add(String string) {
+        // Rebuild the offsets map if strings are added after `finishAdding()`, which happens when a blocklist is loaded later, so that they are deduplicated against the strings already stored.
+        if (stringOffsets == null) {
+            stringOffsets = createStringOffsets();
+        }
+
+        // Return the offset of a string that has already been added.
+        Integer existingOffset = stringOffsets.get(string);
+        if (existingOffset != null) {
+            return existingOffset;
+        }
+
+        // Encode the string.
+        byte[] stringBytes = string.getBytes(StandardCharsets.UTF_8);
+
+        // Grow the arena if needed.  The length takes at most five bytes.
+        if (size + 5 + stringBytes.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 5 + stringBytes.length));
+        }
+
+        // Store the offset.
+        int offset = size;
+        stringOffsets.put(string, offset);
+
+        // Write the length, seven bits at a time.
+        int length = stringBytes.length;
+        while (length >= 0x80) {
+            bytes[size++] = (byte) ((length & 0x7F) | 0x80);
+            length = length >>> 7;
+        }
+        bytes[size++] = (byte) length;
+
+        // Write the bytes.
+        System.arraycopy(stringBytes, 0, bytes, size, stringBytes.length);
+        size += stringBytes.length;
+
+        // Return the offset.
+        return offset;
+    }
+
+    private HashMap<String, Integer> createStringOffsets() {
+        // Initialize the offsets map.
+        HashMap<String, Integer> offsets = new HashMap<>();
+
+        // Read each stored string in order.
+        int offset = 0;
+        while (offset < size) {
+            // Read the length.
+            int stringOffset = offset;
+            int length = 0;
+            int shift = 0;
+            byte lengthByte;
+            do {
+                lengthByte = bytes[offset++];
+                length |= (lengthByte & 0x7F) << shift;
+                shift += 7;
+            } while ((lengthByte & 0x80) != 0);
+
+            // Store the offset of the string.
+            offsets.put(new String(bytes, offset, length, StandardCharsets.UTF_8), stringOffset);
+
+            // Skip the bytes of the string.
+            offset += length;
+        }
+
+        // Return the offsets.
+        return offsets;
+    }
+
+    // Release the memory that is only needed while strings are being added.  Strings added afterwards are stored after the existing ones.
+    public synchronized void finishAdding() {
+        // Release the offsets map.
+        stringOffsets = null;
+
+        // Trim the unused bytes.
+        bytes = Arrays.copyOf(bytes, size);
+    }
+
+    // Get the string at the offset.
+    public synchronized String get(int offset) {
+        // Read the length.
+        int length = 0;
+        int shift = 0;
+        byte lengthByte;
+        do {
+            lengthByte = bytes[offset++];
+            length |= (lengthByte & 0x7F) << shift;
+            shift += 7;
+        } while ((lengthByte & 0x80) != 0);
+
+        // Decode the string.
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    public synchronized int getSize() {
+        // Return the number of bytes used.
+        return size;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2020 Soren Stoutner <soren@stoutner.com>.
+ *
+ * This file is part of Privacy Browser <https://www.stoutner.com/privacy-browser>.
+ *
+ * Privacy Browser is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Privacy Browser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Privacy Browser.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.stoutner.privacybrowser.helpers;
+
+import java.util.Arrays;
+import java.util.List;
+
+// The token index files each entry of a sublist under the rarest three character substring of its URL fragments.
+// Every fragment must appear in the URL for an entry to match, so only the entries whose token also appears in the URL need to be checked.  Tokens that include an anchor are not used.
+public class TokenIndex {
+    // The number of characters in each token.
+    private final static int TOKEN_LENGTH = 3;
+
+    // The token hash of each entry.  Entries without a token are listed in `untokenizedEntries` instead.
+    private final int[] entryTokens;
+
+    // The entries that don't have a fragment long enough to contain a token, in ascending order.
+    private final int[] untokenizedEntries;
+
+    // The token buckets, each of which lists its entries in ascending order.  Empty buckets are null.
+    private final int[][] buckets;
+
+    // The mask used to convert a token hash into a bucket index.
+    private final int bucketMask;
+
+    public TokenIndex(List<String[]> sublist) {
+        // Get the number of entries.
+        int numberOfEntries = sublist.size();
+
+        // Size the bucket table to a power of two at least twice the number of entries.
+        int numberOfBuckets = 16;
+        while (numberOfBuckets < (numberOfEntries * 2)) {
+            numberOfBuckets = numberOfBuckets << 1;
+        }
+
+        // Store the bucket mask.
+        bucketMask = numberOfBuckets - 1;
+
+        // Count how often each token appears across the sublist.  Tokens that share a bucket share a count, which is close enough to find the rare ones.
+        int[] tokenCounts = new int[numberOfBuckets];
+
+        // Populate the token counts.
+        for (String[] entry : sublist) {
+            // The last item in each entry is the original blocklist entry, which is not matched against the URL.
+            for (int fragmentIndex = 0; fragmentIndex < entry.length - 1; fragmentIndex++) {
+                // Get the fragment.
+                String fragment = entry[fragmentIndex];
+
+                // Count each literal token in the fragment.
+                for (int position = 0; position <= fragment.length() - TOKEN_LENGTH; position++) {
+                    if (FragmentMatcher.isLiteral(fragment, position, position + TOKEN_LENGTH)) {
+                        tokenCounts[hashToken(fragment, position) & bucketMask]++;
+                    }
+                }
+            }
+        }
+
+        // Initialize the entry tokens and the bucket sizes.
+        entryTokens = new int[numberOfEntries];
+        int[] bucketSizes = new int[numberOfBuckets];
+        boolean[] entryHasToken = new boolean[numberOfEntries];
+        int numberOfUntokenizedEntries = 0;
+
+        // Select the rarest token of each entry.
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            // Get the entry.
+            String[] entry = sublist.get(entryIndex);
+
+            // Track the rarest token.
+            int rarestTokenCount = Integer.MAX_VALUE;
+
+            // Check each token in each fragment.
+            for (int fragmentIndex = 0; fragmentIndex < entry.length - 1; fragmentIndex++) {
+                // Get the fragment.
+                String fragment = entry[fragmentIndex];
+
+                for (int position = 0; position <= fragment.length() - TOKEN_LENGTH; position++) {
+                    // Skip the tokens that include an anchor.
+                    if (!FragmentMatcher.isLiteral(fragment, position, position + TOKEN_LENGTH)) {
+                        continue;
+                    }
+
+                    // Hash the token.
+                    int token = hashToken(fragment, position);
+
+                    // Keep the token if it is the rarest so far.
+                    if (tokenCounts[token & bucketMask] < rarestTokenCount) {
+                        entryHasToken[entryIndex] = true;
+                        entryTokens[entryIndex] = token;
+                        rarestTokenCount = tokenCounts[token & bucketMask];
+                    }
+                }
+            }
+
+            // Update the bucket sizes.
+            if (entryHasToken[entryIndex]) {  // The entry has a token.
+                bucketSizes[entryTokens[entryIndex] & bucketMask]++;
+            } else {  // The entry has no fragment long enough to contain a token.
+                numberOfUntokenizedEntries++;
+            }
+        }
+
+        // Initialize the buckets and the untokenized entries.
+        buckets = new int[numberOfBuckets][];
+        untokenizedEntries = new int[numberOfUntokenizedEntries];
+
+        // Track how many entries have been placed in each bucket.
+        int[] bucketPositions = new int[numberOfBuckets];
+        int untokenizedPosition = 0;
+
+        // Populate the buckets in ascending entry order.
+        for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+            if (entryHasToken[entryIndex]) {  // Add the entry to its bucket.
+                // Get the bucket index.
+                int bucketIndex = entryTokens[entryIndex] & bucketMask;
+
+                // Create the bucket if this is its first entry.
+                if (buckets[bucketIndex] == null) {
+                    buckets[bucketIndex] = new int[bucketSizes[bucketIndex]];
+                }
+
+                // Add the entry to the bucket.
+                buckets[bucketIndex][bucketPositions[bucketIndex]++] = entryIndex;
+            } else {  // Add the entry to the untokenized entries.
+                untokenizedEntries[untokenizedPosition++] = entryIndex;
+            }
+        }
+    }
+
+    // Get the entries filed under a token hash, in ascending order.  The bucket can also contain entries with other tokens, which can be filtered with `getEntryToken()`.
+    public int[] getBucket(int token) {
+        // Return the bucket, which might be null.
+        return buckets[token & bucketMask];
+    }
+
+    // Get the token hash of an entry in a bucket.
+    public int getEntryToken(int entryIndex) {
+        // Return the entry token.
+        return entryTokens[entryIndex];
+    }
+
+    // Get the entries that must always be checked because they have no token.
+    public int[] getUntokenizedEntries() {
+        // Return the untokenized entries.
+        return untokenizedEntries;
+    }
+
+    // Hash every token in the URL into the tokens array, which is grown as needed.  The hashes are sorted and duplicates are removed, so each bucket is only read once.
+    public static int[] tokenizeUrl(String url, int[] tokens) {
+        // Get the number of tokens in the URL.
+        int numberOfTokens = Math.max(url.length() - TOKEN_LENGTH + 1, 0);
+
+        // Grow the tokens array if needed.  The first item stores the number of unique tokens.
+        if (tokens.length < numberOfTokens + 1) {
+            tokens = new int[numberOfTokens + 1];
+        }
+
+        // Hash each token.
+        for (int position = 0; position < numberOfTokens; position++) {
+            tokens[position + 1] = hashToken(url, position);
+        }
+
+        // Sort the tokens.
+        Arrays.sort(tokens, 1, numberOfTokens + 1);
+
+        // Remove the duplicate tokens.
+        int numberOfUniqueTokens = 0;
+        for (int position = 1; position <= numberOfTokens; position++) {
+            if ((numberOfUniqueTokens == 0) || (tokens[position] != tokens[numberOfUniqueTokens])) {
+                numberOfUniqueTokens++;
+                tokens[numberOfUniqueTokens] = tokens[position];
+            }
+        }
+
+        // Store the number of unique tokens.
+        tokens[0] = numberOfUniqueTokens;
+
+        // Return the tokens array, which might have been reallocated.
+        return tokens;
+    }
+
+    // Tokens are hashed from three characters and then mixed so that similar tokens spread across the buckets.
+    private static int hashToken(String string, int position) {
+        // Combine the three characters.
+        int hash = (((string.charAt(position) * 31) + string.charAt(position + 1)) * 31) + string.charAt(position + 2);
+
+        // Mix the bits.
+        hash = hash * 0x9E3779B9;
+
+        // Return the hash.
+        return hash ^ (hash >>> 16);
+    }
+}